@@ -0,0 +1,147 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * Pool of mutable bitmaps to avoid the allocation of multi megabyte bitmaps at each change of scale factor, canvas size or orientation.
+ * A bitmap is reused if it has the requested size and config. From KitKat on, a bigger bitmap of the same config is
+ * reconfigured in place to the requested size.
+ * The released bitmaps are kept until mMaxBytes is reached, then the oldest ones are recycled.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class BitmapPool {
+
+    public static final String LOG_TAG = "BitmapPool";
+
+    private final int mMaxBytes;
+    private final List<Bitmap> mBitmaps = new ArrayList<>(); // oldest first
+    private int mBytes;
+
+    /*
+     * Statistics
+     */
+    int mStatisticNumberOfCreated;
+    int mStatisticNumberOfReused;
+    int mStatisticNumberOfReconfigured;
+
+    BitmapPool(int aMaxBytes) {
+        mMaxBytes = aMaxBytes;
+    }
+
+    private static int getBytes(Bitmap aBitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return aBitmap.getAllocationByteCount();
+        }
+        return aBitmap.getByteCount();
+    }
+
+    /**
+     * @return A transparent bitmap, either from the pool or a new one
+     */
+    synchronized Bitmap obtain(int aWidth, int aHeight, Bitmap.Config aConfig) {
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            Bitmap tBitmap = mBitmaps.get(i);
+            if (tBitmap.getWidth() == aWidth && tBitmap.getHeight() == aHeight && tBitmap.getConfig() == aConfig) {
+                mStatisticNumberOfReused++;
+                tBitmap = reuse(i);
+                tBitmap.eraseColor(Color.TRANSPARENT);
+                return tBitmap;
+            }
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            for (int i = 0; i < mBitmaps.size(); i++) {
+                Bitmap tBitmap = mBitmaps.get(i);
+                int tBytesPerPixel = tBitmap.getRowBytes() / tBitmap.getWidth();
+                if (tBitmap.getConfig() == aConfig && aWidth * aHeight * tBytesPerPixel <= tBitmap.getAllocationByteCount()) {
+                    mStatisticNumberOfReconfigured++;
+                    tBitmap = reuse(i);
+                    tBitmap.reconfigure(aWidth, aHeight, aConfig);
+                    // the pixels are undefined after reconfigure()
+                    tBitmap.eraseColor(Color.TRANSPARENT);
+                    return tBitmap;
+                }
+            }
+        }
+        mStatisticNumberOfCreated++;
+        return Bitmap.createBitmap(aWidth, aHeight, aConfig);
+    }
+
+    private Bitmap reuse(int aIndex) {
+        Bitmap tBitmap = mBitmaps.remove(aIndex);
+        mBytes -= getBytes(tBitmap);
+        return tBitmap;
+    }
+
+    /**
+     * The bitmap must not be used by the caller afterwards
+     */
+    synchronized void release(Bitmap aBitmap) {
+        if (aBitmap.isRecycled()) {
+            return;
+        }
+        if (!aBitmap.isMutable() || getBytes(aBitmap) > mMaxBytes) {
+            aBitmap.recycle();
+            return;
+        }
+        mBitmaps.add(aBitmap);
+        mBytes += getBytes(aBitmap);
+        while (mBytes > mMaxBytes) {
+            Bitmap tOldest = mBitmaps.remove(0);
+            mBytes -= getBytes(tOldest);
+            tOldest.recycle();
+        }
+    }
+
+    /**
+     * Recycles all bitmaps of the pool, e.g. if memory gets low
+     */
+    synchronized void clear() {
+        if (MyLog.isINFO() && !mBitmaps.isEmpty()) {
+            MyLog.i(LOG_TAG, "Recycle " + mBitmaps.size() + " bitmaps with " + (mBytes / 1024) + " kB");
+        }
+        for (Bitmap tBitmap : mBitmaps) {
+            tBitmap.recycle();
+        }
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+
+    synchronized void resetStatistics() {
+        mStatisticNumberOfCreated = 0;
+        mStatisticNumberOfReused = 0;
+        mStatisticNumberOfReconfigured = 0;
+    }
+
+    synchronized String getStatisticsString() {
+        return "Bitmap pool=" + mBitmaps.size() + " (" + (mBytes / 1024) + " kB) created=" + mStatisticNumberOfCreated + " reused="
+                + mStatisticNumberOfReused + " reconfigured=" + mStatisticNumberOfReconfigured;
+    }
+}
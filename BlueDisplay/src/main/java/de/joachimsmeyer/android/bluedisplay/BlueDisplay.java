@@ -56,22 +56,25 @@
  * - OnFocusChanged (true)
  *
  * Running
- * - Bluetooth or USB socket receives data
+ * - Bluetooth, USB or TCP socket receives data
  * - It calls mSerialService.handleReceived(tReadLength), which puts data into big buffer.
- * - If UI is not working (mRequireUpdateViewMessage) it sends a Message which calls invalidate().
- * - invalidate() triggers OnDraw(), which first calls searchCommand().
+ * - This requests a frame from mFrameScheduler, if not already requested.
+ * - At the next vsync, the FrameScheduler calls searchCommand() with a time budget.
  *   - searchCommand() searches the buffer for a valid BlueDisplay command and calls interpretCommand().
  *   - interpretCommand() dispatches Button and Slider commands and interprets all others by itself.
+ * - If something was drawn, invalidate() is called. If the budget was exhausted, the next frame is requested.
  * - The bitmap of the canvas we use to draw is then copied into the canvas parameter provided by OnDraw().
- * - mRequireUpdateViewMessage is set to true.
  *
  *
  * Deactivate
  * - OnPause
  * - OnFocusChanged (false)
+ * - OnStop sets mIsStopped. Now the FrameScheduler uses MESSAGE_UPDATE_VIEW instead of vsync and interprets the commands
+ *   without showing them. This avoids buffer overflow.
  *
  * Activate
- * - OnResume of BlueDisplay
+ * - OnStart resets mIsStopped
+ * - OnResume of BlueDisplay, which shows the up to date bitmap by invalidate()
  * - OnFocusChanged (true)
  *
  */
@@ -118,6 +121,10 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import de.joachimsmeyer.android.bluedisplay.protocol.TcpTransport;
+import de.joachimsmeyer.android.bluedisplay.protocol.Transport;
+
+import java.io.File;
 import java.util.Objects;
 
 public class BlueDisplay extends Activity {
@@ -134,8 +141,11 @@ public class BlueDisplay extends Activity {
     public static final int MESSAGE_BT_DISCONNECT = 3;
     public static final int MESSAGE_USB_CONNECT = 4;
     public static final int MESSAGE_USB_DISCONNECT = 5;
+    public static final int MESSAGE_TCP_CONNECT = 6;
+    public static final int MESSAGE_TCP_DISCONNECT = 7;
+    public static final int MESSAGE_RESTORE_SNAPSHOT = 8;
     public static final int MESSAGE_TOAST = 10;
-    public static final int MESSAGE_UPDATE_VIEW = 11; // call invalidate()
+    public static final int MESSAGE_UPDATE_VIEW = 11; // run frame of FrameScheduler
     // Message sent by RPCView
     public static final int REQUEST_INPUT_DATA = 20;
 
@@ -158,14 +168,22 @@ public class BlueDisplay extends Activity {
     Toast mMyToast;
 
     /*
-     * Bluetooth and USB socket handler
+     * Bluetooth, USB and TCP socket handler
      */
     public BluetoothSerialSocket mBTSerialSocket = null;
     public USBSerialSocket mUSBSerialSocket = null;
+    public TcpSerialSocket mTcpSerialSocket = null;
+    private boolean mTcpServerEnabled = false;
     public SerialService mSerialService = null;
 
     boolean mUSBDeviceAttached = false;
     boolean mDeviceConnected = false; // Communication with the device is now possible
+    FrameScheduler mFrameScheduler;
+    boolean mIsStopped = false; // Activity is not visible, so commands are interpreted without drawing the view
+
+    static final String SNAPSHOT_CONNECTION_ID_USB = "USB";
+    private volatile String mSnapshotConnectionId; // Connection id of the current content, to be used for writing the snapshot
+    volatile int mRestoredSnapshotHash; // Sent to the client at connect, 0 if no snapshot was restored
 
     // True for 5 seconds after start of connection and reset by FUNCTION_REQUEST_MAX_CANVAS_SIZE and
     // SUBFUNCTION_GLOBAL_SET_FLAGS_AND_SIZE
@@ -199,6 +217,10 @@ public class BlueDisplay extends Activity {
     private static final String SHOW_TOUCH_COORDINATES_KEY = "show_touch_mode";
     private static final String ALLOW_INSECURE_CONNECTIONS_KEY = "allowinsecureconnections";
     private static final String AUTO_CONNECT_KEY = "do_autoconnect";
+    private static final String WIRE_CAPTURE_KEY = "wire_capture";
+    private static final String TCP_SERVER_KEY = "tcp_server";
+    private static final String LOCAL_REDRAW_KEY = "local_redraw";
+    private static final String MAX_FPS_KEY = "max_fps";
     public static final String AUTO_CONNECT_MAC_ADDRESS_KEY = "autoconnect_mac_address";
     public static final String AUTO_CONNECT_DEVICE_NAME_KEY = "autoconnect_device_name";
 
@@ -265,6 +287,7 @@ public class BlueDisplay extends Activity {
         mRPCView.setFocusable(true);
         mRPCView.setFocusableInTouchMode(true);
         mRPCView.requestFocus();
+        mFrameScheduler = new FrameScheduler(this, mHandlerForGUIRequests);
 
         /*
          * Only to detect direct switching from 0 to 180 and from 90 to 270 degrees and vice versa which does not call
@@ -329,6 +352,7 @@ public class BlueDisplay extends Activity {
             MyLog.i(LOG_TAG, "No USB device connected -> switch to Bluetooth");
             initBluetooth();
         }
+        updateTcpServer();
 
         if (MyLog.isINFO()) {
             Log.i(LOG_TAG, "+++ DONE IN ON CREATE +++");
@@ -396,6 +420,8 @@ public class BlueDisplay extends Activity {
         if (MyLog.isINFO()) {
             Log.i(LOG_TAG, "++ ON START ++");
         }
+        mIsStopped = false;
+        mFrameScheduler.onStart();
     }
 
     @Override
@@ -494,6 +520,26 @@ public class BlueDisplay extends Activity {
         if (MyLog.isINFO()) {
             Log.i(LOG_TAG, "-- ON STOP --");
         }
+        /*
+         * Keep on interpreting the received commands, otherwise the receive buffer overflows and the client state is lost
+         */
+        mIsStopped = true;
+        if (mDeviceConnected) {
+            // we may be killed while stopped
+            writeSnapshot();
+        }
+        mFrameScheduler.onStop();
+    }
+
+    /*
+     * The pooled tiles can be allocated again at the next resize
+     */
+    @Override
+    public void onTrimMemory(int aLevel) {
+        super.onTrimMemory(aLevel);
+        if (aLevel >= TRIM_MEMORY_RUNNING_LOW) {
+            TiledBackingStore.sTilePool.clear();
+        }
     }
 
     @Override
@@ -505,6 +551,12 @@ public class BlueDisplay extends Activity {
         if (mBTSerialSocket != null) {
             mBTSerialSocket.stop();
         }
+        if (mTcpSerialSocket != null) {
+            mTcpSerialSocket.disconnect();
+        }
+        if (mSerialService != null) {
+            mSerialService.stopWireCapture();
+        }
         unregisterReceiver(mUSBSerialSocket.mUSBReceiver);
     }
 
@@ -528,6 +580,96 @@ public class BlueDisplay extends Activity {
         return tCurrentScreenOrientation;
     }
 
+    /*
+     * The transport to send events to. USB is checked this way, because the mDeviceConnected flag is set by a message,
+     * which may not be processed yet.
+     */
+    Transport getConnectedTransport() {
+        if (mUSBSerialSocket != null && mUSBSerialSocket.isConnected()) {
+            return mUSBSerialSocket;
+        }
+        if (mBTSerialSocket != null && mBTSerialSocket.isConnected()) {
+            return mBTSerialSocket;
+        }
+        if (mTcpSerialSocket != null && mTcpSerialSocket.isConnected()) {
+            return mTcpSerialSocket;
+        }
+        return null;
+    }
+
+    /*
+     * Start or stop listening for TCP clients according to preference
+     */
+    private void updateTcpServer() {
+        if (mTcpServerEnabled) {
+            if (mTcpSerialSocket == null) {
+                mTcpSerialSocket = new TcpSerialSocket(this, mSerialService, mHandlerForGUIRequests, TcpTransport.DEFAULT_PORT);
+            }
+            if (MyLog.isINFO()) {
+                MyLog.i(LOG_TAG, "Listen for TCP clients on port " + TcpTransport.DEFAULT_PORT);
+            }
+            mTcpSerialSocket.connect();
+        } else if (mTcpSerialSocket != null) {
+            boolean tWasConnected = mTcpSerialSocket.isConnected();
+            mTcpSerialSocket.disconnect();
+            mTcpSerialSocket = null;
+            if (tWasConnected) {
+                mHandlerForGUIRequests.sendEmptyMessage(BlueDisplay.MESSAGE_TCP_DISCONNECT);
+            }
+        }
+    }
+
+    /*
+     * Called by the transport threads after resetAll() at connect.
+     * Reads and decodes the snapshot of the last session in the calling thread and lets the UI thread apply it.
+     * Since this message is sent before the client is signaled, it is handled before commands of the client.
+     */
+    void restoreSnapshot(String aConnectionId) {
+        mSnapshotConnectionId = aConnectionId;
+        mRestoredSnapshotHash = 0;
+        if (aConnectionId == null) {
+            return;
+        }
+        DisplaySnapshot tSnapshot = DisplaySnapshot.read(new File(getFilesDir(), DisplaySnapshot.SNAPSHOT_FILE_NAME), aConnectionId);
+        if (tSnapshot != null) {
+            mRestoredSnapshotHash = tSnapshot.mStateHash;
+            mHandlerForGUIRequests.obtainMessage(MESSAGE_RESTORE_SNAPSHOT, tSnapshot).sendToTarget();
+        }
+    }
+
+    /*
+     * Copies the current content in the UI thread and writes it asynchronously
+     */
+    private void writeSnapshot() {
+        String tConnectionId = mSnapshotConnectionId;
+        if (tConnectionId == null) {
+            return;
+        }
+        DisplaySnapshot tSnapshot = mRPCView.createSnapshot(tConnectionId);
+        if (tSnapshot != null) {
+            tSnapshot.writeAsync(new File(getFilesDir(), DisplaySnapshot.SNAPSHOT_FILE_NAME));
+        }
+    }
+
+    /*
+     * Reset locked orientation, set window to normal (not persistent) state, stop tone, unregister sensor listener
+     */
+    private void resetGUIAfterDisconnect() {
+        // save content for the next connect to the same client
+        writeSnapshot();
+        mRPCView.releaseSessionBuffers();
+        setMenuItemConnect(false);
+        // reset eventually locked orientation
+        mOrientationIsLockedByClient = false;
+        setScreenOrientation(mPreferredScreenOrientation);
+        // set window to normal (not persistent) state
+        getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        mRPCView.mToneGenerator.stopTone();
+        Sensors.disableAllSensors();
+        mSensorEventListener.deregisterAllActiveSensorListeners();
+        mSerialService.stopWireCapture();
+    }
+
     void setMenuItemConnect(Boolean aIsConnected) {
         mDeviceConnected = aIsConnected;
         if (aIsConnected) {
@@ -642,7 +784,13 @@ public class BlueDisplay extends Activity {
             /*
              * Connect / disconnect button
              */
-            if (mUSBDeviceAttached) {
+            if (mTcpSerialSocket != null && mTcpSerialSocket.isConnected()) {
+                // Disconnect request for the TCP client -> send disconnect message and listen for the next client
+                mSerialService.writeTwoIntegerEvent(SerialService.EVENT_DISCONNECT, mRPCView.mCurrentViewPixelWidth,
+                        mRPCView.mCurrentViewPixelHeight);
+                mTcpSerialSocket.disconnect();
+                mHandlerForGUIRequests.sendEmptyMessage(BlueDisplay.MESSAGE_TCP_DISCONNECT);
+            } else if (mUSBDeviceAttached) {
                 if (mUSBSerialSocket.mIsConnected) {
                     // GUI disconnect request here -> send disconnect message to Arduino Client and wait for received
                     // stop running service which reset locked orientation in turn
@@ -705,6 +853,11 @@ public class BlueDisplay extends Activity {
                 Log.i(LOG_TAG, mSerialService.getStatisticsString());
             }
             showStatisticsMessage();
+            if (!mRPCView.mIsStatisticsShown) {
+                // From now on, the time per command is measured and shown at the next display
+                mRPCView.mIsStatisticsShown = true;
+                mRPCView.updateOpcodeProfiling();
+            }
             return true;
 
         } else if (item.getItemId() == R.id.menu_about) {
@@ -808,18 +961,9 @@ public class BlueDisplay extends Activity {
                     if (MyLog.isDEBUG()) {
                         Log.d(LOG_TAG, "MESSAGE_USB_DISCONNECT -> reset GUI");
                     }
-                    setMenuItemConnect(false);
-
                     Toast.makeText(getApplicationContext(), getString(R.string.toast_connection_lost) + " USB", Toast.LENGTH_SHORT)
                             .show();
-                    // reset eventually locked orientation
-                    mOrientationIsLockedByClient = false;
-                    setScreenOrientation(mPreferredScreenOrientation);
-                    // set window to normal (not persistent) state
-                    getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-                    mRPCView.mToneGenerator.stopTone();
-                    Sensors.disableAllSensors();
-                    mSensorEventListener.deregisterAllActiveSensorListeners();
+                    resetGUIAfterDisconnect();
                     break;
 
                 case MESSAGE_BT_DISCONNECT:
@@ -830,18 +974,44 @@ public class BlueDisplay extends Activity {
                     if (MyLog.isDEBUG()) {
                         Log.d(LOG_TAG, "MESSAGE_BT_DISCONNECT: " + mBluetoothDeviceNameConnected);
                     }
-                    setMenuItemConnect(false);
-
                     Toast.makeText(getApplicationContext(),
                             getString(R.string.toast_connection_lost) + " " + mBluetoothDeviceNameConnected, Toast.LENGTH_SHORT).show();
-                    // reset eventually locked orientation
-                    mOrientationIsLockedByClient = false;
-                    setScreenOrientation(mPreferredScreenOrientation);
-                    // set window to normal (not persistent) state
-                    getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-                    mRPCView.mToneGenerator.stopTone();
-                    Sensors.disableAllSensors();
-                    mSensorEventListener.deregisterAllActiveSensorListeners();
+                    resetGUIAfterDisconnect();
+                    break;
+
+                case MESSAGE_RESTORE_SNAPSHOT:
+                    /*
+                     * called by restoreSnapshot() at connect
+                     */
+                    mRPCView.applySnapshot((DisplaySnapshot) msg.obj);
+                    break;
+
+                case MESSAGE_TCP_CONNECT:
+                    /*
+                     * called by TcpSerialSocket after accept -> set window to always on and show toast with client address
+                     */
+                    if (MyLog.isDEBUG()) {
+                        Log.d(LOG_TAG, "MESSAGE_TCP_CONNECT: " + msg.obj);
+                    }
+                    setMenuItemConnect(true);
+                    startWaitingForDataAfterConnect();
+                    getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+                    mMyToast = Toast.makeText(getApplicationContext(), getString(R.string.toast_connected_to) + " " + msg.obj,
+                            Toast.LENGTH_SHORT);
+                    mMyToast.show();
+                    break;
+
+                case MESSAGE_TCP_DISCONNECT:
+                    /*
+                     * called by TcpSerialSocket after the client closed the connection -> reset GUI and accept the next client
+                     */
+                    if (MyLog.isDEBUG()) {
+                        Log.d(LOG_TAG, "MESSAGE_TCP_DISCONNECT -> reset GUI");
+                    }
+                    Toast.makeText(getApplicationContext(), getString(R.string.toast_connection_lost) + " TCP", Toast.LENGTH_SHORT)
+                            .show();
+                    resetGUIAfterDisconnect();
+                    updateTcpServer();
                     break;
 
                 case MESSAGE_TOAST:
@@ -856,12 +1026,12 @@ public class BlueDisplay extends Activity {
 
                 case MESSAGE_UPDATE_VIEW:
                     /*
-                     * called by SerialService after command processed.
+                     * Sent by FrameScheduler if activity is stopped or no Choreographer is available.
                      */
                     if (MyLog.isVERBOSE()) {
-                        Log.v(LOG_TAG, "Received MESSAGE_UPDATE_VIEW -> call mRPCView.invalidate()");
+                        Log.v(LOG_TAG, "Received MESSAGE_UPDATE_VIEW -> interpret commands");
                     }
-                    mRPCView.invalidate();
+                    mFrameScheduler.handleUpdateViewMessage();
                     break;
 
                 case REQUEST_INPUT_DATA:
@@ -1066,6 +1236,26 @@ public class BlueDisplay extends Activity {
             // don't use setter methods since they modify the preference too
             // mRPCView.mTouchMoveEnable = tSharedPreferences.getBoolean(TOUCH_MOVE_KEY, mRPCView.isTouchMoveEnable());
             mRPCView.mShowTouchCoordinates = tSharedPreferences.getBoolean(SHOW_TOUCH_COORDINATES_KEY, false);
+            mRPCView.setLocalRedrawEnabled(tSharedPreferences.getBoolean(LOCAL_REDRAW_KEY, true));
+            mRPCView.updateOpcodeProfiling(); // log level may have changed
+        }
+
+        if (mFrameScheduler != null) {
+            mFrameScheduler.setMaxFramesPerSecond(Integer.parseInt(tSharedPreferences.getString(MAX_FPS_KEY, "0")));
+        }
+
+        if (mSerialService != null) {
+            // Takes effect at next connect
+            mSerialService.mWireCaptureEnabled = tSharedPreferences.getBoolean(WIRE_CAPTURE_KEY, false);
+        }
+
+        boolean tTcpServerEnabled = tSharedPreferences.getBoolean(TCP_SERVER_KEY, false);
+        if (tTcpServerEnabled != mTcpServerEnabled) {
+            mTcpServerEnabled = tTcpServerEnabled;
+            if (mSerialService != null) {
+                // at startup, onCreate() starts the server after creating mSerialService
+                updateTcpServer();
+            }
         }
 
         mAutoConnectBT = tSharedPreferences.getBoolean(AUTO_CONNECT_KEY, mAutoConnectBT);
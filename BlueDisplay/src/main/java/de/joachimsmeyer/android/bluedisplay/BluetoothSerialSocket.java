@@ -36,6 +36,9 @@ import android.os.Message;
 import android.os.Process;
 import android.util.Log;
 
+import de.joachimsmeyer.android.bluedisplay.protocol.StreamTransport;
+import de.joachimsmeyer.android.bluedisplay.protocol.Transport;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -45,7 +48,7 @@ import java.util.UUID;
  * This class does all the work for setting up and managing Bluetooth connections with other devices. It has a thread for connecting
  * with a device, and a thread for performing data transmissions when connected.
  */
-public class BluetoothSerialSocket {
+public class BluetoothSerialSocket implements Transport {
     // Logging
     private static final String LOG_TAG = "BluetoothSerialSocket";
 
@@ -58,6 +61,7 @@ public class BluetoothSerialSocket {
     private ConnectThread mConnectThread;
     private ConnectedThread mConnectedThread;
     private int mState;
+    private BluetoothDevice mLastDevice; // for connect() without device
 
     public static long sLastFailOrDisconnectTimestampMillis = 0;
     private boolean mAllowInsecureConnections;
@@ -72,6 +76,7 @@ public class BluetoothSerialSocket {
 
     private final BlueDisplay mBlueDisplayContext;
     SerialService mSerialService;
+    private final Transport.Receiver mReceiver;
 
     // Constants that indicate the current connection state
     public static final int STATE_NONE = 0; // we're doing nothing
@@ -90,6 +95,7 @@ public class BluetoothSerialSocket {
         //mAdapter = BluetoothAdapter.getDefaultAdapter();
         mState = STATE_NONE;
         mSerialService = aSerialService;
+        mReceiver = aSerialService;
         mHandler = aHandler;
         mBlueDisplayContext = aContext;
         mAllowInsecureConnections = true;
@@ -102,6 +108,31 @@ public class BluetoothSerialSocket {
         return mState;
     }
 
+    @Override
+    public String getName() {
+        return "Bluetooth";
+    }
+
+    @Override
+    public boolean isConnected() {
+        return getState() == STATE_CONNECTED;
+    }
+
+    /**
+     * Connect again to the last device
+     */
+    @Override
+    public synchronized void connect() {
+        if (mLastDevice != null) {
+            connect(mLastDevice);
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        stop();
+    }
+
     /**
      * Start the ConnectThread to initiate a connection to a remote device.
      * 
@@ -128,6 +159,7 @@ public class BluetoothSerialSocket {
         }
 
         // Start the thread to connect with the given device
+        mLastDevice = device;
         mConnectThread = new ConnectThread(device);
         mConnectThread.start();
         mState = STATE_CONNECTING;
@@ -198,6 +230,7 @@ public class BluetoothSerialSocket {
     /**
      * Write to the ConnectedThread in an unsynchronized manner
      */
+    @Override
     public void writeEvent(byte[] aEventDataBuffer, int aEventDataLength) {
         // Create temporary object
         ConnectedThread r;
@@ -235,6 +268,7 @@ public class BluetoothSerialSocket {
      */
     private void connectionLost() {
         mState = STATE_NONE;
+        mReceiver.onDisconnected(this);
 
         // Send a disconnect message back to the Activity
         mHandler.sendEmptyMessage(BlueDisplay.MESSAGE_BT_DISCONNECT);
@@ -352,6 +386,8 @@ public class BluetoothSerialSocket {
              * reset flags, buttons, sliders and sensors (and log this :-)) Must be at first
              */
             mBlueDisplayContext.mRPCView.resetAll();
+            // show the content of the last session with this device until the client has redrawn
+            mBlueDisplayContext.restoreSnapshot(mmSocket.getRemoteDevice().getAddress());
 
             // Read old content from Bluetooth buffer
             // Data is present if data was sent before connection
@@ -367,9 +403,10 @@ public class BluetoothSerialSocket {
                 } catch (InterruptedException e) {
                     // Just do nothing
                 }
+                byte[] tOldBytesBuffer = new byte[BT_READ_MAX_SIZE];
                 tBytesAvailable = mmInStream.available();
                 while (tBytesAvailable > 0) {
-                    tReadSize += mmInStream.read(mSerialService.mDataBuffer, 0, tBytesAvailable);
+                    tReadSize += mmInStream.read(tOldBytesBuffer, 0, Math.min(tBytesAvailable, BT_READ_MAX_SIZE));
                     tBytesAvailable = mmInStream.available();
                 }
                 if (tReadSize > 0) {
@@ -388,8 +425,7 @@ public class BluetoothSerialSocket {
             /*
              * Now we have read all old bytes from input stream. Start and initialize big ring buffer.
              */
-            mSerialService.resetReceiveBuffer();
-            mSerialService.resetStatistics();
+            mReceiver.onConnected(BluetoothSerialSocket.this);
             // signal connection to arduino
             mSerialService.signalBlueDisplayConnection();
 
@@ -410,13 +446,11 @@ public class BluetoothSerialSocket {
                      * long break is not the maximum. Only the next or even later reads then returns the maximum bytes. It is
                      * independent from using secure or insecure connection.
                      */
-                    tReadLength = mmInStream.read(mSerialService.mBigReceiveBuffer, mSerialService.mReceiveBufferInIndex,
-                            BT_READ_MAX_SIZE);
+                    tReadLength = StreamTransport.readIntoReceiveBuffer(mmInStream, mReceiver);
                     if (MyLog.isDEVELOPMENT_TESTING()) {
                         long tReadDuration = System.currentTimeMillis() - tStartTimestampMillis;
-                        Log.d(LOG_TAG, "Read duration=" + tReadDuration + "ms, length=" + tReadLength);
+                        Log.d(LOG_TAG, "Read and handle duration=" + tReadDuration + "ms, length=" + tReadLength);
                     }
-                    mSerialService.handleReceived(tReadLength);
                 } catch (IOException e) {
                     // end up here if cancel() / mmSocket.close() was called
                     // before
@@ -0,0 +1,225 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * DrawTarget for the CommandRenderer, which draws on an Android Canvas.
+ * Holds the Paint objects formerly held by RPCView, to avoid garbage collection.
+ * COLOR_TRANSPARENT is drawn with PorterDuff.Mode.CLEAR, to erase the pixels of a layer.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+import de.joachimsmeyer.android.bluedisplay.protocol.DeferredDrawTarget;
+import de.joachimsmeyer.android.bluedisplay.protocol.DrawTarget;
+
+public class CanvasDrawTarget implements DrawTarget, DeferredDrawTarget.ImageDrawTarget {
+
+    private static final PorterDuffXfermode sClearMode = new PorterDuffXfermode(PorterDuff.Mode.CLEAR);
+
+    private Canvas mCanvas;
+    private final Path mPath = new Path();
+
+    private final Paint mTextPaint; // For all scaled text
+    private final Paint mPaintStroke1Fill; // for circle, rectangles, path and text background
+    private final Paint mPaintStrokeAndColorSettable; // for all lines with thickness. Stroke and color are set, before used
+    private final Paint mPaintStrokeAndColorSettableAntiAliased; // Only for lines with thickness. Stroke and color are set, before used
+
+    // For image rows. The bitmap is reused and only recreated for a wider image
+    private Bitmap mPixelRowBitmap;
+    private final Rect mPixelRowSourceRect = new Rect();
+    private final RectF mPixelRowDestinationRect = new RectF();
+    private final Paint mPixelRowPaint = new Paint(); // no filtering, to get sharp pixels if scaled
+
+    public CanvasDrawTarget(Canvas aCanvas) {
+        mCanvas = aCanvas;
+
+        mTextPaint = new Paint();
+        mTextPaint.setTypeface(Typeface.MONOSPACE);
+        mTextPaint.setStyle(Paint.Style.FILL);
+
+        // for fillRect, the outline of the form will be filled
+        mPaintStroke1Fill = new Paint();
+        mPaintStroke1Fill.setStrokeWidth(1);
+        mPaintStroke1Fill.setStyle(Paint.Style.FILL);
+//        mGraphPaintStroke1Fill.setAntiAlias(true); // with AntiAlias, we get a residual outline at clearing the rectangle
+
+        mPaintStrokeAndColorSettable = new Paint();
+        mPaintStrokeAndColorSettable.setStyle(Paint.Style.STROKE);
+
+        /*
+         * without AntiAlias lines have different thickness depending at their position
+         * with AntiAlias, we get a residual outline at clearing the line
+         */
+        mPaintStrokeAndColorSettableAntiAliased = new Paint();
+        mPaintStrokeAndColorSettableAntiAliased.setStyle(Paint.Style.STROKE);
+        mPaintStrokeAndColorSettableAntiAliased.setAntiAlias(true);
+    }
+
+    public Canvas getCanvas() {
+        return mCanvas;
+    }
+
+    /*
+     * Called after creation of a new bitmap
+     */
+    public void setCanvas(Canvas aCanvas) {
+        mCanvas = aCanvas;
+    }
+
+    private static void setColor(Paint aPaint, int aColor) {
+        aPaint.setColor(aColor);
+        aPaint.setXfermode(aColor == COLOR_TRANSPARENT ? sClearMode : null);
+    }
+
+    private Paint getStrokePaint(float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        Paint tPaint = aAntiAlias ? mPaintStrokeAndColorSettableAntiAliased : mPaintStrokeAndColorSettable;
+        tPaint.setStrokeWidth(aStrokeWidth);
+        setColor(tPaint, aColor);
+        return tPaint;
+    }
+
+    private Paint getPaint(float aStrokeWidth, int aColor, boolean aFill) {
+        if (aFill) {
+            setColor(mPaintStroke1Fill, aColor);
+            return mPaintStroke1Fill;
+        }
+        return getStrokePaint(aStrokeWidth, aColor, false);
+    }
+
+    @Override
+    public void drawColor(int aColor) {
+        if (aColor == COLOR_TRANSPARENT) {
+            mCanvas.drawColor(aColor, PorterDuff.Mode.CLEAR);
+        } else {
+            mCanvas.drawColor(aColor);
+        }
+    }
+
+    @Override
+    public void drawPoint(float aX, float aY, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        mCanvas.drawPoint(aX, aY, getStrokePaint(aStrokeWidth, aColor, aAntiAlias));
+    }
+
+    @Override
+    public void drawLine(float aXStart, float aYStart, float aXEnd, float aYEnd, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        mCanvas.drawLine(aXStart, aYStart, aXEnd, aYEnd, getStrokePaint(aStrokeWidth, aColor, aAntiAlias));
+    }
+
+    /*
+     * Use NON anti aliased Paint for easy removing of old chart
+     */
+    @Override
+    public void drawLines(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        mCanvas.drawLines(aPoints, aOffset, aCount, getStrokePaint(aStrokeWidth, aColor, false));
+    }
+
+    @Override
+    public void drawPoints(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        mCanvas.drawPoints(aPoints, aOffset, aCount, getStrokePaint(aStrokeWidth, aColor, false));
+    }
+
+    /*
+     * Android has no batch call for rectangles, but the Paint is set up only once
+     */
+    @Override
+    public void fillRects(float[] aRects, int aOffset, int aCount, int aColor) {
+        setColor(mPaintStroke1Fill, aColor);
+        int tEnd = aOffset + aCount - 3;
+        for (int i = aOffset; i < tEnd; i += 4) {
+            mCanvas.drawRect(aRects[i], aRects[i + 1], aRects[i + 2], aRects[i + 3], mPaintStroke1Fill);
+        }
+    }
+
+    @Override
+    public void drawPixelRow(int[] aColors, int aCount, float aLeft, float aTop, float aRight, float aBottom) {
+        if (mPixelRowBitmap == null || mPixelRowBitmap.getWidth() < aCount) {
+            if (mPixelRowBitmap != null) {
+                mPixelRowBitmap.recycle();
+            }
+            mPixelRowBitmap = Bitmap.createBitmap(aCount, 1, Bitmap.Config.ARGB_8888);
+        }
+        mPixelRowBitmap.setPixels(aColors, 0, aCount, 0, 0, aCount, 1);
+        mPixelRowSourceRect.set(0, 0, aCount, 1);
+        mPixelRowDestinationRect.set(aLeft, aTop, aRight, aBottom);
+        mCanvas.drawBitmap(mPixelRowBitmap, mPixelRowSourceRect, mPixelRowDestinationRect, mPixelRowPaint);
+    }
+
+    @Override
+    public void drawRect(float aLeft, float aTop, float aRight, float aBottom, float aStrokeWidth, int aColor, boolean aFill) {
+        mCanvas.drawRect(aLeft, aTop, aRight, aBottom, getPaint(aStrokeWidth, aColor, aFill));
+    }
+
+    @Override
+    public void drawCircle(float aX, float aY, float aRadius, float aStrokeWidth, int aColor, boolean aFill) {
+        mCanvas.drawCircle(aX, aY, aRadius, getPaint(aStrokeWidth, aColor, aFill));
+    }
+
+    @Override
+    public void drawPolygon(int[] aCoordinates, int aLength, float aScaleFactor, float aStrokeWidth, int aColor, boolean aFill) {
+        /*
+         * Data to path
+         */
+        mPath.incReserve(aLength + 1);
+        mPath.moveTo(aCoordinates[0] * aScaleFactor, aCoordinates[1] * aScaleFactor);
+        int i = 2;
+        while (i < aLength) {
+            mPath.lineTo(aCoordinates[i] * aScaleFactor, aCoordinates[i + 1] * aScaleFactor);
+            i += 2;
+        }
+        mPath.close();
+
+        mCanvas.drawPath(mPath, getPaint(aStrokeWidth, aColor, aFill));
+
+        // Path only consists of lines
+        mPath.rewind();
+    }
+
+    @Override
+    public void drawText(String aText, float aX, float aY, float aTextSize, int aColor) {
+        mTextPaint.setTextSize(aTextSize);
+        setColor(mTextPaint, aColor);
+        mCanvas.drawText(aText, aX, aY, mTextPaint);
+    }
+
+    @Override
+    public float measureText(String aText, int aStart, int aEnd, float aTextSize) {
+        mTextPaint.setTextSize(aTextSize);
+        return mTextPaint.measureText(aText, aStart, aEnd);
+    }
+
+    @Override
+    public void drawImage(Object aImage, float aLeft, float aTop) {
+        mCanvas.drawBitmap((Bitmap) aImage, aLeft, aTop, null);
+    }
+}
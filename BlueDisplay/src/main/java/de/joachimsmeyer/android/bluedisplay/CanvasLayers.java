@@ -0,0 +1,249 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * The layers of the canvas, composited bottom up in onDraw(): static background, dynamic content and widgets.
+ * Each layer is a TiledBackingStore of the canvas size. Only the background layer exists until the client selects
+ * another layer, so clients without layers need no additional memory.
+ * The draw target of each layer maps its clear color to transparent, see ClearColorDrawTarget.
+ * All methods must be called in the UI thread.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.LAYER_BACKGROUND;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.LAYER_WIDGETS;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.NUMBER_OF_LAYERS;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import de.joachimsmeyer.android.bluedisplay.protocol.ClearColorDrawTarget;
+import de.joachimsmeyer.android.bluedisplay.protocol.DrawTarget;
+
+class CanvasLayers {
+
+    public static final String LOG_TAG = "CanvasLayers";
+
+    private static final int DEFAULT_BACKGROUND_COLOR = 0xFFFFFFFF; // white
+
+    private final DrawTarget mMeasuringTarget;
+    private final TiledBackingStore[] mStores = new TiledBackingStore[NUMBER_OF_LAYERS]; // null if not yet used
+    private final ClearColorDrawTarget[] mDrawTargets = new ClearColorDrawTarget[NUMBER_OF_LAYERS];
+    private int mCurrentLayer = LAYER_BACKGROUND;
+    private boolean mIsLayered; // true after the client selected a layer
+
+    CanvasLayers(int aWidth, int aHeight, DrawTarget aMeasuringTarget) {
+        mMeasuringTarget = aMeasuringTarget;
+        allocate(LAYER_BACKGROUND, aWidth, aHeight);
+    }
+
+    private void allocate(int aLayer, int aWidth, int aHeight) {
+        mStores[aLayer] = new TiledBackingStore(aWidth, aHeight, mMeasuringTarget);
+        mDrawTargets[aLayer] = new ClearColorDrawTarget(mStores[aLayer].getDrawTarget()); // new tiles are transparent
+    }
+
+    int getWidth() {
+        return mStores[LAYER_BACKGROUND].getWidth();
+    }
+
+    int getHeight() {
+        return mStores[LAYER_BACKGROUND].getHeight();
+    }
+
+    boolean isLayered() {
+        return mIsLayered;
+    }
+
+    int getCurrentLayer() {
+        return mCurrentLayer;
+    }
+
+    /**
+     * Allocates the layer at its first use
+     */
+    void select(int aLayer) {
+        if (mStores[aLayer] == null) {
+            allocate(aLayer, getWidth(), getHeight());
+            if (MyLog.isINFO()) {
+                MyLog.i(LOG_TAG, "Allocated layer " + aLayer + " with " + getWidth() + " x " + getHeight() + " pixel");
+            }
+        }
+        mCurrentLayer = aLayer;
+        mIsLayered = true;
+    }
+
+    TiledBackingStore getStore(int aLayer) {
+        return mStores[aLayer];
+    }
+
+    TiledBackingStore getCurrentStore() {
+        return mStores[mCurrentLayer];
+    }
+
+    DrawTarget getDrawTarget(int aLayer) {
+        return mDrawTargets[aLayer];
+    }
+
+    /**
+     * @return The target for the command renderer
+     */
+    DrawTarget getCurrentDrawTarget() {
+        return mDrawTargets[mCurrentLayer];
+    }
+
+    /**
+     * Buttons and sliders are drawn to the widget layer, if the client uses layers
+     */
+    int getWidgetLayer() {
+        if (mIsLayered) {
+            if (mStores[LAYER_WIDGETS] == null) {
+                allocate(LAYER_WIDGETS, getWidth(), getHeight());
+            }
+            return LAYER_WIDGETS;
+        }
+        return mCurrentLayer;
+    }
+
+    /**
+     * @return true if aColor is drawn as transparent on the widget layer
+     */
+    boolean isWidgetClearColor(int aColor) {
+        return mDrawTargets[getWidgetLayer()].getClearColor() == aColor;
+    }
+
+    /**
+     * @param aColor ARGB color or ClearColorDrawTarget.NO_CLEAR_COLOR
+     */
+    void setClearColor(int aLayer, int aColor) {
+        if (mStores[aLayer] == null) {
+            allocate(aLayer, getWidth(), getHeight());
+        }
+        mDrawTargets[aLayer].setClearColor(aColor);
+    }
+
+    /**
+     * Fills the background layer with its clear color, or white if not set. Other layers get transparent.
+     */
+    void clear(int aLayer) {
+        if (mStores[aLayer] == null) {
+            return;
+        }
+        DrawTarget tDrawTarget = mStores[aLayer].getDrawTarget(); // without clear color mapping
+        if (aLayer == LAYER_BACKGROUND) {
+            int tColor = mDrawTargets[aLayer].getClearColor();
+            tDrawTarget.drawColor(tColor == ClearColorDrawTarget.NO_CLEAR_COLOR ? DEFAULT_BACKGROUND_COLOR : tColor);
+        } else {
+            tDrawTarget.drawColor(DrawTarget.COLOR_TRANSPARENT);
+        }
+    }
+
+    /**
+     * Releases all layers except the background and selects the background
+     */
+    void reset() {
+        for (int i = LAYER_BACKGROUND + 1; i < NUMBER_OF_LAYERS; i++) {
+            if (mStores[i] != null) {
+                mStores[i].recycle();
+                mStores[i] = null;
+                mDrawTargets[i] = null;
+            }
+        }
+        mDrawTargets[LAYER_BACKGROUND].setClearColor(ClearColorDrawTarget.NO_CLEAR_COLOR);
+        mCurrentLayer = LAYER_BACKGROUND;
+        mIsLayered = false;
+    }
+
+    void resize(int aWidth, int aHeight, boolean aKeepContent) {
+        for (TiledBackingStore tStore : mStores) {
+            if (tStore != null) {
+                tStore.resize(aWidth, aHeight, aKeepContent);
+            }
+        }
+    }
+
+    boolean needsFlush() {
+        for (TiledBackingStore tStore : mStores) {
+            if (tStore != null && tStore.needsFlush()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void flush() {
+        for (TiledBackingStore tStore : mStores) {
+            if (tStore != null) {
+                tStore.flush();
+            }
+        }
+    }
+
+    /**
+     * Composites the visible tiles of all layers. Pending primitives must be flushed before.
+     */
+    void draw(Canvas aCanvas, float aX, float aY, int aVisibleLeft, int aVisibleTop, int aVisibleRight, int aVisibleBottom,
+              Paint aPaint) {
+        for (TiledBackingStore tStore : mStores) {
+            if (tStore != null) {
+                tStore.draw(aCanvas, aX, aY, aVisibleLeft, aVisibleTop, aVisibleRight, aVisibleBottom, aPaint);
+            }
+        }
+    }
+
+    /**
+     * @return A new bitmap with the composited layers of the rectangle, which must be inside of the canvas
+     */
+    Bitmap copyRegion(int aLeft, int aTop, int aWidth, int aHeight) {
+        flush();
+        Bitmap tBitmap = Bitmap.createBitmap(aWidth, aHeight, Bitmap.Config.ARGB_8888);
+        Canvas tCanvas = new Canvas(tBitmap);
+        tCanvas.translate(-aLeft, -aTop);
+        draw(tCanvas, 0, 0, aLeft, aTop, aLeft + aWidth, aTop + aHeight, null);
+        return tBitmap;
+    }
+
+    void resetStatistics() {
+        for (TiledBackingStore tStore : mStores) {
+            if (tStore != null) {
+                tStore.resetStatistics();
+            }
+        }
+        TiledBackingStore.sTilePool.resetStatistics();
+    }
+
+    String getStatisticsString() {
+        StringBuilder tStatistics = new StringBuilder();
+        for (int i = 0; i < NUMBER_OF_LAYERS; i++) {
+            if (mStores[i] != null) {
+                if (i != LAYER_BACKGROUND) {
+                    tStatistics.append('\n');
+                }
+                tStatistics.append("Layer ").append(i).append(": ").append(mStores[i].getStatisticsString());
+            }
+        }
+        tStatistics.append('\n').append(TiledBackingStore.sTilePool.getStatisticsString());
+        return tStatistics.toString();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * The state of the connected client, which was formerly held in static fields of RPCView, TouchButton and TouchSlider.
+ * A new session is started at each connect by RPCView.resetAll(). At disconnect, the buffers which are only needed
+ * while the client sends commands are released, but the widgets stay until the next connect, to be written to the snapshot.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class ClientSession {
+
+    private static final int BUTTON_INITIAL_LIST_SIZE = 40;
+    private static final int SLIDER_LIST_INITIAL_SIZE = 10;
+    private static final int CHARS_ARRAY_INITIAL_SIZE = 1024;
+
+    final List<TouchButton> mButtonList = new ArrayList<>(BUTTON_INITIAL_LIST_SIZE);
+    final List<TouchSlider> mSliderList = new ArrayList<>(SLIDER_LIST_INITIAL_SIZE);
+    /*
+     * Incremented by each drawing, which may overwrite a slider bar, i.e. by all except slider bar drawings.
+     * A slider draws only the changed strip of its bar, if this did not change since the last bar drawing.
+     */
+    int mCanvasChangeCount;
+    int mCachedButtonBytes; // Bytes of the bitmaps of all cached buttons of this session
+
+    private char[] mCharsArray; // for conversion of received strings, allocated at first use
+
+    /**
+     * @return an array with at least aLength chars
+     */
+    char[] getCharsArray(int aLength) {
+        if (mCharsArray == null || mCharsArray.length < aLength) {
+            mCharsArray = new char[Math.max(aLength, CHARS_ARRAY_INITIAL_SIZE)];
+        }
+        return mCharsArray;
+    }
+
+    /**
+     * Releases the button bitmaps and the conversion buffer. The widgets are kept.
+     */
+    void releaseBuffers() {
+        TouchButton.clearAllCaches(this);
+        mCharsArray = null;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * Snapshot of the canvas bitmap, the buttons and the sliders, which is restored at the next connect to the same client.
+ * This shows the last content instantly, before the redraw of the client has arrived over the slow link.
+ * The bitmap is copied in the UI thread, but compressed and written asynchronously.
+ *
+ * File format: magic, version, connection id, requested canvas size, scale factor, state hash,
+ * length and data of the widget state, length and data of the PNG compressed bitmap.
+ * The state hash is the CRC32 of widget state and PNG data. It is sent to the client at connect.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+public class DisplaySnapshot {
+
+    private static final String LOG_TAG = "DisplaySnapshot";
+
+    static final String SNAPSHOT_FILE_NAME = "display.bdsnap";
+    private static final int SNAPSHOT_MAGIC = 0x42445353; // "BDSS"
+    private static final int SNAPSHOT_VERSION = 3; // 2 -> slider callback rate and touch move interval added, 3 -> multi touch mode
+    private static final int MAX_SECTION_SIZE = 64 * 1024 * 1024; // plausi for reading
+
+    // Serializes the writes and keeps them off the UI thread
+    private static final ExecutorService sWriteExecutor = Executors.newSingleThreadExecutor();
+
+    final String mConnectionId; // Bluetooth MAC address, IP address of TCP client or "USB"
+    final int mRequestedCanvasWidth;
+    final int mRequestedCanvasHeight;
+    final float mScaleFactor;
+    final byte[] mWidgetState; // written by RPCView.writeWidgetState()
+    Bitmap mBitmap;
+    int mStateHash;
+
+    DisplaySnapshot(String aConnectionId, int aRequestedCanvasWidth, int aRequestedCanvasHeight, float aScaleFactor,
+                    byte[] aWidgetState, Bitmap aBitmap) {
+        mConnectionId = aConnectionId;
+        mRequestedCanvasWidth = aRequestedCanvasWidth;
+        mRequestedCanvasHeight = aRequestedCanvasHeight;
+        mScaleFactor = aScaleFactor;
+        mWidgetState = aWidgetState;
+        mBitmap = aBitmap;
+    }
+
+    private static int computeStateHash(byte[] aWidgetState, byte[] aImage, int aImageLength) {
+        CRC32 tCRC = new CRC32();
+        tCRC.update(aWidgetState);
+        tCRC.update(aImage, 0, aImageLength);
+        return (int) tCRC.getValue();
+    }
+
+    /**
+     * Compresses and writes the snapshot in a background thread. The bitmap must be a copy, it is recycled after writing.
+     */
+    void writeAsync(final File aFile) {
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long tStartMillis = System.currentTimeMillis();
+                File tTempFile = new File(aFile.getPath() + ".tmp");
+                try {
+                    ByteArrayOutputStream tImage = new ByteArrayOutputStream(64 * 1024);
+                    mBitmap.compress(Bitmap.CompressFormat.PNG, 100, tImage);
+                    byte[] tImageBytes = tImage.toByteArray();
+                    mStateHash = computeStateHash(mWidgetState, tImageBytes, tImageBytes.length);
+
+                    DataOutputStream tOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tTempFile)));
+                    try {
+                        tOut.writeInt(SNAPSHOT_MAGIC);
+                        tOut.writeInt(SNAPSHOT_VERSION);
+                        tOut.writeUTF(mConnectionId);
+                        tOut.writeShort(mRequestedCanvasWidth);
+                        tOut.writeShort(mRequestedCanvasHeight);
+                        tOut.writeFloat(mScaleFactor);
+                        tOut.writeInt(mStateHash);
+                        tOut.writeInt(mWidgetState.length);
+                        tOut.write(mWidgetState);
+                        tOut.writeInt(tImageBytes.length);
+                        tOut.write(tImageBytes);
+                    } finally {
+                        tOut.close();
+                    }
+                    // Replace old file only by a complete one
+                    if (!tTempFile.renameTo(aFile)) {
+                        throw new IOException("rename to " + aFile.getName() + " failed");
+                    }
+                    if (MyLog.isINFO()) {
+                        MyLog.i(LOG_TAG, "Wrote snapshot for " + mConnectionId + " with " + (tImageBytes.length + mWidgetState.length)
+                                + " bytes in " + (System.currentTimeMillis() - tStartMillis) + " ms. Hash=0x"
+                                + Integer.toHexString(mStateHash));
+                    }
+                } catch (IOException e) {
+                    MyLog.e(LOG_TAG, "Cannot write snapshot " + aFile.getAbsolutePath() + " " + e);
+                    tTempFile.delete();
+                } finally {
+                    mBitmap.recycle();
+                    mBitmap = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads and decodes the snapshot. Called by the transport threads at connect.
+     *
+     * @return null if there is no valid snapshot for aConnectionId
+     */
+    static DisplaySnapshot read(File aFile, String aConnectionId) {
+        if (!aFile.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream tIn = new DataInputStream(new BufferedInputStream(new FileInputStream(aFile)));
+            try {
+                if (tIn.readInt() != SNAPSHOT_MAGIC || tIn.readInt() != SNAPSHOT_VERSION) {
+                    MyLog.w(LOG_TAG, "Snapshot " + aFile.getName() + " has wrong format or version");
+                    return null;
+                }
+                String tConnectionId = tIn.readUTF();
+                if (!tConnectionId.equals(aConnectionId)) {
+                    if (MyLog.isINFO()) {
+                        MyLog.i(LOG_TAG, "Snapshot is for " + tConnectionId + " not for " + aConnectionId);
+                    }
+                    return null;
+                }
+                int tRequestedCanvasWidth = tIn.readShort();
+                int tRequestedCanvasHeight = tIn.readShort();
+                float tScaleFactor = tIn.readFloat();
+                int tStateHash = tIn.readInt();
+                byte[] tWidgetState = readSection(tIn);
+                byte[] tImageBytes = readSection(tIn);
+                if (computeStateHash(tWidgetState, tImageBytes, tImageBytes.length) != tStateHash) {
+                    MyLog.w(LOG_TAG, "Snapshot " + aFile.getName() + " is corrupted");
+                    return null;
+                }
+                Bitmap tBitmap = BitmapFactory.decodeByteArray(tImageBytes, 0, tImageBytes.length);
+                if (tBitmap == null) {
+                    MyLog.w(LOG_TAG, "Cannot decode bitmap of snapshot " + aFile.getName());
+                    return null;
+                }
+                DisplaySnapshot tSnapshot = new DisplaySnapshot(tConnectionId, tRequestedCanvasWidth, tRequestedCanvasHeight,
+                        tScaleFactor, tWidgetState, tBitmap);
+                tSnapshot.mStateHash = tStateHash;
+                return tSnapshot;
+            } finally {
+                tIn.close();
+            }
+        } catch (IOException e) {
+            MyLog.e(LOG_TAG, "Cannot read snapshot " + aFile.getAbsolutePath() + " " + e);
+            return null;
+        }
+    }
+
+    private static byte[] readSection(DataInputStream aIn) throws IOException {
+        int tLength = aIn.readInt();
+        if (tLength < 0 || tLength > MAX_SECTION_SIZE) {
+            throw new IOException("invalid section length " + tLength);
+        }
+        byte[] tSection = new byte[tLength];
+        aIn.readFully(tSection);
+        return tSection;
+    }
+
+    /*
+     * Helper for the widget state, which contains optional strings
+     */
+    static void writeString(DataOutputStream aOut, String aString) throws IOException {
+        aOut.writeBoolean(aString != null);
+        if (aString != null) {
+            aOut.writeUTF(aString);
+        }
+    }
+
+    static String readString(DataInputStream aIn) throws IOException {
+        if (aIn.readBoolean()) {
+            return aIn.readUTF();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * Schedules the interpretation of received commands and the display of the canvas bitmap.
+ * The transport threads only call requestFrame(). At the next vsync, the commands in the buffer are interpreted
+ * within a time budget and the view is invalidated at most once, so the bitmap is shown in the same frame.
+ * If the budget is exhausted, the next frame is requested, so large amounts of data do not block the UI thread.
+ *
+ * The request flag is cleared before interpreting, so data arriving during interpretation always requests a new frame.
+ * While the activity is stopped, or below API 16 which has no Choreographer, the frame is run by MESSAGE_UPDATE_VIEW.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FrameScheduler {
+
+    public static final String LOG_TAG = "FrameScheduler";
+
+    // Leave half of a 60 Hz frame for rendering
+    private static final long PARSE_BUDGET_NANOS = 8000000;
+
+    private final BlueDisplay mBlueDisplayContext;
+    private final Handler mHandler;
+    private final VsyncCallback mVsyncCallback; // null below API 16
+
+    private final AtomicBoolean mFrameRequested = new AtomicBoolean(false);
+    private volatile boolean mUseHandler; // true while activity is stopped, then no vsync is delivered if screen is off
+    private volatile long mMinFrameIntervalNanos; // 0 -> every vsync
+    private long mLastFrameNanos;
+
+    /*
+     * Statistics
+     */
+    int mStatisticNumberOfFrames;
+    int mStatisticNumberOfContinuedFrames;
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class VsyncCallback implements Choreographer.FrameCallback {
+        private final Choreographer mChoreographer = Choreographer.getInstance(); // must be created on UI thread
+
+        void post() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        void remove() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long aFrameTimeNanos) {
+            if (mMinFrameIntervalNanos > 0 && aFrameTimeNanos - mLastFrameNanos < mMinFrameIntervalNanos) {
+                // Too early for max FPS setting, request stays pending
+                post();
+                return;
+            }
+            mLastFrameNanos = aFrameTimeNanos;
+            runFrame(true);
+        }
+    }
+
+    /**
+     * Must be called on the UI thread
+     */
+    FrameScheduler(BlueDisplay aContext, Handler aHandler) {
+        mBlueDisplayContext = aContext;
+        mHandler = aHandler;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mVsyncCallback = new VsyncCallback();
+        } else {
+            mVsyncCallback = null;
+        }
+    }
+
+    /**
+     * @param aMaxFramesPerSecond 0 -> no limit, i.e. every vsync
+     */
+    void setMaxFramesPerSecond(int aMaxFramesPerSecond) {
+        if (aMaxFramesPerSecond <= 0) {
+            mMinFrameIntervalNanos = 0;
+        } else {
+            // Subtract 2 ms, otherwise 30 FPS on a 60 Hz display can miss every second vsync by some microseconds
+            mMinFrameIntervalNanos = (1000000000L / aMaxFramesPerSecond) - 2000000;
+        }
+    }
+
+    /**
+     * Can be called by any thread, e.g. the reader thread of a transport after new data was put into the receive buffer.
+     * Multiple calls before the frame is run result in only one frame.
+     */
+    void requestFrame() {
+        if (mFrameRequested.compareAndSet(false, true)) {
+            if (mUseHandler || mVsyncCallback == null) {
+                mHandler.sendEmptyMessage(BlueDisplay.MESSAGE_UPDATE_VIEW);
+            } else {
+                mVsyncCallback.post();
+            }
+        }
+    }
+
+    /**
+     * Called by MESSAGE_UPDATE_VIEW
+     */
+    void handleUpdateViewMessage() {
+        if (!mUseHandler && mMinFrameIntervalNanos > 0) {
+            // Below API 16, emulate max FPS setting
+            long tDelayNanos = mLastFrameNanos + mMinFrameIntervalNanos - System.nanoTime();
+            if (tDelayNanos > 0) {
+                mHandler.sendEmptyMessageDelayed(BlueDisplay.MESSAGE_UPDATE_VIEW, tDelayNanos / 1000000 + 1);
+                return;
+            }
+        }
+        mLastFrameNanos = System.nanoTime();
+        runFrame(!mUseHandler);
+    }
+
+    /**
+     * Interprets the commands in the buffer within the parse budget and invalidates the view if something was drawn.
+     * Runs on the UI thread, since interpreting may show toasts, dialogs or change the activity.
+     *
+     * @param aPresent false if the activity is stopped. Then the bitmap, buttons and sliders are updated, but not shown.
+     */
+    private void runFrame(boolean aPresent) {
+        // Clear before interpreting, so that data received while interpreting requests the next frame
+        mFrameRequested.set(false);
+        SerialService tSerialService = mBlueDisplayContext.mSerialService;
+        if (tSerialService == null) {
+            return;
+        }
+        long tStart = System.nanoTime();
+        int tResult = tSerialService.searchCommand(mBlueDisplayContext.mRPCView, PARSE_BUDGET_NANOS);
+        mStatisticNumberOfFrames++;
+        if (tResult != SerialService.RPCVIEW_DO_NOTHING && tResult != SerialService.RPCVIEW_DO_WAIT && aPresent) {
+            // The bitmap is shown in this frame, since the traversal is after the vsync callbacks
+            mBlueDisplayContext.mRPCView.invalidateDirtyRegion();
+        }
+        if (tResult == SerialService.RPCVIEW_DO_DRAW_AND_CALL_AGAIN) {
+            // More data in buffer after budget exceeded or a chart / drawDisplay command, continue with next frame
+            mStatisticNumberOfContinuedFrames++;
+            requestFrame();
+        }
+        /*
+         * For RPCVIEW_DO_WAIT the missing bytes of the command will request the next frame when they are received.
+         * The parser resets itself, if they are not received within 2 seconds.
+         */
+        if (MyLog.isDEVELOPMENT_TESTING()) {
+            Log.v(LOG_TAG, "Frame result=" + tResult + " took " + (System.nanoTime() - tStart) / 1000
+                    + " \u00B5s. Bytes in buffer=" + tSerialService.getBufferBytesAvailable());
+        }
+    }
+
+    /**
+     * Called by onStop(). Without a visible window, vsync may not be delivered, so use the handler.
+     */
+    void onStop() {
+        mUseHandler = true;
+        if (mVsyncCallback != null) {
+            mVsyncCallback.remove();
+        }
+        rerequestFrame();
+    }
+
+    /**
+     * Called by onStart()
+     */
+    void onStart() {
+        mUseHandler = false;
+        rerequestFrame();
+    }
+
+    private void rerequestFrame() {
+        mFrameRequested.set(false);
+        if (mBlueDisplayContext.mSerialService != null && mBlueDisplayContext.mSerialService.getBufferBytesAvailable() > 0) {
+            requestFrame();
+        }
+    }
+
+    void resetStatistics() {
+        mStatisticNumberOfFrames = 0;
+        mStatisticNumberOfContinuedFrames = 0;
+    }
+
+    String getStatisticsString() {
+        return "Frames=" + mStatisticNumberOfFrames + " continued=" + mStatisticNumberOfContinuedFrames;
+    }
+}
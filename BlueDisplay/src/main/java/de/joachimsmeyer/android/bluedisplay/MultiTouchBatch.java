@@ -0,0 +1,225 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * Collects the positions of all touch pointers for the opt-in EVENT_TOUCH_MULTI_MOVE, which replaces the single pointer move events.
+ * Android delivers at most one ACTION_MOVE per frame, containing the positions of all pointers and the samples since the
+ * last frame as historical values. So without rate limit, one event per frame is sent.
+ * With rate limit, the samples are collected until the interval is over. In MODE_ALL_POINTERS only the newest sample is kept.
+ * Before any down or up action, the collected samples are sent, so the client gets the last positions before the up event.
+ *
+ * Pointers which started on a button or slider are not contained. The pointer numbers are the same as for down and up events.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+
+import de.joachimsmeyer.android.bluedisplay.protocol.EventEncoder;
+
+class MultiTouchBatch {
+
+    public static final String LOG_TAG = "MultiTouchBatch";
+
+    static final int MODE_OFF = 0; // single pointer move events
+    static final int MODE_ALL_POINTERS = 1; // newest position of all pointers
+    static final int MODE_WITH_HISTORY = 2; // all samples of all pointers
+
+    private final RPCView mRPCView;
+    private final int mMaxPointer;
+    int mMode;
+
+    private final int[] mPointerIndexes;
+    private int mNumberOfPointers;
+    private int mMaxNumberOfSamples; // depends on number of pointers
+    private int mNumberOfSamples;
+    private final long[] mSampleMillis;
+    private final int[] mSampleAgesMillis;
+    private final int[] mXValues; // index is sample * mNumberOfPointers + pointer
+    private final int[] mYValues;
+
+    private long mLastEventMillis;
+    private boolean mSendIsPending;
+    private final Runnable mSendPendingSamples = new Runnable() {
+        @Override
+        public void run() {
+            mSendIsPending = false;
+            sendSamples();
+        }
+    };
+
+    MultiTouchBatch(RPCView aRPCView, int aMaxPointer) {
+        mRPCView = aRPCView;
+        mMaxPointer = aMaxPointer;
+        mPointerIndexes = new int[aMaxPointer];
+        // The maximum number of samples is reached with one pointer
+        int tMaxSamples = EventEncoder.getMaxMultiTouchSamples(1);
+        mSampleMillis = new long[tMaxSamples];
+        mSampleAgesMillis = new int[tMaxSamples];
+        mXValues = new int[tMaxSamples * aMaxPointer];
+        mYValues = new int[tMaxSamples * aMaxPointer];
+    }
+
+    void setMode(int aMode) {
+        sendSamples();
+        mMode = aMode;
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Set multi touch mode=" + aMode);
+        }
+    }
+
+    /**
+     * Called for ACTION_MOVE. Adds the samples of the event and sends them if aMinIntervalMillis is over.
+     */
+    void addSamples(MotionEvent aEvent, int aMinIntervalMillis) {
+        if (!selectPointers(aEvent)) {
+            return;
+        }
+        if (mMode == MODE_WITH_HISTORY) {
+            int tHistorySize = aEvent.getHistorySize();
+            for (int h = 0; h < tHistorySize; h++) {
+                addSample(aEvent, h);
+            }
+            addSample(aEvent, -1);
+        } else {
+            // suppress sending of zero moves
+            boolean tIsMoved = false;
+            for (int p = 0; p < mNumberOfPointers; p++) {
+                int tPointerIndex = mPointerIndexes[p];
+                if (mRPCView.mLastSentMoveXValue[tPointerIndex] != getScaledX(aEvent, tPointerIndex, -1)
+                        || mRPCView.mLastSentMoveYValue[tPointerIndex] != getScaledY(aEvent, tPointerIndex, -1)) {
+                    tIsMoved = true;
+                    break;
+                }
+            }
+            if (!tIsMoved) {
+                return;
+            }
+            mNumberOfSamples = 0; // keep only the newest sample
+            addSample(aEvent, -1);
+        }
+
+        long tDelayMillis = mLastEventMillis + aMinIntervalMillis - SystemClock.uptimeMillis();
+        if (aMinIntervalMillis <= 0 || tDelayMillis <= 0) {
+            sendSamples();
+        } else if (!mSendIsPending) {
+            mSendIsPending = true;
+            mRPCView.postDelayed(mSendPendingSamples, tDelayMillis);
+        }
+    }
+
+    /*
+     * Sets the pointers to report for this event. If they differ from the pointers of the collected samples, the samples are sent
+     * before.
+     * @return false if there is no pointer to report
+     */
+    private boolean selectPointers(MotionEvent aEvent) {
+        int tNumberOfPointers = 0;
+        boolean tIsChanged = false;
+        for (int i = 0; i < aEvent.getPointerCount() && i < mMaxPointer; i++) {
+            if (mRPCView.mTouchStartsOnButtonNumber[i] < 0 && mRPCView.mTouchStartsOnSliderNumber[i] < 0) {
+                if (tNumberOfPointers >= mNumberOfPointers || mPointerIndexes[tNumberOfPointers] != i) {
+                    tIsChanged = true;
+                }
+                tNumberOfPointers++;
+            }
+        }
+        if (tIsChanged || tNumberOfPointers != mNumberOfPointers) {
+            sendSamples();
+            mNumberOfPointers = 0;
+            for (int i = 0; i < aEvent.getPointerCount() && i < mMaxPointer; i++) {
+                if (mRPCView.mTouchStartsOnButtonNumber[i] < 0 && mRPCView.mTouchStartsOnSliderNumber[i] < 0) {
+                    mPointerIndexes[mNumberOfPointers++] = i;
+                }
+            }
+            if (mNumberOfPointers > 0) {
+                mMaxNumberOfSamples = EventEncoder.getMaxMultiTouchSamples(mNumberOfPointers);
+            }
+        }
+        return mNumberOfPointers > 0;
+    }
+
+    /*
+     * @param aHistoryIndex -1 for the current position
+     */
+    private void addSample(MotionEvent aEvent, int aHistoryIndex) {
+        if (mNumberOfSamples >= mMaxNumberOfSamples) {
+            sendSamples();
+        }
+        mSampleMillis[mNumberOfSamples] = (aHistoryIndex < 0) ? aEvent.getEventTime() : aEvent.getHistoricalEventTime(aHistoryIndex);
+        int tValueIndex = mNumberOfSamples * mNumberOfPointers;
+        for (int p = 0; p < mNumberOfPointers; p++) {
+            int tPointerIndex = mPointerIndexes[p];
+            int tX = getScaledX(aEvent, tPointerIndex, aHistoryIndex);
+            int tY = getScaledY(aEvent, tPointerIndex, aHistoryIndex);
+            mXValues[tValueIndex] = tX;
+            mYValues[tValueIndex] = tY;
+            tValueIndex++;
+            mRPCView.mLastSentMoveXValue[tPointerIndex] = tX;
+            mRPCView.mLastSentMoveYValue[tPointerIndex] = tY;
+        }
+        mNumberOfSamples++;
+    }
+
+    private int getScaledX(MotionEvent aEvent, int aPointerIndex, int aHistoryIndex) {
+        float tX = (aHistoryIndex < 0) ? aEvent.getX(aPointerIndex) : aEvent.getHistoricalX(aPointerIndex, aHistoryIndex);
+        return (int) ((Math.max(tX - mRPCView.mCurrentLeftInset + mRPCView.mPanOffsetX, 0) / mRPCView.mScaleFactor) + 0.5);
+    }
+
+    private int getScaledY(MotionEvent aEvent, int aPointerIndex, int aHistoryIndex) {
+        float tY = (aHistoryIndex < 0) ? aEvent.getY(aPointerIndex) : aEvent.getHistoricalY(aPointerIndex, aHistoryIndex);
+        return (int) ((Math.max(tY - mRPCView.mCurrentTopInset + mRPCView.mPanOffsetY, 0) / mRPCView.mScaleFactor) + 0.5);
+    }
+
+    /**
+     * Sends the collected samples as one event. Called before down and up actions too.
+     */
+    void sendSamples() {
+        if (mSendIsPending) {
+            mRPCView.removeCallbacks(mSendPendingSamples);
+            mSendIsPending = false;
+        }
+        if (mNumberOfSamples == 0) {
+            return;
+        }
+        long tNewestSampleMillis = mSampleMillis[mNumberOfSamples - 1];
+        for (int s = 0; s < mNumberOfSamples; s++) {
+            mSampleAgesMillis[s] = (int) Math.min(tNewestSampleMillis - mSampleMillis[s], 0xFFFF);
+        }
+        mRPCView.mBlueDisplayContext.mSerialService.writeMultiTouchEvent(tNewestSampleMillis, mNumberOfPointers, mPointerIndexes,
+                mNumberOfSamples, mSampleAgesMillis, mXValues, mYValues);
+        mNumberOfSamples = 0;
+        mLastEventMillis = SystemClock.uptimeMillis();
+    }
+
+    void reset() {
+        if (mSendIsPending) {
+            mRPCView.removeCallbacks(mSendPendingSamples);
+            mSendIsPending = false;
+        }
+        mNumberOfSamples = 0;
+        mNumberOfPointers = 0;
+        mMode = MODE_OFF;
+    }
+}
@@ -31,6 +31,8 @@ package de.joachimsmeyer.android.bluedisplay;
 
 import android.util.Log;
 
+import de.joachimsmeyer.android.bluedisplay.protocol.ProtocolLog;
+
 public class MyLog {
 
     static final int SIZE_OF_LOG_HISTORY = 1500;
@@ -48,8 +50,37 @@ public class MyLog {
 //        return true;
     }
 
+    /*
+     * Route the output of the protocol module to MyLog
+     */
+    static {
+        ProtocolLog.setLogger(new ProtocolLog.Logger() {
+            @Override
+            public void log(int aLevel, String aTag, String aMessage) {
+                switch (aLevel) {
+                    case Log.VERBOSE:
+                        v(aTag, aMessage);
+                        break;
+                    case Log.DEBUG:
+                        d(aTag, aMessage);
+                        break;
+                    case Log.INFO:
+                        i(aTag, aMessage);
+                        break;
+                    case Log.WARN:
+                        w(aTag, aMessage);
+                        break;
+                    default:
+                        e(aTag, aMessage);
+                        break;
+                }
+            }
+        }, mLoglevel);
+    }
+
     public static void setLoglevel(int aLoglevel) {
         MyLog.mLoglevel = aLoglevel;
+        ProtocolLog.setLoglevel(aLoglevel);
     }
 
     public static boolean isINFO() {
@@ -41,7 +41,9 @@ import android.graphics.Insets;
 import android.graphics.Paint;
 import android.graphics.Paint.Cap;
 import android.graphics.Path;
+import android.graphics.Picture;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.hardware.Sensor;
@@ -67,9 +69,22 @@ import android.view.WindowInsets;
 import android.view.WindowManager;
 import android.widget.Toast;
 
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
+import de.joachimsmeyer.android.bluedisplay.protocol.CommandJournal;
+import de.joachimsmeyer.android.bluedisplay.protocol.CommandParser;
+import de.joachimsmeyer.android.bluedisplay.protocol.CommandRenderer;
+import de.joachimsmeyer.android.bluedisplay.protocol.DisplayListStore;
+import de.joachimsmeyer.android.bluedisplay.protocol.ClearColorDrawTarget;
+import de.joachimsmeyer.android.bluedisplay.protocol.DrawTarget;
+import de.joachimsmeyer.android.bluedisplay.protocol.OpcodeRegistry;
+import de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants;
+import de.joachimsmeyer.android.bluedisplay.protocol.ProtocolHelper;
+import de.joachimsmeyer.android.bluedisplay.protocol.TestPage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
@@ -87,7 +102,7 @@ class LineInfo {
 }
 
 @SuppressLint("HandlerLeak")
-public class RPCView extends View {
+public class RPCView extends View implements CommandParser.CommandListener {
 
     public static final String LOG_TAG = "RPCView";
 
@@ -102,6 +117,9 @@ public class RPCView extends View {
     protected int mCurrentViewPixelWidth; // Display Width
     public int mCurrentTopInset = 0; // must be taken into account for drawing and touch origin
     public int mCurrentLeftInset = 0; // must be taken into account for drawing and touch origin
+    // Origin of the visible part of a canvas, which is bigger than the view. Moved by the two finger gesture.
+    int mPanOffsetX;
+    int mPanOffsetY;
     boolean mSendPendingConnectMessage = false;
     ToneGenerator mToneGeneratorForAbsoluteVolumes;
     ToneGenerator mToneGenerator;
@@ -111,60 +129,27 @@ public class RPCView extends View {
     TextToSpeech mTextToSpeech;
     boolean mTextToSpeechIsInitialized;
 
-    private static final int MAX_CHART_LINE_WIDTH = 3200;
-    private static final int NUMBER_OF_LINES_SUPPORTED = 16; // we use the upper 4 bit to encode the line number - 16 lines possible
-
-    // mCanvas.drawLines() requires 4 int values for one line (start x/y and end x/y)
-    public static float[][] mChartScreenBuffer = new float[NUMBER_OF_LINES_SUPPORTED][MAX_CHART_LINE_WIDTH * 4];
-    public static int[] mChartScreenBufferValidDataLength = new int[NUMBER_OF_LINES_SUPPORTED];
-    public static boolean[] mChartScreenBufferContainsOldData = new boolean[NUMBER_OF_LINES_SUPPORTED];
-    public static Bitmap mBitmap;
+    final CanvasLayers mLayers; // Holds the tiles of the canvas layers
     private final Paint mBitmapPaint; // only used for onDraw() to draw bitmap
-    private final Paint mInfoPaint; // for internal info text like touch coordinates
-
-    static final boolean USE_ROUNDING_FOR_LINES = true;
 
-    static final float TEXT_ASCEND_FACTOR = 0.76f;
-    static final float TEXT_DESCEND_FACTOR = 0.24f;
-    static final float TEXT_WIDTH_FACTOR = 0.6f;
+    static final float TEXT_ASCEND_FACTOR = CommandRenderer.TEXT_ASCEND_FACTOR;
+    static final float TEXT_DESCEND_FACTOR = CommandRenderer.TEXT_DESCEND_FACTOR;
+    static final float TEXT_WIDTH_FACTOR = CommandRenderer.TEXT_WIDTH_FACTOR;
 
     private static final int TEXT_SIZE_INFO_PAINT = 22;
     private static final int TEXT_WIDTH_INFO_PAINT = (int) ((TEXT_SIZE_INFO_PAINT * TEXT_WIDTH_FACTOR) + 0.5);
 
-    private final Paint mTextPaint; // To avoid garbage collection. For all scaled text
-    private final Paint mTextBackgroundStroke1Fill; // for all scaled text background
-    private final Paint mPaintStroke1Fill; // for circle, rectangles and path
-    private final Paint mPaintStrokeScaleFactorColorSettable; // Fixed stroke scaleFactor for pixel, line and chart
-    private final Paint mPaintStrokeAndColorSettable; // for all lines with thickness. Stroke and color must be set, before used
-    private final Paint mPaintStrokeAndColorSettableAntiAliased; // Only for lines with thickness. Stroke and color must be set, before used
     private static final int NUMBER_OF_SUPPORTED_LINES = 16;
     // For future use
     private static final LineInfo[] mDrawLineInfoArray = new LineInfo[NUMBER_OF_SUPPORTED_LINES];
 
-
-    /*
-     * All values are input values (for scale factor = 1.0)
-     */
-    private int mTextPrintTextStartPosX; // Position after \n or \r for printf implementation
-    private int mTextPrintTextCurrentPosX; // for printf implementation
-    private int mTextPrintTextCurrentPosY; // for printf implementation
-    private int mTextPrintTextSize = 12; // Unscaled value, for printf implementation
-    private int mTextExpandedPrintColor = Color.BLACK; // for printf implementation
-
-    private final Paint mPrintTextStroke1Fill; // Storage of color and scaled size for printf implementation
-    private int mTextExpandedPrintBackgroundColor = Color.BLACK; // for printf implementation
-    private boolean mTextPrintDoClearScreenOnWrap = true; // for printf implementation
-
-    private int mLastDrawStringTextSize;
-    private int mLastDrawStringColor;
-    private int mLastDrawStringBackgroundColor;
-
-    private Canvas mCanvas;
-    private final Path mPath = new Path();
+    private final CanvasDrawTarget mButtonCacheDrawTarget = new CanvasDrawTarget(null); // Holds the canvas of the bitmap to render a button to
+    final CommandJournal mButtonJournal = new CommandJournal(); // Journal entries of the last button rendered by renderButtonBitmap()
+    final CommandRenderer mCommandRenderer; // Renders all display (draw) commands to the draw target of the current layer
 
     private final Handler mHandler;
 
-    public static char[] sCharsArray = new char[1024];
+    volatile ClientSession mSession = new ClientSession(); // Replaced at each connect by resetAll()
 
     /*
      * Scaling
@@ -172,6 +157,18 @@ public class RPCView extends View {
     protected float mScaleFactor = 1;
     protected float mMaxScaleFactor;
     float mTouchScaleFactor = 1;
+    /*
+     * The scale factor of a pinch gesture is applied after the fingers rest for SCALE_DEBOUNCE_MILLIS or at the end of the gesture.
+     * Until then, the current canvas is drawn scaled as a preview, so no canvas is allocated for the intermediate steps.
+     */
+    private static final int SCALE_DEBOUNCE_MILLIS = 300;
+    private float mPendingScaleFactor; // 0 if no scale factor is pending
+    private final Runnable mApplyPendingScaleFactor = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingScaleFactor();
+        }
+    };
 
     long mLastDebugToastMillis = 0;
     static final long DEBUG_TOAST_REFRESH_MILLIS = 500;
@@ -184,6 +181,7 @@ public class RPCView extends View {
     protected boolean mTouchMoveEnable; // can be used to suppress only the move events if mTouchBasicEnable is true
     private boolean mIsLongTouchEnabled;
     boolean mUseUpEventForButtons;
+    boolean mIsStatisticsShown; // set by the first display of the statistics, enables the time measurement per command
 
     long mLongTouchDownTimeoutMillis = 800;
 
@@ -193,6 +191,12 @@ public class RPCView extends View {
     protected boolean mShowTouchCoordinates = false;
     protected int mShowTouchCoordinatesLastStringLength = 19;
 
+    /*
+     * Region of the view, which was changed since the last invalidateDirtyRegion(). In view coordinates.
+     */
+    private boolean mIsWholeViewDirty;
+    private final Rect mDirtyRect = new Rect();
+
     public static boolean mDeviceListActivityLaunched = false; // to prevent multiple launches of DeviceListActivity()
     private final ScaleGestureDetector mScaleDetector;
 
@@ -218,10 +222,40 @@ public class RPCView extends View {
     // moves
     boolean[] mSkipProcessingUntilTouchUpForButton; // true if touch down already sends an event (eg. a button down event)
 
-    // To avoid multiple sending of effectively zero moving
+    // To avoid multiple sending of effectively zero moving. Contains the value of a pending move event too.
     int[] mLastSentMoveXValue;
     int[] mLastSentMoveYValue;
 
+    /*
+     * Rate limit for move events, set by client. A move, which is not sent because of the limit,
+     * is sent at the end of the interval or before the up event at the latest.
+     */
+    private int mMinTouchMoveIntervalMillis; // 0 -> every move is sent
+    private final long[] mLastMoveEventMillis = new long[MAX_POINTER];
+    private final boolean[] mMoveEventIsPending = new boolean[MAX_POINTER];
+    /*
+     * Handlers for all received commands. Further commands can be added by registering a handler.
+     */
+    final OpcodeRegistry mOpcodeRegistry = new OpcodeRegistry(this::handleUnknownCommand);
+    private final OpcodeRegistry.OpcodeHandler mSliderCommandHandler = (aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength) ->
+            TouchSlider.interpretCommand(this, aCommand, aParameters, aParamsLength, aDataBytes, aDataLength);
+
+    final SpriteStore mSpriteStore = new SpriteStore();
+    final DisplayListStore mDisplayListStore = new DisplayListStore();
+
+    // Opt-in batched move events of all pointers
+    final MultiTouchBatch mMultiTouchBatch = new MultiTouchBatch(this, MAX_POINTER);
+    private final Runnable mSendPendingMoveEvents = new Runnable() {
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_POINTER; i++) {
+                if (mMoveEventIsPending[i]) {
+                    sendMoveEvent(i);
+                }
+            }
+        }
+    };
+
     /*
      * region description of tags
      */
@@ -288,6 +322,11 @@ public class RPCView extends View {
     private final static int SUBFUNCTION_GLOBAL_SET_LONG_TOUCH_DOWN_TIMEOUT = 0x08;
     private final static int SUBFUNCTION_GLOBAL_SET_SCREEN_ORIENTATION_LOCK = 0x0C;
     private final static int SUBFUNCTION_GLOBAL_SET_SCREEN_BRIGHTNESS = 0x0D;
+    private final static int SUBFUNCTION_GLOBAL_SET_MAX_TOUCH_MOVE_RATE = 0x0E; // move events per second, 0 -> no limit
+    private final static int SUBFUNCTION_GLOBAL_SET_MULTI_TOUCH_MODE = 0x0F; // see MultiTouchBatch.MODE_*
+    private final static int SUBFUNCTION_GLOBAL_REQUEST_BAUD_RATE = 0x10; // see BaudRateNegotiator
+    private final static int SUBFUNCTION_GLOBAL_BAUD_RATE_PROBE = 0x11;
+    private final static int SUBFUNCTION_GLOBAL_SET_CRC_FRAMING = 0x12; // switched by CommandParser
 
     // 2 codes which are different from Android enumerations
     private final static int FLAG_SCREEN_ORIENTATION_LOCK_UNLOCK = 0x00;
@@ -306,6 +345,7 @@ public class RPCView extends View {
     // Sub functions for FUNCTION_GET_INFO
     private final static int SUBFUNCTION_GET_INFO_LOCAL_TIME = 0x00;
     private final static int SUBFUNCTION_GET_INFO_GMT_TIME = 0x01;
+    private final static int SUBFUNCTION_GET_INFO_CAPABILITIES = 0x02; // Protocol version and supported extensions
 
     private final static int FUNCTION_PLAY_TONE = 0x0F;
     private final static int FUNCTION_SPEAK_SET_LOCALE = 0x80;
@@ -328,6 +368,29 @@ public class RPCView extends View {
     // 6 parameter
     public final static int FUNCTION_DRAW_CHAR = 0x16;
 
+    // Sprites, see SpriteStore
+    private final static int FUNCTION_SPRITE_CAPTURE = 0x1A; // ID, x, y, width, height
+    private final static int FUNCTION_SPRITE_DRAW = 0x1B; // ID, x, y
+    private final static int FUNCTION_SPRITE_SETTINGS = 0x1C;
+    private final static int SUBFUNCTION_SPRITE_SET_MAX_KBYTES = 0x00;
+    private final static int SUBFUNCTION_SPRITE_REMOVE = 0x01; // ID
+    private final static int SUBFUNCTION_SPRITE_REMOVE_ALL = 0x02;
+
+    // Display lists, see DisplayListStore
+    private final static int FUNCTION_DISPLAY_LIST_SETTINGS = 0x1D;
+    private final static int SUBFUNCTION_DISPLAY_LIST_START_RECORDING = 0x00; // ID, flags
+    private final static int SUBFUNCTION_DISPLAY_LIST_END_RECORDING = 0x01;
+    private final static int SUBFUNCTION_DISPLAY_LIST_REMOVE = 0x02; // ID
+    private final static int SUBFUNCTION_DISPLAY_LIST_REMOVE_ALL = 0x03;
+    private final static int DISPLAY_LIST_FLAG_EXECUTE_WHILE_RECORDING = 0x01;
+    private final static int FUNCTION_DISPLAY_LIST_REPLAY = 0x1E; // ID, x offset, y offset, old color, new color
+
+    // Canvas layers, see CanvasLayers
+    private final static int FUNCTION_LAYER_SETTINGS = 0x1F;
+    private final static int SUBFUNCTION_LAYER_SELECT = 0x00; // layer
+    private final static int SUBFUNCTION_LAYER_SET_CLEAR_COLOR = 0x01; // layer, color
+    private final static int SUBFUNCTION_LAYER_CLEAR = 0x02; // layer
+
     // with 5 parameter
     private final static int FUNCTION_DRAW_LINE_REL = 0x20;
     private final static int FUNCTION_DRAW_LINE = 0x21;
@@ -363,17 +426,16 @@ public class RPCView extends View {
 
     private final static int FUNCTION_DRAW_PATH = 0x68; // Not yet implemented in Arduino library
     private final static int FUNCTION_FILL_PATH = 0x69; // Not yet implemented in Arduino library
+    private final static int FUNCTION_DRAW_PRIMITIVES = 0x6E; // N pixels, lines or rects with one color
+    private final static int FUNCTION_IMAGE_START = 0x18; // Position, size and format of a streamed image
+    private final static int FUNCTION_IMAGE_PALETTE = 0x66;
+    private final static int FUNCTION_IMAGE_DATA = 0x67; // Pixel rows, may be split between commands
     final static int FUNCTION_DRAW_CHART = 0x6A;
     final static int FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING = 0x6B;
 
     final static int CHART_MODE_PIXEL = 0;
     final static int CHART_MODE_LINE = 1;
     final static int CHART_MODE_AREA = 2; // not yet supported
-    final static int CHART_X_AXIS_SCALE_FACTOR_1 = 0; // identity is code with 0
-    final static int CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5 = 1; // expansion by 1.5
-    final static int CHART_X_AXIS_SCALE_FACTOR_EXPANSION_2 = 2; // expansion by factor 2
-    final static int CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_1_5 = -1; // compression by 1.5
-    final static int CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_2 = -2; // compression by factor 2
     final static int FUNCTION_DRAW_SCALED_CHART = 0x6C; // For chart implementation
     final static int FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING = 0x6D;
 
@@ -389,10 +451,14 @@ public class RPCView extends View {
         sActionMappings.put(MotionEvent.ACTION_UP, "up");
         sActionMappings.put(MotionEvent.ACTION_MOVE, "move");
         sActionMappings.put(MotionEvent.ACTION_CANCEL, "cancel");
+        sActionMappings.put(SerialService.EVENT_TOUCH_MULTI_MOVE, "multi move");
         sActionMappings.put(SerialService.EVENT_CONNECTION_BUILD_UP, "connection build up");
         sActionMappings.put(SerialService.EVENT_REDRAW, "redraw");
         sActionMappings.put(SerialService.EVENT_REORIENTATION, "reorientation");
         sActionMappings.put(SerialService.EVENT_DISCONNECT, "disconnect");
+        sActionMappings.put(SerialService.EVENT_SPRITE_MISSING, "sprite missing");
+        sActionMappings.put(SerialService.EVENT_BAUD_RATE, "baud rate");
+        sActionMappings.put(SerialService.EVENT_DISPLAY_LIST_DISCARDED, "display list discarded");
 
         sActionMappings.put(SerialService.EVENT_LONG_TOUCH_DOWN_CALLBACK, "long down");
         sActionMappings.put(SerialService.EVENT_FIRST_CALLBACK, "first");
@@ -421,66 +487,6 @@ public class RPCView extends View {
         }
     }
 
-    /*
-     * Not used yet
-     */
-    protected int reduceIntWithXScaleFactor(int aValue, int aXScaleFactor) {
-        if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_1) {
-            return aValue;
-        }
-        int tRetValue;
-        if (aXScaleFactor > CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
-            tRetValue = aValue / aXScaleFactor;
-        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
-            // value * 2/3
-            tRetValue = (aValue * 2) / 3;
-        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_1_5) {
-            // value * 3/2
-            tRetValue = (aValue * 3) / 2;
-        } else {
-            tRetValue = aValue * -aXScaleFactor;
-        }
-        return tRetValue;
-    }
-
-    /**
-     * Enlarge value if scale factor is compression
-     * Reduce value, if scale factor is expansion
-     * <p>
-     * aXScaleFactor > 1 : expansion by factor aXScaleFactor. I.e. value -> (value / factor)
-     * aXScaleFactor == 1 : expansion by 1.5
-     * aXScaleFactor == 0 : identity
-     * aXScaleFactor == -1 : compression by 1.5
-     * aXScaleFactor < -1 : compression by factor -aXScaleFactor -> (value * factor)
-     * multiplies value with factor if aXScaleFactor is < 0 (compression) or divide if aXScaleFactor is > 0 (expansion)
-     */
-    protected float reduceFloatWithXScaleFactor(float aValue, int aXScaleFactor) {
-        if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_1) {
-            return aValue;
-        }
-        float tRetValue;
-        if (aXScaleFactor > CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
-            tRetValue = aValue / aXScaleFactor;
-        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
-            // value * 2/3
-            tRetValue = (aValue * 2) / 3;
-        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_1_5) {
-            // value * 3/2
-            tRetValue = (aValue * 3) / 2;
-        } else {
-            tRetValue = aValue * -aXScaleFactor;
-        }
-        return tRetValue;
-    }
-
-    /**
-     * Enlarge value if scale factor is expansion
-     * Reduce value, if scale factor is compression
-     */
-    protected float enlargeFloatWithXScaleFactor(float aValue, int aXScaleFactor) {
-        return reduceFloatWithXScaleFactor(aValue, -aXScaleFactor);
-    }
-
     @SuppressLint("NewApi")
     public RPCView(Context aContext, Handler aHandler) {
         super(aContext);
@@ -573,54 +579,6 @@ public class RPCView extends View {
             });
         }
 
-
-        mTextPaint = new Paint();
-        mTextPaint.setTypeface(Typeface.MONOSPACE);
-        mTextPaint.setStyle(Paint.Style.FILL);
-
-        mPrintTextStroke1Fill = new Paint();
-        mPrintTextStroke1Fill.setStrokeWidth(1);
-        mPrintTextStroke1Fill.setStyle(Paint.Style.FILL);
-        mPrintTextStroke1Fill.setTypeface(Typeface.MONOSPACE);
-        // default values
-        mPrintTextStroke1Fill.setTextSize(12);
-        mPrintTextStroke1Fill.setColor(Color.GRAY);
-
-        // For output of touch coordinates
-        mInfoPaint = new Paint();
-        mInfoPaint.setTypeface(Typeface.MONOSPACE);
-        mInfoPaint.setStyle(Paint.Style.FILL);
-        mInfoPaint.setTextSize(TEXT_SIZE_INFO_PAINT);
-        mInfoPaint.setColor(Color.BLACK);
-
-        mTextBackgroundStroke1Fill = new Paint();
-        mTextBackgroundStroke1Fill.setStrokeWidth(1);
-        mTextBackgroundStroke1Fill.setStyle(Paint.Style.FILL);
-
-        // for fillRect, the outline of the form will be filled
-        mPaintStroke1Fill = new Paint();
-        mPaintStroke1Fill.setStrokeWidth(1);
-        mPaintStroke1Fill.setStyle(Paint.Style.FILL);
-//        mGraphPaintStroke1Fill.setAntiAlias(true); // with AntiAlias, we get a residual outline at clearing the rectangle
-
-        // For pixel, line and chart. The outline of a form will not be filled
-        mPaintStrokeScaleFactorColorSettable = new Paint();
-        mPaintStrokeScaleFactorColorSettable.setStyle(Paint.Style.STROKE);
-        /*
-         * without AntiAlias lines have different thickness depending at their position
-         * with AntiAlias, we get a residual outline at clearing the line
-         */
-        mPaintStrokeScaleFactorColorSettable.setAntiAlias(true);
-        // mGraphPaintStrokeFixed.setStrokeCap(Cap.BUTT);
-
-        mPaintStrokeAndColorSettable = new Paint();
-        mPaintStrokeAndColorSettable.setStyle(Paint.Style.STROKE);
-
-        mPaintStrokeAndColorSettableAntiAliased = new Paint();
-        mPaintStrokeAndColorSettableAntiAliased.setStyle(Paint.Style.STROKE);
-        mPaintStrokeAndColorSettableAntiAliased.setAntiAlias(true);
-
-
         /*
         For future use
          */
@@ -664,14 +622,15 @@ public class RPCView extends View {
         mRequestedCanvasWidth = mCurrentCanvasPixelWidth;
         mRequestedCanvasHeight = mCurrentCanvasPixelHeight;
 
-        mBitmap = Bitmap.createBitmap(mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight, Bitmap.Config.ARGB_8888);
-        // mBitmap.setHasAlpha(false);
+        mLayers = new CanvasLayers(mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight, mButtonCacheDrawTarget);
 
         mBitmapPaint = new Paint();
 
-        mCanvas = new Canvas(mBitmap);
-        mCanvas.drawColor(Color.WHITE); // white background
-        initCharMappingArray();
+        mLayers.getCurrentDrawTarget().drawColor(Color.WHITE); // white background
+        mCommandRenderer = new CommandRenderer(mLayers.getCurrentDrawTarget());
+        updateRendererGeometry();
+        registerOpcodeHandlers();
+        updateOpcodeProfiling();
 
         /*
          * initialize touch event flags
@@ -721,6 +680,7 @@ public class RPCView extends View {
 
 
         setMaxScaleFactor();
+        panBy(0, 0); // the visible part may have changed
 
         // resize canvas
         float tScaleFactor = mScaleFactor;
@@ -746,8 +706,58 @@ public class RPCView extends View {
         setScaleFactor(tScaleFactor, false);
     }
 
+    /*
+     * Dirty region tracking
+     */
+    void setWholeViewDirty() {
+        mIsWholeViewDirty = true;
+    }
+
+    /**
+     * Adds a region, which was drawn without marking the whole view as dirty.
+     * Parameters are in canvas coordinates as sent by the client.
+     */
+    void addDirtyRegion(float aXStart, float aYStart, float aWidth, float aHeight) {
+        // Add one pixel for rounding and antialiasing
+        int tLeft = (int) (aXStart * mScaleFactor) + mCurrentLeftInset - mPanOffsetX - 1;
+        int tTop = (int) (aYStart * mScaleFactor) + mCurrentTopInset - mPanOffsetY - 1;
+        int tRight = (int) ((aXStart + aWidth) * mScaleFactor) + mCurrentLeftInset - mPanOffsetX + 2;
+        int tBottom = (int) ((aYStart + aHeight) * mScaleFactor) + mCurrentTopInset - mPanOffsetY + 2;
+        mDirtyRect.union(tLeft, tTop, tRight, tBottom);
+    }
+
+    /**
+     * Moves the visible part of a canvas, which is bigger than the view. The offset is clipped to the canvas size.
+     */
+    void panBy(float aDeltaX, float aDeltaY) {
+        int tPanOffsetX = Math.max(Math.min((int) (mPanOffsetX + aDeltaX), mCurrentCanvasPixelWidth - mCurrentViewPixelWidth), 0);
+        int tPanOffsetY = Math.max(Math.min((int) (mPanOffsetY + aDeltaY), mCurrentCanvasPixelHeight - mCurrentViewPixelHeight), 0);
+        if (tPanOffsetX != mPanOffsetX || tPanOffsetY != mPanOffsetY) {
+            mPanOffsetX = tPanOffsetX;
+            mPanOffsetY = tPanOffsetY;
+            invalidate();
+        }
+    }
+
+    /**
+     * Shows the changes of the interpreted commands. If only regions reported by addDirtyRegion() were changed,
+     * only their bounding box is invalidated.
+     */
+    @SuppressWarnings("deprecation")
+    void invalidateDirtyRegion() {
+        // Render the tiles touched by the commands of this frame
+        mLayers.flush();
+        if (mIsWholeViewDirty) {
+            invalidate();
+        } else if (!mDirtyRect.isEmpty()) {
+            invalidate(mDirtyRect.left, mDirtyRect.top, mDirtyRect.right, mDirtyRect.bottom);
+        }
+        mIsWholeViewDirty = false;
+        mDirtyRect.setEmpty();
+    }
+
     /**
-     * Is called in reaction to invalidate()
+     * Is called in reaction to invalidate(). The commands are interpreted before by the FrameScheduler.
      */
     @Override
 //    public void onDraw(@NonNull Canvas canvas) { // this give the error : public void onDraw(@NonNull Canvas canvas) {
@@ -755,55 +765,23 @@ public class RPCView extends View {
         if (MyLog.isVERBOSE()) {
             Log.v(LOG_TAG, "+ ON Draw +");
         }
-        if (mBlueDisplayContext.mBTSerialSocket != null || mBlueDisplayContext.mUSBSerialSocket != null) {
-            int tResult;
-            int tSumWaitDelay = 0;
-            do {
-                tResult = mBlueDisplayContext.mSerialService.searchCommand(this);
-                canvas.drawBitmap(mBitmap, mCurrentLeftInset, mCurrentTopInset, mBitmapPaint); // must be done at every call
-                if (MyLog.isDEVELOPMENT_TESTING()) {
-                    Log.v(LOG_TAG, "Using TopInset=" + mCurrentTopInset + " LeftInset=" + mCurrentLeftInset);
-                }
-                int tBytesInBuffer = mBlueDisplayContext.mSerialService.getBufferBytesAvailable();
-                if (tResult == SerialService.RPCVIEW_DO_DRAW_AND_CALL_AGAIN) {
-                    // We have more data in buffer, but want to show the bitmap now (between 4 and 20 ms on my Nexus7/6.0.1),
-                    // so trigger next call of OnDraw
-                    invalidate();
-                    if (MyLog.isDEVELOPMENT_TESTING()) {
-                        Log.v(LOG_TAG, "Call invalidate() to redraw again. Bytes in buffer=" + tBytesInBuffer);
-                    }
-                } else {
-                    if (tResult == SerialService.RPCVIEW_DO_WAIT) {
-                        if (MyLog.isDEVELOPMENT_TESTING()) {
-                            Log.v(LOG_TAG, "Wait for 20 ms"); // first wait, to avoid requesting a new trigger every time
-                        }
-                        try {
-                            Thread.sleep(20);
-                            tSumWaitDelay += 20;
-                            if (tBytesInBuffer == mBlueDisplayContext.mSerialService.getBufferBytesAvailable() && tSumWaitDelay > 1000) {
-                                // number of bytes in buffer did not change here, so no data was received to complete the command
-                                MyLog.e(LOG_TAG, "Read delay > 1000 ms for missing bytes for command. Maybe android is busy / rendering a lot? Bytes in buffer=" + mBlueDisplayContext.mSerialService.getBufferBytesAvailable());
-                                tResult = SerialService.RPCVIEW_DO_NOTHING; // Just request new trigger
-                            }
-                        } catch (InterruptedException e) {
-                            // Just do nothing
-                        }
-                    }
-                    // check again, we may have changed tResult
-                    if (tResult != SerialService.RPCVIEW_DO_WAIT) {
-                        /*
-                         * Request new trigger from BT or USB socket, if new data has arrived
-                         */
-                        mBlueDisplayContext.mSerialService.mRequireUpdateViewMessage = true;
-                        if (MyLog.isDEVELOPMENT_TESTING()) {
-                            Log.v(LOG_TAG, "Set mRequireUpdateViewMessage to true. Bytes in buffer=" + mBlueDisplayContext.mSerialService.getBufferBytesAvailable());
-                        }
-                    }
-                }
-            } while (tResult == SerialService.RPCVIEW_DO_WAIT);
+        mLayers.flush(); // for drawings outside of the FrameScheduler, e.g. the test page
+        if (mPendingScaleFactor != 0) {
+            // Preview of a pinch gesture
+            float tPreviewScale = Math.min(mPendingScaleFactor, mMaxScaleFactor) / mScaleFactor;
+            canvas.save();
+            canvas.translate(mCurrentLeftInset, mCurrentTopInset);
+            canvas.scale(tPreviewScale, tPreviewScale);
+            mLayers.draw(canvas, -mPanOffsetX, -mPanOffsetY, mPanOffsetX, mPanOffsetY,
+                    mPanOffsetX + (int) Math.ceil(mCurrentViewPixelWidth / tPreviewScale),
+                    mPanOffsetY + (int) Math.ceil(mCurrentViewPixelHeight / tPreviewScale), mBitmapPaint);
+            canvas.restore();
         } else {
-            // safety net...
-            canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
+            mLayers.draw(canvas, mCurrentLeftInset - mPanOffsetX, mCurrentTopInset - mPanOffsetY, mPanOffsetX, mPanOffsetY,
+                    mPanOffsetX + mCurrentViewPixelWidth, mPanOffsetY + mCurrentViewPixelHeight, mBitmapPaint);
+        }
+        if (MyLog.isDEVELOPMENT_TESTING()) {
+            Log.v(LOG_TAG, "Using TopInset=" + mCurrentTopInset + " LeftInset=" + mCurrentLeftInset);
         }
     }
 
@@ -842,16 +820,16 @@ public class RPCView extends View {
         if (tMaskedAction == MotionEvent.ACTION_MOVE) {
             for (int i = 0; i < tPointerCount && i < MAX_POINTER; i++) {
                 if (mLastTouchPositionX[i] != aEvent.getX(i) || mLastTouchPositionY[i] != aEvent.getY(i)) {
-                    mLastTouchPositionX[i] = Math.max(aEvent.getX(i) - mCurrentLeftInset, 0);
-                    mLastTouchPositionY[i] = Math.max(aEvent.getY(i) - mCurrentTopInset, 0);
+                    mLastTouchPositionX[i] = Math.max(aEvent.getX(i) - mCurrentLeftInset + mPanOffsetX, 0);
+                    mLastTouchPositionY[i] = Math.max(aEvent.getY(i) - mCurrentTopInset + mPanOffsetY, 0);
                     // Found new action index
                     tActionIndex = i;
                     break;
                 }
             }
         }
-        float tCurrentX = Math.max(aEvent.getX(tActionIndex) - mCurrentLeftInset, 0);
-        float tCurrentY = Math.max(aEvent.getY(tActionIndex) - mCurrentTopInset, 0);
+        float tCurrentX = Math.max(aEvent.getX(tActionIndex) - mCurrentLeftInset + mPanOffsetX, 0);
+        float tCurrentY = Math.max(aEvent.getY(tActionIndex) - mCurrentTopInset + mPanOffsetY, 0);
         int tCurrentXScaled = (int) ((tCurrentX / mScaleFactor) + 0.5);
         int tCurrentYScaled = (int) ((tCurrentY / mScaleFactor) + 0.5);
 
@@ -864,14 +842,26 @@ public class RPCView extends View {
             int tXPos = (int) (tCurrentX + 0.5);
             int tYPos = (int) (tCurrentY + 0.5);
 
-            mTextBackgroundStroke1Fill.setColor(Color.WHITE);
-            mCanvas.drawRect(0, 0, TEXT_WIDTH_INFO_PAINT * mShowTouchCoordinatesLastStringLength, TEXT_SIZE_INFO_PAINT + 2, mTextBackgroundStroke1Fill);
+            DrawTarget tDrawTarget = mLayers.getDrawTarget(mLayers.getWidgetLayer());
+            tDrawTarget.drawRect(0, 0, TEXT_WIDTH_INFO_PAINT * mShowTouchCoordinatesLastStringLength, TEXT_SIZE_INFO_PAINT + 2, 1, Color.WHITE, true);
             String tInfoString = tActionIndex + "|" + tMaskedAction + "  " + tXPos + "/" + tYPos + "->" + tCurrentXScaled + "/" + tCurrentYScaled;
             mShowTouchCoordinatesLastStringLength = tInfoString.length();
-            mCanvas.drawText(tInfoString, 0, 20, mInfoPaint);
+            tDrawTarget.drawText(tInfoString, 0, 20, TEXT_SIZE_INFO_PAINT, Color.BLACK);
+            mSession.mCanvasChangeCount++;
             invalidate(); // To show the new coordinates
         }
 
+        if (mMultiTouchBatch.mMode != MultiTouchBatch.MODE_OFF) {
+            if (tMaskedAction == MotionEvent.ACTION_MOVE) {
+                if (mTouchBasicEnable && mTouchMoveEnable) {
+                    mMultiTouchBatch.addSamples(aEvent, mMinTouchMoveIntervalMillis);
+                }
+            } else {
+                // The client gets the last positions before the down or up event
+                mMultiTouchBatch.sendSamples();
+            }
+        }
+
         if (tActionIndex > 0) {
             // convert pointer actions to plain actions for ACTION_POINTER_DOWN + ACTION_POINTER_UP
             if (tMaskedAction == MotionEvent.ACTION_POINTER_DOWN) {
@@ -930,7 +920,9 @@ public class RPCView extends View {
                 mBlueDisplayContext.openOptionsMenu();
             }
         } else {
-            if (mBlueDisplayContext.mBTSerialSocket != null) {
+            // USB, Bluetooth or TCP
+            boolean tIsConnected = mBlueDisplayContext.getConnectedTransport() != null;
+            if (mBlueDisplayContext.mBTSerialSocket != null && !tIsConnected) {
                 if (mBlueDisplayContext.mBTSerialSocket.getState() == BluetoothSerialSocket.STATE_NONE && !mDeviceListActivityLaunched) {
                     /*
                      * Launch the DeviceListActivity to choose device if state is "not connected"
@@ -939,7 +931,7 @@ public class RPCView extends View {
                     mDeviceListActivityLaunched = true;
                 }
             }
-            if ((mBlueDisplayContext.mUSBDeviceAttached && mBlueDisplayContext.mUSBSerialSocket.mIsConnected) || (mBlueDisplayContext.mBTSerialSocket != null && mBlueDisplayContext.mBTSerialSocket.getState() == BluetoothSerialSocket.STATE_CONNECTED)) {
+            if (tIsConnected) {
                 mDeviceListActivityLaunched = false;
                 /*
                  * Send EVENT data since we are connected
@@ -993,18 +985,18 @@ public class RPCView extends View {
                  * Check SLIDERS if ACTION_DOWN
                  */
                 if (tMaskedAction == MotionEvent.ACTION_DOWN) {
-                    int tSliderNumber = TouchSlider.checkAllSliders(tCurrentXScaled, tCurrentYScaled);
+                    int tSliderNumber = TouchSlider.checkAllSliders(mSession, tCurrentXScaled, tCurrentYScaled);
                     if (tSliderNumber >= 0) {
                         mTouchStartsOnSliderNumber[tActionIndex] = tSliderNumber;
-                        invalidate(); // Show new local slider bar value
+                        invalidateDirtyRegion(); // Show new local slider bar value
                     }
                 } else {
                     /*
                      * Check SLIDER if ACTION_MOVE
                      */
                     if (tMaskedAction == MotionEvent.ACTION_MOVE && mTouchStartsOnSliderNumber[tActionIndex] >= 0) {
-                        if (TouchSlider.checkIfTouchInSliderNumber(tCurrentXScaled, tCurrentYScaled, mTouchStartsOnSliderNumber[tActionIndex])) {
-                            invalidate(); // Show new local slider bar value
+                        if (TouchSlider.checkIfTouchInSliderNumber(mSession, tCurrentXScaled, tCurrentYScaled, mTouchStartsOnSliderNumber[tActionIndex])) {
+                            invalidateDirtyRegion(); // Show new local slider bar value
                         }
                     }
                 }
@@ -1016,14 +1008,14 @@ public class RPCView extends View {
 
                 if (mTouchStartsOnSliderNumber[tActionIndex] < 0) {
                     if ((tMaskedAction == MotionEvent.ACTION_DOWN && !mUseUpEventForButtons) || (tMaskedAction == MotionEvent.ACTION_UP && mUseUpEventForButtons && !mDisableButtonUpOnce)) {
-                        mTouchStartsOnButtonNumber[tActionIndex] = TouchButton.checkAllButtons(tCurrentXScaled, tCurrentYScaled, false);
+                        mTouchStartsOnButtonNumber[tActionIndex] = TouchButton.checkAllButtons(mSession, tCurrentXScaled, tCurrentYScaled, false);
                         if (mTouchStartsOnButtonNumber[tActionIndex] >= 0 && tMaskedAction == MotionEvent.ACTION_DOWN) {
                             // remember that we send an event on touch down and to skip processing until touch up
                             mSkipProcessingUntilTouchUpForButton[tActionIndex] = true;
                         }
                     } else if (tMaskedAction == MotionEvent.ACTION_DOWN) {
                         // Just check if down touch hits a button area
-                        mTouchStartsOnButtonNumber[tActionIndex] = TouchButton.checkAllButtons(tCurrentXScaled, tCurrentYScaled, true);
+                        mTouchStartsOnButtonNumber[tActionIndex] = TouchButton.checkAllButtons(mSession, tCurrentXScaled, tCurrentYScaled, true);
                     }
                 }
                 /*
@@ -1046,12 +1038,18 @@ public class RPCView extends View {
                 if (mTouchStartsOnButtonNumber[tActionIndex] < 0 && mTouchStartsOnSliderNumber[tActionIndex] < 0 && mTouchBasicEnable && (mTouchMoveEnable || tMaskedAction != MotionEvent.ACTION_MOVE)) {
                     // suppress sending of zero moves
                     if (tMaskedAction == MotionEvent.ACTION_MOVE) {
-                        if (mLastSentMoveXValue[tActionIndex] != tCurrentXScaled || mLastSentMoveYValue[tActionIndex] != tCurrentYScaled) {
+                        // In multi touch mode, moves are sent by mMultiTouchBatch
+                        if (mMultiTouchBatch.mMode == MultiTouchBatch.MODE_OFF && (mLastSentMoveXValue[tActionIndex] != tCurrentXScaled
+                                || mLastSentMoveYValue[tActionIndex] != tCurrentYScaled)) {
                             mLastSentMoveXValue[tActionIndex] = tCurrentXScaled;
                             mLastSentMoveYValue[tActionIndex] = tCurrentYScaled;
-                            mBlueDisplayContext.mSerialService.writeTwoIntegerAndAByteEvent(tMaskedAction, tCurrentXScaled, tCurrentYScaled, tActionIndex);
+                            sendMoveEventRateLimited(tActionIndex);
                         }
                     } else {
+                        if (mMoveEventIsPending[tActionIndex]) {
+                            // The client gets the last move position before the up event
+                            sendMoveEvent(tActionIndex);
+                        }
                         // no button/slider touched and touch is enabled -> send touch event to client
                         mBlueDisplayContext.mSerialService.writeTwoIntegerAndAByteEvent(tMaskedAction, tCurrentXScaled, tCurrentYScaled, tActionIndex);
                     }
@@ -1061,6 +1059,8 @@ public class RPCView extends View {
                  * Cleanup for ACTION_UP + ACTION_CANCEL
                  */
                 if (tMaskedAction == MotionEvent.ACTION_UP || tMaskedAction == MotionEvent.ACTION_CANCEL) {
+                    // Send the last value of a slider, which was not yet sent because of the rate limit
+                    TouchSlider.sendPendingCallback(mSession, mTouchStartsOnSliderNumber[tActionIndex]);
                     resetTouchFlags(tActionIndex);
                 }
             } else {
@@ -1088,6 +1088,31 @@ public class RPCView extends View {
         return true;
     }
 
+    /*
+     * Sends the move event for the last position of the pointer, if the last move event is at least mMinTouchMoveIntervalMillis ago.
+     * Otherwise the sending is scheduled for the end of the interval.
+     */
+    private void sendMoveEventRateLimited(int aPointerIndex) {
+        if (mMinTouchMoveIntervalMillis > 0) {
+            long tDelayMillis = mLastMoveEventMillis[aPointerIndex] + mMinTouchMoveIntervalMillis - SystemClock.uptimeMillis();
+            if (tDelayMillis > 0) {
+                if (!mMoveEventIsPending[aPointerIndex]) {
+                    mMoveEventIsPending[aPointerIndex] = true;
+                    postDelayed(mSendPendingMoveEvents, tDelayMillis);
+                }
+                return;
+            }
+        }
+        sendMoveEvent(aPointerIndex);
+    }
+
+    private void sendMoveEvent(int aPointerIndex) {
+        mMoveEventIsPending[aPointerIndex] = false;
+        mLastMoveEventMillis[aPointerIndex] = SystemClock.uptimeMillis();
+        mBlueDisplayContext.mSerialService.writeTwoIntegerAndAByteEvent(MotionEvent.ACTION_MOVE, mLastSentMoveXValue[aPointerIndex],
+                mLastSentMoveYValue[aPointerIndex], aPointerIndex);
+    }
+
     /*
      * Reset touch related flags. called for ACTION_UP or ACTION_CANCEL
      */
@@ -1096,6 +1121,7 @@ public class RPCView extends View {
         mTouchStartsOnSliderNumber[aActionIndex] = -1;
         mTouchIsActive[aActionIndex] = false;
         mSkipProcessingUntilTouchUpForButton[aActionIndex] = false;
+        mMoveEventIsPending[aActionIndex] = false;
 
         if (aActionIndex == 0) {
             /*
@@ -1143,8 +1169,22 @@ public class RPCView extends View {
     };
 
     private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        private float mLastFocusX;
+        private float mLastFocusY;
+
+        @Override
+        public boolean onScaleBegin(ScaleGestureDetector detector) {
+            mLastFocusX = detector.getFocusX();
+            mLastFocusY = detector.getFocusY();
+            return true;
+        }
+
         @Override
         public boolean onScale(ScaleGestureDetector detector) {
+            // Moving both fingers pans a canvas, which is bigger than the view
+            panBy(mLastFocusX - detector.getFocusX(), mLastFocusY - detector.getFocusY());
+            mLastFocusX = detector.getFocusX();
+            mLastFocusY = detector.getFocusY();
             if (mTouchScaleFactor < 1) {
                 /*
                  * Let mTouchScaleFactor be below 1 if it is still below e.g. from setting of onSizeChanged() on rotating screen.
@@ -1175,14 +1215,38 @@ public class RPCView extends View {
             tScaleFactorSnapped = Math.round(tScaleFactorSnapped);
             tScaleFactorSnapped /= 20;
 
-            // save and restore mTouchScaleFactor since setScaleFactor will
-            // overwrite it with tScaleFactor
-            tTempScaleFactor = mTouchScaleFactor;
-            boolean tRetvalue = !setScaleFactor(tScaleFactorSnapped, true);
-            mTouchScaleFactor = tTempScaleFactor;
-            // return true if event was handled
-            return tRetvalue;
+            if (mUseMaxSize || tScaleFactorSnapped == (mPendingScaleFactor != 0 ? mPendingScaleFactor : mScaleFactor)) {
+                // setScaleFactor() would not change anything
+                return true;
+            }
+            // Show preview and apply the new factor when the fingers rest
+            mPendingScaleFactor = tScaleFactorSnapped;
+            removeCallbacks(mApplyPendingScaleFactor);
+            postDelayed(mApplyPendingScaleFactor, SCALE_DEBOUNCE_MILLIS);
+            invalidate();
+            return false;
+        }
+
+        @Override
+        public void onScaleEnd(ScaleGestureDetector detector) {
+            removeCallbacks(mApplyPendingScaleFactor);
+            applyPendingScaleFactor();
+        }
+    }
+
+    private void applyPendingScaleFactor() {
+        if (mPendingScaleFactor == 0) {
+            return;
+        }
+        float tScaleFactor = mPendingScaleFactor;
+        mPendingScaleFactor = 0;
+        // save and restore mTouchScaleFactor since setScaleFactor will
+        // overwrite it with tScaleFactor
+        float tTouchScaleFactor = mTouchScaleFactor;
+        if (!setScaleFactor(tScaleFactor, true)) {
+            invalidate(); // remove preview
         }
+        mTouchScaleFactor = tTouchScaleFactor;
     }
 
     /*
@@ -1242,34 +1306,24 @@ public class RPCView extends View {
 
     }
 
+    public void myConvertChars(byte[] aInputData, char[] aOutputChars, int aDataLength) {
+        mCommandRenderer.convertChars(aInputData, aOutputChars, aDataLength);
+    }
+
     /*
-     *  To be used for ASCII values between 0x80 and 0xFF to be mapped (aka codepage)
-     *  Only entries != 0x0000 are used, otherwise the local codepage is taken
+     * Converts the received bytes to a string using the char mapping of the client
      */
-    private char[] mCharMappingArray = new char[128];
-
-    public void myConvertChars(byte[] aInputData, char[] aOutputChars, int aDataLength) {
-        for (int i = 0; i < aDataLength; i++) {
-            aOutputChars[i] = myConvertChar(aInputData[i]);
-        }
+    String convertToString(byte[] aDataBytes, int aDataLength) {
+        char[] tChars = mSession.getCharsArray(aDataLength);
+        myConvertChars(aDataBytes, tChars, aDataLength);
+        return new String(tChars, 0, aDataLength);
     }
 
-    private char myConvertChar(byte aData) {
-        char tChar;
-        // we have signed arithmetic here, so 0x80 is negative
-        if (aData > 0) {
-            tChar = (char) aData;
-        } else {
-            // mask highest bit
-            int tHighChar = (aData + 0x80);
-            // get mapping
-            tChar = mCharMappingArray[tHighChar & 0x7F];
-            if (tChar == 0x0000) {
-                // no mapping found, use local codepage
-                tChar = (char) (tHighChar + 0x80);
-            }
-        }
-        return tChar;
+    /*
+     * Must be called after each change of scale factor or canvas size
+     */
+    private void updateRendererGeometry() {
+        mCommandRenderer.setGeometry(mScaleFactor, mRequestedCanvasWidth, mRequestedCanvasHeight, mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight);
     }
 
     /**
@@ -1295,21 +1349,29 @@ public class RPCView extends View {
             mCurrentCanvasPixelWidth = (int) (mRequestedCanvasWidth * mScaleFactor);
             mCurrentCanvasPixelHeight = (int) (mRequestedCanvasHeight * mScaleFactor);
 
-            Bitmap tOldBitmap = mBitmap;
-            mBitmap = Bitmap.createScaledBitmap(mBitmap, mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight, false);
-            mCanvas = new Canvas(mBitmap);
-            tOldBitmap.recycle();
+            /*
+             * If the journal contains all drawings since the last clear, redraw them sharp with the new scale factor
+             * instead of stretching the old bitmap and requesting a redraw from the client
+             */
+            CommandJournal tJournal = mCommandRenderer.getJournal();
+            boolean tReplay = tJournal != null && tJournal.isComplete();
+            mLayers.resize(mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight, !tReplay);
+            mSession.mCanvasChangeCount++;
+            panBy(0, 0);
 
             mTouchScaleFactor = mScaleFactor;
-            mPaintStrokeScaleFactorColorSettable.setStrokeWidth(mScaleFactor);
+            updateRendererGeometry();
+            if (tReplay) {
+                tReplay = mCommandRenderer.replayJournal();
+            }
 
             if (MyLog.isINFO()) {
                 MyLog.i(LOG_TAG, "setScaleFactor(" + aScaleFactor + ") UseMaxSize=" + mUseMaxSize + " old factor=" + tOldFactor + " resulting factor=" + mScaleFactor);
             }
             invalidate(); // Show resized bitmap
 
-            // send new size to client
-            if (mBlueDisplayContext.mSerialService != null && aSendToClient) {
+            // send new size to client, which then redraws, if not already done locally
+            if (mBlueDisplayContext.mSerialService != null && aSendToClient && !tReplay) {
                 mBlueDisplayContext.mSerialService.writeTwoIntegerEvent(SerialService.EVENT_REDRAW, mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight);
             }
             // show new Values
@@ -1329,64 +1391,26 @@ public class RPCView extends View {
 
     // 5 red | 6 green | 5 blue
     public static int shortToLongColor(int aShortColor) {
-        int tBlue = (aShortColor & 0x1F) << 3;
-        if (tBlue > 0x80) {
-            // to get real 0xFF
-            tBlue += 0x07;
-        }
-        int tGreen = (aShortColor & 0x07E0) << 5;
-        if (tGreen > 0x8000) {
-            // to get real 0xFF
-            tGreen += 0x0300;
-        }
-        int tRed = aShortColor & 0xF800;
-        if (tRed > 0x8000) {
-            // to get real 0xFF
-            tRed += 0x0700;
-        }
-        tRed = tRed << 8;
-        return (tRed | tGreen | tBlue | 0xFF000000);
+        return ProtocolHelper.shortToLongColor(aShortColor);
     }
 
     public static String shortToColorString(int aShortColor) {
-        int tBlue = (aShortColor & 0x1F) << 3;
-        if (tBlue > 0x80) {
-            // to get real 0xFF
-            tBlue += 0x07;
-        }
-        int tGreen = (aShortColor & 0x07E0) >> 3;
-        if (tGreen > 0x80) {
-            // to get real 0xFF
-            tGreen += 0x03;
-        }
-        int tRed = (aShortColor & 0xF800) >> 8;
-        if (tRed > 0x80) {
-            // to get real 0xFF
-            tRed += 0x07;
-        }
-        return "R:" + tRed + " G:" + tGreen + " B:" + tBlue;
+        return ProtocolHelper.shortToColorString(aShortColor);
     }
 
     public static int convertByteToInt(byte aByte) {
-        if (aByte < 0) {
-            return aByte + 256;
-        }
-        return aByte;
+        return ProtocolHelper.convertByteToInt(aByte);
     }
 
-    int printNewline() {
-        int tPrintY = mTextPrintTextCurrentPosY + mTextPrintTextSize + 1; // for space between lines otherwise we see "g" truncated
-        if (tPrintY >= mRequestedCanvasHeight) {
-            // wrap around to top of screen
-            tPrintY = 0;
-            if (mTextPrintDoClearScreenOnWrap) {
-                mCanvas.drawColor(mTextExpandedPrintBackgroundColor);
-            }
-        }
-        mTextPrintTextCurrentPosX = 0;
-        return tPrintY;
+    /*
+     * Called by CommandParser for ASCII text found between commands
+     */
+    @Override
+    public void onSerialPrint(String aString) {
+        showAsDebugToast(aString);
     }
 
+    @Override
     public void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
 
         if (MyLog.isVERBOSE()) {
@@ -1405,1118 +1429,685 @@ public class RPCView extends View {
         // Disable message, which triggers the toast, that no data was received.
         resetWaitMessage();
 
-        if ((aCommand >= INDEX_FIRST_FUNCTION_BUTTON && aCommand <= INDEX_LAST_FUNCTION_BUTTON) || aCommand >= INDEX_FIRST_FUNCTION_BUTTON_WITH_DATA && aCommand <= INDEX_LAST_FUNCTION_BUTTON_WITH_DATA) {
-            TouchButton.interpretCommand(this, aCommand, aParameters, aParamsLength, aDataBytes, aDataLength);
-            return;
-        } else if ((aCommand >= INDEX_FIRST_FUNCTION_SLIDER && aCommand <= INDEX_LAST_FUNCTION_SLIDER) || aCommand >= INDEX_FIRST_FUNCTION_SLIDER_WITH_DATA && aCommand <= INDEX_LAST_FUNCTION_SLIDER_WITH_DATA) {
-            TouchSlider.interpretCommand(this, aCommand, aParameters, aParamsLength, aDataBytes, aDataLength);
-            return;
+        if (mDisplayListStore.isRecording() && aCommand != FUNCTION_DISPLAY_LIST_SETTINGS) {
+            mDisplayListStore.record(aCommand, aParameters, aParamsLength, aDataBytes, aDataLength);
+            if (!mDisplayListStore.isExecuteWhileRecording()) {
+                return;
+            }
         }
 
-        Paint tResultingPaint;
-
-        float tXStartScaled = 0;
-        float tYStartScaled = 0;
-        float tXEndScaled;
-        float tYEndScaled;
-        if (aParamsLength >= 2) {
-            tXStartScaled = aParameters[0] * mScaleFactor;
-            tYStartScaled = aParameters[1] * mScaleFactor;
+        // Sliders report their dirty regions by themselves
+        if (mOpcodeRegistry.getHandler(aCommand) != mSliderCommandHandler) {
+            mIsWholeViewDirty = true;
+            // the command may have overwritten a slider bar
+            mSession.mCanvasChangeCount++;
         }
-        float tScaledTextSize;
-        int tColor;
-        int tIndex;
-        String tFunctionName;
-        String tAdditionalInfo = "";
-        String tStringParameter = "";
-        String tCallbackAddressStringAdjustedForClientDebugging = "";
 
-        float tDescend;
-        float tAscend;
+        try {
+            mOpcodeRegistry.dispatch(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+        } catch (Exception e) {
+            MyLog.e(LOG_TAG, "Exception caught for command 0x" + Integer.toHexString(aCommand) + ". paramsLength=" + aParamsLength + " dataLength=" + aDataLength + " Exception=" + e);
+        }
+        if (mLayers.needsFlush()) {
+            mLayers.flush();
+        }
+        // long tEnd = System.nanoTime();
+        // Log.i(LOG_TAG, "Interpret=" + (tEnd - tStart));
+    }
 
-        int tSubcommand;
-        int tCallbackAddress;
+    /*
+     * All commands are dispatched by mOpcodeRegistry. Display commands are rendered by the (Android independent) command renderer.
+     */
+    private void registerOpcodeHandlers() {
+        OpcodeRegistry.OpcodeHandler tRenderHandler = (aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength) ->
+                mCommandRenderer.renderCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+
+        mOpcodeRegistry.register(FUNCTION_PLAY_TONE, this::handlePlayTone);
+        mOpcodeRegistry.register(FUNCTION_SPEAK_STRING_FLUSH, this::handleSpeakString);
+        mOpcodeRegistry.register(FUNCTION_SPEAK_STRING_ADD, this::handleSpeakString);
+        mOpcodeRegistry.register(FUNCTION_SPEAK_SET_LOCALE, this::handleSpeakSetLocale);
+        mOpcodeRegistry.register(FUNCTION_SPEAK_SET_VOICE, this::handleSpeakSetVoice);
+        mOpcodeRegistry.register(FUNCTION_GET_NUMBER, this::handleGetNumberOrText);
+        mOpcodeRegistry.register(FUNCTION_GET_NUMBER_WITH_SHORT_PROMPT, this::handleGetNumberOrText);
+        mOpcodeRegistry.register(FUNCTION_GET_TEXT, this::handleGetNumberOrText);
+        mOpcodeRegistry.register(FUNCTION_GET_TEXT_WITH_SHORT_PROMPT, this::handleGetNumberOrText);
+        mOpcodeRegistry.register(FUNCTION_REQUEST_MAX_CANVAS_SIZE, this::handleRequestMaxCanvasSize);
+        mOpcodeRegistry.register(FUNCTION_GET_INFO, this::handleGetInfo);
+        mOpcodeRegistry.register(FUNCTION_GLOBAL_SETTINGS, this::handleGlobalSettings);
+        mOpcodeRegistry.register(FUNCTION_SENSOR_SETTINGS, this::handleSensorSettings);
+        mOpcodeRegistry.register(FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL, this::handleClearDisplay);
+        mOpcodeRegistry.register(FUNCTION_CLEAR_DISPLAY, this::handleClearDisplay);
+        mOpcodeRegistry.register(FUNCTION_CLEAR_DISPLAY_AREA, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_PIXEL, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_LINE_REL, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_LINE, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_VECTOR_DEGREE, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_VECTOR_RADIAN, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_CHART, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_SCALED_CHART, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_PATH, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_FILL_PATH, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_PRIMITIVES, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_IMAGE_START, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_IMAGE_PALETTE, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_IMAGE_DATA, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_SPRITE_CAPTURE, this::handleSpriteCommand);
+        mOpcodeRegistry.register(FUNCTION_SPRITE_DRAW, this::handleSpriteCommand);
+        mOpcodeRegistry.register(FUNCTION_SPRITE_SETTINGS, this::handleSpriteCommand);
+        mOpcodeRegistry.register(FUNCTION_DISPLAY_LIST_SETTINGS, this::handleDisplayListSettings);
+        mOpcodeRegistry.register(FUNCTION_DISPLAY_LIST_REPLAY, this::handleDisplayListReplay);
+        mOpcodeRegistry.register(FUNCTION_LAYER_SETTINGS, this::handleLayerSettings);
+        mOpcodeRegistry.register(FUNCTION_DRAW_RECT_REL, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_FILL_RECT_REL, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_RECT, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_FILL_RECT, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_CIRCLE, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_FILL_CIRCLE, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_WRITE_SETTINGS, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_WRITE_STRING, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_CHAR, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_DRAW_STRING, tRenderHandler);
+        mOpcodeRegistry.register(FUNCTION_LINE_SETTINGS, this::handleLineSettings);
+        mOpcodeRegistry.register(FUNCTION_DEBUG_STRING, this::handleDebugString);
+        mOpcodeRegistry.register(FUNCTION_NOP, this::handleNop);
+
+        OpcodeRegistry.OpcodeHandler tButtonHandler = (aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength) ->
+                TouchButton.interpretCommand(this, aCommand, aParameters, aParamsLength, aDataBytes, aDataLength);
+        mOpcodeRegistry.registerRange(INDEX_FIRST_FUNCTION_BUTTON, INDEX_LAST_FUNCTION_BUTTON, tButtonHandler);
+        mOpcodeRegistry.registerRange(INDEX_FIRST_FUNCTION_BUTTON_WITH_DATA, INDEX_LAST_FUNCTION_BUTTON_WITH_DATA, tButtonHandler);
+        mOpcodeRegistry.registerRange(INDEX_FIRST_FUNCTION_SLIDER, INDEX_LAST_FUNCTION_SLIDER, mSliderCommandHandler);
+        mOpcodeRegistry.registerRange(INDEX_FIRST_FUNCTION_SLIDER_WITH_DATA, INDEX_LAST_FUNCTION_SLIDER_WITH_DATA, mSliderCommandHandler);
+    }
 
-        try {
-            switch (aCommand) {
-                case FUNCTION_PLAY_TONE:
-                    int tToneIndex = ToneGenerator.TONE_CDMA_KEYPAD_VOLUME_KEY_LITE;
-                    int tDurationMillis = -1;
-                    ToneGenerator tToneGenerator = mToneGenerator;
-                    if (aParamsLength > 0) {
-                        if (aParameters[0] > 0 && aParameters[0] <= ToneGenerator.TONE_CDMA_SIGNAL_OFF) {
-                            tToneIndex = aParameters[0];
-                        }
-                        if (aParamsLength > 1) {
+    /*
+     * Plays a tone of the ToneGenerator with optional duration and absolute volume
+     */
+    private void handlePlayTone(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        int tToneIndex = ToneGenerator.TONE_CDMA_KEYPAD_VOLUME_KEY_LITE;
+        int tDurationMillis = -1;
+        ToneGenerator tToneGenerator = mToneGenerator;
+        if (aParamsLength > 0) {
+            if (aParameters[0] > 0 && aParameters[0] <= ToneGenerator.TONE_CDMA_SIGNAL_OFF) {
+                tToneIndex = aParameters[0];
+            }
+            if (aParamsLength > 1) {
+                /*
+                 * set duration in ms
+                 */
+                tDurationMillis = aParameters[1];
+                // Only duration -1 means forever, -2 gives 65534
+                if (tDurationMillis < -1) {
+                    tDurationMillis = 0x10000 + tDurationMillis;
+                }
+                if (aParamsLength > 2) {
+                    /*
+                     * set volume to absolute values between 0% and 100%
+                     */
+                    int tVolume = aParameters[2];
+                    if (tVolume > ToneGenerator.MAX_VOLUME) {
+                        tVolume = ToneGenerator.MAX_VOLUME;
+                    }
+                    if (tVolume >= 0) {
+                        tToneGenerator = mToneGeneratorForAbsoluteVolumes;
+                        if (tVolume != mLastRequestedToneVolume) {
                             /*
-                             * set duration in ms
+                             * change absolute value of volume
                              */
-                            tDurationMillis = aParameters[1];
-                            // Only duration -1 means forever, -2 gives 65534
-                            if (tDurationMillis < -1) {
-                                tDurationMillis = 0x10000 + tDurationMillis;
-                            }
-                            if (aParamsLength > 2) {
-                                /*
-                                 * set volume to absolute values between 0% and 100%
-                                 */
-                                int tVolume = aParameters[2];
-                                if (tVolume > ToneGenerator.MAX_VOLUME) {
-                                    tVolume = ToneGenerator.MAX_VOLUME;
-                                }
-                                if (tVolume >= 0) {
-                                    tToneGenerator = mToneGeneratorForAbsoluteVolumes;
-                                    if (tVolume != mLastRequestedToneVolume) {
-                                        /*
-                                         * change absolute value of volume
-                                         */
-                                        mLastRequestedToneVolume = tVolume;
-                                        mToneGeneratorForAbsoluteVolumes = new ToneGenerator(AudioManager.STREAM_SYSTEM, tVolume);
-                                    }
-                                }
-                            }
+                            mLastRequestedToneVolume = tVolume;
+                            mToneGeneratorForAbsoluteVolumes = new ToneGenerator(AudioManager.STREAM_SYSTEM, tVolume);
                         }
                     }
-                    /*
-                     * check if user changed volume
-                     */
-                    int tCurrentSystemVolume = mBlueDisplayContext.mAudioManager.getStreamVolume(AudioManager.STREAM_SYSTEM);
-                    if (mLastSystemVolume != tCurrentSystemVolume) {
-                        mLastSystemVolume = tCurrentSystemVolume;
-                        mToneGenerator = new ToneGenerator(AudioManager.STREAM_SYSTEM, (tCurrentSystemVolume * ToneGenerator.MAX_VOLUME) / mBlueDisplayContext.mMaxSystemVolume);
-                    }
+                }
+            }
+        }
+        /*
+         * check if user changed volume
+         */
+        int tCurrentSystemVolume = mBlueDisplayContext.mAudioManager.getStreamVolume(AudioManager.STREAM_SYSTEM);
+        if (mLastSystemVolume != tCurrentSystemVolume) {
+            mLastSystemVolume = tCurrentSystemVolume;
+            mToneGenerator = new ToneGenerator(AudioManager.STREAM_SYSTEM, (tCurrentSystemVolume * ToneGenerator.MAX_VOLUME) / mBlueDisplayContext.mMaxSystemVolume);
+        }
 
-                    tToneGenerator.startTone(tToneIndex, tDurationMillis);
-                    if (MyLog.isINFO()) {
-                        MyLog.i(LOG_TAG, "Play tone index=" + tToneIndex + " duration=" + tDurationMillis);
-                    }
-                    break;
+        tToneGenerator.startTone(tToneIndex, tDurationMillis);
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Play tone index=" + tToneIndex + " duration=" + tDurationMillis);
+        }
+    }
 
-                case FUNCTION_SPEAK_STRING_FLUSH:
-                case FUNCTION_SPEAK_STRING_ADD:
-                    myConvertChars(aDataBytes, sCharsArray, aDataLength);
-                    tStringParameter = new String(sCharsArray, 0, aDataLength);
-                    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-                        if (MyLog.isINFO()) {
-                            MyLog.i(LOG_TAG, "talkString \"" + tStringParameter + "\" - not available for Android version " + Build.VERSION.RELEASE + " < 5.0 (Lollipop)");
-                            mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_SPEAKING_DONE, SerialService.EVENT_SPEAKING_NOT_AVAILABLE);
-                        }
-                        return;
-                    }
-                    if (!mTextToSpeechIsInitialized) {
-                        MyLog.e(LOG_TAG, "TextToSpeech engine \"com.google.android.tts\" not available. String=" + tStringParameter);
-                        mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_SPEAKING_DONE, SerialService.EVENT_SPEAKING_NOT_AVAILABLE);
-                        return;
-                    }
+    /*
+     * Speaks the string with TextToSpeech, flushes or adds to the queue
+     */
+    private void handleSpeakString(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        String tStringParameter = convertToString(aDataBytes, aDataLength);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            if (MyLog.isINFO()) {
+                MyLog.i(LOG_TAG, "talkString \"" + tStringParameter + "\" - not available for Android version " + Build.VERSION.RELEASE + " < 5.0 (Lollipop)");
+                mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_SPEAKING_DONE, SerialService.EVENT_SPEAKING_NOT_AVAILABLE);
+            }
+            return;
+        }
+        if (!mTextToSpeechIsInitialized) {
+            MyLog.e(LOG_TAG, "TextToSpeech engine \"com.google.android.tts\" not available. String=" + tStringParameter);
+            mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_SPEAKING_DONE, SerialService.EVENT_SPEAKING_NOT_AVAILABLE);
+            return;
+        }
+
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "speakString \"" + tStringParameter + "\"");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            int tQueueMode = TextToSpeech.QUEUE_FLUSH;
+            if (aCommand == FUNCTION_SPEAK_STRING_ADD) {
+                tQueueMode = TextToSpeech.QUEUE_ADD;
+            }
+            if (mTextToSpeech.speak(tStringParameter, tQueueMode, null, "BlueDisplaySpeak") != SUCCESS) {
+                mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_SPEAKING_DONE, SerialService.EVENT_SPEAKING_ERROR);
+            }
+        }
+    }
+
+    /*
+     * Sets the language of TextToSpeech
+     */
+    private void handleSpeakSetLocale(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        String tStringParameter = convertToString(aDataBytes, aDataLength);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            if (MyLog.isINFO()) {
+                MyLog.i(LOG_TAG, "speakSetLocale: \"" + tStringParameter + "\" - not available for Android version " + Build.VERSION.RELEASE + " < 5.0 (Lollipop)");
+            }
+            return;
+        } else {
+            Locale tLocale = Locale.forLanguageTag(tStringParameter);
+            if (mTextToSpeech.isLanguageAvailable(tLocale) == LANG_NOT_SUPPORTED) {
+                MyLog.w(LOG_TAG, "speakSetLocale: the locale \"" + tStringParameter + "\" is not supported");
+            } else {
+                mTextToSpeech.setLanguage(tLocale);
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Set Locale to \"" + tStringParameter + "\", Voice is \"" + mTextToSpeech.getVoice().getName() + "\"");
+                }
+            }
+        }
+    }
 
+    /*
+     * Sets the voice of TextToSpeech.
+     * Name is one of the Voice strings printed in log at level Info at BD application startup
+     */
+    private void handleSpeakSetVoice(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        String tStringParameter = convertToString(aDataBytes, aDataLength);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            if (MyLog.isINFO()) {
+                MyLog.i(LOG_TAG, "speakSetVoice \"" + tStringParameter + "\" - not available for Android version " + Build.VERSION.RELEASE + " < 5.0 (Lollipop)");
+            }
+            return;
+        } else {
+            Set<Voice> tVoicesSet = mTextToSpeech.getVoices();
+            boolean tFoundVoice = false;
+            for (Voice tVoice : tVoicesSet) {
+                if (tVoice.getName().equals(tStringParameter)) {
+                    mTextToSpeech.setVoice(tVoice);
+                    tFoundVoice = true;
                     if (MyLog.isINFO()) {
-                        MyLog.i(LOG_TAG, "speakString \"" + tStringParameter + "\"");
-                    }
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                        int tQueueMode = TextToSpeech.QUEUE_FLUSH;
-                        if (aCommand == FUNCTION_SPEAK_STRING_ADD) {
-                            tQueueMode = TextToSpeech.QUEUE_ADD;
-                        }
-                        if (mTextToSpeech.speak(tStringParameter, tQueueMode, null, "BlueDisplaySpeak") != SUCCESS) {
-                            mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_SPEAKING_DONE, SerialService.EVENT_SPEAKING_ERROR);
-                        }
+                        MyLog.i(LOG_TAG, "Set voice to \"" + tStringParameter + "\"");
                     }
                     break;
+                }
+            }
+            if (!tFoundVoice) {
+                MyLog.w(LOG_TAG, "Voice \"" + tStringParameter + "\" not found");
+            }
+        }
+    }
 
-                case FUNCTION_SPEAK_SET_LOCALE:
-                    myConvertChars(aDataBytes, sCharsArray, aDataLength);
-                    tStringParameter = new String(sCharsArray, 0, aDataLength);
-                    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-                        if (MyLog.isINFO()) {
-                            MyLog.i(LOG_TAG, "speakSetLocale: \"" + tStringParameter + "\" - not available for Android version " + Build.VERSION.RELEASE + " < 5.0 (Lollipop)");
-                        }
-                        return;
-                    } else {
-                        Locale tLocale = Locale.forLanguageTag(tStringParameter);
-                        if (mTextToSpeech.isLanguageAvailable(tLocale) == LANG_NOT_SUPPORTED) {
-                            MyLog.w(LOG_TAG, "speakSetLocale: the locale \"" + tStringParameter + "\" is not supported");
-                        } else {
-                            mTextToSpeech.setLanguage(tLocale);
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Set Locale to \"" + tStringParameter + "\", Voice is \"" + mTextToSpeech.getVoice().getName() + "\"");
-                            }
-                        }
-                    }
-                    break;
+    /*
+     * Opens the input dialog for a number or a text
+     */
+    private void handleGetNumberOrText(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        String tStringParameter = "";
+        String tCallbackAddressStringAdjustedForClientDebugging = "";
+        boolean tDoNumber = true;
+        String tFunctionName = "number";
+
+        if (aCommand == FUNCTION_GET_TEXT || aCommand == FUNCTION_GET_TEXT_WITH_SHORT_PROMPT) {
+            tFunctionName = "text";
+            tDoNumber = false;
+        }
+        String tInitialInfo = "";
+        // Integer.MIN_VALUE is used as flag not to show value
+        float tInitialValue = NUMBER_INITIAL_VALUE_DO_NOT_SHOW;
+        int tCallbackAddress = aParameters[0] & 0x0000FFFF;
+        if (aParamsLength == 2 || aParamsLength == 4) {
+            // 32 bit callback address
+            tCallbackAddress = tCallbackAddress | (aParameters[1] << 16);
+        } else {
+            tCallbackAddressStringAdjustedForClientDebugging = "/0x" + Integer.toHexString(tCallbackAddress << 1);
+        }
 
-                /*
-                 * One of the Voice strings printed in log at level Info at BD application startup
-                 */
-                case FUNCTION_SPEAK_SET_VOICE:
-                    myConvertChars(aDataBytes, sCharsArray, aDataLength);
-                    tStringParameter = new String(sCharsArray, 0, aDataLength);
-                    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-                        if (MyLog.isINFO()) {
-                            MyLog.i(LOG_TAG, "speakSetVoice \"" + tStringParameter + "\" - not available for Android version " + Build.VERSION.RELEASE + " < 5.0 (Lollipop)");
-                        }
-                        return;
-                    } else {
-                        Set<Voice> tVoicesSet = mTextToSpeech.getVoices();
-                        boolean tFoundVoice = false;
-                        for (Voice tVoice : tVoicesSet) {
-                            if (tVoice.getName().equals(tStringParameter)) {
-                                mTextToSpeech.setVoice(tVoice);
-                                tFoundVoice = true;
-                                if (MyLog.isINFO()) {
-                                    MyLog.i(LOG_TAG, "Set voice to \"" + tStringParameter + "\"");
-                                }
-                                break;
-                            }
-                        }
-                        if (!tFoundVoice) {
-                            MyLog.w(LOG_TAG, "Voice \"" + tStringParameter + "\" not found");
-                        }
-                    }
-                    break;
-
-
-                case FUNCTION_GET_NUMBER:
-                case FUNCTION_GET_NUMBER_WITH_SHORT_PROMPT:
-                case FUNCTION_GET_TEXT:
-                case FUNCTION_GET_TEXT_WITH_SHORT_PROMPT:
-
-                    boolean tDoNumber = true;
-                    tFunctionName = "number";
-
-                    if (aCommand == FUNCTION_GET_TEXT || aCommand == FUNCTION_GET_TEXT_WITH_SHORT_PROMPT) {
-                        tFunctionName = "text";
-                        tDoNumber = false;
-                    }
-                    String tInitialInfo = "";
-                    // Integer.MIN_VALUE is used as flag not to show value
-                    float tInitialValue = NUMBER_INITIAL_VALUE_DO_NOT_SHOW;
-                    tCallbackAddress = aParameters[0] & 0x0000FFFF;
-                    if (aParamsLength == 2 || aParamsLength == 4) {
-                        // 32 bit callback address
-                        tCallbackAddress = tCallbackAddress | (aParameters[1] << 16);
-                    } else {
-                        tCallbackAddressStringAdjustedForClientDebugging = "/0x" + Integer.toHexString(tCallbackAddress << 1);
-                    }
-
-                    if (aParamsLength > 2) {
-                        int ValueStartIndex = 1;
-                        if (aParamsLength == 4) {
-                            // 32 bit callback address + initial value
-                            ValueStartIndex = 2;
-                        }
-                        // With initial value
-                        int tIntValue = (aParameters[ValueStartIndex] & 0x0000FFFF) | (aParameters[ValueStartIndex + 1] << 16);
-                        tInitialValue = Float.intBitsToFloat(tIntValue);
-                        tInitialInfo = " initial value=" + tInitialValue;
-                    }
-
-                    if (aDataLength > 0) {
-                        myConvertChars(aDataBytes, sCharsArray, aDataLength);
-                        tStringParameter = new String(sCharsArray, 0, aDataLength);
-                    }
-                    if (MyLog.isINFO()) {
-                        MyLog.i(LOG_TAG, "Get " + tFunctionName + " callback=0x" + Integer.toHexString(tCallbackAddress) + tCallbackAddressStringAdjustedForClientDebugging + " prompt=\"" + tStringParameter + "\"" + tInitialInfo);
-                    }
-
-                    /*
-                     * Send request for number input to the UI Activity Ends up in showInputDialog() If cancelled nothing is sent back
-                     */
-                    Message msg = mHandler.obtainMessage(BlueDisplay.REQUEST_INPUT_DATA);
-                    Bundle bundle = new Bundle();
-                    bundle.putInt(BlueDisplay.CALLBACK_ADDRESS, tCallbackAddress);
-                    bundle.putString(BlueDisplay.DIALOG_PROMPT, tStringParameter);
-                    bundle.putFloat(BlueDisplay.NUMBER_INITIAL_VALUE, tInitialValue);
-                    bundle.putBoolean(BlueDisplay.NUMBER_FLAG, tDoNumber);
-                    msg.setData(bundle);
-                    mHandler.sendMessage(msg);
-                    break;
-
-                case FUNCTION_REQUEST_MAX_CANVAS_SIZE:
-                    if (MyLog.isINFO()) {
-                        MyLog.i(LOG_TAG, "Request max canvas size. Result=" + mCurrentViewPixelWidth + "/" + mCurrentViewPixelHeight);
-                    }
-                    if (mBlueDisplayContext.mSerialService != null) {
-                        mBlueDisplayContext.mSerialService.writeTwoIntegerEventAndTimestamp(SerialService.EVENT_REQUESTED_DATA_CANVAS_SIZE, mCurrentViewPixelWidth, mCurrentViewPixelHeight);
-                    }
-                    break;
-
-                case FUNCTION_GET_INFO:
-                    // get timestamps
-                    // For future use
-                    tSubcommand = aParameters[0];
-                    tCallbackAddress = aParameters[1] & 0x0000FFFF;
-                    if (aParamsLength == 3) {
-                        // 32 bit callback address
-                        tCallbackAddress = tCallbackAddress | (aParameters[2] << 16);
-                    } else {
-                        tCallbackAddressStringAdjustedForClientDebugging = "/0x" + Integer.toHexString(tCallbackAddress << 1);
-                    }
-
-                    switch (tSubcommand) {
-                        case SUBFUNCTION_GET_INFO_LOCAL_TIME:
-                        case SUBFUNCTION_GET_INFO_GMT_TIME:
-                            /*
-                             * send useDaylightTime flag, distance to UTC and requested timestamp
-                             */
-                            TimeZone tDefaultTimeZone = TimeZone.getDefault();
-                            long tTimestamp = System.currentTimeMillis();
-
-                            int tGmtOffset = tDefaultTimeZone.getOffset(tTimestamp);  // get difference to GMT including DST
-                            if (tSubcommand == SUBFUNCTION_GET_INFO_LOCAL_TIME) {
-                                tFunctionName = "local time";
-                                tTimestamp += tGmtOffset;
-                            } else {
-                                tFunctionName = "GMT time"; // UTC is a time standard not a time zone, but both share the same current time
-                            }
-                            int tUseDaylightTime = 0;
-                            if (tDefaultTimeZone.inDaylightTime(new Date())) {
-                                tUseDaylightTime = 1;
-                            }
-                            long tTimestampSeconds = tTimestamp / 1000L;
-                            if (MyLog.isINFO()) {
-                                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                                sdf.setTimeZone(tDefaultTimeZone);
-                                String formattedDate = sdf.format(new Date(tTimestamp));
-                                MyLog.i(LOG_TAG, "Get " + tFunctionName + " date=" + formattedDate + " callback=0x" + Integer.toHexString(tCallbackAddress) + tCallbackAddressStringAdjustedForClientDebugging);
-                            }
-                            mBlueDisplayContext.mSerialService.writeInfoCallbackEvent(SerialService.EVENT_INFO_CALLBACK, tSubcommand, tUseDaylightTime, tGmtOffset, tCallbackAddress, tTimestampSeconds);
-
-                            break;
-                    }
-                    break;
-
-                case FUNCTION_GLOBAL_SETTINGS:
-                    tSubcommand = aParameters[0];
-                    switch (tSubcommand) {
-                        case SUBFUNCTION_GLOBAL_SET_FLAGS_AND_SIZE:
-                            if (aParameters[2] < 10 || aParameters[3] < 10) {
-                                MyLog.e(LOG_TAG, "Set flags=0x" + Integer.toHexString(aParameters[1]) + " and canvas size W x H =" + aParameters[2] + " x " + aParameters[3] + ". Size parameter values to small -> return.");
-                                return;
-                            }
-                            // set canvas size
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Set flags=0x" + Integer.toHexString(aParameters[1]) + " and canvas size W x H =" + aParameters[2] + " x " + aParameters[3]);
-                            }
-                            mRequestedCanvasWidth = aParameters[2];
-                            mRequestedCanvasHeight = aParameters[3];
-                            setMaxScaleFactor();
-                            setFlags(aParameters[1]);
-                            handleScreenOrientationFlags(aParameters[1] >> 8); // These flags are contained in upper byte
-                            break;
-
-                        case SUBFUNCTION_GLOBAL_SET_CODEPAGE:
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Set codepage=ISO_8859_" + aParameters[1]);
-                            }
-                            String tCharsetName = "ISO_8859_" + aParameters[1];
-                            Charset tCharset = Charset.forName(tCharsetName);
-                            byte[] tCodepage = new byte[mCharMappingArray.length];
-                            for (int i = 0; i < mCharMappingArray.length; i++) {
-                                tCodepage[i] = (byte) (0x0080 + i);
-                            }
-                            ByteBuffer tBytebuffer = ByteBuffer.wrap(tCodepage);
-                            CharBuffer tCharBuffer = tCharset.decode(tBytebuffer); // decode selected code page to char buffer
-                            mCharMappingArray = tCharBuffer.array();
-                            break;
-
-                        case SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING:
-                            tIndex = aParameters[1] - 0x80;
-                            if (tIndex >= 0 && tIndex < mCharMappingArray.length) {
-                                if (MyLog.isINFO()) {
-                                    MyLog.i(LOG_TAG, "Set character mapping=" + mCharMappingArray[tIndex] + "->" + (char) aParameters[2] + " / 0x" + Integer.toHexString(aParameters[1]) + "-> 0x" + Integer.toHexString(aParameters[2]));
-                                }
-                                mCharMappingArray[tIndex] = (char) aParameters[2];
-                            } else {
-                                MyLog.e(LOG_TAG, "Character mapping index=0x" + Integer.toHexString(aParameters[1]) + "+ must be between 0x80 and 0xFF");
-                            }
-                            break;
-
-                        case SUBFUNCTION_GLOBAL_SET_LONG_TOUCH_DOWN_TIMEOUT:
-                            if (aParameters[1] <= 0) {
-                                mLongTouchDownTimeoutMillis = 0;
-                                mIsLongTouchEnabled = false;
-                            } else {
-                                mLongTouchDownTimeoutMillis = aParameters[1];
-                                mIsLongTouchEnabled = true;
-                            }
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Long touch-down timeout=" + mLongTouchDownTimeoutMillis);
-                            }
-                            break;
-
-                        case SUBFUNCTION_GLOBAL_SET_SCREEN_ORIENTATION_LOCK:
-                            handleScreenOrientationFlags(aParameters[1]);
-                            break;
-
-                        case SUBFUNCTION_GLOBAL_SET_SCREEN_BRIGHTNESS:
-                            Window window = mBlueDisplayContext.getWindow();
-                            WindowManager.LayoutParams layoutParams = window.getAttributes();
-                            // 0 is dark and 100 is full bright, others are user default
-                            // Android: A value of less than 0, the default, means to use the preferred screen brightness.
-                            // 0 to 1 adjusts the brightness from dark to full bright
-                            if (aParameters[1] >= 0 && aParameters[1] <= 100) {
-                                layoutParams.screenBrightness = (float) (aParameters[1] / 100.0);
-                            } else {
-                                layoutParams.screenBrightness = -1;
-                            }
-                            window.setAttributes(layoutParams);
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Set screen brightness 0x" + Integer.toHexString(aParameters[1]) + " -> " + layoutParams.screenBrightness);
-                            }
-                            break;
-
-                        default:
-                            MyLog.e(LOG_TAG, "Global settings: unknown subcommand 0x" + Integer.toHexString(tSubcommand) + " received. paramsLength=" + aParamsLength + " dataLength=" + aDataLength);
-                            break;
-
-                    }
-                    break;
-
-                case FUNCTION_SENSOR_SETTINGS:
-                    boolean tDoActivate = aParameters[1] != 0;
-                    int tFilterFlag = Sensors.FLAG_SENSOR_NO_FILTER;
-                    if (aParamsLength == 4) {
-                        tFilterFlag = aParameters[3];
-                    }
-                    mBlueDisplayContext.mSensorEventListener.setSensor(aParameters[0], tDoActivate, aParameters[2], tFilterFlag);
-                    break;
-
-                case FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL:
-                case FUNCTION_CLEAR_DISPLAY:
-                case FUNCTION_CLEAR_DISPLAY_AREA:
-                    // clear screen
-                    mCanvas.drawColor(shortToLongColor(aParameters[0]));
-                    if (aCommand == FUNCTION_CLEAR_DISPLAY_AREA) {
-                        if (MyLog.isINFO()) {
-                            MyLog.i(LOG_TAG, "Clear display with color=" + shortToColorString(aParameters[0]));
-                        }
-                    } else {
-                        if (MyLog.isINFO()) {
-                            MyLog.i(LOG_TAG, "Clear display with color=" + shortToColorString(aParameters[0]) + " and deactivate all buttons and sliders");
-                        }
-                        TouchButton.deactivateAllButtons();
-                        TouchSlider.deactivateAllSliders();
-                    }
-                    break;
-
-                case FUNCTION_DRAW_PIXEL:
-                    mPaintStrokeScaleFactorColorSettable.setColor(shortToLongColor(aParameters[2]));
-                    if (MyLog.isDEBUG()) {
-                        MyLog.d(LOG_TAG, "drawPixel(" + aParameters[0] + ", " + aParameters[1] + ") color= " + shortToColorString(aParameters[2]));
-                    }
-                    mCanvas.drawPoint(tXStartScaled, tYStartScaled, mPaintStrokeScaleFactorColorSettable);
-                    break;
-
-                case FUNCTION_LINE_SETTINGS:
-                    if (MyLog.isINFO()) {
-                        MyLog.i(LOG_TAG, "setPaint[" + aParameters[0] + "] stroke=" + aParameters[1] + "] color= " + shortToColorString(aParameters[2]));
-                    }
-                    int tLineArrayIndex = aParameters[0];
-                    if (tLineArrayIndex >= NUMBER_OF_SUPPORTED_LINES) {
-                        tLineArrayIndex = 0;
-                    }
-                    mDrawLineInfoArray[tLineArrayIndex].mPaint.setStrokeWidth(Math.round(aParameters[1] * mScaleFactor));
-                    mDrawLineInfoArray[tLineArrayIndex].mPaint.setColor(shortToLongColor(aParameters[2]));
-                    break;
-
-                case FUNCTION_DRAW_LINE_REL:
-                case FUNCTION_DRAW_LINE:
-                case FUNCTION_DRAW_VECTOR_DEGREE:
-                    /*
-                     * If the highest bit in aParameters[1] (YStart) is set,
-                     * use normal (aliased) Paint, which can be cleared without residual
-                     */
-                    if ((aParameters[1] & 0x00008000) != 0) {
-                        tYStartScaled = (aParameters[1] & 0x00007FFF) * mScaleFactor; // remove highest bitCOLOR16_NO_BACKGROUND
-                        tResultingPaint = mPaintStrokeAndColorSettable;
-                    } else {
-                        tResultingPaint = mPaintStrokeAndColorSettableAntiAliased;
-                    }
-
-                    if (aCommand == FUNCTION_DRAW_LINE_REL) {
-                        tFunctionName = "drawLineRel";
-                        tXEndScaled = tXStartScaled + aParameters[2] * mScaleFactor;
-                        tYEndScaled = tYStartScaled + aParameters[3] * mScaleFactor;
-                    } else if (aCommand == FUNCTION_DRAW_VECTOR_DEGREE) {
-                        tFunctionName = "drawVectorDegree";
-                        float tLength = aParameters[2];
-                        float tDegree = aParameters[3];
-                        double tRadianOfDegree = tDegree * (Math.PI / 180);
-                        tXEndScaled = (float) (tXStartScaled + (Math.cos(tRadianOfDegree) * tLength) * mScaleFactor);
-                        tYEndScaled = (float) (tYStartScaled - (Math.sin(tRadianOfDegree) * tLength) * mScaleFactor);
-                    } else {
-                        tFunctionName = "drawLine";
-                        tXEndScaled = aParameters[2] * mScaleFactor;
-                        tYEndScaled = aParameters[3] * mScaleFactor;
-                    }
-
-                    float tLineStroke = mScaleFactor;
-
-                    /*
-                     * ??? Round values to avoid starting or ending at half pixel ???
-                     */
-                    if (USE_ROUNDING_FOR_LINES) { // for fast testing of the effects of rounding
-                        tXStartScaled = Math.round(tXStartScaled);
-                        tYStartScaled = Math.round(tYStartScaled);
-                        tXEndScaled = Math.round(tXEndScaled);
-                        tYEndScaled = Math.round(tYEndScaled);
-                    }
-                    if (tXStartScaled == tXEndScaled || tYStartScaled == tYEndScaled) {
-                        // Use NON anti aliased Paint for horizontal or vertical lines, these can be cleared without residual
-                        tResultingPaint = mPaintStrokeAndColorSettable;
-                    }
-
-                    tColor = shortToLongColor(aParameters[4]);
-                    if (aParamsLength > 5) {
-                        // Stroke / thickness parameter
-                        tLineStroke = aParameters[5] * mScaleFactor;
-                        if (MyLog.isDEBUG()) {
-                            tAdditionalInfo = " strokeWidth=" + aParameters[5];
-                        }
-                    }
-                    tResultingPaint.setStrokeWidth(Math.round(tLineStroke));
-
-                    tResultingPaint.setColor(tColor);
-                    if (tXStartScaled == tXEndScaled && tYStartScaled == tYEndScaled) {
-                        mCanvas.drawPoint(tXStartScaled, tYStartScaled, tResultingPaint);
-                    } else {
-                        mCanvas.drawLine(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tResultingPaint);
-                    }
-                    if (MyLog.isDEBUG()) {
-                        MyLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", " + aParameters[2] + ", " + aParameters[3] + ") color=" + shortToColorString(aParameters[4]) + tAdditionalInfo);
-                    }
-                    break;
-
-                case FUNCTION_DRAW_VECTOR_RADIAN:
-                    tFunctionName = "drawVectorRadian";
-                    float tLength = aParameters[2];
-                    float tRadian = Float.intBitsToFloat((aParameters[3] & 0x0000FFFF) | (aParameters[4] << 16));
-                    tXEndScaled = (float) (tXStartScaled + (Math.cos(tRadian) * tLength) * mScaleFactor);
-                    tYEndScaled = (float) (tYStartScaled - (Math.sin(tRadian) * tLength) * mScaleFactor);
-
-                    tColor = shortToLongColor(aParameters[5]);
-
-                    if (aParamsLength > 6) {
-                        // Stroke parameter
-                        mPaintStrokeAndColorSettableAntiAliased.setStrokeWidth(Math.round(aParameters[6] * mScaleFactor));
-                        tResultingPaint = mPaintStrokeAndColorSettableAntiAliased;
-                        if (MyLog.isDEBUG()) {
-                            tAdditionalInfo = " strokeWidth=" + aParameters[6];
-                        }
-                    } else {
-                        tResultingPaint = mPaintStrokeScaleFactorColorSettable;
-                    }
-
-                    tResultingPaint.setColor(tColor);
-                    if (tXStartScaled == tXEndScaled && tYStartScaled == tYEndScaled) {
-                        mCanvas.drawPoint(tXStartScaled, tYStartScaled, tResultingPaint);
-                    } else {
-                        mCanvas.drawLine(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tResultingPaint);
-                    }
-                    if (MyLog.isDEBUG()) {
-                        MyLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", " + aParameters[2] + ", " + aParameters[3] + ") color=" + shortToColorString(aParameters[5]) + tAdditionalInfo);
-                    }
-                    break;
-
-                case FUNCTION_DRAW_CHART:
-                case FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING:
-                case FUNCTION_DRAW_SCALED_CHART:
-                case FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING:
-                    /*
-                     * Use NON anti aliased Paint for easy removing of old chart
-                     * Chart index is coded in the upper 4 bits of Y start position
-                     */
-                    int tChartIndex = (aParameters[1] >> 12) & 0x0F; // Otherwise we may get -1
-                    if (tChartIndex > 0) {
-                        tYStartScaled = (aParameters[1] & 0x0FFF) * mScaleFactor;
-                    }
-
-                    boolean tDeleteOldLine = false;
-                    int tDeleteColor;
-                    float tYScaleFactor = 1.0F;
-                    float tAdjustedXScaleFactor = mScaleFactor;
-                    int tChartMode = CHART_MODE_LINE;
-
-                    if (aParamsLength > 6) {
-                        /*
-                         * FUNCTION_DRAW_SCALED_CHART and FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING here
-                         * get float YScale value and adjust effective data length to XScale
-                         */
-                        tYScaleFactor = Float.intBitsToFloat((aParameters[3] & 0x0000FFFF) | (aParameters[4] << 16));
-                        // Use NON anti aliased Paint for easy removing of old chart
-                        mPaintStrokeAndColorSettable.setStrokeWidth(Math.round(aParameters[5] * mScaleFactor));
-                        tChartMode = aParameters[6];
-                        tColor = shortToLongColor(aParameters[7]);
-                        tDeleteColor = shortToLongColor(aParameters[8]);
-                        if (aParameters[8] != COLOR16_NO_DELETE) {
-                            tDeleteOldLine = true;
-                        }
-                        // Adjust values to XScaleFactor
-                        tAdjustedXScaleFactor = enlargeFloatWithXScaleFactor(mScaleFactor, aParameters[2]);
-                        if (MyLog.isINFO()) {
-                            if (aCommand == FUNCTION_DRAW_SCALED_CHART) {
-                                tFunctionName = "drawScaledChart";
-                            } else {
-                                tFunctionName = "drawScaledChartWithoutDirectRendering";
-                            }
-                            MyLog.i(LOG_TAG, tFunctionName + " X=" + aParameters[0] + " Y=" + (aParameters[1] & 0x0FFF) + " XFactor=" + enlargeFloatWithXScaleFactor(1, aParameters[2]) + " YFactor=" + tYScaleFactor + " lineSize=" + aParameters[5] + " mode=" + tChartMode + " color=" + shortToColorString(aParameters[7]) + " deleteColor=" + shortToColorString(aParameters[8]) + " length=" + aDataLength + " chartIndex=" + tChartIndex + " | 0x" + Integer.toHexString(aDataBytes[0] & 0xFF) + " 0X" + Integer.toHexString(aDataBytes[1] & 0xFF) + " 0x" + Integer.toHexString(aDataBytes[2] & 0xFF) + " 0X" + Integer.toHexString(aDataBytes[3] & 0xFF));
-                        }
-
-                    } else {
-                        tColor = shortToLongColor(aParameters[2]);
-                        tDeleteColor = shortToLongColor(aParameters[3]);
-                        if (aParameters[3] != COLOR16_NO_DELETE) {
-                            tDeleteOldLine = true;
-                        }
-                        mPaintStrokeAndColorSettable.setStrokeWidth(Math.round(mScaleFactor));
-                        if (MyLog.isINFO()) {
-                            if (aCommand == FUNCTION_DRAW_CHART) {
-                                tFunctionName = "drawChart";
-                            } else {
-                                tFunctionName = "drawChartWithoutDirectRendering";
-                            }
-                            MyLog.i(LOG_TAG, tFunctionName + " X=" + aParameters[0] + " Y=" + (aParameters[1] & 0x0FFF) + " color=" + shortToColorString(aParameters[2]) + " deleteColor=" + shortToColorString(aParameters[3]) + " length=" + aDataLength + " chartIndex=" + tChartIndex + " | 0x" + Integer.toHexString(aDataBytes[0] & 0xFF) + " 0X" + Integer.toHexString(aDataBytes[1] & 0xFF) + " 0x" + Integer.toHexString(aDataBytes[2] & 0xFF) + " 0X" + Integer.toHexString(aDataBytes[3] & 0xFF));
-
-                        }
-                    }
-
-                    // can not use tDeleteColor here, because it is a converted value
-                    if (tDeleteOldLine && (mChartScreenBufferContainsOldData[tChartIndex])) {
-                        /*
-                         * delete old chart line
-                         */
-                        mPaintStrokeAndColorSettable.setColor(tDeleteColor); // set delete color
-                        if (tChartMode == CHART_MODE_LINE) {
-                            mCanvas.drawLines(mChartScreenBuffer[tChartIndex], 0, mChartScreenBufferValidDataLength[tChartIndex], mPaintStrokeAndColorSettable);
-                        } else {
-                            mCanvas.drawPoints(mChartScreenBuffer[tChartIndex], 0, mChartScreenBufferValidDataLength[tChartIndex], mPaintStrokeAndColorSettable);
-                        }
-                    }
+        if (aParamsLength > 2) {
+            int ValueStartIndex = 1;
+            if (aParamsLength == 4) {
+                // 32 bit callback address + initial value
+                ValueStartIndex = 2;
+            }
+            // With initial value
+            int tIntValue = (aParameters[ValueStartIndex] & 0x0000FFFF) | (aParameters[ValueStartIndex + 1] << 16);
+            tInitialValue = Float.intBitsToFloat(tIntValue);
+            tInitialInfo = " initial value=" + tInitialValue;
+        }
 
-                    mPaintStrokeAndColorSettable.setColor(tColor); // now set draw color
+        if (aDataLength > 0) {
+            tStringParameter = convertToString(aDataBytes, aDataLength);
+        }
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Get " + tFunctionName + " callback=0x" + Integer.toHexString(tCallbackAddress) + tCallbackAddressStringAdjustedForClientDebugging + " prompt=\"" + tStringParameter + "\"" + tInitialInfo);
+        }
 
-                    /*
-                     * draw new chart.
-                     * Origin is at upper left and therefore Y values are inverse!
-                     * After returning to searchCommand() this will break to enable rendering
-                     * or continue to receive the next draw command until no data gets in and rendering may happen.
-                     */
-                    if (aDataLength > MAX_CHART_LINE_WIDTH) {
-                        aDataLength = MAX_CHART_LINE_WIDTH;
-                        MyLog.w(LOG_TAG, "aDataLength of " + aDataLength + " is bigger than maximum allowed data length of " + MAX_CHART_LINE_WIDTH);
-                    }
+        /*
+         * Send request for number input to the UI Activity Ends up in showInputDialog() If cancelled nothing is sent back
+         */
+        Message msg = mHandler.obtainMessage(BlueDisplay.REQUEST_INPUT_DATA);
+        Bundle bundle = new Bundle();
+        bundle.putInt(BlueDisplay.CALLBACK_ADDRESS, tCallbackAddress);
+        bundle.putString(BlueDisplay.DIALOG_PROMPT, tStringParameter);
+        bundle.putFloat(BlueDisplay.NUMBER_INITIAL_VALUE, tInitialValue);
+        bundle.putBoolean(BlueDisplay.NUMBER_FLAG, tDoNumber);
+        msg.setData(bundle);
+        mHandler.sendMessage(msg);
+    }
 
-                    /*
-                     * Fill draw buffer with points for chart to draw at the end
-                     */
-                    int tSourceIndex = 0;
-                    int tDestinationIndex = 0;
-                    float tXValueScaledOfCurrentLine = tXStartScaled; // the start of the multi pixel data entity
-                    float tYValueScaledOfCurrentLine = (SerialService.convertByteToFloat(aDataBytes[tSourceIndex++]) * mScaleFactor * tYScaleFactor) + tYStartScaled;
-                    for (int i = 0; i < aDataLength - 1; i++) {
-                        // Each line is taken from 4 consecutive values in the pts array
-                        // Start of current line / pixel
-                        if (USE_ROUNDING_FOR_LINES) { // for fast testing of the effects of rounding
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex++] = Math.round(tXValueScaledOfCurrentLine);
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex++] = Math.round(tYValueScaledOfCurrentLine);
-                        } else {
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex++] = tXValueScaledOfCurrentLine;
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex++] = tYValueScaledOfCurrentLine;
-                        }
-                        /*
-                         * Get values of next point
-                         */
-                        tYValueScaledOfCurrentLine = (SerialService.convertByteToFloat(aDataBytes[tSourceIndex++]) * mScaleFactor * tYScaleFactor) + tYStartScaled;
-                        tXValueScaledOfCurrentLine += tAdjustedXScaleFactor;
-                        if (tChartMode == CHART_MODE_LINE) {
-                            // Write next point as end of current line
-                            if (USE_ROUNDING_FOR_LINES) { // for fast testing of the effects of rounding
-                                mChartScreenBuffer[tChartIndex][tDestinationIndex++] = Math.round(tXValueScaledOfCurrentLine);
-                                mChartScreenBuffer[tChartIndex][tDestinationIndex++] = Math.round(tYValueScaledOfCurrentLine);
-                            } else {
-                                mChartScreenBuffer[tChartIndex][tDestinationIndex++] = tXValueScaledOfCurrentLine;
-                                mChartScreenBuffer[tChartIndex][tDestinationIndex++] = tYValueScaledOfCurrentLine;
-                            }
-                        }
-                    }
-                    if (tChartMode == CHART_MODE_LINE) {
-                        // For n points we have n-1 lines
-                        mCanvas.drawLines(mChartScreenBuffer[tChartIndex], 0, (aDataLength - 1) * 4, mPaintStrokeAndColorSettable);
-                        mChartScreenBufferValidDataLength[tChartIndex] = (aDataLength - 1) * 4; // for optional deletion of this line
-                    } else {
-                        // CHART_MODE_PIXEL here. Store last point
-                        if (USE_ROUNDING_FOR_LINES) { // for fast testing of the effects of rounding
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex++] = Math.round(tXValueScaledOfCurrentLine);
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex] = Math.round(tYValueScaledOfCurrentLine);
-                        } else {
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex++] = tXValueScaledOfCurrentLine;
-                            mChartScreenBuffer[tChartIndex][tDestinationIndex] = tYValueScaledOfCurrentLine;
-                        }
-                        mCanvas.drawPoints(mChartScreenBuffer[tChartIndex], 0, aDataLength * 2, mPaintStrokeAndColorSettable);
-                        mChartScreenBufferValidDataLength[tChartIndex] = aDataLength * 2; // for optional deletion of this line
-                    }
+    /*
+     * Sends the view size and the timestamp
+     */
+    private void handleRequestMaxCanvasSize(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Request max canvas size. Result=" + mCurrentViewPixelWidth + "/" + mCurrentViewPixelHeight);
+        }
+        if (mBlueDisplayContext.mSerialService != null) {
+            mBlueDisplayContext.mSerialService.writeTwoIntegerEventAndTimestamp(SerialService.EVENT_REQUESTED_DATA_CANVAS_SIZE, mCurrentViewPixelWidth, mCurrentViewPixelHeight);
+        }
+    }
 
-                    mChartScreenBufferContainsOldData[tChartIndex] = true;
-                    break;
+    /*
+     * Sends the requested info, currently the local or GMT time
+     */
+    private void handleGetInfo(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        String tCallbackAddressStringAdjustedForClientDebugging = "";
+        String tFunctionName;
+        // get timestamps
+        // For future use
+        int tSubcommand = aParameters[0];
+        int tCallbackAddress = aParameters[1] & 0x0000FFFF;
+        if (aParamsLength == 3) {
+            // 32 bit callback address
+            tCallbackAddress = tCallbackAddress | (aParameters[2] << 16);
+        } else {
+            tCallbackAddressStringAdjustedForClientDebugging = "/0x" + Integer.toHexString(tCallbackAddress << 1);
+        }
 
+        switch (tSubcommand) {
+            case SUBFUNCTION_GET_INFO_LOCAL_TIME:
+            case SUBFUNCTION_GET_INFO_GMT_TIME:
                 /*
-                 * Not yet implemented in Arduino library
-                 * First parameter is Color
-                 * Second parameter is StrokeWidth, but only necessary for draw path
-                 * Data (aDataInts) contains x/y coordinates of path points
+                 * send useDaylightTime flag, distance to UTC and requested timestamp
                  */
-                case FUNCTION_DRAW_PATH:
-                case FUNCTION_FILL_PATH:
-                    tColor = shortToLongColor(aParameters[0]);
-                    if (aCommand == FUNCTION_DRAW_PATH) {
-                        tFunctionName = "drawPath";
-                        mPaintStrokeAndColorSettable.setColor(tColor);
-                        mPaintStrokeAndColorSettable.setStrokeWidth(Math.round(aParameters[1] * mScaleFactor));
-                        tResultingPaint = mPaintStrokeAndColorSettable;
-                        if (MyLog.isDEBUG()) {
-                            tAdditionalInfo = " strokeWidth=" + aParameters[1];
-                        }
-                    } else {
-                        tFunctionName = "fillPath";
-                        mPaintStroke1Fill.setColor(tColor);
-                        tResultingPaint = mPaintStroke1Fill;
-                    }
-                    if (MyLog.isDEBUG()) {
-                        MyLog.d(LOG_TAG, tFunctionName + "(" + shortToColorString(aParameters[0]) + ", " + aParameters[1] + ") length=" + aDataLength + tAdditionalInfo);
-                    }
-
-                    /*
-                     * Data to path
-                     */
-                    mPath.incReserve(aDataLength + 1);
-                    mPath.moveTo(aDataInts[0] * mScaleFactor, aDataInts[1] * mScaleFactor);
-                    int i = 2;
-                    while (i < aDataLength) {
-                        mPath.lineTo(aDataInts[i] * mScaleFactor, aDataInts[i + 1] * mScaleFactor);
-                        i += 2;
-                    }
-                    mPath.close();
-
-                    mCanvas.drawPath(mPath, tResultingPaint);
-
-                    // Path only consists of lines
-                    mPath.rewind();
-
-                    break;
-
-                case FUNCTION_DRAW_RECT_REL:
-                case FUNCTION_FILL_RECT_REL:
-                case FUNCTION_DRAW_RECT:
-                case FUNCTION_FILL_RECT:
-                    if (aCommand == FUNCTION_DRAW_RECT_REL || aCommand == FUNCTION_FILL_RECT_REL) {
-                        tXEndScaled = tXStartScaled + aParameters[2] * mScaleFactor; // is width, i.e. 0 -> rect is not rendered
-                        tYEndScaled = tYStartScaled + aParameters[3] * mScaleFactor; // is height, i.e. 0 -> rect is not rendered
-                    } else {
-                        tXEndScaled = aParameters[2] * mScaleFactor;
-                        tYEndScaled = aParameters[3] * mScaleFactor;
-                        // sort parameters
-                        float tmp;
-                        if (tXStartScaled > tXEndScaled) {
-                            tmp = tXStartScaled;
-                            tXStartScaled = tXEndScaled;
-                            tXEndScaled = tmp;
-                        }
-                        if (tYStartScaled > tYEndScaled) {
-                            tmp = tYStartScaled;
-                            tYStartScaled = tYEndScaled;
-                            tYEndScaled = tmp;
-                        }
-                    }
-                    if (USE_ROUNDING_FOR_LINES) { // for fast testing of the effects of rounding
-                        tXStartScaled = Math.round(tXStartScaled);
-                        tXEndScaled = Math.round(tXEndScaled);
-                        tYStartScaled = Math.round(tYStartScaled);
-                        tYEndScaled = Math.round(tYEndScaled);
-                    }
-
-                    tColor = shortToLongColor(aParameters[4]);
-
-                    if (aCommand == FUNCTION_DRAW_RECT || aCommand == FUNCTION_DRAW_RECT_REL) {
-                        if (aCommand == FUNCTION_DRAW_RECT_REL) {
-                            tFunctionName = "drawRectRel";
-                        } else {
-                            tFunctionName = "drawRect";
-                        }
-                        mPaintStrokeAndColorSettable.setColor(tColor);
-                        mPaintStrokeAndColorSettable.setStrokeWidth(Math.round(aParameters[5] * mScaleFactor));
-                        tResultingPaint = mPaintStrokeAndColorSettable;
-                        if (MyLog.isDEBUG()) {
-                            tAdditionalInfo = " strokeWidth=" + aParameters[5];
-                        }
-                    } else {
-                        if (aCommand == FUNCTION_FILL_RECT_REL) {
-                            tFunctionName = "fillRectRel";
-                        } else {
-                            tFunctionName = "fillRect";
-                        }
-                        mPaintStroke1Fill.setColor(tColor);
-                        tResultingPaint = mPaintStroke1Fill;
-                    }
-
-                    if (MyLog.isDEBUG()) {
-                        MyLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", " + aParameters[2] + ", " + aParameters[3] + ") , color=" + shortToColorString(aParameters[4]) + tAdditionalInfo);
-                    }
-                    if (aCommand == FUNCTION_DRAW_RECT_REL && (aParameters[2] == 1 || aParameters[3] == 1)) {
-                        // XWidth is 1 -> draw a vertical line
-                        mCanvas.drawLine(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tResultingPaint);
-                        break;
-                    }
-                    mCanvas.drawRect(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tResultingPaint);
-                    break;
-
-                case FUNCTION_DRAW_CIRCLE:
-                case FUNCTION_FILL_CIRCLE:
-                    tColor = shortToLongColor(aParameters[3]);
-                    float tRadius = aParameters[2] * mScaleFactor;
-                    if (aCommand == FUNCTION_DRAW_CIRCLE) {
-                        tFunctionName = "drawCircle";
-                        mPaintStrokeAndColorSettable.setColor(tColor);
-                        mPaintStrokeAndColorSettable.setStrokeWidth(Math.round(aParameters[4] * mScaleFactor));
-                        tResultingPaint = mPaintStrokeAndColorSettable;
-                        if (MyLog.isDEBUG()) {
-                            tAdditionalInfo = " strokeWidth=" + aParameters[4];
-                        }
-                    } else {
-                        tFunctionName = "fillCircle";
-                        mPaintStroke1Fill.setColor(tColor);
-                        tResultingPaint = mPaintStroke1Fill;
-                    }
-
-                    if (MyLog.isDEBUG()) {
-                        MyLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", r=" + aParameters[2] + ") ,color=" + shortToColorString(aParameters[3]) + tAdditionalInfo);
-                    }
-                    mCanvas.drawCircle(tXStartScaled, tYStartScaled, tRadius, tResultingPaint);
-                    break;
-
-                case FUNCTION_DEBUG_STRING:
-                    tStringParameter = new String(aDataBytes, 0, aDataLength);
-                    // Show new values as toast for at least 500 ms, i.e. subsequent debugs are suppressed during 500 ms
-                    showAsDebugToast(tStringParameter);
-                    // Output as warning in order to enable easier finding and filtering the message in log
-                    MyLog.w(LOG_TAG, "DebugString=\"" + tStringParameter + "\"");
-                    break;
+                TimeZone tDefaultTimeZone = TimeZone.getDefault();
+                long tTimestamp = System.currentTimeMillis();
 
+                int tGmtOffset = tDefaultTimeZone.getOffset(tTimestamp);  // get difference to GMT including DST
+                if (tSubcommand == SUBFUNCTION_GET_INFO_LOCAL_TIME) {
+                    tFunctionName = "local time";
+                    tTimestamp += tGmtOffset;
+                } else {
+                    tFunctionName = "GMT time"; // UTC is a time standard not a time zone, but both share the same current time
+                }
+                int tUseDaylightTime = 0;
+                if (tDefaultTimeZone.inDaylightTime(new Date())) {
+                    tUseDaylightTime = 1;
+                }
+                long tTimestampSeconds = tTimestamp / 1000L;
+                if (MyLog.isINFO()) {
+                    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+                    sdf.setTimeZone(tDefaultTimeZone);
+                    String formattedDate = sdf.format(new Date(tTimestamp));
+                    MyLog.i(LOG_TAG, "Get " + tFunctionName + " date=" + formattedDate + " callback=0x" + Integer.toHexString(tCallbackAddress) + tCallbackAddressStringAdjustedForClientDebugging);
+                }
+                mBlueDisplayContext.mSerialService.writeInfoCallbackEvent(SerialService.EVENT_INFO_CALLBACK, tSubcommand, tUseDaylightTime, tGmtOffset, tCallbackAddress, tTimestampSeconds);
 
-                case FUNCTION_WRITE_SETTINGS:
-                    tSubcommand = aParameters[0];
-                    switch (tSubcommand) {
-                        case FLAG_WRITE_SETTINGS_SET_SIZE_AND_COLORS_AND_FLAGS:
-                            mTextPrintTextSize = aParameters[1];
-                            mTextExpandedPrintColor = shortToLongColor(aParameters[2]);
-                            mPrintTextStroke1Fill.setTextSize(mTextPrintTextSize * mScaleFactor);
-                            mPrintTextStroke1Fill.setColor(shortToLongColor(aParameters[2]));
-                            mTextExpandedPrintBackgroundColor = shortToLongColor(aParameters[3]);
-                            mTextPrintDoClearScreenOnWrap = aParameters[4] > 0;
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Set printf size=" + aParameters[1] + " color=" + shortToColorString(aParameters[2]) + " backgroundcolor=" + shortToColorString(aParameters[3]) + " clearOnWrap=" + mTextPrintDoClearScreenOnWrap);
-                            }
-                            break;
+                break;
 
-                        case FLAG_WRITE_SETTINGS_SET_POSITION:
-                            /*
-                             * Sets the Y position and the X start position after a newline
-                             * Positions are in pixel
-                             */
-                            mTextPrintTextCurrentPosX = aParameters[1];
-                            mTextPrintTextStartPosX = mTextPrintTextCurrentPosX;
-                            mTextPrintTextCurrentPosY = aParameters[2];
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Set printf start position to: " + mTextPrintTextCurrentPosX + " / " + mTextPrintTextCurrentPosY);
-                            }
-                            break;
+            case SUBFUNCTION_GET_INFO_CAPABILITIES:
+                /*
+                 * send protocol version, capability flags, max data size and max number of parameters.
+                 * Clients which do not ask, keep the old protocol.
+                 */
+                int tCapabilities = ProtocolConstants.CAPABILITY_COMPACT_PARAMETERS | ProtocolConstants.CAPABILITY_DRAW_PRIMITIVES
+                        | ProtocolConstants.CAPABILITY_IMAGES | ProtocolConstants.CAPABILITY_SPRITES
+                        | ProtocolConstants.CAPABILITY_DISPLAY_LISTS | ProtocolConstants.CAPABILITY_MULTI_TOUCH_MOVE
+                        | ProtocolConstants.CAPABILITY_CRC_FRAMING | ProtocolConstants.CAPABILITY_LAYERS;
+                if (isUSBConnected()) {
+                    tCapabilities |= ProtocolConstants.CAPABILITY_BAUD_RATE_UPGRADE;
+                }
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Get capabilities. Version=" + ProtocolConstants.PROTOCOL_VERSION + " capabilities=0x"
+                            + Integer.toHexString(tCapabilities) + " callback=0x" + Integer.toHexString(tCallbackAddress)
+                            + tCallbackAddressStringAdjustedForClientDebugging);
+                }
+                mBlueDisplayContext.mSerialService.writeInfoCallbackEvent(SerialService.EVENT_INFO_CALLBACK, tSubcommand,
+                        ProtocolConstants.PROTOCOL_VERSION, tCapabilities, tCallbackAddress, ProtocolConstants.MAX_DATA_SIZE,
+                        ProtocolConstants.MAX_NUMBER_OF_PARAMS);
+                break;
+        }
+    }
 
-                        case FLAG_WRITE_SETTINGS_SET_LINE_COLUMN:
-                            /*
-                             * Sets the Y position and the X start position after a newline
-                             * Positions are in character units :-)
-                             */
-                            mTextPrintTextCurrentPosX = (int) ((aParameters[1] * mTextPrintTextSize * TEXT_WIDTH_FACTOR) + 0.5);
-                            mTextPrintTextStartPosX = mTextPrintTextCurrentPosX;
-                            mTextPrintTextCurrentPosY = aParameters[2] * mTextPrintTextSize;
-                            if (MyLog.isINFO()) {
-                                MyLog.i(LOG_TAG, "Set printf start position to: " + aParameters[1] + " / " + aParameters[2] + " = " + mTextPrintTextCurrentPosX + " / " + mTextPrintTextCurrentPosY);
-                            }
-                            break;
+    /*
+     * Baud rate upgrade is only possible for USB serial connections
+     */
+    private boolean isUSBConnected() {
+        return mBlueDisplayContext.getConnectedTransport() instanceof USBSerialSocket;
+    }
 
-                        default:
-                            MyLog.e(LOG_TAG, "Write settings: unknown subcommand 0x" + Integer.toHexString(tSubcommand) + " received. paramsLength=" + aParamsLength + " dataLength=" + aDataLength);
-                    }
-                    break;
+    /*
+     * Handles the SUBFUNCTION_GLOBAL_* subfunctions
+     */
+    private void handleGlobalSettings(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        int tSubcommand = aParameters[0];
+        switch (tSubcommand) {
+            case SUBFUNCTION_GLOBAL_SET_FLAGS_AND_SIZE:
+                if (aParameters[2] < 10 || aParameters[3] < 10) {
+                    MyLog.e(LOG_TAG, "Set flags=0x" + Integer.toHexString(aParameters[1]) + " and canvas size W x H =" + aParameters[2] + " x " + aParameters[3] + ". Size parameter values to small -> return.");
+                    return;
+                }
+                // set canvas size
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Set flags=0x" + Integer.toHexString(aParameters[1]) + " and canvas size W x H =" + aParameters[2] + " x " + aParameters[3]);
+                }
+                mRequestedCanvasWidth = aParameters[2];
+                mRequestedCanvasHeight = aParameters[3];
+                setMaxScaleFactor();
+                setFlags(aParameters[1]);
+                updateRendererGeometry();
+                handleScreenOrientationFlags(aParameters[1] >> 8); // These flags are contained in upper byte
+                break;
 
-                /*
-                 * Writes string at previously set position and do line and page wrapping for print emulation
-                 * Do an automatic break before a new word, which will not fit on the remainder of line!
-                 * \r is interpreted as a space
-                 */
-                case FUNCTION_WRITE_STRING:
-                    myConvertChars(aDataBytes, sCharsArray, aDataLength);
-                    tStringParameter = new String(sCharsArray, 0, aDataLength);
+            case SUBFUNCTION_GLOBAL_SET_CODEPAGE:
+                mCommandRenderer.setCodepage(aParameters[1]);
+                break;
 
-                    if (MyLog.isINFO()) {
-                        MyLog.i(LOG_TAG, "writeString(\"" + tStringParameter.replaceAll("\n", "\\\\n") + "\") at " + mTextPrintTextCurrentPosX + " / " + mTextPrintTextCurrentPosY);
-                    }
-                    char tChar;
-                    int tCurrentCharacterIndex = 0;
-                    int tWordStartIndex = 0;
-                    int tPrintBufferStartIndex = 0;
-                    float tScaledTextPrintTextSize = mTextPrintTextSize * mScaleFactor;
-                    int tTextUnscaledWidth = (int) ((mTextPrintTextSize * TEXT_WIDTH_FACTOR) + 0.5);
-                    int tLineLengthInChars = mRequestedCanvasWidth / tTextUnscaledWidth;
-                    boolean doFlushAndCarriageReturn = false;
-                    boolean doFlushAndNewline = false;
-                    int tColumn = mTextPrintTextCurrentPosX / tTextUnscaledWidth;
-                    int tStartColumn = mTextPrintTextStartPosX / tTextUnscaledWidth; // after \n or \r
-                    // ascend for background color.
-                    tAscend = tScaledTextPrintTextSize * TEXT_ASCEND_FACTOR;
-                    while (true) {
-                        // check for terminate condition
-                        if (tCurrentCharacterIndex >= aDataLength) {
-                            // check if last character was newline and string was already printed
-                            if (tPrintBufferStartIndex < aDataLength) {
-                                /*
-                                 * Draw last word
-                                 */
-                                tYStartScaled = mTextPrintTextCurrentPosY * mScaleFactor;
-                                tXStartScaled = mTextPrintTextCurrentPosX * mScaleFactor;
-                                int tIntegerTextSize = (int) (tScaledTextPrintTextSize + 0.5);
-                                tIntegerTextSize = (int) ((tIntegerTextSize * TEXT_WIDTH_FACTOR) + 0.5);
-                                float tTextLength = (aDataLength - tPrintBufferStartIndex) * tIntegerTextSize;
-
-                                // draw background
-                                mTextBackgroundStroke1Fill.setColor(mTextExpandedPrintBackgroundColor);
-                                mCanvas.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled + tScaledTextPrintTextSize, mTextBackgroundStroke1Fill);
-                                // draw char / string
-                                drawText(tStringParameter, tPrintBufferStartIndex, aDataLength, tXStartScaled, tYStartScaled + tAscend, tScaledTextPrintTextSize, mTextExpandedPrintColor);
-                                mTextPrintTextCurrentPosX += Math.round(tTextLength / mScaleFactor); // Advance to start position for next write
+            case SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING:
+                mCommandRenderer.setCharacterMapping(aParameters[1], aParameters[2]);
+                break;
 
-                            }
-                            break;
-                        }
-                        // get character and interpret special characters and space as word separator
-                        tChar = sCharsArray[tCurrentCharacterIndex++];
-
-                        if (tChar == '\n') {
-                            // new line -> is also start of a new word
-                            tWordStartIndex = tCurrentCharacterIndex;
-                            // signal flush and newline
-                            doFlushAndNewline = true;
-                        } else if (tChar == '\r') {
-                            // Reset x position to start but do not advance to next line
-                            tWordStartIndex = tCurrentCharacterIndex;
-                            doFlushAndCarriageReturn = true;
-                        } else if (tChar == ' ') {
-                            // start of a new word
-                            tWordStartIndex = tCurrentCharacterIndex;
-                            if (tColumn == tStartColumn) {
-                                // skip from printing the space if first character in line
-                                tPrintBufferStartIndex = tCurrentCharacterIndex;
-                            }
-                        } else {
-                            if (tColumn >= tLineLengthInChars) {
-                                /*
-                                 * character does not fit in line -> print word at next line
-                                 */
-                                doFlushAndNewline = true;
-                                int tWordLength = (tCurrentCharacterIndex - tWordStartIndex);
-                                if (tWordLength > tLineLengthInChars) {
-                                    // word too long for a line just print char on next line
-                                    // just draw "buffer" to old line, make newline and process character again
-                                    tCurrentCharacterIndex--;
-                                } else {
-                                    // draw buffer till word start, print a newline and process word again
-                                    tCurrentCharacterIndex = tWordStartIndex;
-                                }
-                            }
-                        }
-                        if (doFlushAndNewline || doFlushAndCarriageReturn) {
-                            tXStartScaled = mTextPrintTextCurrentPosX * mScaleFactor;
-                            tYStartScaled = mTextPrintTextCurrentPosY * mScaleFactor;
-                            int tIntegerScaledTextWidth = (int) (tScaledTextPrintTextSize + 0.5);
-                            // ??? is this integer computation stuff required to find the text length Andoid takes internally to get real size for drawing background???
-                            tIntegerScaledTextWidth = (int) ((tIntegerScaledTextWidth * TEXT_WIDTH_FACTOR) + 0.5);
-                            // do not count the newline or space
-                            float tTextLength = ((tCurrentCharacterIndex - 1) - tPrintBufferStartIndex) * tIntegerScaledTextWidth;
-                            if (tTextLength > 0) {
-                                // do not print trailing \r or \n
-                                mTextBackgroundStroke1Fill.setColor(mTextExpandedPrintBackgroundColor);
-                                mCanvas.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled + tScaledTextPrintTextSize, mTextBackgroundStroke1Fill);
-                                // Draw char / string which has to be flushed
-                                drawText(tStringParameter, tPrintBufferStartIndex, tCurrentCharacterIndex - 1, tXStartScaled, tYStartScaled + tAscend, tScaledTextPrintTextSize, mTextExpandedPrintColor);
-                            }
-                            tPrintBufferStartIndex = tCurrentCharacterIndex;
-                            if (doFlushAndNewline) {
-                                mTextPrintTextCurrentPosY = printNewline();
-                            }
-                            // set to user specified start position
-                            mTextPrintTextCurrentPosX = mTextPrintTextStartPosX; // set it explicitly since compiler may hold mTextPrintTextCurrentPosX in register
-                            tColumn = tStartColumn;
-                            doFlushAndNewline = false;
-                            doFlushAndCarriageReturn = false;
-                        } else {
-                            // Just increment columns as long as characters do not trigger a flush i.e overflow screen, or are \n or \r
-                            tColumn++;
-                        }
-                    } // while true
-                    break;
+            case SUBFUNCTION_GLOBAL_SET_LONG_TOUCH_DOWN_TIMEOUT:
+                if (aParameters[1] <= 0) {
+                    mLongTouchDownTimeoutMillis = 0;
+                    mIsLongTouchEnabled = false;
+                } else {
+                    mLongTouchDownTimeoutMillis = aParameters[1];
+                    mIsLongTouchEnabled = true;
+                }
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Long touch-down timeout=" + mLongTouchDownTimeoutMillis);
+                }
+                break;
 
-                case FUNCTION_DRAW_CHAR:
-                case FUNCTION_DRAW_STRING:
-                    tYStartScaled = aParameters[1] * mScaleFactor;
-                    int tBackgroundColor;
+            case SUBFUNCTION_GLOBAL_SET_SCREEN_ORIENTATION_LOCK:
+                handleScreenOrientationFlags(aParameters[1]);
+                break;
 
-                    if (aParamsLength <= 2) {
-                        /*
-                         * Get the last 3 parameters from preceding command
-                         */
-                        tScaledTextSize = mLastDrawStringTextSize * mScaleFactor;
-                        tColor = mLastDrawStringColor;
-                        tBackgroundColor = mLastDrawStringBackgroundColor;
-                    } else {
-                        if (aCommand != FUNCTION_DRAW_CHAR) {
-                            /*
-                             * Store the last 3 parameters for next command
-                             */
-                            mLastDrawStringTextSize = aParameters[2];
-                            mLastDrawStringColor = aParameters[3];
-                            mLastDrawStringBackgroundColor = aParameters[4];
-                        }
-                        tScaledTextSize = aParameters[2] * mScaleFactor;
-                        tColor = aParameters[3];
-                        tBackgroundColor = aParameters[4];
-                    }
+            case SUBFUNCTION_GLOBAL_SET_MAX_TOUCH_MOVE_RATE:
+                if (aParameters[1] <= 0) {
+                    mMinTouchMoveIntervalMillis = 0;
+                } else {
+                    mMinTouchMoveIntervalMillis = 1000 / aParameters[1];
+                }
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Set max touch move rate=" + aParameters[1] + "/s -> min interval=" + mMinTouchMoveIntervalMillis + " ms");
+                }
+                break;
 
-                    mTextPaint.setTextSize(tScaledTextSize); // will be used below
-                    int tExpandedColor = shortToLongColor(tColor);
+            case SUBFUNCTION_GLOBAL_SET_MULTI_TOUCH_MODE:
+                if (aParameters[1] < MultiTouchBatch.MODE_OFF || aParameters[1] > MultiTouchBatch.MODE_WITH_HISTORY) {
+                    MyLog.e(LOG_TAG, "Multi touch mode=" + aParameters[1] + " not supported. Mode is not changed.");
+                } else {
+                    mMultiTouchBatch.setMode(aParameters[1]);
+                }
+                break;
 
-                    // ascend for draw
-                    tAscend = tScaledTextSize * TEXT_ASCEND_FACTOR;
+            case SUBFUNCTION_GLOBAL_REQUEST_BAUD_RATE:
+                if (isUSBConnected()) {
+                    mBlueDisplayContext.mUSBSerialSocket.handleBaudRateRequest((aParameters[1] & 0xFFFF) * ProtocolConstants.BAUD_RATE_UNIT);
+                } else {
+                    mBlueDisplayContext.mSerialService.writeTwoIntegerEvent(SerialService.EVENT_BAUD_RATE, 0,
+                            ProtocolConstants.BAUD_RATE_STATE_NOT_SUPPORTED);
+                }
+                break;
 
-                    int tDataLength = aDataLength;
-                    if (aCommand == FUNCTION_DRAW_CHAR) {
-                        tFunctionName = "drawChar";
-                        sCharsArray[0] = myConvertChar((byte) aParameters[5]);
-                        tDataLength = 1;
-                    } else {
-                        tFunctionName = "drawString";
-                        myConvertChars(aDataBytes, sCharsArray, tDataLength);
-                    }
-                    tStringParameter = new String(sCharsArray, 0, tDataLength);
+            case SUBFUNCTION_GLOBAL_BAUD_RATE_PROBE:
+                if (isUSBConnected()) {
+                    mBlueDisplayContext.mUSBSerialSocket.handleBaudRateProbe(aParameters[1], aParameters[2]);
+                }
+                break;
 
-                    /*
-                     * Handle special alignments coded in aParameters[0]
-                     */
-                    if (aParameters[0] == STRING_ALIGN_RIGHT_XPOS || aParameters[0] == STRING_ALIGN_MIDDLE_XPOS) {
-                        int tTextPixelLength = (int) ((RPCView.TEXT_WIDTH_FACTOR * tScaledTextSize * tStringParameter.length()) + 0.5);
-                        if (aParameters[0] == STRING_ALIGN_RIGHT_XPOS) {
-                            tXStartScaled = mCurrentCanvasPixelWidth - tTextPixelLength;
-                        } else {
-                            // tXStartScaled == STRING_ALIGN_MIDDLE_XPOS
-                            tXStartScaled = (mCurrentCanvasPixelWidth - tTextPixelLength) / 2;
-                        }
-                    }
+            case SUBFUNCTION_GLOBAL_SET_CRC_FRAMING:
+                // Parser has already switched
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "CRC framing=" + (aParameters[1] != 0));
+                }
+                break;
 
-                    if (MyLog.isDEBUG()) {
-                        MyLog.d(LOG_TAG, tFunctionName + "(\"" + tStringParameter + "\", " + aParameters[0] + ", " + aParameters[1] + ", size=" + mLastDrawStringTextSize + ") color=" + shortToColorString(tColor) + " bg=" + shortToColorString(tBackgroundColor));
-                    }
+            case SUBFUNCTION_GLOBAL_SET_SCREEN_BRIGHTNESS:
+                Window window = mBlueDisplayContext.getWindow();
+                WindowManager.LayoutParams layoutParams = window.getAttributes();
+                // 0 is dark and 100 is full bright, others are user default
+                // Android: A value of less than 0, the default, means to use the preferred screen brightness.
+                // 0 to 1 adjusts the brightness from dark to full bright
+                if (aParameters[1] >= 0 && aParameters[1] <= 100) {
+                    layoutParams.screenBrightness = (float) (aParameters[1] / 100.0);
+                } else {
+                    layoutParams.screenBrightness = -1;
+                }
+                window.setAttributes(layoutParams);
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Set screen brightness 0x" + Integer.toHexString(aParameters[1]) + " -> " + layoutParams.screenBrightness);
+                }
+                break;
 
-                    /*
-                     * Handle background modes
-                     */
-                    int tNewlineIndex = tStringParameter.indexOf('\n');
-                    boolean tDrawBackgroundExtend = false; // true -> draw background for whole rest of line
-                    int tCRIndex = tStringParameter.indexOf('\r');
-                    if (tCRIndex >= 0 && (tCRIndex < tNewlineIndex || tNewlineIndex < 0)) {
-                        tNewlineIndex = tCRIndex;
-                        tDrawBackgroundExtend = true;
-                    }
+            default:
+                MyLog.e(LOG_TAG, "Global settings: unknown subcommand 0x" + Integer.toHexString(tSubcommand) + " received. paramsLength=" + aParamsLength + " dataLength=" + aDataLength);
+                break;
 
-                    boolean tDrawBackground;
-                    if (tBackgroundColor == COLOR16_NO_BACKGROUND) {
-                        tDrawBackground = false;
-                        tDrawBackgroundExtend = false;
-                    } else {
-                        mTextBackgroundStroke1Fill.setColor(shortToLongColor(tBackgroundColor));
-                        tDrawBackground = true;
-                    }
+        }
+    }
 
-                    if (tNewlineIndex > 0) {
-                        int tStartIndex = 0;
+    /*
+     * Activates or deactivates a sensor
+     */
+    private void handleSensorSettings(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        boolean tDoActivate = aParameters[1] != 0;
+        int tFilterFlag = Sensors.FLAG_SENSOR_NO_FILTER;
+        if (aParamsLength == 4) {
+            tFilterFlag = aParameters[3];
+        }
+        mBlueDisplayContext.mSensorEventListener.setSensor(aParameters[0], tDoActivate, aParameters[2], tFilterFlag);
+    }
 
-                        while (tNewlineIndex > 0) {
-                            /*
-                             * Multiline text
-                             */
-                            if (tDrawBackgroundExtend) {
-                                // draw background for whole rest of line. mScaleFactor for lower margin
-                                mCanvas.drawRect(tXStartScaled, tYStartScaled, mCurrentCanvasPixelWidth, tYStartScaled + tScaledTextSize + mScaleFactor, mTextBackgroundStroke1Fill);
-                            } else if (tDrawBackground) {
-                                // draw background only for string except for single newline
-                                if (tStartIndex != tNewlineIndex) {
-                                    float tTextLength = mTextPaint.measureText(tStringParameter, tStartIndex, tNewlineIndex);
-                                    // draw background. mScaleFactor for lower margin
-                                    mCanvas.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled + tScaledTextSize + mScaleFactor, mTextBackgroundStroke1Fill);
+    /*
+     * Clears the display and deactivates all buttons and sliders.
+     * If the client uses layers, the background gets the color and all other layers get transparent.
+     */
+    private void handleClearDisplay(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        if (mLayers.isLayered()) {
+            mCommandRenderer.setDrawTarget(mLayers.getDrawTarget(ProtocolConstants.LAYER_BACKGROUND));
+            try {
+                mCommandRenderer.renderCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+            } finally {
+                mCommandRenderer.setDrawTarget(mLayers.getCurrentDrawTarget());
+            }
+            for (int i = ProtocolConstants.LAYER_BACKGROUND + 1; i < ProtocolConstants.NUMBER_OF_LAYERS; i++) {
+                mLayers.clear(i);
+            }
+            invalidateJournal(); // the journal has no layers
+        } else {
+            mCommandRenderer.renderCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+        }
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Deactivate all buttons and sliders");
+        }
+        TouchButton.deactivateAllButtons(mSession);
+        TouchSlider.deactivateAllSliders(mSession);
+    }
 
-                                }
-                            }
-                            // check for single newline
-                            if (tStartIndex != tNewlineIndex) {
-                                // no single newline, draw string
-                                drawText(tStringParameter, tStartIndex, tNewlineIndex, tXStartScaled, tYStartScaled + tAscend, tScaledTextSize, tExpandedColor);
-                                tYStartScaled += tScaledTextSize + mScaleFactor; // + Margin between lines
-                            }
-                            // search for next newline
-                            tStartIndex = tNewlineIndex + 1;
-                            if (tNewlineIndex + 1 <= tStringParameter.length()) {
-                                tNewlineIndex = tStringParameter.indexOf('\n', tStartIndex);
-                                tDrawBackgroundExtend = false;
-                                tCRIndex = tStringParameter.indexOf('\r', tStartIndex);
-                                if (tCRIndex >= 0 && (tCRIndex < tNewlineIndex || tNewlineIndex < 0)) {
-                                    tNewlineIndex = tCRIndex;
-                                    tDrawBackgroundExtend = true;
-                                }
+    /*
+     * Capture, draw and management of sprites.
+     * The journal can not replay sprites, so drawing one disables the local redraw until the next clear.
+     */
+    private void handleSpriteCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        if (aCommand == FUNCTION_SPRITE_CAPTURE) {
+            if (MyLog.isINFO()) {
+                MyLog.i(LOG_TAG, "captureSprite(" + aParameters[0] + ") at " + aParameters[1] + "/" + aParameters[2] + " size "
+                        + aParameters[3] + "x" + aParameters[4]);
+            }
+            mSpriteStore.capture(aParameters[0], mLayers, mScaleFactor, aParameters[1], aParameters[2], aParameters[3], aParameters[4]);
 
-                                if (tNewlineIndex < 0) {
-                                    tNewlineIndex = tStringParameter.length();
-                                }
-                            } else {
-                                tNewlineIndex = 0;
-                            }
-                        }
-                    } else {
-                        /*
-                         * Single line text
-                         */
-                        if (tDrawBackground) {
-                            float tTextLength = mTextPaint.measureText(tStringParameter);
-                            // draw background. mScaleFactor for lower margin
-                            mCanvas.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled + tScaledTextSize + mScaleFactor, mTextBackgroundStroke1Fill);
-                        }
+        } else if (aCommand == FUNCTION_SPRITE_DRAW) {
+            if (MyLog.isDEBUG()) {
+                MyLog.d(LOG_TAG, "drawSprite(" + aParameters[0] + ") at " + aParameters[1] + "/" + aParameters[2]);
+            }
+            if (mSpriteStore.draw(aParameters[0], mLayers.getCurrentStore(), mScaleFactor, aParameters[1], aParameters[2])) {
+                invalidateJournal();
+            } else {
+                MyLog.w(LOG_TAG, "Sprite " + aParameters[0] + " not found");
+                if (mBlueDisplayContext.mSerialService != null) {
+                    mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_SPRITE_MISSING, aParameters[0]);
+                }
+            }
 
-                        // draw char / string
-                        drawText(tStringParameter, tXStartScaled, tYStartScaled + tAscend, tScaledTextSize, tExpandedColor);
-                    }
+        } else {
+            switch (aParameters[0]) {
+                case SUBFUNCTION_SPRITE_SET_MAX_KBYTES:
+                    mSpriteStore.setMaxBytes(aParameters[1] * 1024);
                     break;
-
-                case FUNCTION_NOP:
-                    if (MyLog.isINFO()) {
-                        MyLog.i(LOG_TAG, "NOP (for sync) received. ParamsLength=" + aParamsLength + " DataLength=" + aDataLength);
-                    }
+                case SUBFUNCTION_SPRITE_REMOVE:
+                    mSpriteStore.remove(aParameters[1]);
+                    break;
+                case SUBFUNCTION_SPRITE_REMOVE_ALL:
+                    mSpriteStore.clear();
                     break;
-
                 default:
-                    MyLog.e(LOG_TAG, "unknown command 0x" + Integer.toHexString(aCommand) + " received. paramsLength=" + aParamsLength + " dataLength=" + aDataLength);
+                    MyLog.e(LOG_TAG, "Sprite settings: unknown subcommand 0x" + Integer.toHexString(aParameters[0]) + " received");
                     break;
             }
-        } catch (Exception e) {
-            MyLog.e(LOG_TAG, "Exception caught for command 0x" + Integer.toHexString(aCommand) + ". paramsLength=" + aParamsLength + " dataLength=" + aDataLength + " Exception=" + e);
         }
-        // long tEnd = System.nanoTime();
-        // Log.i(LOG_TAG, "Interpret=" + (tEnd - tStart));
+    }
+
+    /*
+     * Recording and management of display lists. While recording, all other commands are recorded instead of interpreted,
+     * except if DISPLAY_LIST_FLAG_EXECUTE_WHILE_RECORDING is set.
+     */
+    private void handleDisplayListSettings(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                           int aDataLength) {
+        switch (aParameters[0]) {
+            case SUBFUNCTION_DISPLAY_LIST_START_RECORDING:
+                boolean tExecute = aParamsLength > 2 && (aParameters[2] & DISPLAY_LIST_FLAG_EXECUTE_WHILE_RECORDING) != 0;
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Start recording of display list " + aParameters[1] + " execute=" + tExecute);
+                }
+                if (mDisplayListStore.isRecording()) {
+                    endDisplayListRecording();
+                }
+                mDisplayListStore.startRecording(aParameters[1], tExecute);
+                break;
+            case SUBFUNCTION_DISPLAY_LIST_END_RECORDING:
+                endDisplayListRecording();
+                break;
+            case SUBFUNCTION_DISPLAY_LIST_REMOVE:
+                mDisplayListStore.remove(aParameters[1]);
+                break;
+            case SUBFUNCTION_DISPLAY_LIST_REMOVE_ALL:
+                mDisplayListStore.clear();
+                break;
+            default:
+                MyLog.e(LOG_TAG, "Display list settings: unknown subcommand 0x" + Integer.toHexString(aParameters[0]) + " received");
+                break;
+        }
+    }
+
+    /*
+     * Reports a recording, which was discarded because it exceeded the store size, to the client
+     */
+    private void endDisplayListRecording() {
+        int tId = mDisplayListStore.getRecordingId();
+        if (!mDisplayListStore.endRecording()) {
+            MyLog.w(LOG_TAG, "Recording of display list " + tId + " was discarded");
+            if (mBlueDisplayContext.mSerialService != null) {
+                mBlueDisplayContext.mSerialService.writeOneIntegerEvent(SerialService.EVENT_DISPLAY_LIST_DISCARDED, tId);
+            }
+        }
+    }
+
+    /*
+     * Replays the commands of a display list with optional offset and color substitution
+     */
+    private void handleDisplayListReplay(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                         int aDataLength) {
+        int tXOffset = 0;
+        int tYOffset = 0;
+        if (aParamsLength >= 3) {
+            tXOffset = aParameters[1];
+            tYOffset = aParameters[2];
+        }
+        int tOldColor = DisplayListStore.NO_COLOR_SUBSTITUTION;
+        int tNewColor = 0;
+        if (aParamsLength >= 5) {
+            tOldColor = aParameters[3] & 0xFFFF;
+            tNewColor = aParameters[4];
+        }
+        if (MyLog.isDEBUG()) {
+            MyLog.d(LOG_TAG, "Replay display list " + aParameters[0] + " offset=" + tXOffset + "/" + tYOffset);
+        }
+        mDisplayListStore.replay(aParameters[0], tXOffset, tYOffset, tOldColor, tNewColor, mOpcodeRegistry::dispatch);
+    }
+
+    /*
+     * Sets stroke width and color of one of the line paints
+     */
+    private void handleLineSettings(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "setPaint[" + aParameters[0] + "] stroke=" + aParameters[1] + "] color= " + shortToColorString(aParameters[2]));
+        }
+        int tLineArrayIndex = aParameters[0];
+        if (tLineArrayIndex >= NUMBER_OF_SUPPORTED_LINES) {
+            tLineArrayIndex = 0;
+        }
+        mDrawLineInfoArray[tLineArrayIndex].mPaint.setStrokeWidth(Math.round(aParameters[1] * mScaleFactor));
+        mDrawLineInfoArray[tLineArrayIndex].mPaint.setColor(shortToLongColor(aParameters[2]));
+    }
+
+    /*
+     * Shows the string as toast and logs it
+     */
+    private void handleDebugString(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        String tStringParameter = new String(aDataBytes, 0, aDataLength);
+        // Show new values as toast for at least 500 ms, i.e. subsequent debugs are suppressed during 500 ms
+        showAsDebugToast(tStringParameter);
+        // Output as warning in order to enable easier finding and filtering the message in log
+        MyLog.w(LOG_TAG, "DebugString=\"" + tStringParameter + "\"");
+    }
+
+    /*
+     * NOP is only used for syncing
+     */
+    private void handleNop(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "NOP (for sync) received. ParamsLength=" + aParamsLength + " DataLength=" + aDataLength);
+        }
+    }
+
+    private void handleUnknownCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        MyLog.e(LOG_TAG, "unknown command 0x" + Integer.toHexString(aCommand) + " received. paramsLength=" + aParamsLength + " dataLength=" + aDataLength);
     }
 
     /*
@@ -2585,36 +2176,121 @@ public class RPCView extends View {
         }
     }
 
+    /**
+     * Measures the time per command only for debug logging or if the statistics were shown,
+     * since it costs two System.nanoTime() calls per command.
+     */
+    void updateOpcodeProfiling() {
+        mOpcodeRegistry.setProfilingEnabled(mIsStatisticsShown || MyLog.isDEBUG());
+    }
+
+    /**
+     * Enables the command journal, which allows a sharp local redraw after a change of the scale factor
+     */
+    void setLocalRedrawEnabled(boolean aEnable) {
+        if (aEnable == (mCommandRenderer.getJournal() != null)) {
+            return;
+        }
+        /*
+         * A new journal is incomplete until the next clear
+         */
+        mCommandRenderer.setJournal(aEnable ? new CommandJournal() : null);
+    }
+
+    /*
+     * Select, clear color and clear of canvas layers.
+     * The journal does not know layers, so a client using them disables the local redraw.
+     */
+    private void handleLayerSettings(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        int tLayer = aParameters[1];
+        if (tLayer < 0 || tLayer >= ProtocolConstants.NUMBER_OF_LAYERS) {
+            MyLog.e(LOG_TAG, "Layer settings: layer " + tLayer + " is not in range 0 to " + (ProtocolConstants.NUMBER_OF_LAYERS - 1));
+            return;
+        }
+        switch (aParameters[0]) {
+            case SUBFUNCTION_LAYER_SELECT:
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Select layer " + tLayer);
+                }
+                mLayers.select(tLayer);
+                mCommandRenderer.setDrawTarget(mLayers.getCurrentDrawTarget());
+                invalidateJournal();
+                break;
+
+            case SUBFUNCTION_LAYER_SET_CLEAR_COLOR:
+                int tColor = aParameters[2];
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Set clear color of layer " + tLayer + " to 0x" + Integer.toHexString(tColor));
+                }
+                mLayers.setClearColor(tLayer, (tColor == COLOR16_NO_DELETE ? ClearColorDrawTarget.NO_CLEAR_COLOR : shortToLongColor(tColor)));
+                break;
+
+            case SUBFUNCTION_LAYER_CLEAR:
+                if (MyLog.isINFO()) {
+                    MyLog.i(LOG_TAG, "Clear layer " + tLayer);
+                }
+                mLayers.clear(tLayer);
+                invalidateJournal();
+                break;
+
+            default:
+                MyLog.e(LOG_TAG, "Layer settings: unknown subcommand 0x" + Integer.toHexString(aParameters[0]) + " received");
+                break;
+        }
+    }
+
+    /*
+     * Buttons and sliders are drawn to the widget layer, if the client uses layers.
+     * Not while rendering a button bitmap.
+     * @return the draw target to restore or null
+     */
+    private DrawTarget selectWidgetDrawTarget() {
+        DrawTarget tDrawTarget = mCommandRenderer.getDrawTarget();
+        if (!mLayers.isLayered() || tDrawTarget == mButtonCacheDrawTarget) {
+            return null;
+        }
+        mCommandRenderer.setDrawTarget(mLayers.getDrawTarget(mLayers.getWidgetLayer()));
+        return tDrawTarget;
+    }
+
+    private void restoreDrawTarget(DrawTarget aDrawTarget) {
+        if (aDrawTarget != null) {
+            mCommandRenderer.setDrawTarget(aDrawTarget);
+        }
+    }
+
+    private void invalidateJournal() {
+        CommandJournal tJournal = mCommandRenderer.getJournal();
+        if (tJournal != null) {
+            tJournal.invalidate();
+        }
+    }
+
     public void fillRectRel(float aXStart, float aYStart, float aWidth, float aHeight,
                             int aColor) {
-        mPaintStroke1Fill.setColor(aColor);
-        mCanvas.drawRect(aXStart * mScaleFactor, aYStart * mScaleFactor, (aXStart + aWidth) * mScaleFactor, (aYStart + aHeight) * mScaleFactor, mPaintStroke1Fill);
+        DrawTarget tDrawTarget = selectWidgetDrawTarget();
+        mCommandRenderer.fillRectRel(aXStart, aYStart, aWidth, aHeight, aColor);
+        restoreDrawTarget(tDrawTarget);
     }
 
     public void fillRect(float aXStart, float aYStart, float aXEnd, float aYEnd, int aColor) {
-        mPaintStroke1Fill.setColor(aColor);
-        mCanvas.drawRect(aXStart * mScaleFactor, aYStart * mScaleFactor, aXEnd * mScaleFactor, aYEnd * mScaleFactor, mPaintStroke1Fill);
+        DrawTarget tDrawTarget = selectWidgetDrawTarget();
+        mCommandRenderer.fillRect(aXStart, aYStart, aXEnd, aYEnd, aColor);
+        restoreDrawTarget(tDrawTarget);
     }
 
     public void drawText(String aText, float aScaledPosX, float aScaledPosY,
                          float aScaledTextSize, int aColor) {
-        mTextPaint.setTextSize(aScaledTextSize);
-        mTextPaint.setColor(aColor);
-
-        while (aScaledPosX >= mCurrentCanvasPixelWidth) {
-            // Wrap around
-            aScaledPosX -= mCurrentCanvasPixelWidth;
-        }
-        while (aScaledPosY >= mCurrentCanvasPixelHeight) {
-            // Wrap around
-            aScaledPosY -= mCurrentCanvasPixelHeight;
-        }
-        mCanvas.drawText(aText, aScaledPosX, aScaledPosY, mTextPaint);
+        DrawTarget tDrawTarget = selectWidgetDrawTarget();
+        mCommandRenderer.drawText(aText, aScaledPosX, aScaledPosY, aScaledTextSize, aColor);
+        restoreDrawTarget(tDrawTarget);
     }
 
     public void drawText(String aText, int aStartIndex, int aEndIndexNotIncluded,
                          float aScaledPosX, float aScaledPosY, float aScaledTextSize, int aColor) {
-        drawText(aText.substring(aStartIndex, aEndIndexNotIncluded), aScaledPosX, aScaledPosY, aScaledTextSize, aColor);
+        DrawTarget tDrawTarget = selectWidgetDrawTarget();
+        mCommandRenderer.drawText(aText, aStartIndex, aEndIndexNotIncluded, aScaledPosX, aScaledPosY, aScaledTextSize, aColor);
+        restoreDrawTarget(tDrawTarget);
     }
 
     /*
@@ -2622,52 +2298,187 @@ public class RPCView extends View {
      */
     public void drawTextWithBackground(float aPosX, float aPosY, String aText, float aTextSize,
                                        int aColor, int aBGColor) {
-        aPosX *= mScaleFactor;
-        aPosY *= mScaleFactor;
-        aTextSize *= mScaleFactor;
-        mTextPaint.setTextSize(aTextSize);
-        mTextPaint.setColor(aColor);
+        DrawTarget tDrawTarget = selectWidgetDrawTarget();
+        mCommandRenderer.drawTextWithBackground(aPosX, aPosY, aText, aTextSize, aColor, aBGColor);
+        restoreDrawTarget(tDrawTarget);
+    }
+
+    /*
+     * Button cache support
+     */
+
+    /**
+     * @return the unscaled length of the text, as drawn by drawTextWithBackground()
+     */
+    float measureButtonText(String aText, int aTextSize) {
+        return mButtonCacheDrawTarget.measureText(aText, 0, aText.length(), aTextSize * mScaleFactor) / mScaleFactor;
+    }
 
-        // draw background
-        // ascend for background color. + mScaleFactor for upper margin
-//        float tAscend = (aTextSize * TEXT_ASCEND_FACTOR) + mScaleFactor;
-        // ascend for background color
-        float tAscend = (aTextSize * TEXT_ASCEND_FACTOR);
-        float tDescend = aTextSize * TEXT_DESCEND_FACTOR;
-        float tTextLength = mTextPaint.measureText(aText);
-        mTextBackgroundStroke1Fill.setColor(aBGColor);
-        mCanvas.drawRect(aPosX, aPosY - tAscend, aPosX + tTextLength, aPosY + tDescend, mTextBackgroundStroke1Fill);
+    /**
+     * Renders the button with the current scale factor into a new bitmap, which covers the button area.
+     * The drawings are recorded in mButtonJournal instead of the journal.
+     */
+    Bitmap renderButtonBitmap(TouchButton aButton) {
+        int tLeft = (int) (aButton.mPositionX * mScaleFactor);
+        int tTop = (int) (aButton.mPositionY * mScaleFactor);
+        int tRight = (int) Math.ceil((aButton.mPositionX + aButton.mWidth) * mScaleFactor);
+        int tBottom = (int) Math.ceil((aButton.mPositionY + aButton.mHeight) * mScaleFactor);
+        Bitmap tBitmap = Bitmap.createBitmap(Math.max(tRight - tLeft, 1), Math.max(tBottom - tTop, 1), Bitmap.Config.ARGB_8888);
+        Canvas tCanvas = new Canvas(tBitmap);
+        // Pixel positions are the same as if drawn on the canvas layers
+        tCanvas.translate(-tLeft, -tTop);
+        mButtonCacheDrawTarget.setCanvas(tCanvas);
+
+        CommandJournal tJournal = mCommandRenderer.getJournal();
+        DrawTarget tDrawTarget = mCommandRenderer.getDrawTarget();
+        mCommandRenderer.setDrawTarget(mButtonCacheDrawTarget);
+        mButtonJournal.startPart();
+        mCommandRenderer.setJournal(mButtonJournal);
+        try {
+            aButton.drawButtonUncached();
+        } finally {
+            mCommandRenderer.setDrawTarget(tDrawTarget);
+            mCommandRenderer.setJournal(tJournal);
+            mButtonCacheDrawTarget.setCanvas(null);
+        }
+        return tBitmap;
+    }
 
-        mCanvas.drawText(aText, aPosX, aPosY, mTextPaint);
+    /**
+     * Queues the bitmap created by renderButtonBitmap() for drawing at the next flush and appends the journal entries
+     * recorded by renderButtonBitmap() to the journal.
+     *
+     * @param aJournalEntries null if the entries did not fit into mButtonJournal, then the button is recorded again
+     */
+    void drawButtonBitmap(TouchButton aButton, Bitmap aBitmap, byte[] aJournalEntries, int aNumberOfJournalEntries) {
+        mLayers.getStore(mLayers.getWidgetLayer()).queueBitmap(aBitmap, (int) (aButton.mPositionX * mScaleFactor), (int) (aButton.mPositionY * mScaleFactor));
+        CommandJournal tJournal = mCommandRenderer.getJournal();
+        if (tJournal == null) {
+            return;
+        }
+        if (aJournalEntries != null) {
+            tJournal.appendEntries(aJournalEntries, aNumberOfJournalEntries);
+        } else {
+            mCommandRenderer.setRecordOnly(true);
+            try {
+                aButton.drawButtonUncached();
+            } finally {
+                mCommandRenderer.setRecordOnly(false);
+            }
+        }
     }
 
     void initCharMappingArray() {
-        /*
-         * initialize mapping array with current codepage chars
-         */
-        short tUnicodeChar = 0x0080;
-        for (int i = 0; i < mCharMappingArray.length; i++) {
-            mCharMappingArray[i] = (char) tUnicodeChar;
-            tUnicodeChar++;
+        mCommandRenderer.initCharMappingArray();
+    }
+
+    /**
+     * Copies bitmap and widget state for DisplaySnapshot. Must be called in the UI thread.
+     *
+     * @return null if there is nothing to save
+     */
+    DisplaySnapshot createSnapshot(String aConnectionId) {
+        ByteArrayOutputStream tWidgetState = new ByteArrayOutputStream(1024);
+        DataOutputStream tOut = new DataOutputStream(tWidgetState);
+        try {
+            tOut.writeBoolean(mUseMaxSize);
+            tOut.writeBoolean(mTouchBasicEnable);
+            tOut.writeBoolean(mTouchMoveEnable);
+            tOut.writeBoolean(mIsLongTouchEnabled);
+            tOut.writeLong(mLongTouchDownTimeoutMillis);
+            tOut.writeBoolean(mUseUpEventForButtons);
+            tOut.writeInt(mMinTouchMoveIntervalMillis);
+            tOut.writeInt(mMultiTouchBatch.mMode);
+            TouchButton.writeButtonList(mSession, tOut);
+            TouchSlider.writeSliderList(mSession, tOut);
+            tOut.close();
+        } catch (IOException e) {
+            // not expected for a ByteArrayOutputStream
+            MyLog.e(LOG_TAG, "Cannot serialize widget state " + e);
+            return null;
+        }
+        Bitmap tBitmapCopy = mLayers.copyRegion(0, 0, mLayers.getWidth(), mLayers.getHeight());
+        return new DisplaySnapshot(aConnectionId, mRequestedCanvasWidth, mRequestedCanvasHeight, mScaleFactor,
+                tWidgetState.toByteArray(), tBitmapCopy);
+    }
+
+    /**
+     * Restores geometry, widgets and bitmap of a snapshot, which was read at connect.
+     * Must be called in the UI thread after resetAll() and before commands of the client are interpreted.
+     */
+    void applySnapshot(DisplaySnapshot aSnapshot) {
+        DataInputStream tIn = new DataInputStream(new ByteArrayInputStream(aSnapshot.mWidgetState));
+        try {
+            mUseMaxSize = tIn.readBoolean();
+            mTouchBasicEnable = tIn.readBoolean();
+            mTouchMoveEnable = tIn.readBoolean();
+            mIsLongTouchEnabled = tIn.readBoolean();
+            mLongTouchDownTimeoutMillis = tIn.readLong();
+            mUseUpEventForButtons = tIn.readBoolean();
+            mMinTouchMoveIntervalMillis = tIn.readInt();
+            mMultiTouchBatch.mMode = tIn.readInt();
+            TouchButton.readButtonList(this, tIn);
+            TouchSlider.readSliderList(this, tIn);
+        } catch (IOException e) {
+            MyLog.e(LOG_TAG, "Cannot restore widget state of snapshot " + e);
+            resetAll();
+            aSnapshot.mBitmap.recycle();
+            return;
+        }
+
+        mRequestedCanvasWidth = aSnapshot.mRequestedCanvasWidth;
+        mRequestedCanvasHeight = aSnapshot.mRequestedCanvasHeight;
+        setMaxScaleFactor();
+        mScaleFactor = 0.4711f; // force resize in setScaleFactor()
+        setScaleFactor(aSnapshot.mScaleFactor, false);
+
+        // The view size may have changed since the snapshot was taken
+        mLayers.getCurrentStore().drawBitmap(aSnapshot.mBitmap, null, new RectF(0, 0, mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight),
+                mBitmapPaint);
+        aSnapshot.mBitmap.recycle();
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Restored snapshot of " + aSnapshot.mConnectionId + " with " + mSession.mButtonList.size()
+                    + " buttons and canvas " + mRequestedCanvasWidth + " x " + mRequestedCanvasHeight);
         }
+        invalidate();
     }
 
+    /*
+     * Called at connect and by the client. Starts a new session.
+     */
     protected void resetAll() {
         mBlueDisplayContext.mOrientationIsLockedByClient = false;
         TouchButton.resetButtons(this);
-        TouchSlider.resetSliders();
+        TouchSlider.resetSliders(mSession);
+        mSession = new ClientSession();
         Sensors.disableAllSensors();
         resetFlags();
         initCharMappingArray();
         resetChartHistory();
+        invalidateJournal();
+        mSpriteStore.clear();
+        mSpriteStore.setMaxBytes(SpriteStore.DEFAULT_MAX_BYTES);
+        mDisplayListStore.clear();
+        mLayers.reset();
+        mCommandRenderer.setDrawTarget(mLayers.getCurrentDrawTarget());
         if (MyLog.isINFO()) {
             MyLog.i(LOG_TAG, "Reset all");
         }
     }
 
     private void resetChartHistory() {
-        for (int i = 0; i < NUMBER_OF_LINES_SUPPORTED; i++) {
-            mChartScreenBufferContainsOldData[i] = false;
+        mCommandRenderer.resetChartHistory();
+    }
+
+    /**
+     * Called at disconnect, after the snapshot is written. Releases the buffers, which are only required while the client
+     * is connected. The widgets are kept until the next connect. Must be called in the UI thread.
+     */
+    void releaseSessionBuffers() {
+        mSession.releaseBuffers();
+        mCommandRenderer.releaseChartBuffers();
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Released session buffers");
         }
     }
 
@@ -2677,6 +2488,8 @@ public class RPCView extends View {
         mTouchMoveEnable = true;
         mIsLongTouchEnabled = false;
         mUseUpEventForButtons = false;
+        mMinTouchMoveIntervalMillis = 0;
+        mMultiTouchBatch.reset();
     }
 
     private void setFlags(int aFlags) {
@@ -2770,7 +2583,9 @@ public class RPCView extends View {
 
     public void showTestpage() {
 
-        mCanvas.drawColor(Color.WHITE); // clear screen
+        mLayers.getCurrentDrawTarget().drawColor(Color.WHITE); // clear screen
+        invalidateJournal(); // the test page draws directly to the canvas
+        mSession.mCanvasChangeCount++;
 
         // showGraphTestpage
         MyLog.i(LOG_TAG, "mScaleFactor=" + mScaleFactor);
@@ -2779,258 +2594,19 @@ public class RPCView extends View {
 
         tY = (int) ((drawFontTest(tY) / mScaleFactor) + 10); // scale since the next tests run with functions using mScaleFactor
 
-        // The unscaled logo is 450 * 350 and has a left border of 50 and a upper border of 100
-        int tScaleDivisor = 5;
-        // Place it at the lower right corner
-        drawLogo(mRequestedCanvasWidth - (500 / tScaleDivisor) - 2, mRequestedCanvasHeight - (450 / tScaleDivisor) - 2, tScaleDivisor);
-        testBDFunctions(5, tY, TEST_CANVAS_HEIGHT, false);
+        // Logo at the lower right corner and the test of the display commands
+        TestPage.drawCommandPart(this, mLayers.getCurrentDrawTarget(), mScaleFactor, mRequestedCanvasWidth, mRequestedCanvasHeight, tY);
 
         invalidate(); // Show the testpage
     }
 
-    /*
-     * Start at bottom of page with a Box
-     */
-    void testBDFunctions(int aStartX, int aStartY, int aCanvasHeight,
-                         boolean aCompatibilityMode) {
-
-        int tModeCharacter = 0x4E; // Character 'N'
-        if (aCompatibilityMode) {
-            tModeCharacter = 0x43; // Character 'C'
-        }
-
-        byte[] tByteBuffer = "Testy56789".getBytes();
-        tByteBuffer[5] = (byte) 0x81; // Omega manually set
-        tByteBuffer[6] = (byte) 0x82; // Home
-        tByteBuffer[7] = (byte) 0xB1; // +/-
-        tByteBuffer[8] = (byte) 0xBB; // >>
-        tByteBuffer[9] = (byte) 0xB5; // micro
-
-        int[] tParameters = new int[6];
-
-        // get current canvas for drawing reference lines
-        Canvas tCanvas = new Canvas(mBitmap);
-        Paint tGraph1Paint = new Paint();
-        tGraph1Paint.setColor(Color.BLACK);
-        tGraph1Paint.setStyle(Paint.Style.STROKE);
-        tGraph1Paint.setStrokeWidth(1);
-
-        /*
-         * direct draw reference line at start
-         * Here we use scale factor since we use native Android functions
-         */
-        tCanvas.drawLine(aStartX, mScaleFactor * aStartY, aStartX + 30, mScaleFactor * aStartY, tGraph1Paint);
-
-        int tStartX = aStartX + 12;
-
-        // draw square box
-        tParameters[0] = tStartX;
-        tParameters[1] = aStartY;
-        tParameters[2] = tStartX + 10;
-        tParameters[3] = aStartY;
-        tParameters[4] = 0; // Color black
-        interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
-        tParameters[0] = tParameters[2] = tStartX;
-        tParameters[1] = aStartY + 1;
-        tParameters[3] = aStartY + 10;
-        tParameters[4] = 0x7E0; // Color green
-        interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
-        tParameters[0] = tParameters[2] = tStartX + 10;
-        interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
-        tParameters[1] = tParameters[3] = aStartY + 10;
-        tParameters[0] = tStartX + 1;
-        tParameters[2] = tStartX + 9;
-        tParameters[4] = 0xF800; // Color red
-        // red bottom line as rect
-        interpretCommand(FUNCTION_FILL_RECT, tParameters, 6, tByteBuffer, null, 0);
-
-        // draw 2 border points outside box
-        tCanvas.drawPoint(mScaleFactor * tStartX - 1, mScaleFactor * aStartY - 1, tGraph1Paint); // 1
-        // pixel
-        tCanvas.drawPoint(mScaleFactor * tStartX + mScaleFactor * (10 + 1), mScaleFactor * aStartY + mScaleFactor * (10 + 1), tGraph1Paint); // 1
-        // pixel
-
-        // draw bigger rect outside
-        tParameters[0] = tStartX - 2;
-        tParameters[2] = tStartX + 12;
-        tParameters[1] = aStartY - 2;
-        tParameters[3] = aStartY + 12;
-        tParameters[4] = 0xF800; // Color red
-        interpretCommand(FUNCTION_DRAW_RECT, tParameters, 6, tByteBuffer, null, 0);
-
-        // fill with red square
-        tParameters[0] = tStartX + 2;
-        tParameters[2] = tStartX + 8;
-        tParameters[1] = aStartY + 2;
-        tParameters[3] = aStartY + 8;
-        tParameters[4] = 0xF800; // Color red
-        interpretCommand(FUNCTION_FILL_RECT, tParameters, 6, tByteBuffer, null, 0);
-
-        // fill with black circle
-        tParameters[0] = tStartX + 5;
-        tParameters[1] = aStartY + 5;
-        tParameters[2] = 3; // radius
-        tParameters[3] = 0;
-        interpretCommand(FUNCTION_DRAW_CIRCLE, tParameters, 6, tByteBuffer, null, 0);
-
-        // and draw center point
-        tCanvas.drawPoint(mScaleFactor * tStartX + mScaleFactor * 5, mScaleFactor * aStartY + mScaleFactor * 5, tGraph1Paint); // 1
-
-        /*
-         * Thick line
-         */
-        tParameters[0] = tStartX + 50;
-        tParameters[1] = aStartY + 30;
-        tParameters[2] = tStartX + 70;
-        tParameters[3] = aStartY + 40;
-        tParameters[4] = 0; // Color black
-        tParameters[5] = 5; // Stroke width
-        interpretCommand(FUNCTION_DRAW_LINE, tParameters, 6, tByteBuffer, null, 0);
-
-        // draw char + string
-        tParameters[0] = tStartX + 15;
-        tParameters[1] = aStartY;
-        tParameters[2] = 11; // Size
-        tParameters[3] = 0; // Color black
-        tParameters[4] = 0x1F; // Background color blue
-        tParameters[5] = tModeCharacter;
-        interpretCommand(FUNCTION_DRAW_CHAR, tParameters, 6, tByteBuffer, null, 0);
-
-        // ISO_8859_15
-        tParameters[0] = SUBFUNCTION_GLOBAL_SET_CODEPAGE;
-        tParameters[1] = 15;
-        interpretCommand(FUNCTION_GLOBAL_SETTINGS, tParameters, 1, tByteBuffer, null, 0);
-
-        tParameters[0] = SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING;
-        tParameters[1] = 0x81;
-        tParameters[2] = 0x03A9; // Omega in UTF16
-        interpretCommand(FUNCTION_GLOBAL_SETTINGS, tParameters, 2, tByteBuffer, null, 0);
-
-        tParameters[0] = SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING;
-        tParameters[1] = 0x82;
-        tParameters[2] = 0x2302; // House in UTF16
-        interpretCommand(FUNCTION_GLOBAL_SETTINGS, tParameters, 2, tByteBuffer, null, 0);
-
-        tParameters[0] = tStartX + 30;
-        tParameters[1] = aStartY;
-        tParameters[2] = 11; // Size
-        interpretCommand(FUNCTION_DRAW_STRING, tParameters, 6, tByteBuffer, null, tByteBuffer.length);
-
-        // generate chart data
-        byte[] tChartBuffer = new byte[aCanvasHeight / 2];
-        for (int i = 0; i < tChartBuffer.length; i++) {
-            tChartBuffer[i] = (byte) ((i + aStartY) % (aCanvasHeight / 2));
-        }
-        // DrawChart
-        tParameters[0] = 0;
-        tParameters[1] = (aCanvasHeight / 2);
-        tParameters[2] = 0; // Color black
-        tParameters[3] = 0; // No clearing of old chart
-        interpretCommand(FUNCTION_DRAW_CHART, tParameters, 4, tChartBuffer, null, tChartBuffer.length);
-
-        // Draw Z shaped chart
-        tChartBuffer[0] = (byte) 3;
-        tChartBuffer[1] = (byte) 2;
-        tChartBuffer[2] = (byte) 1;
-        tChartBuffer[3] = (byte) 0;
-        tChartBuffer[4] = (byte) (aCanvasHeight / 2);
-        tChartBuffer[5] = (byte) ((aCanvasHeight / 2) - 1);
-        tChartBuffer[6] = (byte) ((aCanvasHeight / 2) - 2);
-        tChartBuffer[7] = (byte) ((aCanvasHeight / 2) - 3);
-
-        tParameters[0] = (aStartY % 30) + tChartBuffer.length;
-        interpretCommand(FUNCTION_DRAW_CHART, tParameters, 4, tChartBuffer, null, 8);
-
-        /*
-         * compare chart + lines
-         */
-        tChartBuffer[0] = (byte) (aCanvasHeight / 2 + (aStartY % 30));
-        tChartBuffer[1] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 2);
-        tChartBuffer[2] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 4);
-        tChartBuffer[3] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 8);
-        tChartBuffer[4] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 16);
-        tChartBuffer[5] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 10);
-        tChartBuffer[6] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 16);
-        tChartBuffer[7] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 10);
-        tChartBuffer[8] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 6);
-        tChartBuffer[9] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 2);
-        tChartBuffer[10] = (byte) (aCanvasHeight / 2 + (aStartY % 30));
-
-        tParameters[0] = 90;
-        tParameters[1] = aCanvasHeight / 2 + (aStartY % 30);
-        tParameters[2] = 11; // Size
-        tParameters[3] = 0; // Color black
-        tParameters[4] = 0x1F; // Background color blue
-        tParameters[5] = tModeCharacter;
-        interpretCommand(FUNCTION_DRAW_CHAR, tParameters, 6, tByteBuffer, null, 0);
-
-        tParameters[4] = 0xF800; // Color red
-        for (int i = 0; i < 10; i++) {
-            tParameters[0] = 100 + i;
-            tParameters[1] = convertByteToInt(tChartBuffer[i]);
-            tParameters[2] = tParameters[0] + 1;
-            tParameters[3] = convertByteToInt(tChartBuffer[i + 1]);
-            interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
-        }
-
-        // DrawChart
-        tParameters[0] = 100;
-        tParameters[1] = 0;
-        tParameters[2] = 0; // Color black
-        tParameters[3] = 0; // No clearing of old chart
-        interpretCommand(FUNCTION_DRAW_CHART, tParameters, 4, tChartBuffer, null, 11);
-    }
-
-    /*
-     * The unscaled logo is 450 * 350 and has a left border of 50 and a upper border of 100
-     */
-    private void drawLogo(int aStartX, int aStartY, int aScaleDivisor) {
-        int[] tParameters = new int[6];
-        int[] tPathParameters = new int[6];
-
-        // blue rectangle
-        tParameters[0] = 50 / aScaleDivisor + aStartX;
-        tParameters[1] = 330 / aScaleDivisor + aStartY;
-        tParameters[2] = 450 / aScaleDivisor;
-        tParameters[3] = 120 / aScaleDivisor;
-        tParameters[4] = 0x1F; // Color blue
-        interpretCommand(FUNCTION_FILL_RECT_REL, tParameters, 5, null, null, 0);
-        tParameters[4] = 0; // Color black
-        tParameters[5] = 1; // Stroke width for Draw...
-        interpretCommand(FUNCTION_DRAW_RECT_REL, tParameters, 5, null, null, 0);
-
-        // red triangle
-        tParameters[0] = 0xF800; // Color red
-        tPathParameters[0] = 50 / aScaleDivisor + aStartX;
-        tPathParameters[1] = 100 / aScaleDivisor + aStartY;
-        tPathParameters[2] = 230 / aScaleDivisor + aStartX;
-        tPathParameters[3] = 440 / aScaleDivisor + aStartY;
-        tPathParameters[4] = 450 / aScaleDivisor + aStartX;
-        tPathParameters[5] = 330 / aScaleDivisor + aStartY;
-        interpretCommand(FUNCTION_FILL_PATH, tParameters, 1, null, tPathParameters, 6);
-        // black border
-        tParameters[0] = 0x00; // Color black
-        tParameters[1] = 1; // Stroke width for Draw...
-        interpretCommand(FUNCTION_DRAW_PATH, tParameters, 2, null, tPathParameters, 6);
-
-        // yellow circle
-        tParameters[0] = 160 / aScaleDivisor + aStartX;
-        tParameters[1] = 210 / aScaleDivisor + aStartY;
-        tParameters[2] = 110 / aScaleDivisor;
-        tParameters[3] = 0XFFE0; // Color yellow
-
-        interpretCommand(FUNCTION_FILL_CIRCLE, tParameters, 4, null, tPathParameters, 6);
-        tParameters[3] = 0x00; // Color black
-        tParameters[4] = 1; // Stroke width for Draw..
-        interpretCommand(FUNCTION_DRAW_CIRCLE, tParameters, 2, null, tPathParameters, 6);
-    }
-
     /**
      * @return next free y position
      */
     public int drawGraphTestPattern() {
         int tTextSize = 11;
-        Canvas tCanvas = new Canvas(mBitmap);
+        Picture tPicture = new Picture();
+        Canvas tCanvas = tPicture.beginRecording(mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight);
 
         Paint tTextPaint = new Paint();
         tTextPaint.setStyle(Paint.Style.FILL);
@@ -3308,9 +2884,24 @@ public class RPCView extends View {
             }
             startXFloat += 10;
         }
+        tPicture.endRecording();
+        drawPictureOnTiles(tPicture);
         return (int) (tYPos + 12);
     }
 
+    /*
+     * The test patterns draw with their own Paints, so they are recorded and then played back on each tile
+     */
+    private void drawPictureOnTiles(final Picture aPicture) {
+        TiledBackingStore tStore = mLayers.getCurrentStore();
+        tStore.drawOnTiles(0, 0, tStore.getWidth(), tStore.getHeight(), new TiledBackingStore.CanvasDrawer() {
+            @Override
+            public void draw(Canvas aCanvas) {
+                aCanvas.drawPicture(aPicture);
+            }
+        });
+    }
+
     /**
      * Font size and background test
      *
@@ -3320,7 +2911,8 @@ public class RPCView extends View {
     public int drawFontTest(float aYStartPosition) {
         float tTextSize = 11;
         float tTextSizeInfo = 15;
-        Canvas tCanvas = new Canvas(mBitmap);
+        Picture tPicture = new Picture();
+        Canvas tCanvas = tPicture.beginRecording(mCurrentCanvasPixelWidth, mCurrentCanvasPixelHeight);
 
         Paint tTextPaint = new Paint();
         tTextPaint.setStyle(Paint.Style.FILL);
@@ -3441,6 +3033,8 @@ public class RPCView extends View {
         }
         tCanvas.drawLine(startX + 3, tYPos, startX + 20, tYPos, tStroke1UnaliasedPaint); // Base line
 
+        tPicture.endRecording();
+        drawPictureOnTiles(tPicture);
         MyLog.i(LOG_TAG, "Font test last tYPos=" + tYPos);
         return (int) (tYPos + tTextSize);
     }
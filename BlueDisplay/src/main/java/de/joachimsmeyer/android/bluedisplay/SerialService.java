@@ -33,6 +33,17 @@ import android.util.Log;
 
 import com.hoho.android.usbserial.util.SerialInputOutputManager;
 
+import de.joachimsmeyer.android.bluedisplay.protocol.BaudRateNegotiator;
+import de.joachimsmeyer.android.bluedisplay.protocol.CommandParser;
+import de.joachimsmeyer.android.bluedisplay.protocol.CompactingReceiveBuffer;
+import de.joachimsmeyer.android.bluedisplay.protocol.EventEncoder;
+import de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants;
+import de.joachimsmeyer.android.bluedisplay.protocol.ReceiveBuffer;
+import de.joachimsmeyer.android.bluedisplay.protocol.Transport;
+import de.joachimsmeyer.android.bluedisplay.protocol.WireCaptureWriter;
+
+import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -43,85 +54,69 @@ import java.util.TimeZone;
  * This class does all the work for setting up and managing Bluetooth connections with other devices. It has a thread for connecting
  * with a device, and a thread for performing data transmissions when connected.
  */
-public class SerialService {
+public class SerialService implements Transport.Receiver {
     // Logging
     private static final String LOG_TAG = "SerialService";
 
     /*
-     * The big receive-data ring buffer
+     * The big receive-data buffer
      */
     public static final int WORK_SIZE_OF_IN_BUFFER = 10 * 4096;
+    public static final int MIN_MESSAGE_SIZE = ProtocolConstants.MIN_MESSAGE_SIZE;
+    public static final int MIN_COMMAND_SIZE = ProtocolConstants.MIN_COMMAND_SIZE;
 
     // usable size plus space for one times adding driver data
-    public static final int SIZE_OF_IN_BUFFER = WORK_SIZE_OF_IN_BUFFER + Math.max(BluetoothSerialSocket.BT_READ_MAX_SIZE, SerialInputOutputManager.BUFSIZ);
-    public static final int MIN_MESSAGE_SIZE = 4; // was former 5 (data message with one byte), but this makes problems with receiving empty data blocks
-    public static final int MIN_COMMAND_SIZE = 4; // command message with no parameter
-
-    public volatile byte[] mBigReceiveBuffer = new byte[SIZE_OF_IN_BUFFER];
-    /*
-     * Current end of buffer content. Last content byte + 1. Ranges from SIZE_OF_IN_BUFFER -
-     * max(BluetoothSerialSocket.BT_READ_MAX_SIZE, SerialInputOutputManager.BUFSIZE) to SIZE_OF_IN_BUFFER
-     */
-    volatile int mReceiveBufferInIndex; // Last content byte + 1 or first free byte
-    volatile int mReceiveBufferOutIndex; // first unprocessed byte
-
-    byte[] mDataBuffer = new byte[4096]; // Buffer to hold data for one data command
-    private volatile boolean inBufferReadingLock = false; // Safety net to avoid 2 instances of search command calls. Should never
-    // happen :-).
-
-    public static final int SIZE_OF_DEBUG_BUFFER = 16;
-    byte[] mHexOutputTempBuffer = new byte[SIZE_OF_DEBUG_BUFFER]; // holds one output line for verbose HEX output
-    int mHexOutputTempBufferCurrentIndex = 0;
-    public static final int SIZE_OF_SERIAL_PRINT_BUFFER = 512;
-    public byte[] mSerialPrintBuffer = new byte[SIZE_OF_SERIAL_PRINT_BUFFER];
-    volatile int mSerialPrintBufferInIndex; // first free byte
-
-    // Forces the end of writing to bitmap after 0.5 seconds and thus allow bitmap to be displayed
-    private static final long MAX_DRAW_INTERVAL_NANOS = 500000000;
+    final CompactingReceiveBuffer mReceiveBuffer = new CompactingReceiveBuffer(WORK_SIZE_OF_IN_BUFFER,
+            Math.max(BluetoothSerialSocket.BT_READ_MAX_SIZE, SerialInputOutputManager.BUFSIZ));
+    final CommandParser mCommandParser = new CommandParser(mReceiveBuffer);
 
     // Statistics
     public int mStatisticNumberOfReceivedBytes;
-    public int mStatisticNumberOfReceivedCommands;
-    public int mStatisticNumberOfReceivedChartCommands;
     public int mStatisticNumberOfSentBytes;
     public int mStatisticNumberOfSentCommands;
-    public int mStatisticNumberOfBufferSkip;
-    public int mStatisticNumberOfBufferOverflow;
-    public long mStatisticNanoTimeForCommands;
-    public long mStatisticNanoTimeForChart;
 
-    public final static int EVENT_CONNECTION_BUILD_UP = 0x10;
-    public final static int EVENT_REDRAW = 0x11;
-    public final static int EVENT_REORIENTATION = 0x12;
-    public final static int EVENT_DISCONNECT = 0x14;
+    /*
+     * Capture of all received chunks for offline replay with CaptureReplayer. Enabled by preference.
+     */
+    boolean mWireCaptureEnabled;
+    private volatile WireCaptureWriter mWireCapture;
+
+    public final static int EVENT_TOUCH_MULTI_MOVE = ProtocolConstants.EVENT_TOUCH_MULTI_MOVE;
 
-    public final static int EVENT_FIRST_CALLBACK = 0x20;
-    public final static int EVENT_BUTTON_CALLBACK = 0x20;
-    public final static int EVENT_SLIDER_CALLBACK = 0x21;
-    public final static int EVENT_SWIPE_CALLBACK = 0x22;
-    public final static int EVENT_LONG_TOUCH_DOWN_CALLBACK = 0x23;
+    public final static int EVENT_CONNECTION_BUILD_UP = ProtocolConstants.EVENT_CONNECTION_BUILD_UP;
+    public final static int EVENT_REDRAW = ProtocolConstants.EVENT_REDRAW;
+    public final static int EVENT_REORIENTATION = ProtocolConstants.EVENT_REORIENTATION;
+    public final static int EVENT_DISCONNECT = ProtocolConstants.EVENT_DISCONNECT;
+    public final static int EVENT_SPRITE_MISSING = ProtocolConstants.EVENT_SPRITE_MISSING;
+    public final static int EVENT_BAUD_RATE = ProtocolConstants.EVENT_BAUD_RATE;
+    public final static int EVENT_DISPLAY_LIST_DISCARDED = ProtocolConstants.EVENT_DISPLAY_LIST_DISCARDED;
 
-    public final static int EVENT_NUMBER_CALLBACK = 0x28;
-    public final static int EVENT_INFO_CALLBACK = 0x29;
+    public final static int EVENT_FIRST_CALLBACK = ProtocolConstants.EVENT_FIRST_CALLBACK;
+    public final static int EVENT_BUTTON_CALLBACK = ProtocolConstants.EVENT_BUTTON_CALLBACK;
+    public final static int EVENT_SLIDER_CALLBACK = ProtocolConstants.EVENT_SLIDER_CALLBACK;
+    public final static int EVENT_SWIPE_CALLBACK = ProtocolConstants.EVENT_SWIPE_CALLBACK;
+    public final static int EVENT_LONG_TOUCH_DOWN_CALLBACK = ProtocolConstants.EVENT_LONG_TOUCH_DOWN_CALLBACK;
+
+    public final static int EVENT_NUMBER_CALLBACK = ProtocolConstants.EVENT_NUMBER_CALLBACK;
+    public final static int EVENT_INFO_CALLBACK = ProtocolConstants.EVENT_INFO_CALLBACK;
 
 //    public final static int EVENT_TEXT_CALLBACK = 0x2C; // not used yet
 
-    public final static int EVENT_NOP = 0x2F;
+    public final static int EVENT_NOP = ProtocolConstants.EVENT_NOP;
 
-    public final static int EVENT_FIRST_SENSOR_ACTION_CODE = 0x30;
+    public final static int EVENT_FIRST_SENSOR_ACTION_CODE = ProtocolConstants.EVENT_FIRST_SENSOR_ACTION_CODE;
 
-    public final static int EVENT_SPEAKING_DONE = 0x40;
+    public final static int EVENT_SPEAKING_DONE = ProtocolConstants.EVENT_SPEAKING_DONE;
     public final static int EVENT_SPEAKING_OK = 0x00;
     public final static int EVENT_SPEAKING_NOT_AVAILABLE = 0x01;
     public final static int EVENT_SPEAKING_ERROR = 0x02;
 
-    public final static int EVENT_REQUESTED_DATA_CANVAS_SIZE = 0x60;
+    public final static int EVENT_REQUESTED_DATA_CANVAS_SIZE = ProtocolConstants.EVENT_REQUESTED_DATA_CANVAS_SIZE;
 
     private final BlueDisplay mBlueDisplayContext;
     private final Handler mHandler;
 
-    final static int CALLBACK_DATA_SIZE = 15;
-    private final byte[] mSendByteBuffer = new byte[CALLBACK_DATA_SIZE]; // Static buffer since we only send one item at a time
+    private final byte[] mSendByteBuffer = new byte[ProtocolConstants.MAX_EVENT_SIZE]; // Static buffer since we only send one item at a time
 
     /**
      * Constructor. Prepares a new BluetoothChat session.
@@ -135,128 +130,145 @@ public class SerialService {
         resetStatistics();
     }
 
+    @Override
+    public ReceiveBuffer getReceiveBuffer() {
+        return mReceiveBuffer;
+    }
+
     /**
-     * Called by BT or USB driver thread after copying up to 4096 bytes from input to buffer.
-     * Handle mReceiveBufferInIndex, statistics, FUNCTION_SKIP_AND_CLEAR_DISPLAY and buffer overflow
-     * and signal BlueDisplay.MESSAGE_UPDATE_VIEW.
+     * Called by the reader thread of the transport after copying up to 4096 bytes from input to buffer.
+     * Handle statistics, buffer overflow (done by receive buffer) and request a frame from the frame scheduler.
      *
-     * @param aReadLength - The number of bytes copied into buffer by BT or USB driver thread.
-     *                    It is added to mReceiveBufferInIndex.
+     * @param aReadLength - The number of bytes copied into buffer by the reader thread.
+     *                    It is added to the in index of the receive buffer.
      */
-    void handleReceived(int aReadLength) {
+    @Override
+    public void handleReceived(int aReadLength) {
         if (aReadLength == 0) {
             MyLog.w(LOG_TAG, "Read length = 0");
         } else {
             mStatisticNumberOfReceivedBytes += aReadLength;
-            int tOldReceiveBufferInIndex = mReceiveBufferInIndex;
-            mReceiveBufferInIndex += aReadLength;
-
-            /*
-             * Check for buffer end reached i.e. no space for a new complete reading of 4096 bytes from driver.
-             * -> shift new received data to start
-             */
-            if (mReceiveBufferInIndex >= SerialService.WORK_SIZE_OF_IN_BUFFER) {
-                int tUnprocessedDataLength = mReceiveBufferInIndex - mReceiveBufferOutIndex;
-                if (tUnprocessedDataLength < SerialService.WORK_SIZE_OF_IN_BUFFER) {
-                    if (MyLog.isINFO()) {
-                        // use Log.d to make it more visible
-                        Log.d(LOG_TAG, "Buffer full after reading " + aReadLength + " bytes -> remove processed data and keep " + tUnprocessedDataLength + " unprocessed bytes");
-                    }                    /*
-                     * Delete already processed data at buffer start / compress buffer
-                     * mReceiveBufferOutIndex -> 0
-                     */
-                    System.arraycopy(mBigReceiveBuffer, mReceiveBufferOutIndex, mBigReceiveBuffer, 0, tUnprocessedDataLength);
-                    mReceiveBufferInIndex = tUnprocessedDataLength;
-                    mReceiveBufferOutIndex = 0;
-                }
-            }
-
-            /*
-             * Check again, because we may have a new mReceiveBufferInIndex, which is still too big
-             */
-            if (mReceiveBufferInIndex >= SerialService.WORK_SIZE_OF_IN_BUFFER) {
-                int tUnprocessedDataLength = mReceiveBufferInIndex - mReceiveBufferOutIndex;
-                /*
-                 * Here all data is unprocessed :-(
-                 * Check data for last FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL and skip content before
-                 * or keep only new data
-                 */
-                int tSkipIndex = scanBufferForLastSkipAndClearDisplayCommand(mReceiveBufferOutIndex, tUnprocessedDataLength);
-                if (tSkipIndex != 0) {
-                    if (MyLog.isINFO()) {
-                        // use Log.w to make it more visible
-                        Log.w(LOG_TAG, "Buffer overflow -> skip " + (tSkipIndex - mReceiveBufferOutIndex) + " bytes in buffer until last clearDisplayAndSkipOptional");
-                    }
-                    // Here we have commands to skip
-                    mReceiveBufferInIndex = (mReceiveBufferOutIndex + tUnprocessedDataLength) - tSkipIndex;
-                    System.arraycopy(mBigReceiveBuffer, tSkipIndex, mBigReceiveBuffer, 0, mReceiveBufferInIndex);
-                    mStatisticNumberOfBufferSkip++;
-                } else {
-                    Log.w(LOG_TAG, "Buffer overflow -> remove all old and keep only new data of " + aReadLength + " bytes.");
-                    // No skip command found, discard all except the new data.
-                    mReceiveBufferInIndex = aReadLength;
-                    System.arraycopy(mBigReceiveBuffer, tOldReceiveBufferInIndex, mBigReceiveBuffer, 0, mReceiveBufferInIndex);
-                    mStatisticNumberOfBufferOverflow++;
-                }
-                mReceiveBufferOutIndex = 0;
+            WireCaptureWriter tWireCapture = mWireCapture;
+            if (tWireCapture != null) {
+                // The driver has copied the data to the in index of the receive buffer
+                tWireCapture.write(mReceiveBuffer.getArray(), mReceiveBuffer.getInIndex(), aReadLength);
             }
+            mReceiveBuffer.handleReceived(aReadLength);
 
             if (MyLog.isVERBOSE()) {
                 // Output length
-                Log.v(LOG_TAG, "Read length=" + aReadLength + " BufferInIndex=" + mReceiveBufferInIndex);
+                Log.v(LOG_TAG, "Read length=" + aReadLength + " BufferInIndex=" + mReceiveBuffer.getInIndex());
             }
         }
-        if (mRequireUpdateViewMessage) {
-            mHandler.sendEmptyMessage(BlueDisplay.MESSAGE_UPDATE_VIEW);
-            mRequireUpdateViewMessage = false;
-            if (MyLog.isDEVELOPMENT_TESTING() && MyLog.isINFO()) {
-                Log.v(LOG_TAG, "Send MESSAGE_UPDATE_VIEW. Bytes in buffer=" + mReceiveBufferInIndex);
-            }
-        } else {
-            if (MyLog.isDEVELOPMENT_TESTING() && MyLog.isVERBOSE()) {
-                Log.v(LOG_TAG, "No required to send message MESSAGE_UPDATE_VIEW. Bytes in buffer=" + mReceiveBufferInIndex);
+        mBlueDisplayContext.mFrameScheduler.requestFrame();
+    }
+
+    void resetReceiveBuffer() {
+        mCommandParser.reset();
+    }
+
+    /**
+     * Called by the transport after connect, when all old bytes are read.
+     * Start and initialize the receive buffer, statistics and capture.
+     */
+    @Override
+    public void onConnected(Transport aTransport) {
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, aTransport.getName() + " connected");
+        }
+        resetReceiveBuffer();
+        resetStatistics();
+        startWireCapture();
+    }
+
+    @Override
+    public void onDisconnected(Transport aTransport) {
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, aTransport.getName() + " disconnected");
+        }
+        stopWireCapture();
+    }
+
+    /**
+     * Called after connect. Creates a new capture file in the app specific external files directory if capture is enabled.
+     */
+    void startWireCapture() {
+        stopWireCapture();
+        if (!mWireCaptureEnabled) {
+            return;
+        }
+        File tDirectory = mBlueDisplayContext.getExternalFilesDir(null);
+        if (tDirectory == null) {
+            MyLog.w(LOG_TAG, "No storage available for wire capture");
+            return;
+        }
+        SimpleDateFormat tFormat = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US);
+        File tFile = new File(tDirectory, "BlueDisplay-" + tFormat.format(new Date()) + WireCaptureWriter.CAPTURE_FILE_EXTENSION);
+        try {
+            mWireCapture = new WireCaptureWriter(tFile);
+            if (MyLog.isINFO()) {
+                MyLog.i(LOG_TAG, "Start wire capture to " + tFile.getAbsolutePath());
             }
+        } catch (IOException e) {
+            MyLog.e(LOG_TAG, "Cannot create wire capture file " + tFile.getAbsolutePath() + " " + e);
         }
     }
 
-    void resetReceiveBuffer() {
-        mReceiveBufferInIndex = 0;
-        mReceiveBufferOutIndex = 0;
-        mSerialPrintBufferInIndex = 0;
+    void stopWireCapture() {
+        WireCaptureWriter tWireCapture = mWireCapture;
+        if (tWireCapture != null) {
+            mWireCapture = null;
+            tWireCapture.close();
+        }
     }
 
     void resetStatistics() {
         mStatisticNumberOfReceivedBytes = 0;
-        mStatisticNumberOfReceivedCommands = 0;
-        mStatisticNumberOfReceivedChartCommands = 0;
         mStatisticNumberOfSentBytes = 0;
         mStatisticNumberOfSentCommands = 0;
-        mStatisticNumberOfBufferSkip = 0;
-        mStatisticNumberOfBufferOverflow = 0;
-        mStatisticNanoTimeForCommands = 0;
-        mStatisticNanoTimeForChart = 0;
+        mCommandParser.resetStatistics();
+        mBlueDisplayContext.mFrameScheduler.resetStatistics();
+        mBlueDisplayContext.mRPCView.mOpcodeRegistry.resetStatistics();
+        mBlueDisplayContext.mRPCView.mLayers.resetStatistics();
     }
 
     public String getStatisticsString() {
-        String tReturn = mStatisticNumberOfReceivedBytes + " bytes, " + mStatisticNumberOfReceivedCommands + " commands and "
-                + mStatisticNumberOfReceivedChartCommands + " charts received\n";
-        if (mStatisticNumberOfReceivedCommands != 0) {
-            tReturn += ((mStatisticNanoTimeForCommands / 1000) / mStatisticNumberOfReceivedCommands) + " \u00B5s per command\n";
+        CommandParser tParser = mCommandParser;
+        String tReturn = mStatisticNumberOfReceivedBytes + " bytes, " + tParser.mStatisticNumberOfReceivedCommands + " commands and "
+                + tParser.mStatisticNumberOfReceivedChartCommands + " charts received\n";
+        if (tParser.mStatisticNumberOfReceivedCommands != 0) {
+            tReturn += ((tParser.mStatisticNanoTimeForCommands / 1000) / tParser.mStatisticNumberOfReceivedCommands) + " \u00B5s per command\n";
         }
-        if (mStatisticNumberOfReceivedChartCommands != 0) {
-            tReturn += ((mStatisticNanoTimeForChart / 1000) / mStatisticNumberOfReceivedChartCommands) + " \u00B5s per chart command\n";
+        if (tParser.mStatisticNumberOfReceivedChartCommands != 0) {
+            tReturn += ((tParser.mStatisticNanoTimeForChart / 1000) / tParser.mStatisticNumberOfReceivedChartCommands)
+                    + " \u00B5s per chart command\n";
+        }
+        if (tParser.isCrcFramingEnabled() || tParser.mStatisticNumberOfRejectedFrames != 0) {
+            tReturn += "CRC framing=" + tParser.isCrcFramingEnabled() + " " + tParser.mStatisticNumberOfRejectedFrames
+                    + " frames rejected\n";
         }
         tReturn += mStatisticNumberOfSentBytes + " bytes, " + mStatisticNumberOfSentCommands + " commands sent\n";
+        tReturn += mBlueDisplayContext.mFrameScheduler.getStatisticsString() + "\n";
+        tReturn += mBlueDisplayContext.mRPCView.mLayers.getStatisticsString() + "\n";
+        tReturn += "Calls and time per command:\n" + mBlueDisplayContext.mRPCView.mOpcodeRegistry.getStatisticsString();
+        tReturn += mBlueDisplayContext.mRPCView.mSpriteStore.getStatisticsString() + "\n";
+        tReturn += mBlueDisplayContext.mRPCView.mDisplayListStore.getStatisticsString() + "\n";
+        BaudRateNegotiator tBaudRateNegotiator = mBlueDisplayContext.mUSBSerialSocket == null ? null
+                : mBlueDisplayContext.mUSBSerialSocket.mBaudRateNegotiator;
+        if (tBaudRateNegotiator != null) {
+            tReturn += tBaudRateNegotiator.getStatisticsString() + "\n";
+        }
 
-        tReturn += "Buffer overflows=" + mStatisticNumberOfBufferOverflow + ", buffer skips=" + mStatisticNumberOfBufferSkip + "\n";
-        int tInputBufferOutIndex = mReceiveBufferOutIndex;
+        tReturn += "Buffer overflows=" + mReceiveBuffer.getNumberOfBufferOverflows() + ", buffer skips="
+                + mReceiveBuffer.getNumberOfBufferSkips() + "\n";
+        int tInputBufferOutIndex = mReceiveBuffer.getOutIndex();
         int tBytesInBuffer = getBufferBytesAvailable();
         String tSearchStateDataLengthToWaitForString = "";
-        if (searchStateInputLengthToWaitFor > MIN_MESSAGE_SIZE) {
-            tSearchStateDataLengthToWaitForString = ", waited for " + searchStateInputLengthToWaitFor;
+        if (tParser.getDataLengthToWaitFor() > 0) {
+            tSearchStateDataLengthToWaitForString = ", waited for " + tParser.getDataLengthToWaitFor();
         }
-        tReturn += "InputBuffer: size=" + SIZE_OF_IN_BUFFER + ", in=" + mReceiveBufferInIndex + ", out=" + tInputBufferOutIndex
-                + ", not processed=" + tBytesInBuffer + tSearchStateDataLengthToWaitForString + "\n";
+        tReturn += "InputBuffer: size=" + mReceiveBuffer.getSize() + ", in=" + mReceiveBuffer.getInIndex() + ", out="
+                + tInputBufferOutIndex + ", not processed=" + tBytesInBuffer + tSearchStateDataLengthToWaitForString + "\n";
         if (MyLog.isDEBUG()) {
             if (tBytesInBuffer > 0) {
                 if (tBytesInBuffer > 20) {
@@ -267,7 +279,7 @@ public class SerialService {
                 int tValue;
                 for (int i = 0; i < tBytesInBuffer; i++) {
                     tContent.append(" 0x");
-                    tValue = mBigReceiveBuffer[tInputBufferOutIndex + i];
+                    tValue = mReceiveBuffer.getArray()[tInputBufferOutIndex + i];
                     tContent.append(Integer.toHexString(tValue & 0xFF));
                 }
                 tReturn += tContent + "\n";
@@ -290,18 +302,16 @@ public class SerialService {
      * host, and then the commands of the client ConnectCallback() function.
      */
     void signalBlueDisplayConnection() {
-        // first write a NOP command for synchronizing
-        writeGuiCallbackEvent(SerialService.EVENT_NOP, 0, 0, 0, null);
+        // first write a NOP command for synchronizing. Its value is the hash of the restored snapshot or 0.
+        writeGuiCallbackEvent(SerialService.EVENT_NOP, 0, 0, mBlueDisplayContext.mRestoredSnapshotHash, null);
         writeTwoIntegerEventAndTimestamp(SerialService.EVENT_CONNECTION_BUILD_UP, mBlueDisplayContext.mRPCView.mCurrentViewPixelWidth,
                 mBlueDisplayContext.mRPCView.mCurrentViewPixelHeight);
     }
 
     void writeEvent(byte[] aEventDataBuffer, int aEventDataLength) {
-        // Check USB connection this way, because the mDeviceConnected flag is set by a message, which may not be processed yet.
-        if (mBlueDisplayContext.mUSBSerialSocket != null && mBlueDisplayContext.mUSBSerialSocket.mIsConnected) {
-            mBlueDisplayContext.mUSBSerialSocket.writeEvent(aEventDataBuffer, aEventDataLength);
-        } else if (mBlueDisplayContext.mDeviceConnected) {
-            mBlueDisplayContext.mBTSerialSocket.writeEvent(aEventDataBuffer, aEventDataLength);
+        Transport tTransport = mBlueDisplayContext.getConnectedTransport();
+        if (tTransport != null) {
+            tTransport.writeEvent(aEventDataBuffer, aEventDataLength);
         } else {
             if (MyLog.isINFO()) {
                 MyLog.i(LOG_TAG, "Do not send event, because client is not (yet) connected");
@@ -313,21 +323,8 @@ public class SerialService {
      * send 16 bit X and Y position
      */
     public void writeTwoIntegerEvent(int aEventType, int aX, int aY) {
-        int tEventLength = 7;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        short tXPos = (short) aX;
-        mSendByteBuffer[tIndex++] = (byte) (tXPos & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tXPos >> 8) & 0xFF); // MSB
-        short tYPos = (short) aY;
-        mSendByteBuffer[tIndex++] = (byte) (tYPos & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tYPos >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeTwoIntegerEvent(mSendByteBuffer, tEventType, aX, aY);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.i(LOG_TAG, "Send Type=0x" + Integer.toHexString(tEventType) + "|" + tType + " X=" + aX + " Y=" + aY);
@@ -340,19 +337,8 @@ public class SerialService {
     }
 
     public void writeOneIntegerEvent(int aEventType, int aValue) {
-        int tEventLength = 5;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        short tXPos = (short) aValue;
-        mSendByteBuffer[tIndex++] = (byte) (tXPos & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tXPos >> 8) & 0xFF); // MSB
-
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeOneIntegerEvent(mSendByteBuffer, tEventType, aValue);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.i(LOG_TAG, "Send Type=0x" + Integer.toHexString(tEventType) + "|" + tType + " Value=" + aValue);
@@ -365,14 +351,8 @@ public class SerialService {
     }
 
     public void writeNoDataEvent(int aEventType) {
-        int tEventLength = 3;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeNoDataEvent(mSendByteBuffer, tEventType);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.i(LOG_TAG, "Send Type=0x" + Integer.toHexString(tEventType) + "|" + tType);
@@ -384,26 +364,31 @@ public class SerialService {
         writeEvent(mSendByteBuffer, tEventLength);
     }
 
+    /**
+     * send 32 bit timestamp, pointer numbers and for each sample its age and 16 bit X and Y position of each pointer
+     */
+    public void writeMultiTouchEvent(long aTimestampMillis, int aNumberOfPointers, int[] aPointerIndexes, int aNumberOfSamples,
+                                     int[] aSampleAgesMillis, int[] aXValues, int[] aYValues) {
+        int tEventLength = EventEncoder.encodeMultiTouchEvent(mSendByteBuffer, EVENT_TOUCH_MULTI_MOVE, aTimestampMillis,
+                aNumberOfPointers, aPointerIndexes, aNumberOfSamples, aSampleAgesMillis, aXValues, aYValues);
+        if (MyLog.isINFO()) {
+            MyLog.i(LOG_TAG, "Send Type=0x" + Integer.toHexString(EVENT_TOUCH_MULTI_MOVE) + "|multi move Pointers="
+                    + aNumberOfPointers + " Samples=" + aNumberOfSamples + " X=" + aXValues[0] + " Y=" + aYValues[0]
+                    + " Timestamp=" + aTimestampMillis);
+        }
+
+        mStatisticNumberOfSentBytes += tEventLength;
+        mStatisticNumberOfSentCommands++;
+
+        writeEvent(mSendByteBuffer, tEventLength);
+    }
+
     /**
      * send 16 bit X and Y position and 8 bit pointer index
      */
     public void writeTwoIntegerAndAByteEvent(int aEventType, int aX, int aY, int aByte) {
-        int tEventLength = 8;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        short tXPos = (short) aX;
-        mSendByteBuffer[tIndex++] = (byte) (tXPos & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tXPos >> 8) & 0xFF); // MSB
-        short tYPos = (short) aY;
-        mSendByteBuffer[tIndex++] = (byte) (tYPos & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tYPos >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) (aByte & 0xFF); // Byte
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeTwoIntegerAndAByteEvent(mSendByteBuffer, tEventType, aX, aY, aByte);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.i(LOG_TAG, "Send Type=0x" + Integer.toHexString(tEventType) + "|" + tType + " X=" + aX + " Y=" + aY
@@ -421,21 +406,8 @@ public class SerialService {
      * send 16 bit X and Y position
      */
     public void writeTwoIntegerEventAndTimestamp(int aEventType, int aX, int aY) {
-        int tEventLength = 11;
         int tEventType = aEventType & 0xFF;
 
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        short tXPos = (short) aX;
-        mSendByteBuffer[tIndex++] = (byte) (tXPos & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tXPos >> 8) & 0xFF); // MSB
-        short tYPos = (short) aY;
-        mSendByteBuffer[tIndex++] = (byte) (tYPos & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tYPos >> 8) & 0xFF); // MSB
-
         /*
          * Timestamp of local time (for convenience reason)
          */
@@ -443,11 +415,7 @@ public class SerialService {
         long tTimestamp = System.currentTimeMillis();
         tTimestamp += tDefaultTimeZone.getOffset(tTimestamp);  // get difference to GMT including DST
         long tTimestampSeconds = tTimestamp / 1000L;
-        mSendByteBuffer[tIndex++] = (byte) (tTimestampSeconds & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tTimestampSeconds >> 8) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((tTimestampSeconds >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((tTimestampSeconds >> 24) & 0xFF); // MSB
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeTwoIntegerEventAndTimestamp(mSendByteBuffer, tEventType, aX, aY, tTimestampSeconds);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             // this does not respect the 24-hour setting of android :-(
@@ -470,30 +438,8 @@ public class SerialService {
      * send 16 bit button / slider index, 16 bit filler, 32 bit callback address and 32 bit value
      */
     public void writeGuiCallbackEvent(int aEventType, int aButtonSliderIndex, int aCallbackAddress, int aValue, String aElementInfo) {
-        int tEventLength = CALLBACK_DATA_SIZE;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        short tShortValue = (short) aButtonSliderIndex;
-        mSendByteBuffer[tIndex++] = (byte) (tShortValue & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tShortValue >> 8) & 0xFF); // MSB
-        // for 32 bit padding
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // LSB
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // MSB
-
-        mSendByteBuffer[tIndex++] = (byte) (aCallbackAddress & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 24) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) (aValue & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aValue >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((aValue >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((aValue >> 24) & 0xFF);
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeGuiCallbackEvent(mSendByteBuffer, tEventType, aButtonSliderIndex, aCallbackAddress, aValue);
 
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
@@ -517,31 +463,8 @@ public class SerialService {
      * send 16 bit button index, 16-bit filler, 32-bit callback address and 32-bit FLOAT value
      */
     public void writeNumberCallbackEvent(int aEventType, int aCallbackAddress, float aValue) {
-        int tEventLength = CALLBACK_DATA_SIZE;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        // for future use (index of function calling getNumber etc.)
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // LSB
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // MSB
-        // for 32 bit padding
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // LSB
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // MSB
-
-        mSendByteBuffer[tIndex++] = (byte) (aCallbackAddress & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 24) & 0xFF);
-        int tValue = Float.floatToIntBits(aValue);
-        mSendByteBuffer[tIndex++] = (byte) (tValue & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 24) & 0xFF);
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeNumberCallbackEvent(mSendByteBuffer, tEventType, aCallbackAddress, aValue);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.i(LOG_TAG,
@@ -558,29 +481,9 @@ public class SerialService {
      * send 16 bit direction,16 bit filler, 32 bit start position and 32 bit delta
      */
     public void writeSwipeCallbackEvent(int aEventType, int aIsXDirection, int aStartX, int aStartY, int aDeltaX, int aDeltaY) {
-        int tEventLength = CALLBACK_DATA_SIZE;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-        short tShortValue = (short) aIsXDirection;
-        mSendByteBuffer[tIndex++] = (byte) (tShortValue & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tShortValue >> 8) & 0xFF); // MSB
-        // for 32 bit padding
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // LSB
-        mSendByteBuffer[tIndex++] = (byte) (0x00); // MSB
-
-        mSendByteBuffer[tIndex++] = (byte) (aStartX & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aStartX >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) (aStartY & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aStartY >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) (aDeltaX & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aDeltaX >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) (aDeltaY & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aDeltaY >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeSwipeCallbackEvent(mSendByteBuffer, tEventType, aIsXDirection, aStartX, aStartY, aDeltaX,
+                aDeltaY);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.i(LOG_TAG, "Send Type=0x" + Integer.toHexString(tEventType) + "|" + tType + " Direction=" + aIsXDirection
@@ -597,30 +500,8 @@ public class SerialService {
      * send sensor event type and xyz 32-bit FLOAT values
      */
     public void writeSensorEvent(int aEventType, float aValueX, float aValueY, float aValueZ) {
-        int tEventLength = CALLBACK_DATA_SIZE;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        int tValue = Float.floatToIntBits(aValueX);
-        mSendByteBuffer[tIndex++] = (byte) (tValue & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 24) & 0xFF);
-        tValue = Float.floatToIntBits(aValueY);
-        mSendByteBuffer[tIndex++] = (byte) (tValue & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 24) & 0xFF);
-        tValue = Float.floatToIntBits(aValueZ);
-        mSendByteBuffer[tIndex++] = (byte) (tValue & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((tValue >> 24) & 0xFF);
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeSensorEvent(mSendByteBuffer, tEventType, aValueX, aValueY, aValueZ);
         if (MyLog.isDEBUG()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.d(LOG_TAG, "Send Sensor Event Type=0x" + Integer.toHexString(tEventType) + "|" + tType + " X=" + aValueX + " Y="
@@ -639,32 +520,9 @@ public class SerialService {
      */
     public void writeInfoCallbackEvent(int aEventType, int aSubFunction, int aByteInfo, int aShortInfo, int aCallbackAddress,
                                        int aInfo_0, int aInfo_1) {
-        int tEventLength = CALLBACK_DATA_SIZE;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Sub function token
-
-        mSendByteBuffer[tIndex++] = (byte) (aSubFunction & 0xFF);
-
-        mSendByteBuffer[tIndex++] = (byte) (aByteInfo & 0xFF);
-        // put special info here
-        mSendByteBuffer[tIndex++] = (byte) (aShortInfo & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aShortInfo >> 8) & 0xFF); // MSB
-
-        mSendByteBuffer[tIndex++] = (byte) (aCallbackAddress & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 24) & 0xFF);
-
-        mSendByteBuffer[tIndex++] = (byte) (aInfo_0 & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aInfo_0 >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) (aInfo_1 & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aInfo_1 >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeInfoCallbackEvent(mSendByteBuffer, tEventType, aSubFunction, aByteInfo, aShortInfo,
+                aCallbackAddress, aInfo_0, aInfo_1);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             MyLog.i(LOG_TAG,
@@ -685,32 +543,9 @@ public class SerialService {
      */
     public void writeInfoCallbackEvent(int aEventType, int aSubFunction, int aByteInfo, int aShortInfo, int aCallbackAddress,
                                        long aLongInfo) {
-        int tEventLength = CALLBACK_DATA_SIZE;
         int tEventType = aEventType & 0xFF;
-
-        // assemble data buffer
-        int tIndex = 0;
-        mSendByteBuffer[tIndex++] = (byte) tEventLength; // gross message length in bytes including sync token
-
-        mSendByteBuffer[tIndex++] = (byte) tEventType; // Function token
-
-        mSendByteBuffer[tIndex++] = (byte) (aSubFunction & 0xFF); // Sub function token
-
-        mSendByteBuffer[tIndex++] = (byte) (aByteInfo & 0xFF);
-        // put special info here
-        mSendByteBuffer[tIndex++] = (byte) (aShortInfo & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aShortInfo >> 8) & 0xFF); // MSB
-
-        mSendByteBuffer[tIndex++] = (byte) (aCallbackAddress & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((aCallbackAddress >> 24) & 0xFF);
-
-        mSendByteBuffer[tIndex++] = (byte) (aLongInfo & 0xFF); // LSB
-        mSendByteBuffer[tIndex++] = (byte) ((aLongInfo >> 8) & 0xFF); // MSB
-        mSendByteBuffer[tIndex++] = (byte) ((aLongInfo >> 16) & 0xFF);
-        mSendByteBuffer[tIndex++] = (byte) ((aLongInfo >> 24) & 0xFF);
-        mSendByteBuffer[tIndex] = SYNC_TOKEN;
+        int tEventLength = EventEncoder.encodeInfoCallbackEvent(mSendByteBuffer, tEventType, aSubFunction, aByteInfo, aShortInfo,
+                aCallbackAddress, aLongInfo);
         if (MyLog.isINFO()) {
             String tType = RPCView.sActionMappings.get(tEventType);
             // this does not respect the 24-hour setting of android :-(
@@ -730,115 +565,17 @@ public class SerialService {
         writeEvent(mSendByteBuffer, tEventLength);
     }
 
-    /*
-     * internal state for searchCommand()
-     */
-// to signal searchCommand(), that searchState must be loaded, because a command with yet missing data was processed.
-    private boolean searchStateMustBeLoaded = false;
-
-    /*
-     * To signal BT receive thread, that invalidate() message should be sent on next read. If once sent it triggers invalidate(),
-     * which triggers onDraw(), which sets it if not calling invalidate().
-     */
-    volatile boolean mRequireUpdateViewMessage = true;
-
-    /*
-     * state between two searchCommand() calls
-     */
-    private int searchStateCommand;
-    private int searchStateCommandReceived; // The command we received, for which data we wait now
-    private int searchStateParamsLength; // Parameter length for the above command
-    private int searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE; // If available data is less than length, do nothing.
-    private long sTimestampOfLastDataWait = 0;
-
-    public static final byte SYNC_TOKEN = (byte) 0xA5;
-    public static final int MAX_NUMBER_OF_PARAMS = 12;
-    private static final int[] mParameters = new int[MAX_NUMBER_OF_PARAMS];
-
     int getBufferBytesAvailable() {
-        if (mReceiveBufferOutIndex == mReceiveBufferInIndex) {
-            // buffer empty
-            return 0;
-        }
-        return (mReceiveBufferInIndex - mReceiveBufferOutIndex);
-    }
-
-    private static final int numberOfBitsInAHalfByte = 4;
-    private static final int halfByte = 0x0F;
-    private static final char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
-
-    public static void appendByteAsHex(StringBuilder aStringBuilder, byte aByte) {
-        aStringBuilder.append(hexDigits[(aByte >> numberOfBitsInAHalfByte) & halfByte]);
-        aStringBuilder.append(hexDigits[aByte & halfByte]);
+        return mReceiveBuffer.getBytesAvailable();
     }
 
-    public static String convertByteArrayToHexString(byte[] aData) {
-        StringBuilder tDataRaw = new StringBuilder();
-        for (byte aDatum : aData) {
-            int tValue;
-            // Output parameter buffer as hex
-            tValue = aDatum;
-            SerialService.appendByteAsHex(tDataRaw, (byte) tValue);
-            tDataRaw.append(" ");
-        }
-        return tDataRaw.toString();
-    }
-
-    /*
-     * Get byte from buffer, clear buffer, increment pointer and handle wrap around
-     */
-    int getUnsignedByteFromBuffer() {
-        return convertByteToInt(getByteFromBuffer());
-    }
-
-    byte getByteFromBuffer() {
-        byte tByte = mBigReceiveBuffer[mReceiveBufferOutIndex];
-
-        if (MyLog.isVERBOSE()) {
-            mHexOutputTempBuffer[mHexOutputTempBufferCurrentIndex++] = tByte;
-            // print 16 values as HEX and ASCII
-            if (mHexOutputTempBufferCurrentIndex == SIZE_OF_DEBUG_BUFFER) {
-                mHexOutputTempBufferCurrentIndex = 0;
-                StringBuilder tDataRaw = new StringBuilder();
-                StringBuilder tDataString = new StringBuilder();
-                byte tValue;
-                for (int i = 0; i < SIZE_OF_DEBUG_BUFFER; i++) {
-                    // Output parameter buffer as hex
-                    tValue = mHexOutputTempBuffer[i];
-                    appendByteAsHex(tDataRaw, tValue);
-                    tDataRaw.append(" ");
-                    byte tChar = mHexOutputTempBuffer[i];
-                    if (tChar < 0x20) {
-                        tChar = 0x20;
-                    }
-                    if (tValue == SYNC_TOKEN) {
-                        // Sync token which starts a new command
-                        tDataString.append("|->");
-                    } else {
-                        tDataString.append(" ");
-                        tDataString.append((char) tChar);
-                        tDataString.append(" ");
-                    }
-                }
-                // use empty log tag and padding to better formatting of the two lines
-                MyLog.v("", "Hex=" + tDataRaw + "\n   Asc=" + tDataString);
-            }
-        }
-        // clear processed content
-        mBigReceiveBuffer[mReceiveBufferOutIndex] = 0x00;
-        mReceiveBufferOutIndex++;
-        return tByte;
-    }
-
-    public static final int RPCVIEW_DO_NOTHING = 0; // No data in buffer, no need for draw -> request trigger from socket.
-    public static final int RPCVIEW_DO_WAIT = 1; // We had data, but not a complete command, so rendering makes no sense, wait and
+    public static final int RPCVIEW_DO_NOTHING = CommandParser.DO_NOTHING; // No data in buffer, no need for draw -> request trigger from socket.
+    public static final int RPCVIEW_DO_WAIT = CommandParser.DO_WAIT; // We had data, but not a complete command, so rendering makes no sense, wait and
     // call again.
-    public static final int RPCVIEW_DO_DRAW = 2; // The canvas should be rendered, and we have no more commands -> draw and request
+    public static final int RPCVIEW_DO_DRAW = CommandParser.DO_DRAW; // The canvas should be rendered, and we have no more commands -> draw and request
     // new trigger.
-    public static final int RPCVIEW_DO_DRAW_AND_CALL_AGAIN = 3; // The canvas should be rendered, but we may have more data, so try
-// it again
-
-// after rendering -> call invalidate().
+    public static final int RPCVIEW_DO_DRAW_AND_CALL_AGAIN = CommandParser.DO_DRAW_AND_CALL_AGAIN; // The canvas should be rendered, but we may have more data, so try
+    // it again after rendering -> call invalidate().
 
     /**
      * Search the input buffer for valid commands and call interpretCommand() as long as there is data available.
@@ -847,376 +584,13 @@ public class SerialService {
      * @return RPCVIEW_DO_... if we have more data in the buffer but want to redraw now, e.g. after a FUNCTION_DRAW_CHART command.
      */
     int searchCommand(RPCView aRPCView) {
-        if (inBufferReadingLock || (mReceiveBufferOutIndex == mReceiveBufferInIndex)) {
-            if (MyLog.isVERBOSE()) {
-                Log.v(LOG_TAG, "searchCommand just returns. No buffer content. Lock=" + inBufferReadingLock + " BufferInIndex="
-                        + mReceiveBufferInIndex);
-            }
-            return RPCVIEW_DO_NOTHING;
-        }
-        int tReturnValue = RPCVIEW_DO_WAIT;
-        long tStartOfSearchCommand = System.nanoTime(); // We require it as nanos, because we compute the
-        // mStatisticNanoTimeForCommands with it
-        long tNanosForChart = 0;
-        inBufferReadingLock = true;
-        int tCommand = 0;
-        int tParamsLength = 0;
-        byte tByte;
-        int i;
-        int tCommandReceived;
-        int tLengthReceived;
-        int tStartIn = mReceiveBufferInIndex;
-        int tStartOut = mReceiveBufferOutIndex;
-
-        /*
-         * While reprogramming the client we also interpret this data, since it is sent over the same Serial line. But in this case
-         * we tend to misinterpreting the data, since it is not meant for BlueDisplay. Sometimes we misinterpret it as a command
-         * with a big chunk of data, but the data will of course not be delivered. So we introduced a 2 seconds timeout for data to
-         * arrive. Otherwise, we start a fresh scan.
-         */
-        long tCurrentNanos = System.nanoTime();
-        if (searchStateInputLengthToWaitFor > MIN_MESSAGE_SIZE && getBufferBytesAvailable() < searchStateInputLengthToWaitFor) {
-            // Here we assume that we wait for a big chunk of data, but it was not completely received yet
-            if (sTimestampOfLastDataWait + 2000000000 < tCurrentNanos) {
-                // reset state and continue with searching for sync token
-                searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
-                searchStateMustBeLoaded = false;
-                sTimestampOfLastDataWait = tCurrentNanos;
-            }
-        } else {
-            sTimestampOfLastDataWait = tCurrentNanos;
-        }
-
-        /*
-         * Now the available bytes are more than the number we wait for (e.g. MIN_COMMAND_SIZE or MIN_MESSAGE_SIZE or data size) so
-         * we have a chance, that we received a complete command.
-         */
-        while (getBufferBytesAvailable() >= searchStateInputLengthToWaitFor) {
-            if (searchStateMustBeLoaded) {
-                // restore state of last call to searchCommand()
-                tLengthReceived = searchStateInputLengthToWaitFor;
-                tCommandReceived = searchStateCommandReceived;
-                tCommand = searchStateCommand;
-                tParamsLength = searchStateParamsLength;
-                searchStateMustBeLoaded = false;
-                if (MyLog.isVERBOSE()) {
-                    MyLog.v(LOG_TAG, "Restore previous state");
-                }
-            } else {
-
-                /*
-                 * Scan for SYNC token. Here we expect the buffer to start with a sync token.
-                 */
-                if (!scanBufferForSyncToken(tStartIn, tStartOut)) {
-                    return RPCVIEW_DO_NOTHING;
-                }
-
-                /*
-                 * Read command token from InputStream
-                 */
-                tCommandReceived = convertByteToInt(getByteFromBuffer());
-
-                /*
-                 * Read parameter/data length
-                 */
-                tByte = getByteFromBuffer();
-                tLengthReceived = convert2BytesToInt(tByte, getByteFromBuffer());
-
-                if (tCommandReceived <= RPCView.LAST_DATAFIELD_TAG) {
-                    /*
-                     * Data length received
-                     */
-                    if (MyLog.isVERBOSE()) {
-                        MyLog.v(LOG_TAG, "Data: length=" + tLengthReceived + " at ptr=" + (mReceiveBufferOutIndex - 1));
-                    }
-                    // Plausibility check
-                    if (tLengthReceived > mDataBuffer.length) {
-                        MyLog.e(LOG_TAG,
-                                "DataLength of " + tLengthReceived + " wrong. Command=0x" + Integer.toHexString(tCommandReceived)
-                                        + " Out=" + mReceiveBufferOutIndex);
-                        continue;
-                    }
-
-                } else {
-                    /*
-                     * Parameter length received
-                     */
-                    if (MyLog.isVERBOSE()) {
-                        MyLog.v(LOG_TAG, "Command=0x" + Integer.toHexString(tCommandReceived) + " ParameterLength="
-                                + tLengthReceived + " at ptr=" + (mReceiveBufferOutIndex - 1));
-                    }
-                    // Plausibility check
-                    if (tLengthReceived > MAX_NUMBER_OF_PARAMS * 2) {
-                        MyLog.e(LOG_TAG, "ParameterLength of " + tLengthReceived + "/0x" + Integer.toHexString(tLengthReceived)
-                                + " wrong. Command=0x" + Integer.toHexString(tCommandReceived) + " Out=" + mReceiveBufferOutIndex);
-                        continue;
-                    }
-                }
-
-                /*
-                 * Save state and return if not enough bytes for data or command parameter are available in buffer
-                 */
-                if (getBufferBytesAvailable() < tLengthReceived) {
-                    searchStateInputLengthToWaitFor = tLengthReceived;
-                    searchStateCommandReceived = tCommandReceived;
-                    searchStateCommand = tCommand;
-                    searchStateParamsLength = tParamsLength;
-
-                    searchStateMustBeLoaded = true;
-                    if (MyLog.isVERBOSE()) {
-                        if (tCommandReceived <= RPCView.LAST_DATAFIELD_TAG) {
-                            Log.v(LOG_TAG, getBufferBytesAvailable() + "bytes in buffer, but " + tLengthReceived
-                                    + " required for data field");
-                        } else {
-                            Log.v(LOG_TAG, getBufferBytesAvailable() + "bytes in buffer, but " + tLengthReceived
-                                    + " required for command parameters");
-                        }
-                    }
-                    break;
-                }
-            }
-
-            /*
-             * Now all bytes available to interpret command or data
-             */
-            if (tCommandReceived <= RPCView.LAST_DATAFIELD_TAG) {
-                /*
-                 * Data buffer command
-                 */
-                long tStart1 = System.nanoTime();
-
-                for (i = 0; i < tLengthReceived; i++) {
-                    mDataBuffer[i] = getByteFromBuffer();
-                }
-                if (MyLog.isDEVELOPMENT_TESTING() && MyLog.isVERBOSE()) {
-                    StringBuilder tData = new StringBuilder("Data=");
-                    int tValue;
-                    for (i = 0; i < tLengthReceived; i++) {
-                        if (tLengthReceived < 160) {
-                            // Output parameter buffer as character
-                            tData.append((char) mDataBuffer[i]);
-                        } else {
-                            // Output parameter buffer as hex
-                            tData.append("0x");
-                            tValue = mDataBuffer[i];
-                            appendByteAsHex(tData, (byte) tValue);
-                            tData.append(" ");
-                        }
-                    }
-                    Log.v(LOG_TAG, tData.toString());
-                }
-                /*
-                 * Now both command and data buffer filled -> interpret command.
-                 */
-                searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
-                aRPCView.interpretCommand(tCommand, mParameters, tParamsLength, mDataBuffer, null, tLengthReceived);
-                tReturnValue = RPCVIEW_DO_DRAW;
-                if (tCommand == RPCView.FUNCTION_DRAW_CHART || tCommand == RPCView.FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING
-                        || tCommand == RPCView.FUNCTION_DRAW_SCALED_CHART
-                        || tCommand == RPCView.FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING) {
-                    // do statistics
-                    mStatisticNumberOfReceivedChartCommands++;
-                    tNanosForChart += System.nanoTime() - tStart1;
-
-                    if (tCommand == RPCView.FUNCTION_DRAW_CHART || tCommand == RPCView.FUNCTION_DRAW_SCALED_CHART) {
-                        int tBufferBytesAvailable = getBufferBytesAvailable();
-                        if (tBufferBytesAvailable > 0) {
-                            // We still have bytes in the buffer, so call again
-                            tReturnValue = RPCVIEW_DO_DRAW_AND_CALL_AGAIN;
-                        }
-                        // break in order to draw a chart directly
-                        break;
-                    }
-                } else {
-                    mStatisticNumberOfReceivedCommands++;
-                }
-
-                if ((System.nanoTime() - tStartOfSearchCommand) > MAX_DRAW_INTERVAL_NANOS) {
-                    // Safety net, never seen this.
-                    Log.w(LOG_TAG, "Return searchCommand() prematurely after 0.5 seconds");
-                    // break after 0.5 seconds to enable drawing of the bitmap
-                    tReturnValue = RPCVIEW_DO_DRAW_AND_CALL_AGAIN;
-                    break;
-                }
-
-            } else /* Data buffer command */ {
-                /*
-                 * Command parameters here
-                 */
-                tParamsLength = tLengthReceived / 2;
-                tCommand = tCommandReceived;
-
-                for (i = 0; i < tParamsLength; i++) {
-                    tByte = getByteFromBuffer();
-                    mParameters[i] = convert2BytesToInt(tByte, getByteFromBuffer());
-                }
-                if (MyLog.isDEVELOPMENT_TESTING() && MyLog.isVERBOSE()) {
-                    // Output parameter buffer as short hex values
-                    StringBuilder tParamsHex = new StringBuilder("Params=");
-                    int tValue;
-                    for (i = 0; i < tParamsLength; i++) {
-                        tValue = mParameters[i];
-                        tParamsHex.append(" 0x").append(Integer.toHexString(tValue & 0xFFFF));
-                    }
-                    Log.v(LOG_TAG, tParamsHex.toString());
-                }
-
-                if (tCommand < RPCView.INDEX_FIRST_FUNCTION_WITH_DATA) {
-                    searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
-                    /*
-                     * direct commands without data
-                     */
-                    aRPCView.interpretCommand(tCommand, mParameters, tParamsLength, null, null, 0);
-                    mStatisticNumberOfReceivedCommands++;
-                    if (tCommand == RPCView.FUNCTION_DRAW_DISPLAY) {
-                        if (getBufferBytesAvailable() > 0) {
-                            // We still have bytes in the buffer so call again
-                            tReturnValue = RPCVIEW_DO_DRAW_AND_CALL_AGAIN;
-                        }
-                        // break in order to draw the bitmap as requested by FUNCTION_DRAW_DISPLAY
-                        break;
-                    }
-
-                    if ((System.nanoTime() - tStartOfSearchCommand) > MAX_DRAW_INTERVAL_NANOS) {
-                        Log.w(LOG_TAG, "Return searchCommand() prematurely after 0.5 seconds to enable display refresh");
-                        tReturnValue = RPCVIEW_DO_DRAW_AND_CALL_AGAIN;
-                        break;
-                    }
-                } else {
-                    searchStateInputLengthToWaitFor = MIN_MESSAGE_SIZE;
-                    /*
-                     * Wait for header of message part containing the expected data
-                     */
-                    i = 0;
-                    while (getBufferBytesAvailable() < MIN_MESSAGE_SIZE && i < 100) {
-                        try {
-                            if (MyLog.isDEBUG()) {
-                                // happens quite rare
-                                Log.d(LOG_TAG, "wait for data header i=" + i);
-                            }
-                            Thread.sleep(10);
-                            i++;
-                        } catch (InterruptedException e) {
-                            Log.e(LOG_TAG, "Wait for data header was interrupted", e);
-                        }
-                    }
-                    if (i == 100) {
-                        MyLog.e(LOG_TAG, "Timeout waiting for data sync token. Out=" + mReceiveBufferOutIndex + " In="
-                                + mReceiveBufferInIndex);
-                    }
-                }
-            }
-        } /* while */
-        if (MyLog.isVERBOSE()) {
-            Log.v(LOG_TAG, "End searchCommand. Out=" + tStartOut + "->" + mReceiveBufferOutIndex + "="
-                    + (mReceiveBufferOutIndex - tStartOut) + " In=" + tStartIn + "->" + mReceiveBufferInIndex + "="
-                    + (mReceiveBufferInIndex - tStartIn) + " bytes in buffer=" + (mReceiveBufferInIndex - mReceiveBufferOutIndex));
-        }
-        inBufferReadingLock = false;
-        mStatisticNanoTimeForCommands += System.nanoTime() - tStartOfSearchCommand - tNanosForChart;
-        mStatisticNanoTimeForChart += tNanosForChart;
-        return tReturnValue;
-    }
-
-    /*
-     * Scan for SYNC token. Here we expect the buffer to start with a sync token.
-     */
-    private boolean scanBufferForSyncToken(int aStartIn, int aStartOut) {
-        byte tByte;
-        do {
-            tByte = getByteFromBuffer();
-            if (tByte != SYNC_TOKEN) {
-                if (tByte >= ' ') { // byte us signed!
-                    // If ASCII, then append it to string buffer
-                    mSerialPrintBuffer[mSerialPrintBufferInIndex++] = tByte;
-                    if (mSerialPrintBufferInIndex == SIZE_OF_SERIAL_PRINT_BUFFER) {
-                        mSerialPrintBufferInIndex--;
-                    }
-
-                } else if ((tByte == '\n' || tByte == '\r')) {
-                    if (mSerialPrintBufferInIndex > 0) {
-                        // print string buffer as warning to be contained in the log
-                        String tStringFromSerial = new String(mSerialPrintBuffer, 0, mSerialPrintBufferInIndex);
-                        MyLog.w("Serial.print", tStringFromSerial);
-                        mSerialPrintBufferInIndex = 0;
-                        mBlueDisplayContext.mRPCView.showAsDebugToast(tStringFromSerial);
-                    }
-                } else {
-                    // reset string buffer
-                    mSerialPrintBufferInIndex = 0;
-                    if (!MyLog.isVERBOSE()) {
-                        /*
-                         * Do not output this at level verbose, since at this level RawData is output
-                         */
-                        Log.w(LOG_TAG, "Byte=0x" + Integer.toHexString(tByte) + " at:" + mReceiveBufferOutIndex
-                                + " is no SYNC_TOKEN");
-                    }
-                }
-                if (mReceiveBufferOutIndex == mReceiveBufferInIndex) {
-                    inBufferReadingLock = false;
-                    if (mSerialPrintBufferInIndex == 0) {
-                        Log.i(LOG_TAG, "Sync Token not found util end of buffer. End searchCommand. Out=" + aStartOut + "->"
-                                + mReceiveBufferOutIndex + " In=" + aStartIn + "->" + mReceiveBufferInIndex);
-                    }
-                    return false;
-                }
-
-            } else {
-                if (mSerialPrintBufferInIndex > 0) {
-                    // print if \n or \r are missing
-                    // print string buffer as warning to be contained in the log
-                    String tStringFromSerial = new String(mSerialPrintBuffer, 0, mSerialPrintBufferInIndex);
-                    MyLog.w("Serial.print", tStringFromSerial);
-                    mSerialPrintBufferInIndex = 0;
-                    mBlueDisplayContext.mRPCView.showAsDebugToast(tStringFromSerial);
-                }
-            }
-        } while (tByte != SYNC_TOKEN);
-        return true;
+        return mCommandParser.searchCommand(aRPCView);
     }
 
-    /*
-     * Scan for last FUNCTION_SKIP_AND_CLEAR_DISPLAY command and return its index.
+    /**
+     * Like searchCommand(RPCView), but returns RPCVIEW_DO_DRAW_AND_CALL_AGAIN after aMaxNanos
      */
-    private int scanBufferForLastSkipAndClearDisplayCommand(int aBufferStartScanIndex, int aBytesToScan) {
-        int tBufferScanIndex = aBufferStartScanIndex;
-        int tFoundIndex = 0;
-
-        while (tBufferScanIndex <= (aBufferStartScanIndex + aBytesToScan - 6)) {
-            // Check for FUNCTION_SKIP_AND_CLEAR_DISPLAY
-            if (mBigReceiveBuffer[tBufferScanIndex] == SYNC_TOKEN) {
-                if (((mBigReceiveBuffer[tBufferScanIndex + 1] == RPCView.FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL)
-                        && (mBigReceiveBuffer[tBufferScanIndex + 2] == 2) /* lsb of length 2 | one parameter */
-                        && (mBigReceiveBuffer[tBufferScanIndex + 3] == 0) /* msb of length 2 | one parameter */
-                        && (tBufferScanIndex == ((aBufferStartScanIndex + aBytesToScan) - 6))) || (mBigReceiveBuffer[tBufferScanIndex + 6] == SYNC_TOKEN) /* sync token of next command if next command*/
-                ) {
-                    tFoundIndex = tBufferScanIndex;
-                }
-            }
-            tBufferScanIndex++;
-        }
-        return tFoundIndex;
-    }
-
-    public static int convert2BytesToInt(byte aLSB, byte aMSB) {
-        int i = aLSB;
-        i = i & 0x000000FF;
-        i = i | (aMSB << 8);
-        return i;
-    }
-
-    public static float convertByteToFloat(byte aByte) {
-        if (aByte < 0) {
-            return aByte + 256;
-        }
-        return aByte;
+    int searchCommand(RPCView aRPCView, long aMaxNanos) {
+        return mCommandParser.searchCommand(aRPCView, aMaxNanos);
     }
-
-    public static int convertByteToInt(byte aByte) {
-        if (aByte < 0) {
-            return aByte + 256;
-        }
-        return aByte;
-    }
-
 }
@@ -0,0 +1,154 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * Client managed store of sprites, i.e. bitmaps addressed by a small integer ID, which are drawn by FUNCTION_SPRITE_DRAW.
+ * A sprite is a copy of a canvas rectangle. Images are uploaded by streaming them with FUNCTION_IMAGE_* and capturing their area.
+ * The store holds at most mMaxBytes, the least recently used sprites are evicted first.
+ * The client gets EVENT_SPRITE_MISSING if it draws a sprite, which was evicted, so it can upload it again.
+ *
+ * Sprites keep their unscaled size. After a change of the scale factor they are drawn stretched.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+class SpriteStore {
+
+    public static final String LOG_TAG = "SpriteStore";
+
+    static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static class Sprite {
+        final Bitmap mBitmap;
+        final int mWidth; // unscaled
+        final int mHeight;
+
+        Sprite(Bitmap aBitmap, int aWidth, int aHeight) {
+            mBitmap = aBitmap;
+            mWidth = aWidth;
+            mHeight = aHeight;
+        }
+    }
+
+    // Access order, so the first entry is the least recently used one
+    private final LinkedHashMap<Integer, Sprite> mSprites = new LinkedHashMap<>(16, 0.75f, true);
+    private int mMaxBytes = DEFAULT_MAX_BYTES;
+    private int mBytes;
+    private int mNumberOfEvictions;
+
+    private final RectF mDestinationRect = new RectF();
+
+    /**
+     * Copies the unscaled rectangle of the backing store to a new sprite. An existing sprite with the same ID is replaced.
+     *
+     * @return false if the rectangle is not inside of the bitmap or is bigger than the whole store
+     */
+    boolean capture(int aId, CanvasLayers aSource, float aScaleFactor, int aX, int aY, int aWidth, int aHeight) {
+        int tLeft = Math.round(aX * aScaleFactor);
+        int tTop = Math.round(aY * aScaleFactor);
+        int tWidth = Math.min(Math.round(aWidth * aScaleFactor), aSource.getWidth() - tLeft);
+        int tHeight = Math.min(Math.round(aHeight * aScaleFactor), aSource.getHeight() - tTop);
+        if (tLeft < 0 || tTop < 0 || tWidth <= 0 || tHeight <= 0 || tWidth * tHeight * 4 > mMaxBytes) {
+            MyLog.e(LOG_TAG, "Can not capture sprite " + aId + " at " + aX + "/" + aY + " size " + aWidth + "x" + aHeight);
+            return false;
+        }
+        remove(aId);
+        Bitmap tBitmap = aSource.copyRegion(tLeft, tTop, tWidth, tHeight);
+        mBytes += tBitmap.getByteCount();
+        mSprites.put(aId, new Sprite(tBitmap, aWidth, aHeight));
+        trimToSize();
+        if (MyLog.isDEBUG()) {
+            MyLog.d(LOG_TAG, "Captured sprite " + aId + " size " + aWidth + "x" + aHeight + ". Store holds " + mSprites.size()
+                    + " sprites with " + (mBytes / 1024) + " kB");
+        }
+        return true;
+    }
+
+    /**
+     * @return false if sprite is not in store, i.e. it was never captured or evicted
+     */
+    boolean draw(int aId, TiledBackingStore aTarget, float aScaleFactor, int aX, int aY) {
+        Sprite tSprite = mSprites.get(aId); // get() updates the access order
+        if (tSprite == null) {
+            return false;
+        }
+        float tLeft = Math.round(aX * aScaleFactor);
+        float tTop = Math.round(aY * aScaleFactor);
+        if (tSprite.mBitmap.getWidth() == Math.round(tSprite.mWidth * aScaleFactor)
+                && tSprite.mBitmap.getHeight() == Math.round(tSprite.mHeight * aScaleFactor)) {
+            aTarget.drawBitmap(tSprite.mBitmap, tLeft, tTop);
+        } else {
+            // captured with another scale factor
+            mDestinationRect.set(tLeft, tTop, Math.round((aX + tSprite.mWidth) * aScaleFactor),
+                    Math.round((aY + tSprite.mHeight) * aScaleFactor));
+            aTarget.drawBitmap(tSprite.mBitmap, null, mDestinationRect, null);
+        }
+        return true;
+    }
+
+    void remove(int aId) {
+        Sprite tSprite = mSprites.remove(aId);
+        if (tSprite != null) {
+            mBytes -= tSprite.mBitmap.getByteCount();
+            tSprite.mBitmap.recycle();
+        }
+    }
+
+    void clear() {
+        for (Sprite tSprite : mSprites.values()) {
+            tSprite.mBitmap.recycle();
+        }
+        mSprites.clear();
+        mBytes = 0;
+    }
+
+    void setMaxBytes(int aMaxBytes) {
+        mMaxBytes = aMaxBytes;
+        trimToSize();
+    }
+
+    /*
+     * Evicts the least recently used sprites until the store fits into mMaxBytes
+     */
+    private void trimToSize() {
+        Iterator<Sprite> tIterator = mSprites.values().iterator();
+        while (mBytes > mMaxBytes && tIterator.hasNext()) {
+            Sprite tSprite = tIterator.next();
+            tIterator.remove();
+            mBytes -= tSprite.mBitmap.getByteCount();
+            tSprite.mBitmap.recycle();
+            mNumberOfEvictions++;
+        }
+    }
+
+    String getStatisticsString() {
+        return "Sprites=" + mSprites.size() + " " + (mBytes / 1024) + "kB of " + (mMaxBytes / 1024) + "kB evictions="
+                + mNumberOfEvictions;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * This service handles the TCP connection to WiFi clients like the ESP32.
+ * It listens on a port and accepts one client, and after disconnect, BlueDisplay calls connect() to accept the next one.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.os.Handler;
+
+import de.joachimsmeyer.android.bluedisplay.protocol.TcpTransport;
+
+import java.net.InetAddress;
+
+public class TcpSerialSocket extends TcpTransport {
+
+    private static final String LOG_TAG = "TcpSerialSocket";
+
+    private final BlueDisplay mBlueDisplayContext;
+    private final SerialService mSerialService;
+    private final Handler mHandler;
+
+    TcpSerialSocket(BlueDisplay aContext, SerialService aSerialService, Handler aHandler, int aPort) {
+        super(aSerialService, (InetAddress) null, aPort);
+        mBlueDisplayContext = aContext;
+        mSerialService = aSerialService;
+        mHandler = aHandler;
+    }
+
+    /*
+     * Called by the reader thread after accept
+     */
+    @Override
+    protected void onConnected() {
+        // output this with level warning, so it can not be suppressed
+        MyLog.w(LOG_TAG, "Connected to " + getRemoteAddressString());
+        // reset flags, buttons, sliders and sensors like for Bluetooth
+        mBlueDisplayContext.mRPCView.resetAll();
+        mBlueDisplayContext.restoreSnapshot(getRemoteHostAddress());
+        // start and initialize big ring buffer
+        super.onConnected();
+        mSerialService.signalBlueDisplayConnection();
+        mHandler.obtainMessage(BlueDisplay.MESSAGE_TCP_CONNECT, getRemoteAddressString()).sendToTarget();
+    }
+
+    /*
+     * Called by the reader thread after the client closed the connection
+     */
+    @Override
+    protected void onDisconnected() {
+        super.onDisconnected();
+        mHandler.sendEmptyMessage(BlueDisplay.MESSAGE_TCP_DISCONNECT);
+    }
+}
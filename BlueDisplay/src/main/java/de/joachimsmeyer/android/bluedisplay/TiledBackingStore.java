@@ -0,0 +1,385 @@
+/*
+ * 	SUMMARY
+ * 	Blue Display is an Open Source Android remote Display for Arduino etc.
+ * 	It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ * 	It also implements basic GUI elements as buttons and sliders.
+ * 	It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ * 	This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ * Backing store of the canvas, which consists of tiles of TILE_SIZE * TILE_SIZE pixel instead of one big bitmap.
+ * The command renderer draws to a DeferredDrawTarget, which records the primitives of a batch of commands.
+ * At flush(), only the tiles touched by a primitive are rendered, each tile by replaying the primitives intersecting it.
+ * If more than one tile is touched, the tiles are rendered in parallel by a thread pool with one thread for each core.
+ * Since each tile is a bitmap of its own, only the modified tiles must be uploaded again by the hardware renderer.
+ *
+ * All coordinates are pixel of the whole canvas. The canvas of each tile is translated accordingly.
+ * Drawings, which are not done by the command renderer, like bitmaps, use the drawOnTiles() functions after a flush().
+ * Bitmaps, which are drawn often like the cached buttons, are recorded by queueBitmap() in order with the primitives instead.
+ * The canvas may be bigger than the view, then onDraw() shows only the visible tiles.
+ * All methods must be called in the UI thread.
+ */
+
+package de.joachimsmeyer.android.bluedisplay;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import de.joachimsmeyer.android.bluedisplay.protocol.DeferredDrawTarget;
+import de.joachimsmeyer.android.bluedisplay.protocol.DrawTarget;
+
+class TiledBackingStore {
+
+    public static final String LOG_TAG = "TiledBackingStore";
+
+    static final int TILE_SIZE = 256;
+    // Flush if a batch gets too big, e.g. if the view is not shown and onDraw() is not called
+    private static final int MAX_DEFERRED_PRIMITIVES = 4096;
+    // The tiles of all layers are taken from this pool. It can hold all tiles of a full HD canvas.
+    private static final int MAX_POOLED_TILE_BYTES = 12 * 1024 * 1024;
+    static final BitmapPool sTilePool = new BitmapPool(MAX_POOLED_TILE_BYTES);
+
+    private static final int NUMBER_OF_RENDER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService sTileExecutor = Executors.newFixedThreadPool(NUMBER_OF_RENDER_THREADS, new ThreadFactory() {
+        private int mThreadNumber;
+
+        @Override
+        public synchronized Thread newThread(Runnable aRunnable) {
+            Thread tThread = new Thread(aRunnable, "TileRenderer-" + mThreadNumber++);
+            tThread.setDaemon(true);
+            return tThread;
+        }
+    });
+    // Each thread needs its own Paint objects
+    private static final ThreadLocal<CanvasDrawTarget> sTileDrawTarget = new ThreadLocal<CanvasDrawTarget>() {
+        @Override
+        protected CanvasDrawTarget initialValue() {
+            return new CanvasDrawTarget(null);
+        }
+    };
+
+    interface CanvasDrawer {
+        /**
+         * Is called once for each tile with the canvas of the tile, which is translated to the coordinates of the whole canvas
+         */
+        void draw(Canvas aCanvas);
+    }
+
+    private final DeferredDrawTarget mDeferredDrawTarget;
+
+    private int mWidth;
+    private int mHeight;
+    private int mColumns;
+    private int mRows;
+    private Bitmap[] mTiles;
+    private Canvas[] mTileCanvases;
+    private boolean[] mDirtyTiles;
+    private TileRenderTask[] mTileRenderTasks;
+    private final List<TileRenderTask> mPendingTasks = new ArrayList<>();
+
+    /*
+     * Statistics
+     */
+    int mStatisticNumberOfFlushes;
+    int mStatisticNumberOfParallelFlushes;
+    int mStatisticNumberOfRenderedTiles;
+
+    private class TileRenderTask implements Callable<Void> {
+        final int mTileIndex;
+
+        TileRenderTask(int aTileIndex) {
+            mTileIndex = aTileIndex;
+        }
+
+        @Override
+        public Void call() {
+            renderTile(mTileIndex);
+            return null;
+        }
+    }
+
+    /**
+     * @param aMeasuringTarget Used to measure text while recording, since the text width is required for the bounds
+     */
+    TiledBackingStore(int aWidth, int aHeight, DrawTarget aMeasuringTarget) {
+        mDeferredDrawTarget = new DeferredDrawTarget(aMeasuringTarget);
+        allocateTiles(aWidth, aHeight);
+    }
+
+    /**
+     * @return The target for the command renderer. The primitives are drawn at the next flush().
+     */
+    DrawTarget getDrawTarget() {
+        return mDeferredDrawTarget;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    boolean needsFlush() {
+        return mDeferredDrawTarget.getNumberOfPrimitives() >= MAX_DEFERRED_PRIMITIVES;
+    }
+
+    private void allocateTiles(int aWidth, int aHeight) {
+        mWidth = aWidth;
+        mHeight = aHeight;
+        mColumns = (aWidth + TILE_SIZE - 1) / TILE_SIZE;
+        mRows = (aHeight + TILE_SIZE - 1) / TILE_SIZE;
+        int tNumberOfTiles = mColumns * mRows;
+        mTiles = new Bitmap[tNumberOfTiles];
+        mTileCanvases = new Canvas[tNumberOfTiles];
+        mDirtyTiles = new boolean[tNumberOfTiles];
+        mTileRenderTasks = new TileRenderTask[tNumberOfTiles];
+        for (int i = 0; i < tNumberOfTiles; i++) {
+            int tLeft = getTileLeft(i);
+            int tTop = getTileTop(i);
+            // the tiles at the right and bottom border are smaller
+            mTiles[i] = sTilePool.obtain(Math.min(TILE_SIZE, aWidth - tLeft), Math.min(TILE_SIZE, aHeight - tTop),
+                    Bitmap.Config.ARGB_8888);
+            Canvas tCanvas = new Canvas(mTiles[i]);
+            tCanvas.translate(-tLeft, -tTop);
+            mTileCanvases[i] = tCanvas;
+            mTileRenderTasks[i] = new TileRenderTask(i);
+        }
+    }
+
+    private int getTileLeft(int aTileIndex) {
+        return (aTileIndex % mColumns) * TILE_SIZE;
+    }
+
+    private int getTileTop(int aTileIndex) {
+        return (aTileIndex / mColumns) * TILE_SIZE;
+    }
+
+    private void releaseTiles(Bitmap[] aTiles) {
+        for (Bitmap tTile : aTiles) {
+            sTilePool.release(tTile);
+        }
+    }
+
+    /**
+     * Creates new tiles for the new size. The tiles are taken from the pool, and the old tiles are returned to it.
+     *
+     * @param aKeepContent if true, the old content is stretched to the new size without filtering, otherwise the new tiles
+     *                     are transparent.
+     */
+    void resize(int aWidth, int aHeight, boolean aKeepContent) {
+        flush();
+        if (aWidth == mWidth && aHeight == mHeight) {
+            return;
+        }
+        if (!aKeepContent) {
+            // the old tiles can be reused for the new ones
+            releaseTiles(mTiles);
+            allocateTiles(aWidth, aHeight);
+            return;
+        }
+        Bitmap[] tOldTiles = mTiles;
+        int tOldColumns = mColumns;
+        int tOldRows = mRows;
+        float tScaleX = (float) aWidth / mWidth;
+        float tScaleY = (float) aHeight / mHeight;
+        allocateTiles(aWidth, aHeight);
+        RectF tDestinationRect = new RectF();
+        for (int i = 0; i < mTiles.length; i++) {
+            int tLeft = getTileLeft(i);
+            int tTop = getTileTop(i);
+            // Only the old tiles covering the new one
+            int tOldColumnEnd = Math.min((int) ((tLeft + TILE_SIZE) / tScaleX) / TILE_SIZE, tOldColumns - 1);
+            int tOldRowEnd = Math.min((int) ((tTop + TILE_SIZE) / tScaleY) / TILE_SIZE, tOldRows - 1);
+            for (int tRow = (int) (tTop / tScaleY) / TILE_SIZE; tRow <= tOldRowEnd; tRow++) {
+                for (int tColumn = (int) (tLeft / tScaleX) / TILE_SIZE; tColumn <= tOldColumnEnd; tColumn++) {
+                    Bitmap tOldTile = tOldTiles[tRow * tOldColumns + tColumn];
+                    tDestinationRect.set(tColumn * TILE_SIZE * tScaleX, tRow * TILE_SIZE * tScaleY,
+                            (tColumn * TILE_SIZE + tOldTile.getWidth()) * tScaleX, (tRow * TILE_SIZE + tOldTile.getHeight()) * tScaleY);
+                    mTileCanvases[i].drawBitmap(tOldTile, null, tDestinationRect, null);
+                }
+            }
+        }
+        releaseTiles(tOldTiles);
+    }
+
+    /**
+     * Renders all primitives recorded since the last flush to the tiles touched by them
+     */
+    void flush() {
+        if (mDeferredDrawTarget.isEmpty()) {
+            return;
+        }
+        int tNumberOfDirtyTiles = mDeferredDrawTarget.markTiles(TILE_SIZE, mColumns, mRows, mDirtyTiles);
+        mStatisticNumberOfFlushes++;
+        mStatisticNumberOfRenderedTiles += tNumberOfDirtyTiles;
+        if (tNumberOfDirtyTiles < 2 || NUMBER_OF_RENDER_THREADS < 2) {
+            for (int i = 0; i < mDirtyTiles.length; i++) {
+                if (mDirtyTiles[i]) {
+                    renderTile(i);
+                }
+            }
+        } else {
+            mStatisticNumberOfParallelFlushes++;
+            for (int i = 0; i < mDirtyTiles.length; i++) {
+                if (mDirtyTiles[i]) {
+                    mPendingTasks.add(mTileRenderTasks[i]);
+                }
+            }
+            try {
+                // The recorded primitives are only read by the tasks
+                for (Future<Void> tFuture : sTileExecutor.invokeAll(mPendingTasks)) {
+                    tFuture.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                MyLog.e(LOG_TAG, "Rendering of tile failed " + e.getCause());
+            }
+            mPendingTasks.clear();
+        }
+        Arrays.fill(mDirtyTiles, false);
+        mDeferredDrawTarget.clear();
+    }
+
+    /*
+     * Is called by the render threads for different tiles concurrently
+     */
+    private void renderTile(int aTileIndex) {
+        CanvasDrawTarget tDrawTarget = sTileDrawTarget.get();
+        tDrawTarget.setCanvas(mTileCanvases[aTileIndex]);
+        int tLeft = getTileLeft(aTileIndex);
+        int tTop = getTileTop(aTileIndex);
+        mDeferredDrawTarget.replay(tDrawTarget, tLeft, tTop, tLeft + TILE_SIZE, tTop + TILE_SIZE);
+        tDrawTarget.setCanvas(null);
+    }
+
+    /**
+     * Calls aDrawer for all tiles intersecting the rectangle. Pending primitives are flushed before.
+     */
+    void drawOnTiles(float aLeft, float aTop, float aRight, float aBottom, CanvasDrawer aDrawer) {
+        flush();
+        int tColumnStart = Math.max((int) Math.floor(aLeft / TILE_SIZE), 0);
+        int tRowStart = Math.max((int) Math.floor(aTop / TILE_SIZE), 0);
+        int tColumnEnd = Math.min((int) Math.floor(aRight / TILE_SIZE), mColumns - 1);
+        int tRowEnd = Math.min((int) Math.floor(aBottom / TILE_SIZE), mRows - 1);
+        for (int tRow = tRowStart; tRow <= tRowEnd; tRow++) {
+            for (int tColumn = tColumnStart; tColumn <= tColumnEnd; tColumn++) {
+                Canvas tCanvas = mTileCanvases[tRow * mColumns + tColumn];
+                tCanvas.save();
+                aDrawer.draw(tCanvas);
+                tCanvas.restore();
+            }
+        }
+    }
+
+    void drawBitmap(final Bitmap aBitmap, final float aLeft, final float aTop) {
+        drawOnTiles(aLeft, aTop, aLeft + aBitmap.getWidth(), aTop + aBitmap.getHeight(), new CanvasDrawer() {
+            @Override
+            public void draw(Canvas aCanvas) {
+                aCanvas.drawBitmap(aBitmap, aLeft, aTop, null);
+            }
+        });
+    }
+
+    /**
+     * Draws the bitmap at the next flush() in order with the pending primitives, to avoid a flush for each bitmap.
+     * The bitmap must not be recycled before the next flush().
+     */
+    void queueBitmap(Bitmap aBitmap, float aLeft, float aTop) {
+        if (needsFlush()) {
+            flush();
+        }
+        mDeferredDrawTarget.drawImage(aBitmap, aLeft, aTop, aBitmap.getWidth(), aBitmap.getHeight());
+    }
+
+    /**
+     * @param aSourceRect null for the whole bitmap
+     */
+    void drawBitmap(final Bitmap aBitmap, final Rect aSourceRect, final RectF aDestinationRect, final Paint aPaint) {
+        drawOnTiles(aDestinationRect.left, aDestinationRect.top, aDestinationRect.right, aDestinationRect.bottom, new CanvasDrawer() {
+            @Override
+            public void draw(Canvas aCanvas) {
+                aCanvas.drawBitmap(aBitmap, aSourceRect, aDestinationRect, aPaint);
+            }
+        });
+    }
+
+    /**
+     * @return A new bitmap with a copy of the rectangle, which must be inside of the canvas
+     */
+    Bitmap copyRegion(int aLeft, int aTop, int aWidth, int aHeight) {
+        flush();
+        Bitmap tBitmap = Bitmap.createBitmap(aWidth, aHeight, Bitmap.Config.ARGB_8888);
+        Canvas tCanvas = new Canvas(tBitmap);
+        tCanvas.translate(-aLeft, -aTop);
+        draw(tCanvas, 0, 0, aLeft, aTop, aLeft + aWidth, aTop + aHeight, null);
+        return tBitmap;
+    }
+
+    /**
+     * Draws the tiles intersecting the visible rectangle of the canvas at aX, aY of aCanvas.
+     * Pending primitives must be flushed before.
+     */
+    void draw(Canvas aCanvas, float aX, float aY, int aVisibleLeft, int aVisibleTop, int aVisibleRight, int aVisibleBottom,
+              Paint aPaint) {
+        int tColumnStart = Math.max(aVisibleLeft / TILE_SIZE, 0);
+        int tRowStart = Math.max(aVisibleTop / TILE_SIZE, 0);
+        int tColumnEnd = Math.min((aVisibleRight - 1) / TILE_SIZE, mColumns - 1);
+        int tRowEnd = Math.min((aVisibleBottom - 1) / TILE_SIZE, mRows - 1);
+        for (int tRow = tRowStart; tRow <= tRowEnd; tRow++) {
+            for (int tColumn = tColumnStart; tColumn <= tColumnEnd; tColumn++) {
+                aCanvas.drawBitmap(mTiles[tRow * mColumns + tColumn], aX + tColumn * TILE_SIZE, aY + tRow * TILE_SIZE, aPaint);
+            }
+        }
+    }
+
+    /**
+     * Returns the tiles to the pool. The store must not be used afterwards.
+     */
+    void recycle() {
+        mDeferredDrawTarget.clear();
+        releaseTiles(mTiles);
+    }
+
+    void resetStatistics() {
+        mStatisticNumberOfFlushes = 0;
+        mStatisticNumberOfParallelFlushes = 0;
+        mStatisticNumberOfRenderedTiles = 0;
+    }
+
+    String getStatisticsString() {
+        return "Tiles=" + mTiles.length + " (" + mColumns + "x" + mRows + ") flushes=" + mStatisticNumberOfFlushes + " parallel="
+                + mStatisticNumberOfParallelFlushes + " rendered tiles=" + mStatisticNumberOfRenderedTiles + " threads="
+                + NUMBER_OF_RENDER_THREADS;
+    }
+}
@@ -32,6 +32,7 @@ package de.joachimsmeyer.android.bluedisplay;
 import static de.joachimsmeyer.android.bluedisplay.RPCView.COLOR32_NO_BACKGROUND;
 
 import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.media.AudioManager;
 import android.media.ToneGenerator;
@@ -39,7 +40,9 @@ import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
-import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 public class TouchButton {
@@ -62,7 +65,7 @@ public class TouchButton {
     String[] mTextStrings; // contains the array of text strings to implement multiline texts
 
     int mValue;
-    int mListIndex; // index in sButtonList
+    int mListIndex; // index in the button list of the session
     int mCallbackAddress;
     boolean mDoBeep;
     boolean mIsManualRefresh; // default = false, true = no automatic refresh (currently only for red/green buttons)
@@ -89,6 +92,21 @@ public class TouchButton {
 
     boolean mIsActive;
     boolean mIsInitialized;
+
+    /*
+     * Cache of the rendered button at the current scale factor. Index 1 is used for value true of a red/green button,
+     * index 0 for all other cases. An entry is only valid for the button and text color it was rendered with.
+     * The cache is cleared at change of text, position, flags or scale factor.
+     * The journal entries of the rendered button are recorded once and appended to the journal at each cached draw.
+     */
+    private final Bitmap[] mCachedBitmaps = new Bitmap[2];
+    private final byte[][] mCachedJournalEntries = new byte[2][];
+    private final int[] mCachedNumberOfJournalEntries = new int[2];
+    private final int[] mCachedButtonColors = new int[2];
+    private final int[] mCachedTextColors = new int[2];
+    private float mCachedScaleFactor;
+    private static final int BUTTON_CACHE_MAX_BYTES = 16 * 1024 * 1024; // For all buttons of a session
+
     static int sTouchBeepIndex = ToneGenerator.TONE_CDMA_KEYPAD_VOLUME_KEY_LITE; // 89
     static ToneGenerator sButtonToneGenerator;
     static int sLastRequestedToneVolume;
@@ -98,10 +116,6 @@ public class TouchButton {
     static final int sDefaultButtonColor = Color.RED;
     static final int sDefaultTextColor = Color.BLACK;
 
-    private static final int BUTTON_INITIAL_LIST_SIZE = 40;
-
-    public static final List<TouchButton> sButtonList = new ArrayList<>(BUTTON_INITIAL_LIST_SIZE);
-
     private static final int FUNCTION_BUTTON_DRAW = 0x40;
     private static final int FUNCTION_BUTTON_DRAW_TEXT = 0x41;
     private static final int FUNCTION_BUTTON_SETTINGS = 0x42;
@@ -158,11 +172,115 @@ public class TouchButton {
      * Static convenience method - reset all button lists and button flags
      */
     static void resetButtons(final RPCView aRPCView) {
-        sButtonList.clear();
+        clearAllCaches(aRPCView.mSession);
+        aRPCView.mSession.mButtonList.clear();
         aRPCView.mUseUpEventForButtons = false;
         sTouchBeepIndex = ToneGenerator.TONE_CDMA_KEYPAD_VOLUME_KEY_LITE;
     }
 
+    /*
+     * Writes all buttons for DisplaySnapshot. The touch and autorepeat states are not written.
+     */
+    static void writeButtonList(ClientSession aSession, DataOutputStream aOut) throws IOException {
+        aOut.writeInt(sTouchBeepIndex);
+        aOut.writeInt(aSession.mButtonList.size());
+        for (TouchButton tButton : aSession.mButtonList) {
+            aOut.writeBoolean(tButton != null);
+            if (tButton != null) {
+                tButton.writeState(aOut);
+            }
+        }
+    }
+
+    static void readButtonList(final RPCView aRPCView, DataInputStream aIn) throws IOException {
+        List<TouchButton> tButtonList = aRPCView.mSession.mButtonList;
+        clearAllCaches(aRPCView.mSession);
+        tButtonList.clear();
+        sTouchBeepIndex = aIn.readInt();
+        int tNumberOfButtons = aIn.readInt();
+        for (int i = 0; i < tNumberOfButtons; i++) {
+            TouchButton tButton = null;
+            if (aIn.readBoolean()) {
+                tButton = new TouchButton();
+                tButton.readState(aRPCView, aIn);
+            }
+            tButtonList.add(tButton);
+        }
+    }
+
+    private void writeState(DataOutputStream aOut) throws IOException {
+        aOut.writeInt(mButtonColor);
+        aOut.writeInt(mPositionX);
+        aOut.writeInt(mPositionY);
+        aOut.writeInt(mTextPositionX);
+        aOut.writeInt(mTextPositionY);
+        aOut.writeInt(mWidth);
+        aOut.writeInt(mHeight);
+        aOut.writeInt(mTextSize);
+        aOut.writeInt(mTextColor);
+        DisplaySnapshot.writeString(aOut, mEscapedText);
+        aOut.writeInt(mTextStrings == null ? -1 : mTextStrings.length);
+        if (mTextStrings != null) {
+            for (String tTextString : mTextStrings) {
+                aOut.writeUTF(tTextString);
+            }
+        }
+        aOut.writeInt(mValue);
+        aOut.writeInt(mListIndex);
+        aOut.writeInt(mCallbackAddress);
+        aOut.writeBoolean(mDoBeep);
+        aOut.writeBoolean(mIsManualRefresh);
+        aOut.writeBoolean(mIsRedGreen);
+        DisplaySnapshot.writeString(aOut, mRawTextForValueFalse);
+        DisplaySnapshot.writeString(aOut, mRawTextForValueTrue);
+        aOut.writeBoolean(mIsAutorepeatButton);
+        aOut.writeInt(mMillisFirstAutorepeatDelay);
+        aOut.writeInt(mMillisFirstAutorepeatRate);
+        aOut.writeInt(mFirstAutorepeatCount);
+        aOut.writeInt(mMillisSecondAutorepeatRate);
+        aOut.writeBoolean(mIsActive);
+        aOut.writeBoolean(mIsInitialized);
+    }
+
+    private void readState(final RPCView aRPCView, DataInputStream aIn) throws IOException {
+        mRPCView = aRPCView;
+        mButtonColor = aIn.readInt();
+        mPositionX = aIn.readInt();
+        mPositionY = aIn.readInt();
+        mTextPositionX = aIn.readInt();
+        mTextPositionY = aIn.readInt();
+        mWidth = aIn.readInt();
+        mHeight = aIn.readInt();
+        mTextSize = aIn.readInt();
+        mTextColor = aIn.readInt();
+        mEscapedText = DisplaySnapshot.readString(aIn);
+        int tNumberOfTextStrings = aIn.readInt();
+        if (tNumberOfTextStrings >= 0) {
+            mTextStrings = new String[tNumberOfTextStrings];
+            for (int i = 0; i < tNumberOfTextStrings; i++) {
+                mTextStrings[i] = aIn.readUTF();
+            }
+        }
+        mValue = aIn.readInt();
+        mListIndex = aIn.readInt();
+        mCallbackAddress = aIn.readInt();
+        mDoBeep = aIn.readBoolean();
+        if (mDoBeep) {
+            createButtonToneGenerator();
+        }
+        mIsManualRefresh = aIn.readBoolean();
+        mIsRedGreen = aIn.readBoolean();
+        mRawTextForValueFalse = DisplaySnapshot.readString(aIn);
+        mRawTextForValueTrue = DisplaySnapshot.readString(aIn);
+        mIsAutorepeatButton = aIn.readBoolean();
+        mMillisFirstAutorepeatDelay = aIn.readInt();
+        mMillisFirstAutorepeatRate = aIn.readInt();
+        mFirstAutorepeatCount = aIn.readInt();
+        mMillisSecondAutorepeatRate = aIn.readInt();
+        mIsActive = aIn.readBoolean();
+        mIsInitialized = aIn.readBoolean();
+    }
+
     void initButton(final RPCView aRPCView, final int aPositionX, final int aPositionY, final int aWidthX, final int aHeightY,
                     final int aButtonColor, final String aText, final int aTextSize, final int aFlags, final int aValue,
                     final int aCallbackAddress) {
@@ -200,6 +318,16 @@ public class TouchButton {
     void drawButton() {
         mIsActive = true;
         setColorForRedGreenButton();
+        selectRedGreenText();
+        if (!drawButtonFromCache()) {
+            drawButtonUncached();
+        }
+    }
+
+    /*
+     * Draws button rect and text with the helper functions of RPCView
+     */
+    void drawButtonUncached() {
         // Draw button rect
         if (mButtonColor != COLOR32_NO_BACKGROUND) {
             mRPCView.fillRectRel(mPositionX, mPositionY, mWidth, mHeight, mButtonColor);
@@ -207,6 +335,94 @@ public class TouchButton {
         drawText();
     }
 
+    /*
+     * @return false if button can not be cached, e.g. because it has no background or text outside the button area
+     */
+    private boolean drawButtonFromCache() {
+        if (mButtonColor == COLOR32_NO_BACKGROUND) {
+            return false;
+        }
+        // The clear color of the layer erases pixels, which a cached bitmap can not do
+        if (mRPCView.mLayers.isWidgetClearColor(mButtonColor) || mRPCView.mLayers.isWidgetClearColor(mTextColor)) {
+            return false;
+        }
+        if (mCachedScaleFactor != mRPCView.mScaleFactor) {
+            clearCache();
+            mCachedScaleFactor = mRPCView.mScaleFactor;
+        }
+        int tIndex = (mIsRedGreen && mValue != 0) ? 1 : 0;
+        Bitmap tBitmap = mCachedBitmaps[tIndex];
+        if (tBitmap == null || mCachedButtonColors[tIndex] != mButtonColor || mCachedTextColors[tIndex] != mTextColor) {
+            if (tBitmap != null) {
+                recycleCachedBitmap(tIndex);
+            }
+            if (mRPCView.mSession.mCachedButtonBytes > BUTTON_CACHE_MAX_BYTES || !isTextInsideButton()) {
+                return false;
+            }
+            tBitmap = mRPCView.renderButtonBitmap(this);
+            mRPCView.mSession.mCachedButtonBytes += tBitmap.getByteCount();
+            mCachedBitmaps[tIndex] = tBitmap;
+            mCachedButtonColors[tIndex] = mButtonColor;
+            mCachedTextColors[tIndex] = mTextColor;
+            mCachedJournalEntries[tIndex] = mRPCView.mButtonJournal.getEntries();
+            mCachedNumberOfJournalEntries[tIndex] = mRPCView.mButtonJournal.getNumberOfEntries();
+        }
+        mRPCView.drawButtonBitmap(this, tBitmap, mCachedJournalEntries[tIndex], mCachedNumberOfJournalEntries[tIndex]);
+        return true;
+    }
+
+    /*
+     * The bitmap may still be queued for drawing, so it is drawn before it is recycled
+     */
+    private void recycleCachedBitmap(int aIndex) {
+        mRPCView.mLayers.flush();
+        mRPCView.mSession.mCachedButtonBytes -= mCachedBitmaps[aIndex].getByteCount();
+        mCachedBitmaps[aIndex].recycle();
+        mCachedBitmaps[aIndex] = null;
+        mCachedJournalEntries[aIndex] = null;
+    }
+
+    /*
+     * Text outside the button area would be clipped by the cached bitmap
+     */
+    private boolean isTextInsideButton() {
+        if (mTextSize <= 0 || mEscapedText.isEmpty()) {
+            return true;
+        }
+        if (mTextSize * mTextStrings.length >= mHeight) {
+            return false;
+        }
+        for (String tTextString : mTextStrings) {
+            // same position as in drawText()
+            int tLength = (int) ((RPCView.TEXT_WIDTH_FACTOR * mTextSize * tTextString.length()) + 0.5);
+            if (tLength >= mWidth) {
+                return false;
+            }
+            int tTextPositionX = mPositionX + ((mWidth - tLength) / 2);
+            if (tTextPositionX + mRPCView.measureButtonText(tTextString, mTextSize) > mPositionX + mWidth) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clearCache() {
+        for (int i = 0; i < mCachedBitmaps.length; i++) {
+            if (mCachedBitmaps[i] != null) {
+                recycleCachedBitmap(i);
+            }
+        }
+    }
+
+    static void clearAllCaches(ClientSession aSession) {
+        for (TouchButton tButton : aSession.mButtonList) {
+            if (tButton != null) {
+                tButton.clearCache();
+            }
+        }
+        aSession.mCachedButtonBytes = 0;
+    }
+
     /*
      * Overwrite and deactivate button, but do not delete it.
      */
@@ -253,11 +469,7 @@ public class TouchButton {
         if ((aFlags & FLAG_BUTTON_DO_BEEP_ON_TOUCH) == 0) {
             mDoBeep = false;
         } else {
-            if (sButtonToneGenerator == null) {
-                int tCurrentSystemVolume = mRPCView.mBlueDisplayContext.mAudioManager.getStreamVolume(AudioManager.STREAM_SYSTEM);
-                sButtonToneGenerator = new ToneGenerator(AudioManager.STREAM_SYSTEM,
-                        (tCurrentSystemVolume * ToneGenerator.MAX_VOLUME) / mRPCView.mBlueDisplayContext.mMaxSystemVolume);
-            }
+            createButtonToneGenerator();
             mDoBeep = true;
         }
         if ((aFlags & FLAG_BUTTON_TYPE_TOGGLE) == 0) {
@@ -282,6 +494,14 @@ public class TouchButton {
         }
     }
 
+    private void createButtonToneGenerator() {
+        if (sButtonToneGenerator == null) {
+            int tCurrentSystemVolume = mRPCView.mBlueDisplayContext.mAudioManager.getStreamVolume(AudioManager.STREAM_SYSTEM);
+            sButtonToneGenerator = new ToneGenerator(AudioManager.STREAM_SYSTEM,
+                    (tCurrentSystemVolume * ToneGenerator.MAX_VOLUME) / mRPCView.mBlueDisplayContext.mMaxSystemVolume);
+        }
+    }
+
     private void positionText() {
         if (mTextSize > 0 && !mEscapedText.isEmpty()) { // don't render anything if text size == 0 or text is empty
             if (mTextStrings.length > 1) {
@@ -322,25 +542,27 @@ public class TouchButton {
         }
     }
 
+    /*
+     * Position red green text, it may have changed before
+     */
+    private void selectRedGreenText() {
+        if (mIsRedGreen && mRawTextForValueTrue != null) { // No need to reposition, if we have only one text for both values
+            if (mValue != 0) {
+                // select and prepare text for value TRUE
+                handleText(mRawTextForValueTrue);
+            } else {
+                // select and prepare text for value FALSE
+                handleText(mRawTextForValueFalse);
+            }
+        }
+    }
+
     /**
      * draws the text of a button
      */
     void drawText() {
         mIsActive = true;
-        if (mIsRedGreen) {
-            /*
-             * Position red green text, it may have changed before
-             */
-            if (mRawTextForValueTrue != null) { // No need to reposition, if we have only one text for both values
-                if (mValue != 0) {
-                    // select and prepare text for value TRUE
-                    handleText(mRawTextForValueTrue);
-                } else {
-                    // select and prepare text for value FALSE
-                    handleText(mRawTextForValueFalse);
-                }
-            }
-        }
+        selectRedGreenText();
 
         if (mTextSize > 0) { // don't render anything if text size == 0
             if (mTextStrings.length == 1) {
@@ -370,6 +592,7 @@ public class TouchButton {
     }
 
     void setPosition(int aPositionX, int aPositionY) {
+        clearCache();
         mPositionX = aPositionX;
         mPositionY = aPositionY;
 
@@ -440,7 +663,8 @@ public class TouchButton {
                     if (!mIsManualRefresh) {
                         drawButton();
                         // Trigger next frame in order to show changed button
-                        mRPCView.invalidate();
+                        mRPCView.addDirtyRegion(mPositionX, mPositionY, mWidth, mHeight);
+                        mRPCView.invalidateDirtyRegion();
                     }
                 }
 
@@ -468,10 +692,10 @@ public class TouchButton {
     /**
      * @return number of button if touched else -1
      */
-    static int checkAllButtons(int aTouchPositionX, int aTouchPositionY,
+    static int checkAllButtons(ClientSession aSession, int aTouchPositionX, int aTouchPositionY,
                                boolean aDoCallbackOnlyForAutorepeatButton) {
         // walk through list of active elements
-        for (TouchButton tButton : sButtonList) {
+        for (TouchButton tButton : aSession.mButtonList) {
             if (tButton.mIsActive
                     && tButton.checkIfTouchInButton(aTouchPositionX, aTouchPositionY, aDoCallbackOnlyForAutorepeatButton)) {
                 return tButton.mListIndex;
@@ -483,8 +707,8 @@ public class TouchButton {
     /**
      * Static convenience method - activate all buttons
      */
-    static void activateAllButtons() {
-        for (TouchButton tButton : sButtonList) {
+    static void activateAllButtons(ClientSession aSession) {
+        for (TouchButton tButton : aSession.mButtonList) {
             if (tButton != null) {
                 tButton.mIsActive = true;
             }
@@ -494,10 +718,10 @@ public class TouchButton {
     /**
      * Static convenience method - deactivate all buttons (e.g. before switching screen)
      */
-    static void deactivateAllButtons() {
+    static void deactivateAllButtons(ClientSession aSession) {
         // check needed, because method is called also by setFlags()
-        if (sButtonList != null && !sButtonList.isEmpty()) {
-            for (TouchButton tButton : sButtonList) {
+        if (!aSession.mButtonList.isEmpty()) {
+            for (TouchButton tButton : aSession.mButtonList) {
                 if (tButton != null) {
                     tButton.mIsActive = false;
                 }
@@ -542,6 +766,7 @@ public class TouchButton {
     public static void interpretCommand(final RPCView aRPCView, int aCommand,
                                         int[] aParameters, int aParamsLength,
                                         byte[] aDataBytes, int aDataLength) {
+        List<TouchButton> tButtonList = aRPCView.mSession.mButtonList;
         int tButtonNumber = -1; // to have it initialized ;-)
         TouchButton tButton = null;
         String tButtonText = ""; // Always contains a leading space and ends with ", ButtonNr=" + tButtonNumber
@@ -565,9 +790,9 @@ public class TouchButton {
                 return;
             } else {
                 tButtonNumber = aParameters[0];
-                if (tButtonNumber >= 0 && tButtonNumber < sButtonList.size()) {
+                if (tButtonNumber >= 0 && tButtonNumber < tButtonList.size()) {
                     // get button for create with existent button number
-                    tButton = sButtonList.get(tButtonNumber);
+                    tButton = tButtonList.get(tButtonNumber);
                     if (aCommand != FUNCTION_BUTTON_INIT && (tButton == null || !tButton.mIsInitialized)) {
                         MyLog.e(LOG_TAG, "Command=0x" + Integer.toHexString(aCommand) + " ButtonNr=" + tButtonNumber
                                 + " is null or not initialized.");
@@ -577,7 +802,7 @@ public class TouchButton {
 
                 } else if (aCommand != FUNCTION_BUTTON_INIT) {
                     MyLog.e(LOG_TAG, "Command=0x" + Integer.toHexString(aCommand) + " ButtonNr=" + tButtonNumber
-                            + " not found. Only " + sButtonList.size() + " buttons created.");
+                            + " not found. Only " + tButtonList.size() + " buttons created.");
                     return;
                 }
             }
@@ -589,14 +814,14 @@ public class TouchButton {
                 if (MyLog.isINFO()) {
                     MyLog.i(LOG_TAG, "Activate all buttons");
                 }
-                activateAllButtons();
+                activateAllButtons(aRPCView.mSession);
                 break;
 
             case FUNCTION_BUTTON_DEACTIVATE_ALL:
                 if (MyLog.isINFO()) {
                     MyLog.i(LOG_TAG, "Deactivate all buttons");
                 }
-                deactivateAllButtons();
+                deactivateAllButtons(aRPCView.mSession);
                 break;
 
             case FUNCTION_BUTTON_DISABLE_AUTOREPEAT_UNTIL_END_OF_TOUCH:
@@ -692,10 +917,10 @@ public class TouchButton {
 
             case FUNCTION_BUTTON_SET_TEXT:
             case FUNCTION_BUTTON_SET_TEXT_AND_DRAW_BUTTON:
-                aRPCView.myConvertChars(aDataBytes, RPCView.sCharsArray, aDataLength);
-                tString = new String(RPCView.sCharsArray, 0, aDataLength);
+                tString = aRPCView.convertToString(aDataBytes, aDataLength);
                 tButton.mRawTextForValueFalse = tString; // store it as value for false for use at red green button
                 tButton.handleText(tString);
+                tButton.clearCache();
 
                 if (MyLog.isINFO()) {
                     MyLog.i(LOG_TAG, "Set text \"" + tButton.mEscapedText + "\" for" + tButtonText);
@@ -709,9 +934,9 @@ public class TouchButton {
                 // This implicitly changes button to red/green type
                 tButton.mIsRedGreen = true;
 
-                aRPCView.myConvertChars(aDataBytes, RPCView.sCharsArray, aDataLength);
-                tString = new String(RPCView.sCharsArray, 0, aDataLength);
+                tString = aRPCView.convertToString(aDataBytes, aDataLength);
                 tButton.mRawTextForValueTrue = tString;
+                tButton.clearCache();
 
                 if (tButton.mValue != 0) {
                     // set right text position etc. if value is already true
@@ -824,6 +1049,7 @@ public class TouchButton {
 
                     case SUBFUNCTION_BUTTON_SET_FLAGS:
                         tButton.handleFlags(aParameters[2]);
+                        tButton.clearCache();
                         if (MyLog.isINFO()) {
                             MyLog.i(LOG_TAG, "Set Options to 0x" + Integer.toHexString(aParameters[2]) + tButtonText);
                         }
@@ -863,8 +1089,7 @@ public class TouchButton {
                 break;
 
             case FUNCTION_BUTTON_INIT:
-                aRPCView.myConvertChars(aDataBytes, RPCView.sCharsArray, aDataLength);
-                tButtonText = new String(RPCView.sCharsArray, 0, aDataLength);
+                tButtonText = aRPCView.convertToString(aDataBytes, aDataLength);
                 int tCallbackAddress;
                 String tCallbackAddressStringAdjustedForClientDebugging = "";
                 if (aParamsLength == 9) {
@@ -889,14 +1114,14 @@ public class TouchButton {
                      * create new button
                      */
                     tButton = new TouchButton();
-                    if (tButtonNumber < sButtonList.size()) {
-                        sButtonList.set(tButtonNumber, tButton);
+                    if (tButtonNumber < tButtonList.size()) {
+                        tButtonList.set(tButtonNumber, tButton);
                     } else {
-                        tButtonNumber = sButtonList.size();
-                        sButtonList.add(tButton);
+                        tButtonNumber = tButtonList.size();
+                        tButtonList.add(tButton);
                         if (MyLog.isDEBUG()) {
                             Log.d(LOG_TAG, "Button with index " + tButtonNumber + " appended at end of list. List size now "
-                                    + sButtonList.size());
+                                    + tButtonList.size());
                         }
                     }
                     tButton.mListIndex = tButtonNumber;
@@ -913,7 +1138,7 @@ public class TouchButton {
                                     + aParameters[4] + ", color=" + RPCView.shortToColorString(aParameters[5]) + ", size="
                                     + aParameters[6] + ", flags=" + Integer.toHexString(aParameters[7]) + ", value="
                                     + aParameters[8] + ", callback=0x" + Integer.toHexString(tCallbackAddress)
-                                    + tCallbackAddressStringAdjustedForClientDebugging + ") ListSize=" + sButtonList.size());
+                                    + tCallbackAddressStringAdjustedForClientDebugging + ") ListSize=" + tButtonList.size());
                 }
                 break;
 
@@ -31,8 +31,11 @@ package de.joachimsmeyer.android.bluedisplay;
 
 import android.annotation.SuppressLint;
 import android.graphics.Color;
+import android.os.SystemClock;
 
-import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 public class TouchSlider {
@@ -69,6 +72,32 @@ public class TouchSlider {
         boolean mPositionsInvalid = true; // Values or caption text have changed, need to recompute position values
         int mPositionX; // resulting X positions computed from the above values and the text content
         int mPositionY; // resulting Y position
+
+        void writeState(DataOutputStream aOut) throws IOException {
+            aOut.writeInt(mSize);
+            aOut.writeInt(mMargin);
+            aOut.writeBoolean(mTakeDefaultMargin);
+            aOut.writeBoolean(mAbove);
+            aOut.writeInt(mAlign);
+            aOut.writeInt(mColor);
+            aOut.writeInt(mBackgroundColor);
+            aOut.writeBoolean(mPositionsInvalid);
+            aOut.writeInt(mPositionX);
+            aOut.writeInt(mPositionY);
+        }
+
+        void readState(DataInputStream aIn) throws IOException {
+            mSize = aIn.readInt();
+            mMargin = aIn.readInt();
+            mTakeDefaultMargin = aIn.readBoolean();
+            mAbove = aIn.readBoolean();
+            mAlign = aIn.readInt();
+            mColor = aIn.readInt();
+            mBackgroundColor = aIn.readInt();
+            mPositionsInvalid = aIn.readBoolean();
+            mPositionX = aIn.readInt();
+            mPositionY = aIn.readInt();
+        }
     }
 
     String mCaption;
@@ -108,18 +137,41 @@ public class TouchSlider {
     float mMaxValue; // The value of slider, if position is left or bottom - default is mBarLength
     float mMinValue; // The value of slider, if position is right or top - default is 0
 
-    int mSliderNumber; // index in sSliderList - to identify slider while debugging
+    int mSliderNumber; // index in the slider list of the session - to identify slider while debugging
     int mOnChangeHandlerCallbackAddress;
     boolean mIsActive;
     boolean mIsInitialized;
 
+    /*
+     * State of the bar in the bitmap, to draw only the changed strip. mDrawnBarValueScaled is -1 if the bar must be drawn completely,
+     * e.g. after drawSlider(), clear display or a change of position or layout.
+     * The bar is also drawn completely, if anything else was drawn since, see ClientSession.mCanvasChangeCount.
+     */
+    private int mDrawnBarValueScaled = -1;
+    private int mDrawnCanvasChangeCount;
+    private int mDrawnBarColor;
+    private int mDrawnBarBackgroundColor;
+
+    /*
+     * Rate limit for the callbacks while dragging. A value, which is not sent because of the limit,
+     * is sent after the interval or at touch up at the latest.
+     */
+    int mMinCallbackIntervalMillis; // 0 -> every change is sent
+    private long mLastCallbackMillis;
+    private boolean mCallbackIsPending;
+    private final Runnable mSendPendingCallback = new Runnable() {
+        @Override
+        public void run() {
+            if (mCallbackIsPending) {
+                sendCallback();
+            }
+        }
+    };
+
     static int sDefaultBorderColor = Color.BLUE;
     static int sDefaultBackgroundColor = Color.WHITE;
     static int sDefaultThresholdColor = Color.RED;
 
-    private static final int SLIDER_LIST_INITIAL_SIZE = 10;
-    private static final List<TouchSlider> sSliderList = new ArrayList<>(SLIDER_LIST_INITIAL_SIZE);
-
     private static final int FUNCTION_SLIDER_INIT = 0x50;
     private static final int FUNCTION_SLIDER_DRAW = 0x51;
     private static final int FUNCTION_SLIDER_SETTINGS = 0x52;
@@ -143,6 +195,7 @@ public class TouchSlider {
     private static final int SUBFUNCTION_SLIDER_SET_BORDER_SIZES_AND_COLOR = 0x0B;
 
     private static final int SUBFUNCTION_SLIDER_SET_VALUE = 0x0C;
+    private static final int SUBFUNCTION_SLIDER_SET_MAX_CALLBACK_RATE = 0x0D; // callbacks per second, 0 -> no limit
 
 
     private static final int SUBFUNCTION_SLIDER_SET_CALLBACK = 0x20;
@@ -170,8 +223,121 @@ public class TouchSlider {
     /**
      * Static convenience method - reset slider list
      */
-    static void resetSliders() {
-        sSliderList.clear();
+    static void resetSliders(ClientSession aSession) {
+        for (TouchSlider tSlider : aSession.mSliderList) {
+            if (tSlider != null && tSlider.mCallbackIsPending) {
+                // Do not send old values to the next client
+                tSlider.mRPCView.removeCallbacks(tSlider.mSendPendingCallback);
+            }
+        }
+        aSession.mSliderList.clear();
+    }
+
+    /*
+     * Writes all sliders for DisplaySnapshot. The touch state is not written.
+     */
+    static void writeSliderList(ClientSession aSession, DataOutputStream aOut) throws IOException {
+        aOut.writeInt(sDefaultBorderColor);
+        aOut.writeInt(sDefaultBackgroundColor);
+        aOut.writeInt(sDefaultThresholdColor);
+        aOut.writeInt(aSession.mSliderList.size());
+        for (TouchSlider tSlider : aSession.mSliderList) {
+            aOut.writeBoolean(tSlider != null);
+            if (tSlider != null) {
+                tSlider.writeState(aOut);
+            }
+        }
+    }
+
+    static void readSliderList(final RPCView aRPCView, DataInputStream aIn) throws IOException {
+        List<TouchSlider> tSliderList = aRPCView.mSession.mSliderList;
+        tSliderList.clear();
+        sDefaultBorderColor = aIn.readInt();
+        sDefaultBackgroundColor = aIn.readInt();
+        sDefaultThresholdColor = aIn.readInt();
+        int tNumberOfSliders = aIn.readInt();
+        for (int i = 0; i < tNumberOfSliders; i++) {
+            TouchSlider tSlider = null;
+            if (aIn.readBoolean()) {
+                tSlider = new TouchSlider();
+                tSlider.readState(aRPCView, aIn);
+            }
+            tSliderList.add(tSlider);
+        }
+    }
+
+    private void writeState(DataOutputStream aOut) throws IOException {
+        aOut.writeInt(mBorderColor);
+        aOut.writeInt(mBarColor);
+        aOut.writeInt(mBarBackgroundColor);
+        aOut.writeInt(mBarThresholdColor);
+        aOut.writeInt(mPositionX);
+        aOut.writeInt(mPositionXRight);
+        aOut.writeInt(mPositionY);
+        aOut.writeInt(mPositionYBottom);
+        aOut.writeInt(mBarWidth);
+        aOut.writeInt(mShortBorderWidth);
+        aOut.writeInt(mDefaultValueMargin);
+        aOut.writeInt(mLongBorderWidth);
+        aOut.writeInt(mBarLength);
+        aOut.writeInt(mTouchAcceptanceBorder);
+        DisplaySnapshot.writeString(aOut, mCaption);
+        DisplaySnapshot.writeString(aOut, mValueUnitString);
+        DisplaySnapshot.writeString(aOut, mValueFormatString);
+        aOut.writeBoolean(mCaptionLayoutInfo != null);
+        if (mCaptionLayoutInfo != null) {
+            mCaptionLayoutInfo.writeState(aOut);
+            mValueLayoutInfo.writeState(aOut);
+        }
+        aOut.writeInt(mOptions);
+        aOut.writeInt(mCurrentTouchValue);
+        aOut.writeInt(mCurrentValue);
+        aOut.writeInt(mThresholdValue);
+        aOut.writeFloat(mMaxValue);
+        aOut.writeFloat(mMinValue);
+        aOut.writeInt(mSliderNumber);
+        aOut.writeInt(mOnChangeHandlerCallbackAddress);
+        aOut.writeBoolean(mIsActive);
+        aOut.writeBoolean(mIsInitialized);
+        aOut.writeInt(mMinCallbackIntervalMillis);
+    }
+
+    private void readState(final RPCView aRPCView, DataInputStream aIn) throws IOException {
+        mRPCView = aRPCView;
+        mBorderColor = aIn.readInt();
+        mBarColor = aIn.readInt();
+        mBarBackgroundColor = aIn.readInt();
+        mBarThresholdColor = aIn.readInt();
+        mPositionX = aIn.readInt();
+        mPositionXRight = aIn.readInt();
+        mPositionY = aIn.readInt();
+        mPositionYBottom = aIn.readInt();
+        mBarWidth = aIn.readInt();
+        mShortBorderWidth = aIn.readInt();
+        mDefaultValueMargin = aIn.readInt();
+        mLongBorderWidth = aIn.readInt();
+        mBarLength = aIn.readInt();
+        mTouchAcceptanceBorder = aIn.readInt();
+        mCaption = DisplaySnapshot.readString(aIn);
+        mValueUnitString = DisplaySnapshot.readString(aIn);
+        mValueFormatString = DisplaySnapshot.readString(aIn);
+        if (aIn.readBoolean()) {
+            mCaptionLayoutInfo = new TextLayoutInfo();
+            mCaptionLayoutInfo.readState(aIn);
+            mValueLayoutInfo = new TextLayoutInfo();
+            mValueLayoutInfo.readState(aIn);
+        }
+        mOptions = aIn.readInt();
+        mCurrentTouchValue = aIn.readInt();
+        mCurrentValue = aIn.readInt();
+        mThresholdValue = aIn.readInt();
+        mMaxValue = aIn.readFloat();
+        mMinValue = aIn.readFloat();
+        mSliderNumber = aIn.readInt();
+        mOnChangeHandlerCallbackAddress = aIn.readInt();
+        mIsActive = aIn.readBoolean();
+        mIsInitialized = aIn.readBoolean();
+        mMinCallbackIntervalMillis = aIn.readInt();
     }
 
     void initSlider(final RPCView aRPCView, final int aPositionX, final int aPositionY, final int aBarWidth, final int aBarLength,
@@ -179,6 +345,7 @@ public class TouchSlider {
                     final int aOnChangeHandlerCallbackAddress) {
 
         mBarThresholdColor = sDefaultThresholdColor;
+        mMinCallbackIntervalMillis = 0;
 
         mCaption = null;
 
@@ -304,6 +471,7 @@ public class TouchSlider {
             drawBorder();
         }
         // Fill middle bar with current value
+        mDrawnBarValueScaled = -1;
         drawBar();
         if (mCaption != null) {
             computeTextPositions(mCaptionLayoutInfo, mCaption, false);
@@ -373,6 +541,9 @@ public class TouchSlider {
         computeTextPositions(mValueLayoutInfo, aValueString, true);
         mRPCView.drawTextWithBackground(mValueLayoutInfo.mPositionX, mValueLayoutInfo.mPositionY, aValueString,
                 mValueLayoutInfo.mSize, mValueLayoutInfo.mColor, mValueLayoutInfo.mBackgroundColor);
+        // The value may be longer than the estimated text length, so report the full line up to the right canvas border
+        mRPCView.addDirtyRegion(mValueLayoutInfo.mPositionX, mValueLayoutInfo.mPositionY - mValueLayoutInfo.mSize,
+                mRPCView.mRequestedCanvasWidth - mValueLayoutInfo.mPositionX, mValueLayoutInfo.mSize * 1.5f);
     }
 
     void drawBorder() {
@@ -404,7 +575,8 @@ public class TouchSlider {
     }
 
     /*
-     * (re)draws the middle bar according to current value
+     * (re)draws the middle bar according to current value.
+     * If the bar was drawn before with the same colors, only the strip between old and new value is drawn.
      */
     void drawBar() {
         int tCurrentValueScaled = (int) ((mCurrentValue - mMinValue) * mBarLength / (mMaxValue - mMinValue));
@@ -415,13 +587,6 @@ public class TouchSlider {
             tCurrentValueScaled = 0;
         }
 
-        int tShortBorderWidth = mShortBorderWidth;
-        int tLongBorderWidth = mLongBorderWidth;
-        if ((mOptions & FLAG_SLIDER_SHOW_BORDER) == 0) {
-            tLongBorderWidth = 0;
-            tShortBorderWidth = 0;
-        }
-
         int tBarBackgroundColor = mBarBackgroundColor;
         int tBarColor = mBarColor;
 
@@ -441,31 +606,63 @@ public class TouchSlider {
             }
         }
 
-        // draw part of background bar, which becomes visible
-        if (tCurrentValueScaled < mBarLength) {
-            if ((mOptions & FLAG_SLIDER_IS_HORIZONTAL) != 0) {
-                // Horizontal slider
-                mRPCView.fillRectRel(mPositionX + tShortBorderWidth + tCurrentValueScaled, mPositionY + tLongBorderWidth,
-                        mBarLength - tCurrentValueScaled, mBarWidth, tBarBackgroundColor);
-            } else {
-                // Vertical slider
-                mRPCView.fillRectRel(mPositionX + tLongBorderWidth, mPositionY + tShortBorderWidth, mBarWidth, mBarLength
-                        - tCurrentValueScaled, tBarBackgroundColor);
+        int tCanvasChangeCount = mRPCView.mSession.mCanvasChangeCount;
+        if (mDrawnBarValueScaled >= 0 && mDrawnCanvasChangeCount == tCanvasChangeCount && tBarColor == mDrawnBarColor
+                && tBarBackgroundColor == mDrawnBarBackgroundColor) {
+            /*
+             * Draw only the delta strip
+             */
+            if (tCurrentValueScaled > mDrawnBarValueScaled) {
+                fillBarPart(mDrawnBarValueScaled, tCurrentValueScaled - mDrawnBarValueScaled, tBarColor);
+            } else if (tCurrentValueScaled < mDrawnBarValueScaled) {
+                fillBarPart(tCurrentValueScaled, mDrawnBarValueScaled - tCurrentValueScaled, tBarBackgroundColor);
+            }
+        } else {
+            // draw part of background bar, which becomes visible
+            if (tCurrentValueScaled < mBarLength) {
+                fillBarPart(tCurrentValueScaled, mBarLength - tCurrentValueScaled, tBarBackgroundColor);
+            }
+            // Draw value bar
+            if (tCurrentValueScaled > 0) {
+                fillBarPart(0, tCurrentValueScaled, tBarColor);
             }
+            mDrawnBarColor = tBarColor;
+            mDrawnBarBackgroundColor = tBarBackgroundColor;
         }
+        mDrawnBarValueScaled = tCurrentValueScaled;
+        mDrawnCanvasChangeCount = tCanvasChangeCount;
+    }
 
-        // Draw value bar
-        if (tCurrentValueScaled > 0) {
-            if ((mOptions & FLAG_SLIDER_IS_HORIZONTAL) != 0) {
-                // Horizontal slider
-                mRPCView.fillRectRel(mPositionX + tShortBorderWidth, mPositionY + tLongBorderWidth, tCurrentValueScaled, mBarWidth,
-                        tBarColor);
-            } else {
-                // Vertical slider
-                mRPCView.fillRectRel(mPositionX + tLongBorderWidth, mPositionYBottom - tShortBorderWidth - tCurrentValueScaled + 1,
-                        mBarWidth, tCurrentValueScaled, tBarColor);
-            }
+    /*
+     * Fills a part of the bar and reports it as dirty region to the view.
+     * aStart is the distance from the left end of a horizontal or from the bottom end of a vertical slider.
+     */
+    private void fillBarPart(int aStart, int aLength, int aColor) {
+        int tShortBorderWidth = mShortBorderWidth;
+        int tLongBorderWidth = mLongBorderWidth;
+        if ((mOptions & FLAG_SLIDER_SHOW_BORDER) == 0) {
+            tLongBorderWidth = 0;
+            tShortBorderWidth = 0;
+        }
+        int tPositionX;
+        int tPositionY;
+        int tWidth;
+        int tHeight;
+        if ((mOptions & FLAG_SLIDER_IS_HORIZONTAL) != 0) {
+            // Horizontal slider
+            tPositionX = mPositionX + tShortBorderWidth + aStart;
+            tPositionY = mPositionY + tLongBorderWidth;
+            tWidth = aLength;
+            tHeight = mBarWidth;
+        } else {
+            // Vertical slider
+            tPositionX = mPositionX + tLongBorderWidth;
+            tPositionY = mPositionYBottom - tShortBorderWidth - aStart - aLength + 1;
+            tWidth = mBarWidth;
+            tHeight = aLength;
         }
+        mRPCView.fillRectRel(tPositionX, tPositionY, tWidth, tHeight, aColor);
+        mRPCView.addDirtyRegion(tPositionX, tPositionY, tWidth, tHeight);
     }
 
     void computeTextPositions(TextLayoutInfo aTextLayoutInfo, String aText,
@@ -606,8 +803,7 @@ public class TouchSlider {
         if (tCurrentTouchValueInt != mCurrentTouchValue) {
             mCurrentTouchValue = tCurrentTouchValueInt;
             // call change handler
-            mRPCView.mBlueDisplayContext.mSerialService.writeGuiCallbackEvent(SerialService.EVENT_SLIDER_CALLBACK, mSliderNumber,
-                    mOnChangeHandlerCallbackAddress, tCurrentTouchValueInt, mCaption);
+            sendCallbackRateLimited();
             if ((mOptions & FLAG_SLIDER_VALUE_BY_CALLBACK) == 0) {
                 // store value and redraw
                 mCurrentValue = tCurrentTouchValueInt;
@@ -620,12 +816,52 @@ public class TouchSlider {
         return true;
     }
 
+    /*
+     * Sends the current touch value, if the last callback is at least mMinCallbackIntervalMillis ago.
+     * Otherwise the sending is scheduled for the end of the interval, so the last value is always sent.
+     */
+    private void sendCallbackRateLimited() {
+        if (mMinCallbackIntervalMillis > 0) {
+            long tDelayMillis = mLastCallbackMillis + mMinCallbackIntervalMillis - SystemClock.uptimeMillis();
+            if (tDelayMillis > 0) {
+                if (!mCallbackIsPending) {
+                    mCallbackIsPending = true;
+                    mRPCView.postDelayed(mSendPendingCallback, tDelayMillis);
+                }
+                return;
+            }
+        }
+        sendCallback();
+    }
+
+    private void sendCallback() {
+        if (mCallbackIsPending) {
+            mCallbackIsPending = false;
+            mRPCView.removeCallbacks(mSendPendingCallback);
+        }
+        mLastCallbackMillis = SystemClock.uptimeMillis();
+        mRPCView.mBlueDisplayContext.mSerialService.writeGuiCallbackEvent(SerialService.EVENT_SLIDER_CALLBACK, mSliderNumber,
+                mOnChangeHandlerCallbackAddress, mCurrentTouchValue, mCaption);
+    }
+
+    /**
+     * Called at touch up, to send the last value of the slider immediately, if it was not yet sent because of the rate limit
+     */
+    static void sendPendingCallback(ClientSession aSession, int aSliderNumber) {
+        if (aSliderNumber >= 0 && aSliderNumber < aSession.mSliderList.size()) {
+            TouchSlider tSlider = aSession.mSliderList.get(aSliderNumber);
+            if (tSlider != null && tSlider.mCallbackIsPending) {
+                tSlider.sendCallback();
+            }
+        }
+    }
+
     /**
      * @return number of slider if touched else -1
      */
-    static int checkAllSliders(int aTouchPositionX, int aTouchPositionY) {
+    static int checkAllSliders(ClientSession aSession, int aTouchPositionX, int aTouchPositionY) {
         // walk through list of active elements
-        for (TouchSlider tSlider : sSliderList) {
+        for (TouchSlider tSlider : aSession.mSliderList) {
             if (tSlider.mIsActive && tSlider.checkIfTouchInSlider(aTouchPositionX, aTouchPositionY, false)) {
                 return tSlider.mSliderNumber;
             }
@@ -633,9 +869,9 @@ public class TouchSlider {
         return -1;
     }
 
-    static boolean checkIfTouchInSliderNumber(final int aTouchPositionX,
+    static boolean checkIfTouchInSliderNumber(ClientSession aSession, final int aTouchPositionX,
                                               final int aTouchPositionY, final int aSliderNumber) {
-        TouchSlider tSlider = sSliderList.get(aSliderNumber);
+        TouchSlider tSlider = aSession.mSliderList.get(aSliderNumber);
         if (tSlider.mIsActive) {
             return tSlider.checkIfTouchInSlider(aTouchPositionX, aTouchPositionY, false); // no recursion, but different function
         }
@@ -645,8 +881,8 @@ public class TouchSlider {
     /**
      * Static convenience method - activate all sliders (e.g. before switching screen)
      */
-    static void activateAllSliders() {
-        for (TouchSlider tSlider : sSliderList) {
+    static void activateAllSliders(ClientSession aSession) {
+        for (TouchSlider tSlider : aSession.mSliderList) {
             if (tSlider != null) {
                 tSlider.mIsActive = true;
             }
@@ -656,12 +892,14 @@ public class TouchSlider {
     /**
      * Static convenience method - deactivate all sliders (e.g. before switching screen)
      */
-    static void deactivateAllSliders() {
+    static void deactivateAllSliders(ClientSession aSession) {
         // check needed, because method is called also by setFlags()
-        if (sSliderList != null && sSliderList.size() > 0) {
-            for (TouchSlider tSlider : sSliderList) {
+        if (aSession.mSliderList.size() > 0) {
+            for (TouchSlider tSlider : aSession.mSliderList) {
                 if (tSlider != null) {
                     tSlider.mIsActive = false;
+                    // Display is cleared or overwritten by new page
+                    tSlider.mDrawnBarValueScaled = -1;
                 }
             }
         }
@@ -670,6 +908,7 @@ public class TouchSlider {
     public static void interpretCommand(final RPCView aRPCView, int aCommand,
                                         int[] aParameters, int aParamsLength,
                                         byte[] aDataBytes, int aDataLength) {
+        List<TouchSlider> tSliderList = aRPCView.mSession.mSliderList;
         int tSliderNumber = -1;
         TouchSlider tSlider = null;
         String tSliderCaption = "";
@@ -691,8 +930,8 @@ public class TouchSlider {
             } else {
                 tSliderNumber = aParameters[0];
 
-                if (tSliderNumber >= 0 && tSliderNumber < sSliderList.size()) {
-                    tSlider = sSliderList.get(tSliderNumber);
+                if (tSliderNumber >= 0 && tSliderNumber < tSliderList.size()) {
+                    tSlider = tSliderList.get(tSliderNumber);
                     if (aCommand != FUNCTION_SLIDER_INIT && (tSlider == null || !tSlider.mIsInitialized)) {
                         MyLog.e(LOG_TAG, "Command=0x" + Integer.toHexString(aCommand) + " SliderNr=" + tSliderNumber
                                 + " is null or not initialized.");
@@ -707,12 +946,21 @@ public class TouchSlider {
                     }
                 } else if (aCommand != FUNCTION_SLIDER_INIT) {
                     MyLog.e(LOG_TAG, "Command=0x" + Integer.toHexString(aCommand) + " SliderNr=" + tSliderNumber
-                            + " not found. Only " + sSliderList.size() + " sliders created.");
+                            + " not found. Only " + tSliderList.size() + " sliders created.");
                     return;
                 }
             }
         }
 
+        if (aCommand != FUNCTION_SLIDER_PRINT_VALUE && !(aCommand == FUNCTION_SLIDER_SETTINGS
+                && (aParameters[1] == SUBFUNCTION_SLIDER_SET_VALUE_AND_DRAW_BAR || aParameters[1] == SUBFUNCTION_SLIDER_SET_VALUE))) {
+            // Only value changes report their dirty region, all other commands may change the layout
+            aRPCView.setWholeViewDirty();
+            if (tSlider != null) {
+                tSlider.mDrawnBarValueScaled = -1;
+            }
+        }
+
         try {
             switch (aCommand) {
 
@@ -720,14 +968,14 @@ public class TouchSlider {
                     if (MyLog.isINFO()) {
                         MyLog.i(LOG_TAG, "Activate all sliders");
                     }
-                    activateAllSliders();
+                    activateAllSliders(aRPCView.mSession);
                     break;
 
                 case FUNCTION_SLIDER_DEACTIVATE_ALL:
                     if (MyLog.isINFO()) {
                         MyLog.i(LOG_TAG, "Deactivate all sliders");
                     }
-                    deactivateAllSliders();
+                    deactivateAllSliders(aRPCView.mSession);
                     break;
 
                 case FUNCTION_SLIDER_DRAW:
@@ -753,8 +1001,7 @@ public class TouchSlider {
                     break;
 
                 case FUNCTION_SLIDER_SET_CAPTION:
-                    aRPCView.myConvertChars(aDataBytes, RPCView.sCharsArray, aDataLength);
-                    tSlider.mCaption = new String(RPCView.sCharsArray, 0, aDataLength);
+                    tSlider.mCaption = aRPCView.convertToString(aDataBytes, aDataLength);
 
                     if (MyLog.isINFO()) {
                         MyLog.i(LOG_TAG, "Set caption=\"" + tSlider.mCaption + "\"" + tSliderCaption + tSliderNumber);
@@ -762,8 +1009,7 @@ public class TouchSlider {
                     break;
 
                 case FUNCTION_SLIDER_SET_VALUE_UNIT_STRING:
-                    aRPCView.myConvertChars(aDataBytes, RPCView.sCharsArray, aDataLength);
-                    tSlider.mValueUnitString = new String(RPCView.sCharsArray, 0, aDataLength);
+                    tSlider.mValueUnitString = aRPCView.convertToString(aDataBytes, aDataLength);
                     tSlider.setFormatString();
 
                     if (MyLog.isINFO()) {
@@ -773,8 +1019,7 @@ public class TouchSlider {
                     break;
 
                 case FUNCTION_SLIDER_SET_VALUE_FORMAT_STRING:
-                    aRPCView.myConvertChars(aDataBytes, RPCView.sCharsArray, aDataLength);
-                    tSlider.mValueFormatString = new String(RPCView.sCharsArray, 0, aDataLength);
+                    tSlider.mValueFormatString = aRPCView.convertToString(aDataBytes, aDataLength);
 
                     if (MyLog.isINFO()) {
                         MyLog.i(LOG_TAG, "Set ValueFormatString=\"" + tSlider.mValueFormatString + "\"" + tSliderCaption
@@ -783,8 +1028,7 @@ public class TouchSlider {
                     break;
 
                 case FUNCTION_SLIDER_PRINT_VALUE:
-                    aRPCView.myConvertChars(aDataBytes, RPCView.sCharsArray, aDataLength);
-                    String tValueString = new String(RPCView.sCharsArray, 0, aDataLength);
+                    String tValueString = aRPCView.convertToString(aDataBytes, aDataLength);
 
                     if (tSlider.mValueLayoutInfo != null) {
                         tSlider.printValueString(tValueString);
@@ -955,6 +1199,18 @@ public class TouchSlider {
                             }
                             break;
 
+                        case SUBFUNCTION_SLIDER_SET_MAX_CALLBACK_RATE:
+                            if (aParameters[2] <= 0) {
+                                tSlider.mMinCallbackIntervalMillis = 0;
+                            } else {
+                                tSlider.mMinCallbackIntervalMillis = 1000 / aParameters[2];
+                            }
+                            if (MyLog.isINFO()) {
+                                MyLog.i(LOG_TAG, "Set max callback rate=" + aParameters[2] + "/s -> min interval="
+                                        + tSlider.mMinCallbackIntervalMillis + " ms" + tSliderCaption + tSliderNumber);
+                            }
+                            break;
+
                         case SUBFUNCTION_SLIDER_SET_FLAGS:
                             tSlider.mOptions = aParameters[2];
                             if (MyLog.isINFO()) {
@@ -1023,15 +1279,15 @@ public class TouchSlider {
                          * create new slider
                          */
                         tSlider = new TouchSlider();
-                        if (tSliderNumber < sSliderList.size()) {
+                        if (tSliderNumber < tSliderList.size()) {
                             // overwrite existing (old) slider
-                            sSliderList.set(tSliderNumber, tSlider);
+                            tSliderList.set(tSliderNumber, tSlider);
                         } else {
-                            tSliderNumber = sSliderList.size();
-                            sSliderList.add(tSlider);
+                            tSliderNumber = tSliderList.size();
+                            tSliderList.add(tSlider);
                             if (MyLog.isDEBUG()) {
                                 MyLog.d(LOG_TAG, "Slider with index " + tSliderNumber + " appended at end of list. List size now "
-                                        + sSliderList.size());
+                                        + tSliderList.size());
                             }
                         }
                         tSlider.mSliderNumber = tSliderNumber;
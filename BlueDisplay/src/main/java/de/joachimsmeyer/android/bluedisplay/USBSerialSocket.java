@@ -24,6 +24,7 @@
  *
  *
  * This service handles the USB connection.
+ * The connection starts at BaudRateNegotiator.DEFAULT_BAUD_RATE. Clients can request a higher rate, see BaudRateNegotiator.
  */
 
 package de.joachimsmeyer.android.bluedisplay;
@@ -40,17 +41,29 @@ import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
 
+import com.hoho.android.usbserial.driver.CdcAcmSerialDriver;
+import com.hoho.android.usbserial.driver.Ch34xSerialDriver;
+import com.hoho.android.usbserial.driver.Cp21xxSerialDriver;
+import com.hoho.android.usbserial.driver.FtdiSerialDriver;
+import com.hoho.android.usbserial.driver.ProlificSerialDriver;
 import com.hoho.android.usbserial.driver.UsbSerialDriver;
 import com.hoho.android.usbserial.driver.UsbSerialPort;
 import com.hoho.android.usbserial.driver.UsbSerialProber;
 import com.hoho.android.usbserial.util.SerialInputOutputManager;
 
+import de.joachimsmeyer.android.bluedisplay.protocol.BaudRateNegotiator;
+import de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants;
+import de.joachimsmeyer.android.bluedisplay.protocol.ProtocolHelper;
+import de.joachimsmeyer.android.bluedisplay.protocol.ReceiveBuffer;
+import de.joachimsmeyer.android.bluedisplay.protocol.Transport;
+
 import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.Executors;
 
-public class USBSerialSocket implements SerialInputOutputManager.Listener {
+public class USBSerialSocket implements Transport, SerialInputOutputManager.Listener {
 
     private static final String LOG_TAG = "USBSerialSocket";
 
@@ -63,7 +76,7 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
     private static final int WRITE_WAIT_MILLIS = 2000; // 0 blocked infinitely on unprogrammed arduino
 
     private final BlueDisplay mBlueDisplayContext;
-    SerialService mSerialService;
+    private final Transport.Receiver mReceiver;
     private final Handler mHandler;
     UsbSerialDriver mUsbSerialDriver;
     UsbDevice mUSBDevice;
@@ -71,14 +84,49 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
     UsbSerialPort mUSBSerialPort;
     SerialInputOutputManager mIoManager;
 
-    boolean mIsConnected;
+    volatile boolean mIsConnected;
 
     final Object mWriteLock = new Object();
 
+    /*
+     * Negotiation of a higher baud rate, created for each connection. Only accessed by the UI thread.
+     */
+    volatile BaudRateNegotiator mBaudRateNegotiator;
+
+    private final BaudRateNegotiator.Port mBaudRatePort = new BaudRateNegotiator.Port() {
+        @Override
+        public void setBaudRate(int aBaudRate) throws IOException {
+            // do not switch while an event is written
+            synchronized (mWriteLock) {
+                if (mUSBSerialPort == null) {
+                    throw new IOException("Port closed");
+                }
+                mUSBSerialPort.setParameters(aBaudRate, 8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+            }
+            MyLog.i(LOG_TAG, "Baud rate set to " + aBaudRate);
+        }
+
+        @Override
+        public void sendBaudRateEvent(int aBaudRate, int aState) {
+            mBlueDisplayContext.mSerialService.writeTwoIntegerEvent(SerialService.EVENT_BAUD_RATE,
+                    aBaudRate / ProtocolConstants.BAUD_RATE_UNIT, aState);
+        }
+    };
+
+    private final Runnable mBaudRateTimer = new Runnable() {
+        @Override
+        public void run() {
+            BaudRateNegotiator tBaudRateNegotiator = mBaudRateNegotiator; // may be cleared by disconnect() of the IO thread
+            if (tBaudRateNegotiator != null) {
+                scheduleBaudRateTimer(tBaudRateNegotiator.onTimer(SystemClock.uptimeMillis()));
+            }
+        }
+    };
+
     USBSerialSocket(BlueDisplay aContext, SerialService aSerialService, Handler aHandler, UsbManager aUsbManager) {
 
         mBlueDisplayContext = aContext;
-        mSerialService = aSerialService;
+        mReceiver = aSerialService;
         mHandler = aHandler;
         mUsbManager = aUsbManager;
         setFilterAndRegisterUSBReceiver();
@@ -126,10 +174,21 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
         }
     };
 
+    @Override
+    public String getName() {
+        return "USB";
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mIsConnected;
+    }
+
     /*
      * Gets USB devices and ...
      */
-    void connect() {
+    @Override
+    public void connect() {
         MyLog.i(LOG_TAG, "In connect()");
 
         List<UsbSerialDriver> availableDrivers = UsbSerialProber.getDefaultProber().findAllDrivers(mUsbManager);
@@ -177,7 +236,8 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
             mUSBSerialPort = mUsbSerialDriver.getPorts().get(0);
             try {
                 mUSBSerialPort.open(mUSBDeviceConnection); // Here I got IOException "Expected 0xee bytes, but get 0xa8 [init#6]"
-                mUSBSerialPort.setParameters(115200, 8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+                mUSBSerialPort.setParameters(BaudRateNegotiator.DEFAULT_BAUD_RATE, 8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+                mBaudRateNegotiator = new BaudRateNegotiator(mBaudRatePort, getMaxBaudRate(mUsbSerialDriver));
 
                 mUSBSerialPort.setDTR(false); // No reset for arduino on app start!
                 mUSBSerialPort.setRTS(true); // Channel readiness on some boards
@@ -190,6 +250,7 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
 
                 // reset flags, buttons, sliders and sensors (and log this :-))
                 mBlueDisplayContext.mRPCView.resetAll();
+                mBlueDisplayContext.restoreSnapshot(BlueDisplay.SNAPSHOT_CONNECTION_ID_USB);
                 try {
                     // 50 is to little, 100 works sometimes, 200 works reliable.
                     Thread.sleep(200);
@@ -199,8 +260,7 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
                 /*
                  * Start and initialize big ring buffer.
                  */
-                mSerialService.resetReceiveBuffer();
-                mSerialService.resetStatistics();
+                mReceiver.onConnected(this);
                 /*
                  * Sending connection message now is too early, since the display size
                  * is not yet set by RPCView SizeChanged event
@@ -218,10 +278,14 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
     /*
      * Stop IOManager and disconnect listener Set RTS + DTR to false Close Port and Connection
      */
-    void disconnect() {
+    @Override
+    public void disconnect() {
 
         MyLog.i(LOG_TAG, "In disconnect()");
 
+        mHandler.removeCallbacks(mBaudRateTimer);
+        mBaudRateNegotiator = null;
+
         // listener = null; // ignore remaining data and errors
         if (mIoManager != null) {
             mIoManager.setListener(null);
@@ -248,22 +312,70 @@ public class USBSerialSocket implements SerialInputOutputManager.Listener {
             // do not do it twice so do it here
             mIsConnected = false;
             mBlueDisplayContext.mUSBDeviceAttached = false;
+            mReceiver.onDisconnected(this);
             // Send a disconnect message back to the Activity, which resets mUSBDeviceAttached flag
             mHandler.sendEmptyMessage(BlueDisplay.MESSAGE_USB_DISCONNECT);
         }
     }
 
+    /*
+     * Max rates of the adapter chips. The CDC ACM rate is only virtual for boards with native USB.
+     */
+    static int getMaxBaudRate(UsbSerialDriver aDriver) {
+        if (aDriver instanceof FtdiSerialDriver) {
+            return 3000000;
+        } else if (aDriver instanceof Ch34xSerialDriver || aDriver instanceof CdcAcmSerialDriver) {
+            return 2000000;
+        } else if (aDriver instanceof ProlificSerialDriver) {
+            return 1228800;
+        } else if (aDriver instanceof Cp21xxSerialDriver) {
+            return 921600; // CP2102, the CP2102N can do more
+        }
+        return BaudRateNegotiator.DEFAULT_BAUD_RATE;
+    }
+
+    /*
+     * Called by RPCView for SUBFUNCTION_GLOBAL_REQUEST_BAUD_RATE
+     */
+    void handleBaudRateRequest(int aClientMaxBaudRate) {
+        BaudRateNegotiator tBaudRateNegotiator = mBaudRateNegotiator;
+        if (tBaudRateNegotiator != null) {
+            scheduleBaudRateTimer(tBaudRateNegotiator.onBaudRateRequest(aClientMaxBaudRate, SystemClock.uptimeMillis()));
+        }
+    }
+
+    /*
+     * Called by RPCView for SUBFUNCTION_GLOBAL_BAUD_RATE_PROBE
+     */
+    void handleBaudRateProbe(int aPattern1, int aPattern2) {
+        BaudRateNegotiator tBaudRateNegotiator = mBaudRateNegotiator;
+        if (tBaudRateNegotiator != null) {
+            tBaudRateNegotiator.onProbe(aPattern1, aPattern2);
+            if (!tBaudRateNegotiator.isNegotiating()) {
+                mHandler.removeCallbacks(mBaudRateTimer);
+            }
+        }
+    }
+
+    private void scheduleBaudRateTimer(long aDelayMillis) {
+        mHandler.removeCallbacks(mBaudRateTimer);
+        if (aDelayMillis != BaudRateNegotiator.NO_TIMER) {
+            mHandler.postDelayed(mBaudRateTimer, aDelayMillis);
+        }
+    }
+
     @Override
     public void onNewData(byte[] aUSBInputData) {
         // Copy block of bytes from InputData to big receive array
-        System.arraycopy(aUSBInputData, 0, mSerialService.mBigReceiveBuffer, mSerialService.mReceiveBufferInIndex,
-                aUSBInputData.length);
+        ReceiveBuffer tReceiveBuffer = mReceiver.getReceiveBuffer();
+        System.arraycopy(aUSBInputData, 0, tReceiveBuffer.getArray(), tReceiveBuffer.getInIndex(), aUSBInputData.length);
         if (MyLog.isDEVELOPMENT_TESTING()) {
-            MyLog.v(LOG_TAG, "Hex=" + SerialService.convertByteArrayToHexString(aUSBInputData) + "\n");
+            MyLog.v(LOG_TAG, "Hex=" + ProtocolHelper.convertByteArrayToHexString(aUSBInputData) + "\n");
         }
-        mSerialService.handleReceived(aUSBInputData.length);
+        mReceiver.handleReceived(aUSBInputData.length);
     }
 
+    @Override
     public void writeEvent(byte[] aEventDataBuffer, int aEventDataLength) {
         // use synchronized to get synchronous behavior
         synchronized (mWriteLock) {
@@ -0,0 +1,93 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Conversion of chart samples to line or point coordinates and conversion of colors, which is done for nearly each command.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChartConverterBenchmark {
+
+    // 320 is the DSO example, 3200 is the maximum chart width of the app
+    @Param({"320", "3200"})
+    public int mDataLength;
+
+    @Param({"1.0", "2.7"})
+    public float mScaleFactor;
+
+    private byte[] mDataBytes;
+    private float[] mChartScreenBuffer;
+    private int[] mShortColors;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random tRandom = new Random(42);
+        mDataBytes = new byte[mDataLength];
+        tRandom.nextBytes(mDataBytes);
+        mChartScreenBuffer = new float[mDataLength * 4];
+        mShortColors = new int[256];
+        for (int i = 0; i < mShortColors.length; i++) {
+            mShortColors[i] = tRandom.nextInt(0x10000);
+        }
+    }
+
+    @Benchmark
+    public float lineMode() {
+        ChartConverter.convertChartData(mDataBytes, mDataLength, 10 * mScaleFactor, 20 * mScaleFactor, mScaleFactor, 1.0f,
+                mScaleFactor, true, true, mChartScreenBuffer);
+        return mChartScreenBuffer[(mDataLength - 1) * 4 - 1];
+    }
+
+    @Benchmark
+    public float pixelMode() {
+        ChartConverter.convertChartData(mDataBytes, mDataLength, 10 * mScaleFactor, 20 * mScaleFactor, mScaleFactor, 1.0f,
+                mScaleFactor, false, true, mChartScreenBuffer);
+        return mChartScreenBuffer[mDataLength * 2 - 1];
+    }
+
+    @Benchmark
+    public void shortToLongColor(Blackhole aBlackhole) {
+        for (int tShortColor : mShortColors) {
+            aBlackhole.consume(ProtocolHelper.shortToLongColor(tShortColor));
+        }
+    }
+}
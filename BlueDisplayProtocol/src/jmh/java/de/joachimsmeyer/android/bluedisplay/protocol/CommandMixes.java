@@ -0,0 +1,126 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Command streams modeled after the examples of the Arduino library.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+import java.util.Random;
+
+final class CommandMixes {
+
+    private CommandMixes() {
+    }
+
+    static final String MIX_CHART = "chart";
+    static final String MIX_GUI = "gui";
+    static final String MIX_TEXT = "text";
+
+    private static final int FUNCTION_DRAW_LINE = 0x21;
+    private static final int FUNCTION_FILL_RECT_REL = 0x25;
+    private static final int FUNCTION_FILL_CIRCLE = 0x29;
+    private static final int FUNCTION_DRAW_STRING = 0x60;
+    private static final int FUNCTION_WRITE_STRING = 0x62;
+    private static final int FUNCTION_BUTTON_DRAW = 0x40;
+    private static final int FUNCTION_SLIDER_SETTINGS = 0x52;
+    private static final int FUNCTION_SLIDER_PRINT_VALUE = 0x79;
+
+    private static final int COLOR16_WHITE = 0xFFFF;
+    private static final int COLOR16_BLACK = 0x0000;
+    private static final int COLOR16_RED = 0xF800;
+    private static final int COLOR16_BLUE = 0x001F;
+
+    private static final int NUMBER_OF_FRAMES = 50;
+
+    static byte[] create(String aMix) {
+        if (MIX_CHART.equals(aMix)) {
+            return createChartMix();
+        } else if (MIX_GUI.equals(aMix)) {
+            return createGuiMix();
+        } else if (MIX_TEXT.equals(aMix)) {
+            return createTextMix();
+        }
+        throw new IllegalArgumentException("Unknown mix " + aMix);
+    }
+
+    /*
+     * Like SimpleTouchScreenDSO: a 320 sample chart with deletion of the old one, some info text and a drawDisplay each frame.
+     */
+    private static byte[] createChartMix() {
+        CommandWriter tWriter = new CommandWriter(NUMBER_OF_FRAMES * 512);
+        Random tRandom = new Random(42);
+        byte[] tChartData = new byte[320];
+        for (int tFrame = 0; tFrame < NUMBER_OF_FRAMES; tFrame++) {
+            for (int i = 0; i < tChartData.length; i++) {
+                tChartData[i] = (byte) (128 + 100 * Math.sin((i + tFrame) / 10.0) + tRandom.nextInt(8));
+            }
+            tWriter.writeCommandWithData(FUNCTION_DRAW_CHART, tChartData, tChartData.length, 0, 0, COLOR16_BLUE, COLOR16_WHITE);
+            tWriter.writeCommandWithString(FUNCTION_DRAW_STRING, "1.23V 2ms/div", 0, 220, 11, COLOR16_BLACK, COLOR16_WHITE);
+            tWriter.writeCommand(FUNCTION_DRAW_DISPLAY);
+        }
+        return tWriter.toByteArray();
+    }
+
+    /*
+     * Like BlueDisplayExample: buttons, sliders with value output, lines and circles.
+     */
+    private static byte[] createGuiMix() {
+        CommandWriter tWriter = new CommandWriter(NUMBER_OF_FRAMES * 512);
+        Random tRandom = new Random(42);
+        tWriter.writeCommand(FUNCTION_CLEAR_DISPLAY, COLOR16_WHITE);
+        for (int tFrame = 0; tFrame < NUMBER_OF_FRAMES; tFrame++) {
+            tWriter.writeCommand(FUNCTION_BUTTON_DRAW, tFrame & 0x07);
+            tWriter.writeCommand(FUNCTION_SLIDER_SETTINGS, tFrame & 0x03, 0x0A, tRandom.nextInt(100));
+            tWriter.writeCommandWithString(FUNCTION_SLIDER_PRINT_VALUE, Integer.toString(tRandom.nextInt(100)), tFrame & 0x03);
+            for (int i = 0; i < 8; i++) {
+                tWriter.writeCommand(FUNCTION_DRAW_LINE, tRandom.nextInt(320), tRandom.nextInt(240), tRandom.nextInt(320),
+                        tRandom.nextInt(240), COLOR16_RED, 1);
+            }
+            tWriter.writeCommand(FUNCTION_FILL_CIRCLE, tRandom.nextInt(320), tRandom.nextInt(240), 10, COLOR16_BLUE);
+            tWriter.writeCommand(FUNCTION_FILL_RECT_REL, 10, 10, 50, 20, COLOR16_WHITE);
+            tWriter.writeCommandWithString(FUNCTION_DRAW_STRING, "Value=" + tRandom.nextInt(1000), 10, 30, 11, COLOR16_BLACK,
+                    COLOR16_WHITE);
+        }
+        return tWriter.toByteArray();
+    }
+
+    /*
+     * Printf output with some Serial.print() text in between, which is interpreted as debug text.
+     */
+    private static byte[] createTextMix() {
+        CommandWriter tWriter = new CommandWriter(NUMBER_OF_FRAMES * 256);
+        for (int tFrame = 0; tFrame < NUMBER_OF_FRAMES; tFrame++) {
+            tWriter.writeCommandWithString(FUNCTION_WRITE_STRING, "Line " + tFrame + " of printf output\n");
+            if ((tFrame & 0x0F) == 0) {
+                byte[] tSerialText = ("Serial.print " + tFrame + "\n").getBytes();
+                tWriter.writeRaw(tSerialText, 0, tSerialText.length);
+            }
+        }
+        return tWriter.toByteArray();
+    }
+}
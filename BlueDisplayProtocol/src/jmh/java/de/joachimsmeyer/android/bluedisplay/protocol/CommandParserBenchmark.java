@@ -0,0 +1,126 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Parse throughput of a command stream. The benchmark methods process the whole stream once per call.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandParserBenchmark {
+
+    // Same values as the app uses
+    private static final int WORK_SIZE_OF_IN_BUFFER = 10 * 4096;
+    private static final int DRIVER_READ_SIZE = 4096;
+
+    @Param({CommandMixes.MIX_CHART, CommandMixes.MIX_GUI, CommandMixes.MIX_TEXT})
+    public String mMix;
+
+    private byte[] mStream;
+    private ReceiveBuffer mReceiveBuffer; // holds the complete stream
+    private ReceiveBuffer mChunkedReceiveBuffer; // gets the stream in driver sized chunks
+    private CommandParser mCommandParser;
+    private BlackholeListener mListener;
+
+    static class BlackholeListener implements CommandParser.CommandListener {
+        Blackhole mBlackhole;
+
+        @Override
+        public void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                     int aDataLength) {
+            mBlackhole.consume(aCommand);
+            if (aParamsLength > 0) {
+                mBlackhole.consume(aParameters[aParamsLength - 1]);
+            }
+            if (aDataLength > 0) {
+                mBlackhole.consume(aDataBytes[aDataLength - 1]);
+            }
+        }
+
+        @Override
+        public void onSerialPrint(String aString) {
+            mBlackhole.consume(aString);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mStream = CommandMixes.create(mMix);
+        mReceiveBuffer = new CompactingReceiveBuffer(WORK_SIZE_OF_IN_BUFFER, mStream.length);
+        mChunkedReceiveBuffer = new CompactingReceiveBuffer(WORK_SIZE_OF_IN_BUFFER, DRIVER_READ_SIZE);
+        mCommandParser = new CommandParser(mReceiveBuffer);
+        mListener = new BlackholeListener();
+    }
+
+    /**
+     * Parse the stream like onDraw() does.
+     * The stream is put into the buffer at once, since the parser waits up to one second if a command with data is split
+     * between command and data header.
+     */
+    @Benchmark
+    public int parseStream(Blackhole aBlackhole) {
+        mListener.mBlackhole = aBlackhole;
+        mCommandParser.reset();
+        mReceiveBuffer.put(mStream, 0, mStream.length);
+        int tCalls = 0;
+        // The streams contain only complete commands, so this terminates
+        while (mReceiveBuffer.getBytesAvailable() > 0) {
+            mCommandParser.searchCommand(mListener);
+            tCalls++;
+        }
+        return tCalls;
+    }
+
+    /**
+     * Only the buffer part, i.e. copying driver sized chunks and compacting.
+     */
+    @Benchmark
+    public int fillAndDrainBuffer() {
+        mChunkedReceiveBuffer.reset();
+        int tSum = 0;
+        for (int tOffset = 0; tOffset < mStream.length; tOffset += DRIVER_READ_SIZE) {
+            mChunkedReceiveBuffer.put(mStream, tOffset, Math.min(DRIVER_READ_SIZE, mStream.length - tOffset));
+            while (mChunkedReceiveBuffer.getBytesAvailable() > 0) {
+                tSum += mChunkedReceiveBuffer.getByte();
+            }
+        }
+        return tSum;
+    }
+}
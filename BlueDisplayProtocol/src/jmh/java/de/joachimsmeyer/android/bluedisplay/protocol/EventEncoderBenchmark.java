@@ -0,0 +1,83 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Encoding of the events which are sent most frequently: touch moves, slider callbacks and sensor values.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventEncoderBenchmark {
+
+    private static final int EVENT_TOUCH_MOVE = 0x02; // MotionEvent.ACTION_MOVE
+    private static final int EVENT_SENSOR_ACCELEROMETER = ProtocolConstants.EVENT_FIRST_SENSOR_ACTION_CODE + 1;
+
+    private final byte[] mSendByteBuffer = new byte[ProtocolConstants.CALLBACK_DATA_SIZE];
+    private int mCounter;
+
+    @Benchmark
+    public void touchMove(Blackhole aBlackhole) {
+        mCounter++;
+        aBlackhole.consume(EventEncoder.encodeTwoIntegerAndAByteEvent(mSendByteBuffer, EVENT_TOUCH_MOVE, mCounter & 0x1FF,
+                (mCounter >> 2) & 0xFF, 0));
+        aBlackhole.consume(mSendByteBuffer);
+    }
+
+    @Benchmark
+    public void sliderCallback(Blackhole aBlackhole) {
+        mCounter++;
+        aBlackhole.consume(EventEncoder.encodeGuiCallbackEvent(mSendByteBuffer, ProtocolConstants.EVENT_SLIDER_CALLBACK, 2, 0x1234,
+                mCounter & 0xFF));
+        aBlackhole.consume(mSendByteBuffer);
+    }
+
+    @Benchmark
+    public void sensor(Blackhole aBlackhole) {
+        mCounter++;
+        aBlackhole.consume(EventEncoder.encodeSensorEvent(mSendByteBuffer, EVENT_SENSOR_ACCELEROMETER, mCounter * 0.01f, 9.81f,
+                -mCounter * 0.02f));
+        aBlackhole.consume(mSendByteBuffer);
+    }
+
+    @Benchmark
+    public void connectionBuildUp(Blackhole aBlackhole) {
+        mCounter++;
+        aBlackhole.consume(EventEncoder.encodeTwoIntegerEventAndTimestamp(mSendByteBuffer, ProtocolConstants.EVENT_CONNECTION_BUILD_UP,
+                1920, 1080, 1700000000L + mCounter));
+        aBlackhole.consume(mSendByteBuffer);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Render path throughput of a command stream with a CommandRenderer.
+ * The streams are parsed and rendered, so subtract the result of CommandParserBenchmark.parseStream to get the render part.
+ * The null target measures only the renderer, the recording target includes the software rasterization of RecordingDrawTarget.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark {
+
+    private static final int WORK_SIZE_OF_IN_BUFFER = 10 * 4096;
+
+    @Param({CommandMixes.MIX_CHART, CommandMixes.MIX_GUI, CommandMixes.MIX_TEXT})
+    public String mMix;
+
+    private byte[] mStream;
+    private ReceiveBuffer mReceiveBuffer;
+    private CommandParser mCommandParser;
+    private NullDrawTarget mNullDrawTarget;
+    private RenderingCommandListener mNullListener;
+    private RecordingDrawTarget mRecordingDrawTarget;
+    private RenderingCommandListener mRecordingListener;
+
+    /*
+     * Only sums up some values to avoid dead code elimination
+     */
+    static class NullDrawTarget implements DrawTarget {
+        int mSum;
+
+        @Override
+        public void drawColor(int aColor) {
+            mSum += aColor;
+        }
+
+        @Override
+        public void drawPoint(float aX, float aY, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+            mSum += (int) aX;
+        }
+
+        @Override
+        public void drawLine(float aXStart, float aYStart, float aXEnd, float aYEnd, float aStrokeWidth, int aColor,
+                             boolean aAntiAlias) {
+            mSum += (int) aXEnd;
+        }
+
+        @Override
+        public void drawLines(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+            mSum += aCount;
+        }
+
+        @Override
+        public void drawPoints(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+            mSum += aCount;
+        }
+
+        @Override
+        public void fillRects(float[] aRects, int aOffset, int aCount, int aColor) {
+            mSum += aCount;
+        }
+
+        @Override
+        public void drawPixelRow(int[] aColors, int aCount, float aLeft, float aTop, float aRight, float aBottom) {
+            mSum += aColors[aCount - 1];
+        }
+
+        @Override
+        public void drawRect(float aLeft, float aTop, float aRight, float aBottom, float aStrokeWidth, int aColor, boolean aFill) {
+            mSum += (int) aRight;
+        }
+
+        @Override
+        public void drawCircle(float aX, float aY, float aRadius, float aStrokeWidth, int aColor, boolean aFill) {
+            mSum += (int) aRadius;
+        }
+
+        @Override
+        public void drawPolygon(int[] aCoordinates, int aLength, float aScaleFactor, float aStrokeWidth, int aColor, boolean aFill) {
+            mSum += aLength;
+        }
+
+        @Override
+        public void drawText(String aText, float aX, float aY, float aTextSize, int aColor) {
+            mSum += aText.length();
+        }
+
+        @Override
+        public float measureText(String aText, int aStart, int aEnd, float aTextSize) {
+            return (aEnd - aStart) * aTextSize * CommandRenderer.TEXT_WIDTH_FACTOR;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mStream = CommandMixes.create(mMix);
+        mReceiveBuffer = new CompactingReceiveBuffer(WORK_SIZE_OF_IN_BUFFER, mStream.length);
+        mCommandParser = new CommandParser(mReceiveBuffer);
+
+        mNullDrawTarget = new NullDrawTarget();
+        mNullListener = new RenderingCommandListener(createRenderer(mNullDrawTarget), null);
+        mRecordingDrawTarget = new RecordingDrawTarget(TestPage.TEST_CANVAS_WIDTH, TestPage.TEST_CANVAS_HEIGHT);
+        mRecordingListener = new RenderingCommandListener(createRenderer(mRecordingDrawTarget), mRecordingDrawTarget);
+    }
+
+    private static CommandRenderer createRenderer(DrawTarget aDrawTarget) {
+        CommandRenderer tRenderer = new CommandRenderer(aDrawTarget);
+        tRenderer.setGeometry(1.0f, TestPage.TEST_CANVAS_WIDTH, TestPage.TEST_CANVAS_HEIGHT, TestPage.TEST_CANVAS_WIDTH,
+                TestPage.TEST_CANVAS_HEIGHT);
+        return tRenderer;
+    }
+
+    private void parseAndRender(CommandParser.CommandListener aListener) {
+        mCommandParser.reset();
+        mReceiveBuffer.put(mStream, 0, mStream.length);
+        // The streams contain only complete commands, so this terminates
+        while (mReceiveBuffer.getBytesAvailable() > 0) {
+            mCommandParser.searchCommand(aListener);
+        }
+    }
+
+    @Benchmark
+    public int renderToNullTarget() {
+        parseAndRender(mNullListener);
+        return mNullDrawTarget.mSum;
+    }
+
+    @Benchmark
+    public long renderToRecordingTarget() {
+        mRecordingDrawTarget.reset();
+        parseAndRender(mRecordingListener);
+        return mRecordingDrawTarget.getNumberOfPixelsTouched();
+    }
+
+    /**
+     * The command part of the test page, without parsing
+     */
+    @Benchmark
+    public int renderTestPage() {
+        mNullListener.getCommandRenderer().resetChartHistory();
+        TestPage.drawCommandPart(mNullListener, mNullDrawTarget, 1.0f, TestPage.TEST_CANVAS_WIDTH, TestPage.TEST_CANVAS_HEIGHT, 100);
+        return mNullDrawTarget.mSum;
+    }
+}
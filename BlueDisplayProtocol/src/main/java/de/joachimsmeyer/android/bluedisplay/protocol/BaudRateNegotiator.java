@@ -0,0 +1,214 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Negotiates a higher baud rate for a serial connection, which starts at DEFAULT_BAUD_RATE.
+ * 1. The client sends SUBFUNCTION_GLOBAL_REQUEST_BAUD_RATE with its max rate.
+ * 2. The app chooses the highest of STANDARD_BAUD_RATES supported by both and sends EVENT_BAUD_RATE with BAUD_RATE_STATE_SWITCH
+ * at the old rate. After SWITCH_DELAY_MILLIS, i.e. after the event has left the adapter, the app switches its port.
+ * 3. The client switches on receiving the event and sends SUBFUNCTION_GLOBAL_BAUD_RATE_PROBE after BAUD_RATE_PROBE_DELAY_MILLIS.
+ * 4. On a valid probe the app sends BAUD_RATE_STATE_CONFIRMED at the new rate.
+ * If the probe is invalid, does not arrive within PROBE_TIMEOUT_MILLIS or the port can not be switched, the app switches back
+ * and sends BAUD_RATE_STATE_FALLBACK at the old rate. The failed rate is excluded from further requests,
+ * so the client can simply request again to get the next lower rate.
+ *
+ * Time is given by the caller, which calls onTimer() after the delay returned by the other methods.
+ * This allows to test the handshake with a FakeSerialPort and without real time, see BaudRateNegotiatorTest.
+ * Not thread safe, all methods must be called by the same thread.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+import java.io.IOException;
+
+public class BaudRateNegotiator {
+
+    private static final String LOG_TAG = "BaudRate";
+
+    public interface Port {
+        /**
+         * Switches the local side of the connection. Events written before must have been passed to the adapter.
+         */
+        void setBaudRate(int aBaudRate) throws IOException;
+
+        /**
+         * Sends EVENT_BAUD_RATE with the rate in BAUD_RATE_UNIT and aState
+         */
+        void sendBaudRateEvent(int aBaudRate, int aState);
+    }
+
+    public static final int DEFAULT_BAUD_RATE = 115200;
+    /*
+     * Highest first. 2M, 1M, 500k and 250k are exact for 16 MHz AVR clients, the others for most USB adapters.
+     */
+    public static final int[] STANDARD_BAUD_RATES = { 2000000, 1000000, 921600, 500000, 460800, 250000, 230400, DEFAULT_BAUD_RATE };
+    public static final int SWITCH_DELAY_MILLIS = 50; // covers the latency timer of FTDI adapters
+    public static final int PROBE_TIMEOUT_MILLIS = 1000; // after switch, must be longer than the client needs to give up
+    public static final long NO_TIMER = -1;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_SWITCH_PENDING = 1;
+    private static final int STATE_WAIT_FOR_PROBE = 2;
+
+    private final Port mPort;
+    private int mMaxBaudRate;
+    private int mBaudRate = DEFAULT_BAUD_RATE;
+    private int mPendingBaudRate;
+    private int mState = STATE_IDLE;
+    private long mTimerMillis;
+
+    /*
+     * Statistics
+     */
+    private int mStatisticNumberOfUpgrades;
+    private int mStatisticNumberOfFallbacks;
+
+    /**
+     * @param aMaxBaudRate Max baud rate of the local adapter
+     */
+    public BaudRateNegotiator(Port aPort, int aMaxBaudRate) {
+        mPort = aPort;
+        mMaxBaudRate = aMaxBaudRate;
+    }
+
+    /**
+     * @return The highest of STANDARD_BAUD_RATES, which is not higher than both rates, at least DEFAULT_BAUD_RATE
+     */
+    public static int selectBaudRate(int aClientMaxBaudRate, int aLocalMaxBaudRate) {
+        int tMaxBaudRate = Math.min(aClientMaxBaudRate, aLocalMaxBaudRate);
+        for (int tBaudRate : STANDARD_BAUD_RATES) {
+            if (tBaudRate <= tMaxBaudRate) {
+                return tBaudRate;
+            }
+        }
+        return DEFAULT_BAUD_RATE;
+    }
+
+    public int getBaudRate() {
+        return mBaudRate;
+    }
+
+    public boolean isNegotiating() {
+        return mState != STATE_IDLE;
+    }
+
+    /**
+     * Handles SUBFUNCTION_GLOBAL_REQUEST_BAUD_RATE
+     *
+     * @return Delay after which onTimer() must be called or NO_TIMER
+     */
+    public long onBaudRateRequest(int aClientMaxBaudRate, long aNowMillis) {
+        if (mState != STATE_IDLE) {
+            ProtocolLog.w(LOG_TAG, "Request for " + aClientMaxBaudRate + " ignored, negotiation for " + mPendingBaudRate + " running");
+            return NO_TIMER;
+        }
+        int tBaudRate = selectBaudRate(aClientMaxBaudRate, mMaxBaudRate);
+        if (ProtocolLog.isINFO()) {
+            ProtocolLog.i(LOG_TAG, "Client max=" + aClientMaxBaudRate + " local max=" + mMaxBaudRate + " -> " + tBaudRate + " current="
+                    + mBaudRate);
+        }
+        if (tBaudRate == mBaudRate) {
+            mPort.sendBaudRateEvent(mBaudRate, BAUD_RATE_STATE_CONFIRMED);
+            return NO_TIMER;
+        }
+        mPendingBaudRate = tBaudRate;
+        mPort.sendBaudRateEvent(tBaudRate, BAUD_RATE_STATE_SWITCH);
+        mState = STATE_SWITCH_PENDING;
+        mTimerMillis = aNowMillis + SWITCH_DELAY_MILLIS;
+        return SWITCH_DELAY_MILLIS;
+    }
+
+    /**
+     * Handles SUBFUNCTION_GLOBAL_BAUD_RATE_PROBE
+     */
+    public void onProbe(int aPattern1, int aPattern2) {
+        if (mState != STATE_WAIT_FOR_PROBE) {
+            ProtocolLog.w(LOG_TAG, "Unexpected probe received");
+            return;
+        }
+        if ((aPattern1 & 0xFFFF) != BAUD_RATE_PROBE_PATTERN_1 || (aPattern2 & 0xFFFF) != BAUD_RATE_PROBE_PATTERN_2) {
+            ProtocolLog.e(LOG_TAG, "Invalid probe 0x" + Integer.toHexString(aPattern1 & 0xFFFF) + " 0x"
+                    + Integer.toHexString(aPattern2 & 0xFFFF) + " received at " + mPendingBaudRate);
+            fallback();
+            return;
+        }
+        mBaudRate = mPendingBaudRate;
+        mState = STATE_IDLE;
+        mStatisticNumberOfUpgrades++;
+        if (ProtocolLog.isINFO()) {
+            ProtocolLog.i(LOG_TAG, "Baud rate " + mBaudRate + " confirmed");
+        }
+        mPort.sendBaudRateEvent(mBaudRate, BAUD_RATE_STATE_CONFIRMED);
+    }
+
+    /**
+     * Switches the port if the switch delay is over and falls back if the probe timeout is over
+     *
+     * @return Delay after which onTimer() must be called again or NO_TIMER
+     */
+    public long onTimer(long aNowMillis) {
+        if (mState == STATE_IDLE) {
+            return NO_TIMER;
+        }
+        if (aNowMillis < mTimerMillis) {
+            return mTimerMillis - aNowMillis;
+        }
+        if (mState == STATE_SWITCH_PENDING) {
+            try {
+                mPort.setBaudRate(mPendingBaudRate);
+            } catch (IOException e) {
+                ProtocolLog.e(LOG_TAG, "Switch to " + mPendingBaudRate + " failed: " + e.getMessage());
+                fallback();
+                return NO_TIMER;
+            }
+            mState = STATE_WAIT_FOR_PROBE;
+            mTimerMillis = aNowMillis + PROBE_TIMEOUT_MILLIS;
+            return PROBE_TIMEOUT_MILLIS;
+        }
+        ProtocolLog.e(LOG_TAG, "No probe received within " + PROBE_TIMEOUT_MILLIS + " ms at " + mPendingBaudRate);
+        fallback();
+        return NO_TIMER;
+    }
+
+    /**
+     * Switches back to the last confirmed rate and excludes the failed rate from further requests
+     */
+    private void fallback() {
+        mStatisticNumberOfFallbacks++;
+        mMaxBaudRate = Math.max(mPendingBaudRate - 1, DEFAULT_BAUD_RATE);
+        mState = STATE_IDLE;
+        try {
+            mPort.setBaudRate(mBaudRate);
+        } catch (IOException e) {
+            ProtocolLog.e(LOG_TAG, "Switch back to " + mBaudRate + " failed: " + e.getMessage());
+        }
+        mPort.sendBaudRateEvent(mBaudRate, BAUD_RATE_STATE_FALLBACK);
+    }
+
+    public String getStatisticsString() {
+        return "Baud rate=" + mBaudRate + " upgrades=" + mStatisticNumberOfUpgrades + " fallbacks=" + mStatisticNumberOfFallbacks;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Feeds a capture file written by WireCaptureWriter through the receive buffer and the command parser like the app does.
+ * A feeder thread plays the role of the BT or USB reader thread and the calling thread plays the role of RPCView.onDraw().
+ *
+ * In real time mode the chunks are fed with their original timing, so buffer overflows and skips occur like in the field.
+ * In maximum speed mode the feeder only waits if the next chunk would require a buffer compaction while the parser is working,
+ * so no data is lost and the commands/second are limited only by the parser and the listener.
+ *
+ * Usage: java ...CaptureReplayer <capture file> [--realtime]
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.MIN_MESSAGE_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+
+public class CaptureReplayer {
+
+    private static final String LOG_TAG = "CaptureReplayer";
+
+    // Same values as the app uses
+    public static final int WORK_SIZE_OF_IN_BUFFER = 10 * 4096;
+    public static final int DRIVER_READ_SIZE = 4096;
+
+    private final boolean mRealTime;
+    private final CompactingReceiveBuffer mReceiveBuffer;
+    private final CommandParser mCommandParser;
+    private final CommandParser.CommandListener mListener;
+
+    private volatile boolean mFeederDone;
+    private volatile IOException mFeederException;
+    private int mNumberOfChunks;
+    private long mNumberOfBytes;
+
+    public static class ReplayResult {
+        public int mNumberOfChunks;
+        public long mNumberOfBytes;
+        public int mNumberOfCommands;
+        public int mNumberOfChartCommands;
+        public long mNanosTotal;
+        public long mNanosForParsing; // time spent in searchCommand() and the listener
+        public int mNumberOfBufferOverflows;
+        public int mNumberOfBufferSkips;
+        public int mNumberOfUnprocessedBytes;
+
+        public double getCommandsPerSecond() {
+            if (mNanosTotal == 0) {
+                return 0;
+            }
+            return (mNumberOfCommands + mNumberOfChartCommands) * 1000000000.0 / mNanosTotal;
+        }
+
+        @Override
+        public String toString() {
+            String tReturn = mNumberOfBytes + " bytes in " + mNumberOfChunks + " chunks -> " + mNumberOfCommands + " commands and "
+                    + mNumberOfChartCommands + " charts in " + (mNanosTotal / 1000000) + " ms\n";
+            tReturn += String.format("%.0f commands/s", getCommandsPerSecond());
+            if (mNumberOfCommands + mNumberOfChartCommands != 0) {
+                tReturn += ", " + ((mNanosForParsing / 1000) / (mNumberOfCommands + mNumberOfChartCommands)) + " \u00B5s per command";
+            }
+            tReturn += "\nBuffer overflows=" + mNumberOfBufferOverflows + ", buffer skips=" + mNumberOfBufferSkips + ", unprocessed bytes="
+                    + mNumberOfUnprocessedBytes;
+            return tReturn;
+        }
+    }
+
+    /**
+     * @param aListener The stand-in for RPCView
+     * @param aRealTime true: feed the chunks with their recorded timing, false: feed as fast as the parser can process them
+     */
+    public CaptureReplayer(CommandParser.CommandListener aListener, boolean aRealTime) {
+        mListener = aListener;
+        mRealTime = aRealTime;
+        mReceiveBuffer = new CompactingReceiveBuffer(WORK_SIZE_OF_IN_BUFFER, DRIVER_READ_SIZE);
+        mCommandParser = new CommandParser(mReceiveBuffer);
+    }
+
+    public ReplayResult replay(final WireCaptureReader aReader) throws IOException {
+        mCommandParser.reset();
+        mCommandParser.resetStatistics();
+        mFeederDone = false;
+        mFeederException = null;
+        mNumberOfChunks = 0;
+        mNumberOfBytes = 0;
+
+        long tStartNanos = System.nanoTime();
+        Thread tFeederThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    feed(aReader);
+                } catch (IOException e) {
+                    mFeederException = e;
+                } catch (InterruptedException e) {
+                    ProtocolLog.w(LOG_TAG, "Feeder was interrupted");
+                }
+                mFeederDone = true;
+            }
+        }, "CaptureFeeder");
+        tFeederThread.start();
+
+        /*
+         * Parse loop like RPCView.onDraw()
+         */
+        while (true) {
+            boolean tFeederDone = mFeederDone; // read before parsing, so we do not miss the last chunk
+            int tOutIndexBefore = mReceiveBuffer.getOutIndex();
+            int tResult = mCommandParser.searchCommand(mListener);
+            if (tResult == CommandParser.DO_NOTHING || tResult == CommandParser.DO_WAIT) {
+                if (tFeederDone && (mReceiveBuffer.getBytesAvailable() == 0 || mReceiveBuffer.getOutIndex() == tOutIndexBefore)) {
+                    // No more data will arrive and the parser makes no progress
+                    break;
+                }
+                if (mRealTime) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+        long tNanosTotal = System.nanoTime() - tStartNanos;
+        try {
+            tFeederThread.join();
+        } catch (InterruptedException e) {
+            // Just do nothing
+        }
+        if (mFeederException != null) {
+            throw mFeederException;
+        }
+
+        ReplayResult tResult = new ReplayResult();
+        tResult.mNumberOfChunks = mNumberOfChunks;
+        tResult.mNumberOfBytes = mNumberOfBytes;
+        tResult.mNumberOfCommands = mCommandParser.mStatisticNumberOfReceivedCommands;
+        tResult.mNumberOfChartCommands = mCommandParser.mStatisticNumberOfReceivedChartCommands;
+        tResult.mNanosTotal = tNanosTotal;
+        tResult.mNanosForParsing = mCommandParser.mStatisticNanoTimeForCommands + mCommandParser.mStatisticNanoTimeForChart;
+        tResult.mNumberOfBufferOverflows = mReceiveBuffer.getNumberOfBufferOverflows();
+        tResult.mNumberOfBufferSkips = mReceiveBuffer.getNumberOfBufferSkips();
+        tResult.mNumberOfUnprocessedBytes = mReceiveBuffer.getBytesAvailable();
+        return tResult;
+    }
+
+    /*
+     * Runs in the feeder thread. Chunks bigger than the driver read size are split.
+     */
+    private void feed(WireCaptureReader aReader) throws IOException, InterruptedException {
+        long tStartNanos = System.nanoTime();
+        while (aReader.nextChunk()) {
+            if (mRealTime) {
+                long tWaitNanos = aReader.getChunkNanos() - (System.nanoTime() - tStartNanos);
+                if (tWaitNanos > 0) {
+                    Thread.sleep(tWaitNanos / 1000000, (int) (tWaitNanos % 1000000));
+                }
+            }
+            byte[] tData = aReader.getChunkData();
+            int tChunkLength = aReader.getChunkLength();
+            for (int tOffset = 0; tOffset < tChunkLength; tOffset += DRIVER_READ_SIZE) {
+                int tLength = Math.min(DRIVER_READ_SIZE, tChunkLength - tOffset);
+                if (!mRealTime) {
+                    /*
+                     * Compaction moves the unprocessed data, so wait until the parser is idle,
+                     * i.e. it has consumed all complete messages or waits for more data.
+                     */
+                    while (mReceiveBuffer.getInIndex() + tLength >= WORK_SIZE_OF_IN_BUFFER
+                            && mReceiveBuffer.getBytesAvailable() >= MIN_MESSAGE_SIZE
+                            && mCommandParser.getDataLengthToWaitFor() <= mReceiveBuffer.getBytesAvailable()) {
+                        Thread.yield();
+                    }
+                }
+                mReceiveBuffer.put(tData, tOffset, tLength);
+            }
+            mNumberOfChunks++;
+            mNumberOfBytes += tChunkLength;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CaptureReplayer <capture file> [--realtime]");
+            System.exit(1);
+        }
+        boolean tRealTime = args.length > 1 && "--realtime".equals(args[1]);
+        CountingCommandListener tListener = new CountingCommandListener();
+        CaptureReplayer tReplayer = new CaptureReplayer(tListener, tRealTime);
+        WireCaptureReader tReader = new WireCaptureReader(new File(args[0]));
+        try {
+            ReplayResult tResult = tReplayer.replay(tReader);
+            System.out.println(tResult);
+            System.out.println(tListener.getNumberOfSerialPrints() + " serial prints. Commands by function code:");
+            System.out.print(tListener.getCommandCountsString());
+        } finally {
+            tReader.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Converts the byte samples of a chart command to the float coordinates used by Canvas.drawLines() or Canvas.drawPoints().
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public final class ChartConverter {
+
+    public static final int CHART_X_AXIS_SCALE_FACTOR_1 = 0; // identity is code with 0
+    public static final int CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5 = 1; // expansion by 1.5
+    public static final int CHART_X_AXIS_SCALE_FACTOR_EXPANSION_2 = 2; // expansion by factor 2
+    public static final int CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_1_5 = -1; // compression by 1.5
+    public static final int CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_2 = -2; // compression by factor 2
+
+    private ChartConverter() {
+    }
+
+    /*
+     * Not used yet
+     */
+    public static int reduceIntWithXScaleFactor(int aValue, int aXScaleFactor) {
+        if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_1) {
+            return aValue;
+        }
+        int tRetValue;
+        if (aXScaleFactor > CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
+            tRetValue = aValue / aXScaleFactor;
+        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
+            // value * 2/3
+            tRetValue = (aValue * 2) / 3;
+        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_1_5) {
+            // value * 3/2
+            tRetValue = (aValue * 3) / 2;
+        } else {
+            tRetValue = aValue * -aXScaleFactor;
+        }
+        return tRetValue;
+    }
+
+    /**
+     * Enlarge value if scale factor is compression
+     * Reduce value, if scale factor is expansion
+     * <p>
+     * aXScaleFactor > 1 : expansion by factor aXScaleFactor. I.e. value -> (value / factor)
+     * aXScaleFactor == 1 : expansion by 1.5
+     * aXScaleFactor == 0 : identity
+     * aXScaleFactor == -1 : compression by 1.5
+     * aXScaleFactor < -1 : compression by factor -aXScaleFactor -> (value * factor)
+     * multiplies value with factor if aXScaleFactor is < 0 (compression) or divide if aXScaleFactor is > 0 (expansion)
+     */
+    public static float reduceFloatWithXScaleFactor(float aValue, int aXScaleFactor) {
+        if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_1) {
+            return aValue;
+        }
+        float tRetValue;
+        if (aXScaleFactor > CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
+            tRetValue = aValue / aXScaleFactor;
+        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_EXPANSION_1_5) {
+            // value * 2/3
+            tRetValue = (aValue * 2) / 3;
+        } else if (aXScaleFactor == CHART_X_AXIS_SCALE_FACTOR_COMPRESSION_1_5) {
+            // value * 3/2
+            tRetValue = (aValue * 3) / 2;
+        } else {
+            tRetValue = aValue * -aXScaleFactor;
+        }
+        return tRetValue;
+    }
+
+    /**
+     * Enlarge value if scale factor is expansion
+     * Reduce value, if scale factor is compression
+     */
+    public static float enlargeFloatWithXScaleFactor(float aValue, int aXScaleFactor) {
+        return reduceFloatWithXScaleFactor(aValue, -aXScaleFactor);
+    }
+
+    /**
+     * Fill draw buffer with points for chart.
+     * Origin is at upper left and therefore Y values are inverse!
+     *
+     * @param aDataBytes      The unsigned 8 bit Y values
+     * @param aDataLength     Number of values, must be > 0
+     * @param aXStartScaled   X of first value
+     * @param aYStartScaled   Y offset added to each value
+     * @param aScaleFactor    The current display scale factor
+     * @param aYScaleFactor   Additional Y scale factor of FUNCTION_DRAW_SCALED_CHART or 1.0
+     * @param aXIncrement     X distance between two values
+     * @param aLineMode       true: 4 coordinates for each of the aDataLength - 1 lines, false: 2 coordinates for each point
+     * @param aRound          Round coordinates to integer values
+     * @param aDestination    Must hold at least aDataLength * 4 floats
+     * @return Number of floats written to aDestination
+     */
+    public static int convertChartData(byte[] aDataBytes, int aDataLength, float aXStartScaled, float aYStartScaled, float aScaleFactor,
+                                       float aYScaleFactor, float aXIncrement, boolean aLineMode, boolean aRound, float[] aDestination) {
+        int tSourceIndex = 0;
+        int tDestinationIndex = 0;
+        float tXValueScaledOfCurrentLine = aXStartScaled; // the start of the multi pixel data entity
+        float tYValueScaledOfCurrentLine = ((aDataBytes[tSourceIndex++] & 0xFF) * aScaleFactor * aYScaleFactor) + aYStartScaled;
+        float tXRounded = aRound ? Math.round(tXValueScaledOfCurrentLine) : tXValueScaledOfCurrentLine;
+        float tYRounded = aRound ? Math.round(tYValueScaledOfCurrentLine) : tYValueScaledOfCurrentLine;
+
+        for (int i = 0; i < aDataLength - 1; i++) {
+            // Start of current line / pixel
+            aDestination[tDestinationIndex++] = tXRounded;
+            aDestination[tDestinationIndex++] = tYRounded;
+            /*
+             * Get values of next point
+             */
+            tYValueScaledOfCurrentLine = ((aDataBytes[tSourceIndex++] & 0xFF) * aScaleFactor * aYScaleFactor) + aYStartScaled;
+            tXValueScaledOfCurrentLine += aXIncrement;
+            if (aRound) {
+                tXRounded = Math.round(tXValueScaledOfCurrentLine);
+                tYRounded = Math.round(tYValueScaledOfCurrentLine);
+            } else {
+                tXRounded = tXValueScaledOfCurrentLine;
+                tYRounded = tYValueScaledOfCurrentLine;
+            }
+            if (aLineMode) {
+                // Write next point as end of current line. Each line is taken from 4 consecutive values in the pts array
+                aDestination[tDestinationIndex++] = tXRounded;
+                aDestination[tDestinationIndex++] = tYRounded;
+            }
+        }
+        if (!aLineMode) {
+            // Pixel mode here. Store last point
+            aDestination[tDestinationIndex++] = tXRounded;
+            aDestination[tDestinationIndex++] = tYRounded;
+        }
+        return tDestinationIndex;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ *
+ * DrawTarget decorator, which draws the clear color of a layer as DrawTarget.COLOR_TRANSPARENT.
+ * This lets the client erase parts of a layer, e.g. the old line of a chart, with its usual background color,
+ * without destroying the layers below. Image rows are drawn unchanged.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public class ClearColorDrawTarget implements DrawTarget {
+
+    public static final int NO_CLEAR_COLOR = 0x00000001; // not opaque, so it never matches a protocol color
+
+    private final DrawTarget mDrawTarget;
+    private int mClearColor = NO_CLEAR_COLOR;
+
+    public ClearColorDrawTarget(DrawTarget aDrawTarget) {
+        mDrawTarget = aDrawTarget;
+    }
+
+    public DrawTarget getDrawTarget() {
+        return mDrawTarget;
+    }
+
+    public int getClearColor() {
+        return mClearColor;
+    }
+
+    /**
+     * @param aClearColor ARGB color or NO_CLEAR_COLOR
+     */
+    public void setClearColor(int aClearColor) {
+        mClearColor = aClearColor;
+    }
+
+    private int map(int aColor) {
+        return aColor == mClearColor ? COLOR_TRANSPARENT : aColor;
+    }
+
+    @Override
+    public void drawColor(int aColor) {
+        mDrawTarget.drawColor(map(aColor));
+    }
+
+    @Override
+    public void drawPoint(float aX, float aY, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        mDrawTarget.drawPoint(aX, aY, aStrokeWidth, map(aColor), aAntiAlias);
+    }
+
+    @Override
+    public void drawLine(float aXStart, float aYStart, float aXEnd, float aYEnd, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        mDrawTarget.drawLine(aXStart, aYStart, aXEnd, aYEnd, aStrokeWidth, map(aColor), aAntiAlias);
+    }
+
+    @Override
+    public void drawLines(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        mDrawTarget.drawLines(aPoints, aOffset, aCount, aStrokeWidth, map(aColor));
+    }
+
+    @Override
+    public void drawPoints(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        mDrawTarget.drawPoints(aPoints, aOffset, aCount, aStrokeWidth, map(aColor));
+    }
+
+    @Override
+    public void fillRects(float[] aRects, int aOffset, int aCount, int aColor) {
+        mDrawTarget.fillRects(aRects, aOffset, aCount, map(aColor));
+    }
+
+    @Override
+    public void drawPixelRow(int[] aColors, int aCount, float aLeft, float aTop, float aRight, float aBottom) {
+        mDrawTarget.drawPixelRow(aColors, aCount, aLeft, aTop, aRight, aBottom);
+    }
+
+    @Override
+    public void drawRect(float aLeft, float aTop, float aRight, float aBottom, float aStrokeWidth, int aColor, boolean aFill) {
+        mDrawTarget.drawRect(aLeft, aTop, aRight, aBottom, aStrokeWidth, map(aColor), aFill);
+    }
+
+    @Override
+    public void drawCircle(float aX, float aY, float aRadius, float aStrokeWidth, int aColor, boolean aFill) {
+        mDrawTarget.drawCircle(aX, aY, aRadius, aStrokeWidth, map(aColor), aFill);
+    }
+
+    @Override
+    public void drawPolygon(int[] aCoordinates, int aLength, float aScaleFactor, float aStrokeWidth, int aColor, boolean aFill) {
+        mDrawTarget.drawPolygon(aCoordinates, aLength, aScaleFactor, aStrokeWidth, map(aColor), aFill);
+    }
+
+    @Override
+    public void drawText(String aText, float aX, float aY, float aTextSize, int aColor) {
+        mDrawTarget.drawText(aText, aX, aY, aTextSize, map(aColor));
+    }
+
+    @Override
+    public float measureText(String aText, int aStart, int aEnd, float aTextSize) {
+        return mDrawTarget.measureText(aText, aStart, aEnd, aTextSize);
+    }
+}
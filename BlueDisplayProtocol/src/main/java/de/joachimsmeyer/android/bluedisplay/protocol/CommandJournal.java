@@ -0,0 +1,302 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Bounded journal of the display commands rendered since the last clear of the whole display.
+ * The commands are stored with their unscaled parameters, so after a change of scale factor or canvas size,
+ * CommandRenderer.replayJournal() can redraw the display locally at full quality instead of stretching the old bitmap
+ * and requesting a redraw from the client over the slow link.
+ *
+ * Entry format: opcode byte, then for protocol commands: parameter count byte, data length short,
+ * parameters as 2 byte values and the data bytes. Path coordinates given as ints are stored as 2 byte values,
+ * which is marked by FLAG_INT_DATA in the parameter count byte.
+ * The helper drawings of buttons and sliders have own opcodes above 0x7F and store float coordinates and 32 bit colors.
+ * If the journal exceeds its maximum size, it is incomplete until the next clear.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.MAX_DATA_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.MAX_NUMBER_OF_PARAMS;
+
+import java.util.Arrays;
+
+public class CommandJournal {
+
+    private static final String LOG_TAG = "CommandJournal";
+
+    public static final int DEFAULT_MAX_SIZE = 512 * 1024;
+    private static final int INITIAL_SIZE = 16 * 1024;
+
+    /*
+     * Opcodes of the helper functions used by buttons and sliders
+     */
+    private static final int OPCODE_FILL_RECT_REL = 0x80;
+    private static final int OPCODE_FILL_RECT = 0x81;
+    private static final int OPCODE_DRAW_TEXT_WITH_BACKGROUND = 0x82;
+
+    private static final int FLAG_INT_DATA = 0x80;
+
+    private final int mMaxSize;
+    private byte[] mBuffer;
+    private int mLength;
+    private boolean mIsComplete; // false before the first clear and after overflow
+    private int mNumberOfEntries;
+    private int mNumberOfOverflows;
+
+    // Renderer text state at the clear, which starts the journal
+    private final int[] mTextStateAtStart = new int[CommandRenderer.TEXT_STATE_SIZE];
+
+    // Buffers for replay
+    private final int[] mParameters = new int[MAX_NUMBER_OF_PARAMS];
+    private final byte[] mData = new byte[MAX_DATA_SIZE];
+    private final int[] mDataInts = new int[MAX_DATA_SIZE];
+
+    public CommandJournal() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public CommandJournal(int aMaxSize) {
+        mMaxSize = aMaxSize;
+        mBuffer = new byte[Math.min(INITIAL_SIZE, aMaxSize)];
+    }
+
+    /**
+     * Starts a new journal. Called at each clear of the whole display.
+     */
+    void start(CommandRenderer aRenderer) {
+        mLength = 0;
+        mNumberOfEntries = 0;
+        mIsComplete = true;
+        aRenderer.getTextState(mTextStateAtStart);
+    }
+
+    /**
+     * Discards the content, e.g. after drawing, which is not recorded. The journal is incomplete until the next clear.
+     */
+    public void invalidate() {
+        mLength = 0;
+        mNumberOfEntries = 0;
+        mIsComplete = false;
+    }
+
+    /**
+     * @return true if the journal contains all drawings since the last clear
+     */
+    public boolean isComplete() {
+        return mIsComplete;
+    }
+
+    public int getNumberOfEntries() {
+        return mNumberOfEntries;
+    }
+
+    public int getSize() {
+        return mLength;
+    }
+
+    public int getNumberOfOverflows() {
+        return mNumberOfOverflows;
+    }
+
+    /**
+     * Starts a journal for a part of the display, e.g. for the drawings of a cached button, see getEntries()
+     */
+    public void startPart() {
+        mLength = 0;
+        mNumberOfEntries = 0;
+        mIsComplete = true;
+    }
+
+    /**
+     * @return A copy of the entries for appendEntries(), or null if the journal is incomplete
+     */
+    public byte[] getEntries() {
+        return mIsComplete ? Arrays.copyOf(mBuffer, mLength) : null;
+    }
+
+    /**
+     * Appends the entries of another journal, e.g. of a cached button, without recording the drawings again
+     *
+     * @param aEntries         Result of getEntries() of the other journal
+     * @param aNumberOfEntries Result of getNumberOfEntries() of the other journal
+     */
+    public void appendEntries(byte[] aEntries, int aNumberOfEntries) {
+        if (!ensureCapacity(aEntries.length)) {
+            return;
+        }
+        mNumberOfEntries += aNumberOfEntries - 1; // one was counted by ensureCapacity()
+        System.arraycopy(aEntries, 0, mBuffer, mLength, aEntries.length);
+        mLength += aEntries.length;
+    }
+
+    private boolean ensureCapacity(int aAdditionalBytes) {
+        if (!mIsComplete) {
+            return false;
+        }
+        int tRequired = mLength + aAdditionalBytes;
+        if (tRequired > mBuffer.length) {
+            if (tRequired > mMaxSize) {
+                if (ProtocolLog.isINFO()) {
+                    ProtocolLog.i(LOG_TAG, "Journal exceeds " + mMaxSize + " bytes -> incomplete until next clear");
+                }
+                mNumberOfOverflows++;
+                invalidate();
+                return false;
+            }
+            mBuffer = Arrays.copyOf(mBuffer, Math.min(mMaxSize, Math.max(mBuffer.length * 2, tRequired)));
+        }
+        mNumberOfEntries++;
+        return true;
+    }
+
+    private void putShort(int aValue) {
+        mBuffer[mLength++] = (byte) aValue; // LSB
+        mBuffer[mLength++] = (byte) (aValue >> 8); // MSB
+    }
+
+    private void putInt(int aValue) {
+        putShort(aValue);
+        putShort(aValue >> 16);
+    }
+
+    private int getShort(int aIndex) {
+        return ProtocolHelper.convert2BytesToInt(mBuffer[aIndex], mBuffer[aIndex + 1]);
+    }
+
+    private int getInt(int aIndex) {
+        return (getShort(aIndex) & 0xFFFF) | (getShort(aIndex + 2) << 16);
+    }
+
+    void recordCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        int tDataSize = (aDataInts != null) ? 2 * aDataLength : aDataLength;
+        if (!ensureCapacity(4 + (2 * aParamsLength) + tDataSize)) {
+            return;
+        }
+        mBuffer[mLength++] = (byte) aCommand;
+        mBuffer[mLength++] = (byte) ((aDataInts != null) ? (aParamsLength | FLAG_INT_DATA) : aParamsLength);
+        putShort(aDataLength);
+        for (int i = 0; i < aParamsLength; i++) {
+            putShort(aParameters[i]);
+        }
+        if (aDataInts != null) {
+            for (int i = 0; i < aDataLength; i++) {
+                putShort(aDataInts[i]);
+            }
+        } else if (aDataLength > 0) {
+            System.arraycopy(aDataBytes, 0, mBuffer, mLength, aDataLength);
+            mLength += aDataLength;
+        }
+    }
+
+    void recordRect(boolean aIsRelative, float aXStart, float aYStart, float aXEndOrWidth, float aYEndOrHeight, int aColor) {
+        if (!ensureCapacity(1 + (5 * 4))) {
+            return;
+        }
+        mBuffer[mLength++] = (byte) (aIsRelative ? OPCODE_FILL_RECT_REL : OPCODE_FILL_RECT);
+        putInt(Float.floatToRawIntBits(aXStart));
+        putInt(Float.floatToRawIntBits(aYStart));
+        putInt(Float.floatToRawIntBits(aXEndOrWidth));
+        putInt(Float.floatToRawIntBits(aYEndOrHeight));
+        putInt(aColor);
+    }
+
+    void recordTextWithBackground(float aPosX, float aPosY, String aText, float aTextSize, int aColor, int aBGColor) {
+        int tTextLength = aText.length();
+        if (!ensureCapacity(1 + (5 * 4) + 2 + (2 * tTextLength))) {
+            return;
+        }
+        mBuffer[mLength++] = (byte) OPCODE_DRAW_TEXT_WITH_BACKGROUND;
+        putInt(Float.floatToRawIntBits(aPosX));
+        putInt(Float.floatToRawIntBits(aPosY));
+        putInt(Float.floatToRawIntBits(aTextSize));
+        putInt(aColor);
+        putInt(aBGColor);
+        putShort(tTextLength);
+        for (int i = 0; i < tTextLength; i++) {
+            putShort(aText.charAt(i));
+        }
+    }
+
+    /**
+     * Renders all entries with the current geometry of aRenderer. Called by CommandRenderer.replayJournal().
+     */
+    void replay(CommandRenderer aRenderer) {
+        aRenderer.setTextState(mTextStateAtStart);
+        int tIndex = 0;
+        while (tIndex < mLength) {
+            int tOpcode = mBuffer[tIndex++] & 0xFF;
+            if (tOpcode == OPCODE_FILL_RECT_REL || tOpcode == OPCODE_FILL_RECT) {
+                float tXStart = Float.intBitsToFloat(getInt(tIndex));
+                float tYStart = Float.intBitsToFloat(getInt(tIndex + 4));
+                float tXEndOrWidth = Float.intBitsToFloat(getInt(tIndex + 8));
+                float tYEndOrHeight = Float.intBitsToFloat(getInt(tIndex + 12));
+                int tColor = getInt(tIndex + 16);
+                tIndex += 20;
+                if (tOpcode == OPCODE_FILL_RECT_REL) {
+                    aRenderer.fillRectRel(tXStart, tYStart, tXEndOrWidth, tYEndOrHeight, tColor);
+                } else {
+                    aRenderer.fillRect(tXStart, tYStart, tXEndOrWidth, tYEndOrHeight, tColor);
+                }
+
+            } else if (tOpcode == OPCODE_DRAW_TEXT_WITH_BACKGROUND) {
+                float tPosX = Float.intBitsToFloat(getInt(tIndex));
+                float tPosY = Float.intBitsToFloat(getInt(tIndex + 4));
+                float tTextSize = Float.intBitsToFloat(getInt(tIndex + 8));
+                int tColor = getInt(tIndex + 12);
+                int tBGColor = getInt(tIndex + 16);
+                int tTextLength = getShort(tIndex + 20) & 0xFFFF;
+                tIndex += 22;
+                char[] tChars = new char[tTextLength];
+                for (int i = 0; i < tTextLength; i++) {
+                    tChars[i] = (char) getShort(tIndex);
+                    tIndex += 2;
+                }
+                aRenderer.drawTextWithBackground(tPosX, tPosY, new String(tChars), tTextSize, tColor, tBGColor);
+
+            } else {
+                int tParamsLength = mBuffer[tIndex++] & 0xFF;
+                boolean tIsIntData = (tParamsLength & FLAG_INT_DATA) != 0;
+                tParamsLength &= ~FLAG_INT_DATA;
+                int tDataLength = getShort(tIndex) & 0xFFFF;
+                tIndex += 2;
+                for (int i = 0; i < tParamsLength; i++) {
+                    mParameters[i] = getShort(tIndex);
+                    tIndex += 2;
+                }
+                if (tIsIntData) {
+                    for (int i = 0; i < tDataLength; i++) {
+                        mDataInts[i] = getShort(tIndex);
+                        tIndex += 2;
+                    }
+                    aRenderer.renderCommand(tOpcode, mParameters, tParamsLength, null, mDataInts, tDataLength);
+                } else {
+                    System.arraycopy(mBuffer, tIndex, mData, 0, tDataLength);
+                    tIndex += tDataLength;
+                    aRenderer.renderCommand(tOpcode, mParameters, tParamsLength, mData, null, tDataLength);
+                }
+            }
+        }
+    }
+}
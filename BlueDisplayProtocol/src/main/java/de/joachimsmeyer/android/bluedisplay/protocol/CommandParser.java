@@ -0,0 +1,777 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Searches the receive buffer for commands and their data and calls the listener for each complete command.
+ * The state of a partially received command is kept between two calls of searchCommand().
+ * With CRC framing, each message is checked before it is processed and a corrupt message is skipped at once,
+ * see searchFramedCommand().
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+public class CommandParser {
+
+    private static final String LOG_TAG = "CommandParser";
+
+    public interface CommandListener {
+        /**
+         * Called for each complete command. aParameters and aDataBytes are only valid during this call.
+         */
+        void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength);
+
+        /**
+         * Called with ASCII text found between commands, e.g. from a Serial.print() of the client.
+         */
+        void onSerialPrint(String aString);
+    }
+
+    public static final int DO_NOTHING = 0; // No data in buffer, no need for draw -> request trigger from socket.
+    public static final int DO_WAIT = 1; // We had data, but not a complete command, so rendering makes no sense, wait and call again.
+    public static final int DO_DRAW = 2; // The canvas should be rendered, and we have no more commands -> draw and request new trigger.
+    public static final int DO_DRAW_AND_CALL_AGAIN = 3; // The canvas should be rendered, but we may have more data, so try it again
+    // after rendering -> call invalidate().
+
+    // Forces the end of writing to bitmap after 0.5 seconds and thus allow bitmap to be displayed
+    private static final long MAX_DRAW_INTERVAL_NANOS = 500000000;
+    // Wait time for an incomplete command with data, before the state is reset and we start searching for a sync token again.
+    private static final long MAX_DATA_WAIT_NANOS = 2000000000;
+
+    private final ReceiveBuffer mReceiveBuffer;
+
+    private final byte[] mDataBuffer = new byte[MAX_DATA_SIZE]; // Buffer to hold data for one data command
+    private final int[] mParameters = new int[MAX_NUMBER_OF_PARAMS];
+
+    private volatile boolean inBufferReadingLock = false; // Safety net to avoid 2 instances of search command calls. Should never
+    // happen :-).
+
+    public static final int SIZE_OF_DEBUG_BUFFER = 16;
+    private final byte[] mHexOutputTempBuffer = new byte[SIZE_OF_DEBUG_BUFFER]; // holds one output line for verbose HEX output
+    private int mHexOutputTempBufferCurrentIndex = 0;
+    public static final int SIZE_OF_SERIAL_PRINT_BUFFER = 512;
+    private final byte[] mSerialPrintBuffer = new byte[SIZE_OF_SERIAL_PRINT_BUFFER];
+    private int mSerialPrintBufferInIndex; // first free byte
+
+    /*
+     * internal state for searchCommand()
+     */
+    // to signal searchCommand(), that searchState must be loaded, because a command with yet missing data was processed.
+    private boolean searchStateMustBeLoaded = false;
+    /*
+     * state between two searchCommand() calls
+     */
+    private int searchStateCommand;
+    private int searchStateCommandReceived; // The command we received, for which data we wait now
+    private int searchStateParamsLength; // Parameter length for the above command
+    private boolean searchStateIsCompact; // Parameters of the received command are compact encoded
+    private int searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE; // If available data is less than length, do nothing.
+    private long sTimestampOfLastDataWait = 0;
+
+    private int mLastColor; // for the implicit color of compact commands
+
+    /*
+     * state for CRC framing
+     */
+    private static final int NO_COMMAND = -1;
+    private boolean mIsCrcFramingEnabled;
+    private boolean mFrameSyncTokenFound; // sync token of the next frame is already consumed
+    private long mFrameWaitStartNanos; // 0 if not waiting for the rest of a frame
+    private int mFramedCommand = NO_COMMAND; // the command waiting for its data frame
+    private int mFramedParamsLength;
+
+    // Statistics
+    public int mStatisticNumberOfReceivedCommands;
+    public int mStatisticNumberOfReceivedChartCommands;
+    public long mStatisticNanoTimeForCommands;
+    public long mStatisticNanoTimeForChart;
+    public int mStatisticNumberOfRejectedFrames;
+
+    public CommandParser(ReceiveBuffer aReceiveBuffer) {
+        mReceiveBuffer = aReceiveBuffer;
+    }
+
+    public ReceiveBuffer getReceiveBuffer() {
+        return mReceiveBuffer;
+    }
+
+    /**
+     * @return the data length we are waiting for or 0 if we do not wait for data.
+     */
+    public int getDataLengthToWaitFor() {
+        if (searchStateInputLengthToWaitFor > MIN_MESSAGE_SIZE) {
+            return searchStateInputLengthToWaitFor;
+        }
+        return 0;
+    }
+
+    /**
+     * Resets the receive buffer and the parser state
+     */
+    public void reset() {
+        mReceiveBuffer.reset();
+        mSerialPrintBufferInIndex = 0;
+        searchStateMustBeLoaded = false;
+        searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
+        mLastColor = 0;
+        setCrcFramingEnabled(false);
+    }
+
+    public boolean isCrcFramingEnabled() {
+        return mIsCrcFramingEnabled;
+    }
+
+    /**
+     * Normally switched by SUBFUNCTION_GLOBAL_SET_CRC_FRAMING received by searchCommand()
+     */
+    public void setCrcFramingEnabled(boolean aEnable) {
+        mIsCrcFramingEnabled = aEnable;
+        mFrameSyncTokenFound = false;
+        mFrameWaitStartNanos = 0;
+        mFramedCommand = NO_COMMAND;
+        searchStateMustBeLoaded = false;
+        searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
+    }
+
+    public void resetStatistics() {
+        mStatisticNumberOfReceivedCommands = 0;
+        mStatisticNumberOfReceivedChartCommands = 0;
+        mStatisticNanoTimeForCommands = 0;
+        mStatisticNanoTimeForChart = 0;
+        mStatisticNumberOfRejectedFrames = 0;
+        mReceiveBuffer.resetStatistics();
+    }
+
+    /*
+     * Reads aLength bytes of compact encoded parameters, see PARAMETER_LENGTH_COMPACT_FLAG
+     * @return the number of parameters
+     */
+    private int getCompactParametersFromBuffer(int aLength) {
+        int tParamsLength = 0;
+        int tValue = 0;
+        int tShift = 0;
+        for (int i = 0; i < aLength; i++) {
+            int tByte = getByteFromBuffer() & 0xFF;
+            tValue |= (tByte & 0x7F) << tShift;
+            tShift += 7;
+            if ((tByte & 0x80) == 0 || tShift >= 7 * MAX_COMPACT_PARAMETER_SIZE) {
+                if (tParamsLength < MAX_NUMBER_OF_PARAMS) {
+                    // sign extend like convert2BytesToInt()
+                    mParameters[tParamsLength++] = (short) tValue;
+                }
+                tValue = 0;
+                tShift = 0;
+            }
+        }
+        return tParamsLength;
+    }
+
+    /*
+     * Reads the parameters of a command and adds the implicit color of compact commands
+     * @return the number of parameters
+     */
+    private int getParametersFromBuffer(int aCommand, int aLength, boolean aIsCompact) {
+        int tParamsLength;
+        if (aIsCompact) {
+            tParamsLength = getCompactParametersFromBuffer(aLength);
+        } else {
+            tParamsLength = aLength / 2;
+            for (int i = 0; i < tParamsLength; i++) {
+                byte tByte = getByteFromBuffer();
+                mParameters[i] = ProtocolHelper.convert2BytesToInt(tByte, getByteFromBuffer());
+            }
+        }
+        int tColorIndex = ProtocolHelper.getColorParameterIndex(aCommand);
+        if (tColorIndex >= 0) {
+            if (tParamsLength > tColorIndex) {
+                mLastColor = mParameters[tColorIndex];
+            } else if (aIsCompact && tParamsLength == tColorIndex) {
+                mParameters[tParamsLength++] = mLastColor;
+            }
+        }
+        return tParamsLength;
+    }
+
+    /*
+     * The parser handles the switch of the framing itself, since it must take effect exactly at the next message.
+     * The command is passed to the listener anyway.
+     * @return true if the command requests the other framing mode
+     */
+    private boolean isFramingSwitch(int aCommand, int aParamsLength) {
+        return aCommand == FUNCTION_GLOBAL_SETTINGS && aParamsLength >= 2 && mParameters[0] == SUBFUNCTION_GLOBAL_SET_CRC_FRAMING
+                && (mParameters[1] != 0) != mIsCrcFramingEnabled;
+    }
+
+    private static boolean isChartCommand(int aCommand) {
+        return aCommand == FUNCTION_DRAW_CHART || aCommand == FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING
+                || aCommand == FUNCTION_DRAW_SCALED_CHART || aCommand == FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING;
+    }
+
+    /**
+     * Search the input buffer for valid commands and call interpretCommand() as long as there is data available.
+     *
+     * @param aListener The receiver of the commands
+     * @return DO_... if we have more data in the buffer but want to redraw now, e.g. after a FUNCTION_DRAW_CHART command.
+     */
+    public int searchCommand(CommandListener aListener) {
+        return searchCommand(aListener, MAX_DRAW_INTERVAL_NANOS);
+    }
+
+    /**
+     * Like searchCommand(CommandListener), but returns DO_DRAW_AND_CALL_AGAIN after aMaxNanos, even if there are complete
+     * commands left in the buffer. Used by the frame scheduler to keep parsing within the budget of one frame.
+     *
+     * @param aMaxNanos The time budget for interpreting commands. Values above MAX_DRAW_INTERVAL_NANOS are clipped.
+     */
+    public int searchCommand(CommandListener aListener, long aMaxNanos) {
+        if (aMaxNanos > MAX_DRAW_INTERVAL_NANOS) {
+            aMaxNanos = MAX_DRAW_INTERVAL_NANOS;
+        }
+        ReceiveBuffer tReceiveBuffer = mReceiveBuffer;
+        if (inBufferReadingLock || tReceiveBuffer.getBytesAvailable() == 0) {
+            if (ProtocolLog.isVERBOSE()) {
+                ProtocolLog.v(LOG_TAG, "searchCommand just returns. No buffer content. Lock=" + inBufferReadingLock + " BufferInIndex="
+                        + tReceiveBuffer.getInIndex());
+            }
+            return DO_NOTHING;
+        }
+        int tReturnValue = DO_WAIT;
+        long tStartOfSearchCommand = System.nanoTime(); // We require it as nanos, because we compute the
+        // mStatisticNanoTimeForCommands with it
+        long tNanosForChart = 0;
+        inBufferReadingLock = true;
+        int tCommand = 0;
+        int tParamsLength = 0;
+        byte tByte;
+        int i;
+        int tCommandReceived;
+        int tLengthReceived;
+        boolean tIsCompact = false;
+        int tStartIn = tReceiveBuffer.getInIndex();
+        int tStartOut = tReceiveBuffer.getOutIndex();
+        boolean tFramingSwitched = false;
+        if (mIsCrcFramingEnabled) {
+            return searchFramedCommand(aListener, aMaxNanos, tStartOfSearchCommand);
+        }
+
+        /*
+         * While reprogramming the client we also interpret this data, since it is sent over the same Serial line. But in this case
+         * we tend to misinterpreting the data, since it is not meant for BlueDisplay. Sometimes we misinterpret it as a command
+         * with a big chunk of data, but the data will of course not be delivered. So we introduced a 2 seconds timeout for data to
+         * arrive. Otherwise, we start a fresh scan.
+         */
+        if (searchStateInputLengthToWaitFor > MIN_MESSAGE_SIZE && tReceiveBuffer.getBytesAvailable() < searchStateInputLengthToWaitFor) {
+            // Here we assume that we wait for a big chunk of data, but it was not completely received yet
+            if (sTimestampOfLastDataWait + MAX_DATA_WAIT_NANOS < tStartOfSearchCommand) {
+                // reset state and continue with searching for sync token
+                searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
+                searchStateMustBeLoaded = false;
+                sTimestampOfLastDataWait = tStartOfSearchCommand;
+            }
+        } else {
+            sTimestampOfLastDataWait = tStartOfSearchCommand;
+        }
+
+        /*
+         * Now the available bytes are more than the number we wait for (e.g. MIN_COMMAND_SIZE or MIN_MESSAGE_SIZE or data size) so
+         * we have a chance, that we received a complete command.
+         */
+        while (tReceiveBuffer.getBytesAvailable() >= searchStateInputLengthToWaitFor) {
+            if (searchStateMustBeLoaded) {
+                // restore state of last call to searchCommand()
+                tLengthReceived = searchStateInputLengthToWaitFor;
+                tCommandReceived = searchStateCommandReceived;
+                tCommand = searchStateCommand;
+                tParamsLength = searchStateParamsLength;
+                tIsCompact = searchStateIsCompact;
+                searchStateMustBeLoaded = false;
+                if (ProtocolLog.isVERBOSE()) {
+                    ProtocolLog.v(LOG_TAG, "Restore previous state");
+                }
+            } else {
+
+                /*
+                 * Scan for SYNC token. Here we expect the buffer to start with a sync token.
+                 */
+                if (!scanBufferForSyncToken(aListener, tStartIn, tStartOut)) {
+                    return DO_NOTHING;
+                }
+
+                /*
+                 * Read command token from InputStream
+                 */
+                tCommandReceived = getByteFromBuffer() & 0xFF;
+
+                /*
+                 * Read parameter/data length
+                 */
+                tByte = getByteFromBuffer();
+                tLengthReceived = ProtocolHelper.convert2BytesToInt(tByte, getByteFromBuffer());
+
+                if (tCommandReceived <= LAST_DATAFIELD_TAG) {
+                    /*
+                     * Data length received
+                     */
+                    if (ProtocolLog.isVERBOSE()) {
+                        ProtocolLog.v(LOG_TAG, "Data: length=" + tLengthReceived + " at ptr=" + (tReceiveBuffer.getOutIndex() - 1));
+                    }
+                    // Plausibility check
+                    if (tLengthReceived > mDataBuffer.length) {
+                        ProtocolLog.e(LOG_TAG, "DataLength of " + tLengthReceived + " wrong. Command=0x"
+                                + Integer.toHexString(tCommandReceived) + " Out=" + tReceiveBuffer.getOutIndex());
+                        continue;
+                    }
+
+                } else {
+                    /*
+                     * Parameter length received
+                     */
+                    tIsCompact = (tLengthReceived & PARAMETER_LENGTH_COMPACT_FLAG) != 0;
+                    tLengthReceived &= ~PARAMETER_LENGTH_COMPACT_FLAG & 0xFFFF;
+                    if (ProtocolLog.isVERBOSE()) {
+                        ProtocolLog.v(LOG_TAG, "Command=0x" + Integer.toHexString(tCommandReceived) + " ParameterLength="
+                                + tLengthReceived + " at ptr=" + (tReceiveBuffer.getOutIndex() - 1));
+                    }
+                    // Plausibility check
+                    if (tLengthReceived > MAX_NUMBER_OF_PARAMS * (tIsCompact ? MAX_COMPACT_PARAMETER_SIZE : 2)) {
+                        ProtocolLog.e(LOG_TAG, "ParameterLength of " + tLengthReceived + "/0x" + Integer.toHexString(tLengthReceived)
+                                + " wrong. Command=0x" + Integer.toHexString(tCommandReceived) + " Out=" + tReceiveBuffer.getOutIndex());
+                        continue;
+                    }
+                }
+
+                /*
+                 * Save state and return if not enough bytes for data or command parameter are available in buffer
+                 */
+                if (tReceiveBuffer.getBytesAvailable() < tLengthReceived) {
+                    searchStateInputLengthToWaitFor = tLengthReceived;
+                    searchStateCommandReceived = tCommandReceived;
+                    searchStateCommand = tCommand;
+                    searchStateParamsLength = tParamsLength;
+                    searchStateIsCompact = tIsCompact;
+
+                    searchStateMustBeLoaded = true;
+                    if (ProtocolLog.isVERBOSE()) {
+                        if (tCommandReceived <= LAST_DATAFIELD_TAG) {
+                            ProtocolLog.v(LOG_TAG, tReceiveBuffer.getBytesAvailable() + "bytes in buffer, but " + tLengthReceived
+                                    + " required for data field");
+                        } else {
+                            ProtocolLog.v(LOG_TAG, tReceiveBuffer.getBytesAvailable() + "bytes in buffer, but " + tLengthReceived
+                                    + " required for command parameters");
+                        }
+                    }
+                    break;
+                }
+            }
+
+            /*
+             * Now all bytes available to interpret command or data
+             */
+            if (tCommandReceived <= LAST_DATAFIELD_TAG) {
+                /*
+                 * Data buffer command
+                 */
+                long tStart1 = System.nanoTime();
+
+                tReceiveBuffer.getBytes(mDataBuffer, tLengthReceived);
+                if (ProtocolLog.isVERBOSE()) {
+                    for (i = 0; i < tLengthReceived; i++) {
+                        appendToHexOutput(mDataBuffer[i]);
+                    }
+                }
+                /*
+                 * Now both command and data buffer filled -> interpret command.
+                 */
+                searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
+                aListener.interpretCommand(tCommand, mParameters, tParamsLength, mDataBuffer, null, tLengthReceived);
+                tReturnValue = DO_DRAW;
+                if (isChartCommand(tCommand)) {
+                    // do statistics
+                    mStatisticNumberOfReceivedChartCommands++;
+                    tNanosForChart += System.nanoTime() - tStart1;
+
+                    if (tCommand == FUNCTION_DRAW_CHART || tCommand == FUNCTION_DRAW_SCALED_CHART) {
+                        if (tReceiveBuffer.getBytesAvailable() > 0) {
+                            // We still have bytes in the buffer, so call again
+                            tReturnValue = DO_DRAW_AND_CALL_AGAIN;
+                        }
+                        // break in order to draw a chart directly
+                        break;
+                    }
+                } else {
+                    mStatisticNumberOfReceivedCommands++;
+                }
+
+                if ((System.nanoTime() - tStartOfSearchCommand) > aMaxNanos) {
+                    if (aMaxNanos == MAX_DRAW_INTERVAL_NANOS) {
+                        // Safety net, never seen this.
+                        ProtocolLog.w(LOG_TAG, "Return searchCommand() prematurely after 0.5 seconds");
+                    }
+                    // break after budget is used up to enable drawing of the bitmap
+                    tReturnValue = DO_DRAW_AND_CALL_AGAIN;
+                    break;
+                }
+
+            } else /* Data buffer command */ {
+                /*
+                 * Command parameters here
+                 */
+                tCommand = tCommandReceived;
+                tParamsLength = getParametersFromBuffer(tCommand, tLengthReceived, tIsCompact);
+
+                if (tCommand < INDEX_FIRST_FUNCTION_WITH_DATA) {
+                    searchStateInputLengthToWaitFor = MIN_COMMAND_SIZE;
+                    /*
+                     * direct commands without data
+                     */
+                    tFramingSwitched = isFramingSwitch(tCommand, tParamsLength);
+                    aListener.interpretCommand(tCommand, mParameters, tParamsLength, null, null, 0);
+                    mStatisticNumberOfReceivedCommands++;
+                    if (tFramingSwitched) {
+                        setCrcFramingEnabled(true);
+                        break;
+                    }
+                    if (tCommand == FUNCTION_DRAW_DISPLAY) {
+                        if (tReceiveBuffer.getBytesAvailable() > 0) {
+                            // We still have bytes in the buffer so call again
+                            tReturnValue = DO_DRAW_AND_CALL_AGAIN;
+                        }
+                        // break in order to draw the bitmap as requested by FUNCTION_DRAW_DISPLAY
+                        break;
+                    }
+
+                    if ((System.nanoTime() - tStartOfSearchCommand) > aMaxNanos) {
+                        if (aMaxNanos == MAX_DRAW_INTERVAL_NANOS) {
+                            ProtocolLog.w(LOG_TAG, "Return searchCommand() prematurely after 0.5 seconds to enable display refresh");
+                        }
+                        tReturnValue = DO_DRAW_AND_CALL_AGAIN;
+                        break;
+                    }
+                } else {
+                    searchStateInputLengthToWaitFor = MIN_MESSAGE_SIZE;
+                    /*
+                     * Wait for header of message part containing the expected data
+                     */
+                    i = 0;
+                    while (tReceiveBuffer.getBytesAvailable() < MIN_MESSAGE_SIZE && i < 100) {
+                        try {
+                            if (ProtocolLog.isDEBUG()) {
+                                // happens quite rare
+                                ProtocolLog.d(LOG_TAG, "wait for data header i=" + i);
+                            }
+                            Thread.sleep(10);
+                            i++;
+                        } catch (InterruptedException e) {
+                            ProtocolLog.e(LOG_TAG, "Wait for data header was interrupted");
+                        }
+                    }
+                    if (i == 100) {
+                        ProtocolLog.e(LOG_TAG, "Timeout waiting for data sync token. Out=" + tReceiveBuffer.getOutIndex() + " In="
+                                + tReceiveBuffer.getInIndex());
+                    }
+                }
+            }
+        } /* while */
+        if (ProtocolLog.isVERBOSE()) {
+            int tOut = tReceiveBuffer.getOutIndex();
+            int tIn = tReceiveBuffer.getInIndex();
+            ProtocolLog.v(LOG_TAG, "End searchCommand. Out=" + tStartOut + "->" + tOut + "=" + (tOut - tStartOut) + " In=" + tStartIn
+                    + "->" + tIn + "=" + (tIn - tStartIn) + " bytes in buffer=" + (tIn - tOut));
+        }
+        inBufferReadingLock = false;
+        mStatisticNanoTimeForCommands += System.nanoTime() - tStartOfSearchCommand - tNanosForChart;
+        mStatisticNanoTimeForChart += tNanosForChart;
+        if (tFramingSwitched && tReceiveBuffer.getBytesAvailable() > 0) {
+            // continue with the new framing
+            return Math.max(tReturnValue, searchCommand(aListener, aMaxNanos - (System.nanoTime() - tStartOfSearchCommand)));
+        }
+        return tReturnValue;
+    }
+
+    /*
+     * searchCommand() for CRC framing, see ProtocolConstants.SUBFUNCTION_GLOBAL_SET_CRC_FRAMING.
+     * A frame is checked by peeking before anything behind its sync token is consumed. A frame with a wrong header CRC
+     * or an implausible length is rejected at once, a frame with a wrong CRC as soon as it is complete.
+     * Then the search continues at the byte after the sync token of the rejected frame, so the next valid frame
+     * is found without waiting for data, which never arrives.
+     */
+    private int searchFramedCommand(CommandListener aListener, long aMaxNanos, long aStartOfSearchCommand) {
+        ReceiveBuffer tReceiveBuffer = mReceiveBuffer;
+        int tReturnValue = DO_WAIT;
+        long tNanosForChart = 0;
+        boolean tFramingSwitched = false;
+        int tStartIn = tReceiveBuffer.getInIndex();
+        int tStartOut = tReceiveBuffer.getOutIndex();
+        inBufferReadingLock = true;
+
+        while (tReceiveBuffer.getBytesAvailable() > 0) {
+            if (!mFrameSyncTokenFound) {
+                if (!scanBufferForSyncToken(aListener, tStartIn, tStartOut)) {
+                    break;
+                }
+                mFrameSyncTokenFound = true;
+            }
+            int tAvailable = tReceiveBuffer.getBytesAvailable();
+            if (tAvailable < FRAME_HEADER_SIZE) {
+                break;
+            }
+
+            /*
+             * Check header
+             */
+            int tCommandReceived = tReceiveBuffer.peekByte(0) & 0xFF;
+            int tLengthReceived = ProtocolHelper.convert2BytesToInt(tReceiveBuffer.peekByte(1), tReceiveBuffer.peekByte(2)) & 0xFFFF;
+            int tCrc = CRC8_INIT;
+            for (int i = 0; i < FRAME_HEADER_SIZE - 1; i++) {
+                tCrc = ProtocolHelper.updateCrc8(tCrc, tReceiveBuffer.peekByte(i));
+            }
+            boolean tIsCompact = false;
+            int tPayloadLength = tLengthReceived;
+            int tMaxPayloadLength = MAX_DATA_SIZE;
+            if (tCommandReceived > LAST_DATAFIELD_TAG) {
+                tIsCompact = (tLengthReceived & PARAMETER_LENGTH_COMPACT_FLAG) != 0;
+                tPayloadLength &= ~PARAMETER_LENGTH_COMPACT_FLAG;
+                tMaxPayloadLength = MAX_NUMBER_OF_PARAMS * (tIsCompact ? MAX_COMPACT_PARAMETER_SIZE : 2);
+            }
+            if (tCrc != (tReceiveBuffer.peekByte(FRAME_HEADER_SIZE - 1) & 0xFF) || tPayloadLength > tMaxPayloadLength) {
+                rejectFrame("Header", tCommandReceived, tLengthReceived);
+                continue;
+            }
+
+            /*
+             * Check payload if frame is complete
+             */
+            int tFrameLength = FRAME_HEADER_SIZE + tPayloadLength + FRAME_CRC_SIZE;
+            if (tAvailable < tFrameLength) {
+                if (mFrameWaitStartNanos == 0) {
+                    mFrameWaitStartNanos = aStartOfSearchCommand;
+                } else if (aStartOfSearchCommand - mFrameWaitStartNanos > MAX_DATA_WAIT_NANOS) {
+                    rejectFrame("Rest", tCommandReceived, tLengthReceived);
+                    continue;
+                }
+                break;
+            }
+            tCrc = CRC16_INIT;
+            for (int i = FRAME_HEADER_SIZE; i < FRAME_HEADER_SIZE + tPayloadLength; i++) {
+                tCrc = ProtocolHelper.updateCrc16(tCrc, tReceiveBuffer.peekByte(i));
+            }
+            if (tCrc != (ProtocolHelper.convert2BytesToInt(tReceiveBuffer.peekByte(tFrameLength - 2),
+                    tReceiveBuffer.peekByte(tFrameLength - 1)) & 0xFFFF)) {
+                rejectFrame("CRC", tCommandReceived, tLengthReceived);
+                continue;
+            }
+
+            /*
+             * Valid frame here -> process it
+             */
+            mFrameSyncTokenFound = false;
+            mFrameWaitStartNanos = 0;
+            for (int i = 0; i < FRAME_HEADER_SIZE; i++) {
+                getByteFromBuffer();
+            }
+            if (tCommandReceived <= LAST_DATAFIELD_TAG) {
+                long tStart1 = System.nanoTime();
+                tReceiveBuffer.getBytes(mDataBuffer, tPayloadLength);
+                getByteFromBuffer();
+                getByteFromBuffer();
+                int tCommand = mFramedCommand;
+                if (tCommand == NO_COMMAND) {
+                    ProtocolLog.e(LOG_TAG, "Data frame of length " + tPayloadLength + " without command. Out=" + tReceiveBuffer.getOutIndex());
+                    continue;
+                }
+                mFramedCommand = NO_COMMAND;
+                aListener.interpretCommand(tCommand, mParameters, mFramedParamsLength, mDataBuffer, null, tPayloadLength);
+                tReturnValue = DO_DRAW;
+                if (isChartCommand(tCommand)) {
+                    mStatisticNumberOfReceivedChartCommands++;
+                    tNanosForChart += System.nanoTime() - tStart1;
+                    if (tCommand == FUNCTION_DRAW_CHART || tCommand == FUNCTION_DRAW_SCALED_CHART) {
+                        if (tReceiveBuffer.getBytesAvailable() > 0) {
+                            tReturnValue = DO_DRAW_AND_CALL_AGAIN;
+                        }
+                        // break in order to draw a chart directly
+                        break;
+                    }
+                } else {
+                    mStatisticNumberOfReceivedCommands++;
+                }
+            } else {
+                // A command whose data frame was rejected is dropped here
+                mFramedCommand = NO_COMMAND;
+                int tParamsLength = getParametersFromBuffer(tCommandReceived, tPayloadLength, tIsCompact);
+                getByteFromBuffer();
+                getByteFromBuffer();
+                if (tCommandReceived >= INDEX_FIRST_FUNCTION_WITH_DATA) {
+                    // wait for the data frame
+                    mFramedCommand = tCommandReceived;
+                    mFramedParamsLength = tParamsLength;
+                    continue;
+                }
+                tFramingSwitched = isFramingSwitch(tCommandReceived, tParamsLength);
+                aListener.interpretCommand(tCommandReceived, mParameters, tParamsLength, null, null, 0);
+                mStatisticNumberOfReceivedCommands++;
+                if (tFramingSwitched) {
+                    setCrcFramingEnabled(false);
+                    break;
+                }
+                if (tCommandReceived == FUNCTION_DRAW_DISPLAY) {
+                    if (tReceiveBuffer.getBytesAvailable() > 0) {
+                        tReturnValue = DO_DRAW_AND_CALL_AGAIN;
+                    }
+                    // break in order to draw the bitmap as requested by FUNCTION_DRAW_DISPLAY
+                    break;
+                }
+            }
+            if ((System.nanoTime() - aStartOfSearchCommand) > aMaxNanos) {
+                // break after budget is used up to enable drawing of the bitmap
+                tReturnValue = DO_DRAW_AND_CALL_AGAIN;
+                break;
+            }
+        }
+        inBufferReadingLock = false;
+        mStatisticNanoTimeForCommands += System.nanoTime() - aStartOfSearchCommand - tNanosForChart;
+        mStatisticNanoTimeForChart += tNanosForChart;
+        if (tFramingSwitched && tReceiveBuffer.getBytesAvailable() > 0) {
+            // continue without framing
+            return Math.max(tReturnValue, searchCommand(aListener, aMaxNanos - (System.nanoTime() - aStartOfSearchCommand)));
+        }
+        return tReturnValue;
+    }
+
+    /*
+     * Skips only the sync token of the frame, the next search starts directly behind it
+     */
+    private void rejectFrame(String aReason, int aCommand, int aLength) {
+        mStatisticNumberOfRejectedFrames++;
+        mFrameSyncTokenFound = false;
+        mFrameWaitStartNanos = 0;
+        if (aCommand <= LAST_DATAFIELD_TAG) {
+            // The command of a rejected data frame is dropped, otherwise a later data frame could be dispatched with it
+            mFramedCommand = NO_COMMAND;
+        }
+        ProtocolLog.w(LOG_TAG, aReason + " of frame wrong. Command=0x" + Integer.toHexString(aCommand) + " Length=0x"
+                + Integer.toHexString(aLength) + " Out=" + mReceiveBuffer.getOutIndex());
+    }
+
+    /*
+     * Scan for SYNC token. Here we expect the buffer to start with a sync token.
+     */
+    private boolean scanBufferForSyncToken(CommandListener aListener, int aStartIn, int aStartOut) {
+        byte tByte;
+        do {
+            tByte = getByteFromBuffer();
+            if (tByte != SYNC_TOKEN) {
+                if (tByte >= ' ') { // byte us signed!
+                    // If ASCII, then append it to string buffer
+                    mSerialPrintBuffer[mSerialPrintBufferInIndex++] = tByte;
+                    if (mSerialPrintBufferInIndex == SIZE_OF_SERIAL_PRINT_BUFFER) {
+                        mSerialPrintBufferInIndex--;
+                    }
+
+                } else if ((tByte == '\n' || tByte == '\r')) {
+                    if (mSerialPrintBufferInIndex > 0) {
+                        flushSerialPrintBuffer(aListener);
+                    }
+                } else {
+                    // reset string buffer
+                    mSerialPrintBufferInIndex = 0;
+                    if (!ProtocolLog.isVERBOSE()) {
+                        /*
+                         * Do not output this at level verbose, since at this level RawData is output
+                         */
+                        ProtocolLog.w(LOG_TAG, "Byte=0x" + Integer.toHexString(tByte) + " at:" + mReceiveBuffer.getOutIndex()
+                                + " is no SYNC_TOKEN");
+                    }
+                }
+                if (mReceiveBuffer.getBytesAvailable() == 0) {
+                    inBufferReadingLock = false;
+                    if (mSerialPrintBufferInIndex == 0) {
+                        ProtocolLog.i(LOG_TAG, "Sync Token not found util end of buffer. End searchCommand. Out=" + aStartOut + "->"
+                                + mReceiveBuffer.getOutIndex() + " In=" + aStartIn + "->" + mReceiveBuffer.getInIndex());
+                    }
+                    return false;
+                }
+
+            } else {
+                if (mSerialPrintBufferInIndex > 0) {
+                    // print if \n or \r are missing
+                    flushSerialPrintBuffer(aListener);
+                }
+            }
+        } while (tByte != SYNC_TOKEN);
+        return true;
+    }
+
+    /*
+     * Print string buffer as warning to be contained in the log
+     */
+    private void flushSerialPrintBuffer(CommandListener aListener) {
+        String tStringFromSerial = new String(mSerialPrintBuffer, 0, mSerialPrintBufferInIndex);
+        ProtocolLog.w("Serial.print", tStringFromSerial);
+        mSerialPrintBufferInIndex = 0;
+        aListener.onSerialPrint(tStringFromSerial);
+    }
+
+    private byte getByteFromBuffer() {
+        byte tByte = mReceiveBuffer.getByte();
+        if (ProtocolLog.isVERBOSE()) {
+            appendToHexOutput(tByte);
+        }
+        return tByte;
+    }
+
+    /*
+     * Print 16 values as HEX and ASCII
+     */
+    private void appendToHexOutput(byte aByte) {
+        mHexOutputTempBuffer[mHexOutputTempBufferCurrentIndex++] = aByte;
+        if (mHexOutputTempBufferCurrentIndex == SIZE_OF_DEBUG_BUFFER) {
+            mHexOutputTempBufferCurrentIndex = 0;
+            StringBuilder tDataRaw = new StringBuilder();
+            StringBuilder tDataString = new StringBuilder();
+            byte tValue;
+            for (int i = 0; i < SIZE_OF_DEBUG_BUFFER; i++) {
+                // Output parameter buffer as hex
+                tValue = mHexOutputTempBuffer[i];
+                ProtocolHelper.appendByteAsHex(tDataRaw, tValue);
+                tDataRaw.append(" ");
+                byte tChar = tValue;
+                if (tChar < 0x20) {
+                    tChar = 0x20;
+                }
+                if (tValue == SYNC_TOKEN) {
+                    // Sync token which starts a new command
+                    tDataString.append("|->");
+                } else {
+                    tDataString.append(" ");
+                    tDataString.append((char) tChar);
+                    tDataString.append(" ");
+                }
+            }
+            // use empty log tag and padding to better formatting of the two lines
+            ProtocolLog.v("", "Hex=" + tDataRaw + "\n   Asc=" + tDataString);
+        }
+    }
+}
@@ -0,0 +1,1254 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Renders the display (draw) commands to a DrawTarget.
+ * It contains all the state required for drawing, like the scale factor, the chart history and the printf position,
+ * so it can be used without Android, e.g. for benchmarking the render path with RecordingDrawTarget.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+public class CommandRenderer {
+
+    private static final String LOG_TAG = "CommandRenderer";
+
+    public static final int MAX_CHART_LINE_WIDTH = 3200;
+    public static final int NUMBER_OF_LINES_SUPPORTED = 16; // we use the upper 4 bit to encode the line number - 16 lines possible
+
+    public static final boolean USE_ROUNDING_FOR_LINES = true;
+
+    public static final float TEXT_ASCEND_FACTOR = 0.76f;
+    public static final float TEXT_DESCEND_FACTOR = 0.24f;
+    public static final float TEXT_WIDTH_FACTOR = 0.6f;
+
+    private static final int COLOR_BLACK = 0xFF000000;
+
+    private DrawTarget mDrawTarget;
+
+    /*
+     * Geometry, set by the view
+     */
+    private float mScaleFactor = 1;
+    private int mRequestedCanvasWidth; // Of course without scale factor.
+    private int mRequestedCanvasHeight;
+    private int mCurrentCanvasPixelWidth; // The value used for drawing
+    private int mCurrentCanvasPixelHeight;
+
+    /*
+     * The samples of the last chart of each index, for deletion of the old line. Allocated at the first chart with this index.
+     * The samples need only 1/16 of the memory of the converted coordinates, which are converted again for deletion.
+     */
+    private static class ChartHistory {
+        byte[] mSamples;
+        int mLength; // 0 if no old data
+        float mXStartScaled;
+        float mYStartScaled;
+        float mYScaleFactor;
+        float mXIncrement;
+        boolean mLineMode;
+    }
+
+    private final ChartHistory[] mChartHistories = new ChartHistory[NUMBER_OF_LINES_SUPPORTED];
+    // drawLines() requires 4 float values for one line (start x/y and end x/y). Shared by all indexes and grown on demand.
+    private float[] mChartScreenBuffer;
+
+    // The scaled 16 bit values of FUNCTION_DRAW_PRIMITIVES
+    private final float[] mPrimitiveValues = new float[MAX_DATA_SIZE / 2];
+
+    private final ImageDecoder mImageDecoder = new ImageDecoder(this::drawImageRow);
+
+    /*
+     * All values are input values (for scale factor = 1.0)
+     */
+    private int mTextPrintTextStartPosX; // Position after \n or \r for printf implementation
+    private int mTextPrintTextCurrentPosX; // for printf implementation
+    private int mTextPrintTextCurrentPosY; // for printf implementation
+    private int mTextPrintTextSize = 12; // Unscaled value, for printf implementation
+    private int mTextExpandedPrintColor = COLOR_BLACK; // for printf implementation
+    private int mTextExpandedPrintBackgroundColor = COLOR_BLACK; // for printf implementation
+    private boolean mTextPrintDoClearScreenOnWrap = true; // for printf implementation
+
+    private int mLastDrawStringTextSize;
+    private int mLastDrawStringColor;
+    private int mLastDrawStringBackgroundColor;
+
+    // Number of values of getTextState()
+    static final int TEXT_STATE_SIZE = 10;
+
+    private CommandJournal mJournal; // optional, for local redraw after change of geometry
+    private boolean mIsReplaying;
+    private boolean mIsRecordOnly; // helper functions only record in journal, see setRecordOnly()
+
+    /*
+     *  To be used for ASCII values between 0x80 and 0xFF to be mapped (aka codepage)
+     *  Only entries != 0x0000 are used, otherwise the local codepage is taken
+     */
+    private char[] mCharMappingArray = new char[128];
+    private final char[] mCharsArray = new char[MAX_DATA_SIZE];
+
+    public CommandRenderer(DrawTarget aDrawTarget) {
+        mDrawTarget = aDrawTarget;
+        initCharMappingArray();
+    }
+
+    public DrawTarget getDrawTarget() {
+        return mDrawTarget;
+    }
+
+    public void setDrawTarget(DrawTarget aDrawTarget) {
+        mDrawTarget = aDrawTarget;
+    }
+
+    public void setGeometry(float aScaleFactor, int aRequestedCanvasWidth, int aRequestedCanvasHeight, int aCurrentCanvasPixelWidth,
+                            int aCurrentCanvasPixelHeight) {
+        mScaleFactor = aScaleFactor;
+        mRequestedCanvasWidth = aRequestedCanvasWidth;
+        mRequestedCanvasHeight = aRequestedCanvasHeight;
+        mCurrentCanvasPixelWidth = aCurrentCanvasPixelWidth;
+        mCurrentCanvasPixelHeight = aCurrentCanvasPixelHeight;
+    }
+
+    public float getScaleFactor() {
+        return mScaleFactor;
+    }
+
+    public CommandJournal getJournal() {
+        return mJournal;
+    }
+
+    /**
+     * @param aJournal null disables recording
+     */
+    public void setJournal(CommandJournal aJournal) {
+        mJournal = aJournal;
+    }
+
+    /**
+     * If true, the helper functions fillRectRel(), fillRect() and drawTextWithBackground() only record in the journal and do not draw.
+     * Used if the content was drawn by other means, e.g. by copying the cached bitmap of a button.
+     */
+    public void setRecordOnly(boolean aRecordOnly) {
+        mIsRecordOnly = aRecordOnly;
+    }
+
+    /**
+     * Redraws the content since the last clear with the current geometry.
+     * The caller must provide an empty target with the new size.
+     *
+     * @return false if there is no complete journal, i.e. the client must redraw
+     */
+    public boolean replayJournal() {
+        CommandJournal tJournal = mJournal;
+        if (tJournal == null || !tJournal.isComplete()) {
+            return false;
+        }
+        if (ProtocolLog.isINFO()) {
+            ProtocolLog.i(LOG_TAG, "Replay " + tJournal.getNumberOfEntries() + " journal entries with scale factor " + mScaleFactor);
+        }
+        mIsReplaying = true;
+        try {
+            // the chart history contains scaled coordinates
+            resetChartHistory();
+            tJournal.replay(this);
+        } finally {
+            mIsReplaying = false;
+        }
+        return true;
+    }
+
+    /*
+     * The printf and drawString values, which are taken from preceding commands
+     */
+    void getTextState(int[] aState) {
+        aState[0] = mTextPrintTextStartPosX;
+        aState[1] = mTextPrintTextCurrentPosX;
+        aState[2] = mTextPrintTextCurrentPosY;
+        aState[3] = mTextPrintTextSize;
+        aState[4] = mTextExpandedPrintColor;
+        aState[5] = mTextExpandedPrintBackgroundColor;
+        aState[6] = mTextPrintDoClearScreenOnWrap ? 1 : 0;
+        aState[7] = mLastDrawStringTextSize;
+        aState[8] = mLastDrawStringColor;
+        aState[9] = mLastDrawStringBackgroundColor;
+    }
+
+    void setTextState(int[] aState) {
+        mTextPrintTextStartPosX = aState[0];
+        mTextPrintTextCurrentPosX = aState[1];
+        mTextPrintTextCurrentPosY = aState[2];
+        mTextPrintTextSize = aState[3];
+        mTextExpandedPrintColor = aState[4];
+        mTextExpandedPrintBackgroundColor = aState[5];
+        mTextPrintDoClearScreenOnWrap = aState[6] != 0;
+        mLastDrawStringTextSize = aState[7];
+        mLastDrawStringColor = aState[8];
+        mLastDrawStringBackgroundColor = aState[9];
+    }
+
+    public void resetChartHistory() {
+        for (ChartHistory tChartHistory : mChartHistories) {
+            if (tChartHistory != null) {
+                tChartHistory.mLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Releases all chart buffers, e.g. at disconnect. They are allocated again by the next chart.
+     */
+    public void releaseChartBuffers() {
+        for (int i = 0; i < NUMBER_OF_LINES_SUPPORTED; i++) {
+            mChartHistories[i] = null;
+        }
+        mChartScreenBuffer = null;
+    }
+
+    private float[] getChartScreenBuffer(int aDataLength) {
+        int tSize = Math.max(aDataLength, 1) * 4; // pixel mode writes one point even for no data
+        if (mChartScreenBuffer == null || mChartScreenBuffer.length < tSize) {
+            mChartScreenBuffer = new float[tSize];
+        }
+        return mChartScreenBuffer;
+    }
+
+    /*
+     * Character mapping
+     */
+    public void initCharMappingArray() {
+        /*
+         * initialize mapping array with current codepage chars
+         */
+        short tUnicodeChar = 0x0080;
+        for (int i = 0; i < mCharMappingArray.length; i++) {
+            mCharMappingArray[i] = (char) tUnicodeChar;
+            tUnicodeChar++;
+        }
+    }
+
+    /**
+     * Maps the characters 0x80 to 0xFF to the ones of the codepage ISO_8859_<aISO8859Part>
+     */
+    public void setCodepage(int aISO8859Part) {
+        if (ProtocolLog.isINFO()) {
+            ProtocolLog.i(LOG_TAG, "Set codepage=ISO_8859_" + aISO8859Part);
+        }
+        String tCharsetName = "ISO-8859-" + aISO8859Part; // canonical name, the alias ISO_8859_<n> is not known by all JVMs
+        Charset tCharset = Charset.forName(tCharsetName);
+        byte[] tCodepage = new byte[mCharMappingArray.length];
+        for (int i = 0; i < mCharMappingArray.length; i++) {
+            tCodepage[i] = (byte) (0x0080 + i);
+        }
+        ByteBuffer tBytebuffer = ByteBuffer.wrap(tCodepage);
+        CharBuffer tCharBuffer = tCharset.decode(tBytebuffer); // decode selected code page to char buffer
+        mCharMappingArray = tCharBuffer.array();
+    }
+
+    /**
+     * @param aCharacterCode Must be between 0x80 and 0xFF
+     * @param aUnicodeChar   The UTF16 char to be shown for aCharacterCode
+     */
+    public void setCharacterMapping(int aCharacterCode, int aUnicodeChar) {
+        int tIndex = aCharacterCode - 0x80;
+        if (tIndex >= 0 && tIndex < mCharMappingArray.length) {
+            if (ProtocolLog.isINFO()) {
+                ProtocolLog.i(LOG_TAG, "Set character mapping=" + mCharMappingArray[tIndex] + "->" + (char) aUnicodeChar + " / 0x"
+                        + Integer.toHexString(aCharacterCode) + "-> 0x" + Integer.toHexString(aUnicodeChar));
+            }
+            mCharMappingArray[tIndex] = (char) aUnicodeChar;
+        } else {
+            ProtocolLog.e(LOG_TAG, "Character mapping index=0x" + Integer.toHexString(aCharacterCode) + "+ must be between 0x80 and 0xFF");
+        }
+    }
+
+    public void convertChars(byte[] aInputData, char[] aOutputChars, int aDataLength) {
+        for (int i = 0; i < aDataLength; i++) {
+            aOutputChars[i] = convertChar(aInputData[i]);
+        }
+    }
+
+    public char convertChar(byte aData) {
+        char tChar;
+        // we have signed arithmetic here, so 0x80 is negative
+        if (aData > 0) {
+            tChar = (char) aData;
+        } else {
+            // mask highest bit
+            int tHighChar = (aData + 0x80);
+            // get mapping
+            tChar = mCharMappingArray[tHighChar & 0x7F];
+            if (tChar == 0x0000) {
+                // no mapping found, use local codepage
+                tChar = (char) (tHighChar + 0x80);
+            }
+        }
+        return tChar;
+    }
+
+    public static boolean isRenderCommand(int aCommand) {
+        switch (aCommand) {
+            case FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL:
+            case FUNCTION_CLEAR_DISPLAY:
+            case FUNCTION_CLEAR_DISPLAY_AREA:
+            case FUNCTION_DRAW_PIXEL:
+            case FUNCTION_DRAW_LINE_REL:
+            case FUNCTION_DRAW_LINE:
+            case FUNCTION_DRAW_VECTOR_DEGREE:
+            case FUNCTION_DRAW_VECTOR_RADIAN:
+            case FUNCTION_DRAW_CHART:
+            case FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING:
+            case FUNCTION_DRAW_SCALED_CHART:
+            case FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING:
+            case FUNCTION_DRAW_PATH:
+            case FUNCTION_FILL_PATH:
+            case FUNCTION_DRAW_PRIMITIVES:
+            case FUNCTION_IMAGE_START:
+            case FUNCTION_IMAGE_PALETTE:
+            case FUNCTION_IMAGE_DATA:
+            case FUNCTION_DRAW_RECT_REL:
+            case FUNCTION_FILL_RECT_REL:
+            case FUNCTION_DRAW_RECT:
+            case FUNCTION_FILL_RECT:
+            case FUNCTION_DRAW_CIRCLE:
+            case FUNCTION_FILL_CIRCLE:
+            case FUNCTION_WRITE_SETTINGS:
+            case FUNCTION_WRITE_STRING:
+            case FUNCTION_DRAW_CHAR:
+            case FUNCTION_DRAW_STRING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return false if aCommand is no display (draw) command
+     */
+    public boolean renderCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                 int aDataLength) {
+        CommandJournal tJournal = mJournal;
+        if (tJournal != null && !mIsReplaying && isRenderCommand(aCommand)) {
+            if (aCommand == FUNCTION_CLEAR_DISPLAY || aCommand == FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL
+                    || aCommand == FUNCTION_CLEAR_DISPLAY_AREA) {
+                tJournal.start(this);
+            }
+            tJournal.recordCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+        }
+        DrawTarget tDrawTarget = mDrawTarget;
+        float tScaleFactor = mScaleFactor;
+
+        float tXStartScaled = 0;
+        float tYStartScaled = 0;
+        float tXEndScaled;
+        float tYEndScaled;
+        if (aParamsLength >= 2) {
+            tXStartScaled = aParameters[0] * tScaleFactor;
+            tYStartScaled = aParameters[1] * tScaleFactor;
+        }
+        float tScaledTextSize;
+        int tColor;
+        float tStrokeWidth;
+        boolean tAntiAlias;
+        String tFunctionName;
+        String tAdditionalInfo = "";
+        String tStringParameter;
+        float tAscend;
+
+        switch (aCommand) {
+            case FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL:
+            case FUNCTION_CLEAR_DISPLAY:
+            case FUNCTION_CLEAR_DISPLAY_AREA:
+                // clear screen
+                tDrawTarget.drawColor(ProtocolHelper.shortToLongColor(aParameters[0]));
+                if (ProtocolLog.isINFO()) {
+                    ProtocolLog.i(LOG_TAG, "Clear display with color=" + ProtocolHelper.shortToColorString(aParameters[0]));
+                }
+                break;
+
+            case FUNCTION_DRAW_PIXEL:
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, "drawPixel(" + aParameters[0] + ", " + aParameters[1] + ") color= "
+                            + ProtocolHelper.shortToColorString(aParameters[2]));
+                }
+                // Fixed stroke of scale factor
+                tDrawTarget.drawPoint(tXStartScaled, tYStartScaled, tScaleFactor, ProtocolHelper.shortToLongColor(aParameters[2]), true);
+                break;
+
+            case FUNCTION_DRAW_LINE_REL:
+            case FUNCTION_DRAW_LINE:
+            case FUNCTION_DRAW_VECTOR_DEGREE:
+                /*
+                 * If the highest bit in aParameters[1] (YStart) is set,
+                 * use normal (aliased) Paint, which can be cleared without residual
+                 */
+                if ((aParameters[1] & 0x00008000) != 0) {
+                    tYStartScaled = (aParameters[1] & 0x00007FFF) * tScaleFactor; // remove highest bit
+                    tAntiAlias = false;
+                } else {
+                    tAntiAlias = true;
+                }
+
+                if (aCommand == FUNCTION_DRAW_LINE_REL) {
+                    tFunctionName = "drawLineRel";
+                    tXEndScaled = tXStartScaled + aParameters[2] * tScaleFactor;
+                    tYEndScaled = tYStartScaled + aParameters[3] * tScaleFactor;
+                } else if (aCommand == FUNCTION_DRAW_VECTOR_DEGREE) {
+                    tFunctionName = "drawVectorDegree";
+                    float tLength = aParameters[2];
+                    float tDegree = aParameters[3];
+                    double tRadianOfDegree = tDegree * (Math.PI / 180);
+                    tXEndScaled = (float) (tXStartScaled + (Math.cos(tRadianOfDegree) * tLength) * tScaleFactor);
+                    tYEndScaled = (float) (tYStartScaled - (Math.sin(tRadianOfDegree) * tLength) * tScaleFactor);
+                } else {
+                    tFunctionName = "drawLine";
+                    tXEndScaled = aParameters[2] * tScaleFactor;
+                    tYEndScaled = aParameters[3] * tScaleFactor;
+                }
+
+                float tLineStroke = tScaleFactor;
+
+                /*
+                 * ??? Round values to avoid starting or ending at half pixel ???
+                 */
+                if (USE_ROUNDING_FOR_LINES) { // for fast testing of the effects of rounding
+                    tXStartScaled = Math.round(tXStartScaled);
+                    tYStartScaled = Math.round(tYStartScaled);
+                    tXEndScaled = Math.round(tXEndScaled);
+                    tYEndScaled = Math.round(tYEndScaled);
+                }
+                if (tXStartScaled == tXEndScaled || tYStartScaled == tYEndScaled) {
+                    // Use NON anti aliased Paint for horizontal or vertical lines, these can be cleared without residual
+                    tAntiAlias = false;
+                }
+
+                tColor = ProtocolHelper.shortToLongColor(aParameters[4]);
+                if (aParamsLength > 5) {
+                    // Stroke / thickness parameter
+                    tLineStroke = aParameters[5] * tScaleFactor;
+                    if (ProtocolLog.isDEBUG()) {
+                        tAdditionalInfo = " strokeWidth=" + aParameters[5];
+                    }
+                }
+                tStrokeWidth = Math.round(tLineStroke);
+
+                if (tXStartScaled == tXEndScaled && tYStartScaled == tYEndScaled) {
+                    tDrawTarget.drawPoint(tXStartScaled, tYStartScaled, tStrokeWidth, tColor, tAntiAlias);
+                } else {
+                    tDrawTarget.drawLine(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tStrokeWidth, tColor, tAntiAlias);
+                }
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", " + aParameters[2] + ", "
+                            + aParameters[3] + ") color=" + ProtocolHelper.shortToColorString(aParameters[4]) + tAdditionalInfo);
+                }
+                break;
+
+            case FUNCTION_DRAW_VECTOR_RADIAN:
+                tFunctionName = "drawVectorRadian";
+                float tLength = aParameters[2];
+                float tRadian = Float.intBitsToFloat((aParameters[3] & 0x0000FFFF) | (aParameters[4] << 16));
+                tXEndScaled = (float) (tXStartScaled + (Math.cos(tRadian) * tLength) * tScaleFactor);
+                tYEndScaled = (float) (tYStartScaled - (Math.sin(tRadian) * tLength) * tScaleFactor);
+
+                tColor = ProtocolHelper.shortToLongColor(aParameters[5]);
+
+                if (aParamsLength > 6) {
+                    // Stroke parameter
+                    tStrokeWidth = Math.round(aParameters[6] * tScaleFactor);
+                    if (ProtocolLog.isDEBUG()) {
+                        tAdditionalInfo = " strokeWidth=" + aParameters[6];
+                    }
+                } else {
+                    // Fixed stroke of scale factor
+                    tStrokeWidth = tScaleFactor;
+                }
+
+                if (tXStartScaled == tXEndScaled && tYStartScaled == tYEndScaled) {
+                    tDrawTarget.drawPoint(tXStartScaled, tYStartScaled, tStrokeWidth, tColor, true);
+                } else {
+                    tDrawTarget.drawLine(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tStrokeWidth, tColor, true);
+                }
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", " + aParameters[2] + ", "
+                            + aParameters[3] + ") color=" + ProtocolHelper.shortToColorString(aParameters[5]) + tAdditionalInfo);
+                }
+                break;
+
+            case FUNCTION_DRAW_CHART:
+            case FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING:
+            case FUNCTION_DRAW_SCALED_CHART:
+            case FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING:
+                renderChart(aCommand, aParameters, aParamsLength, aDataBytes, aDataLength, tXStartScaled, tYStartScaled);
+                break;
+
+            /*
+             * Not yet implemented in Arduino library
+             * First parameter is Color
+             * Second parameter is StrokeWidth, but only necessary for draw path
+             * Data (aDataInts) contains x/y coordinates of path points
+             */
+            case FUNCTION_DRAW_PATH:
+            case FUNCTION_FILL_PATH:
+                tColor = ProtocolHelper.shortToLongColor(aParameters[0]);
+                tStrokeWidth = 1;
+                if (aCommand == FUNCTION_DRAW_PATH) {
+                    tFunctionName = "drawPath";
+                    tStrokeWidth = Math.round(aParameters[1] * tScaleFactor);
+                    if (ProtocolLog.isDEBUG()) {
+                        tAdditionalInfo = " strokeWidth=" + aParameters[1];
+                    }
+                } else {
+                    tFunctionName = "fillPath";
+                }
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, tFunctionName + "(" + ProtocolHelper.shortToColorString(aParameters[0]) + ", " + aParameters[1]
+                            + ") length=" + aDataLength + tAdditionalInfo);
+                }
+                tDrawTarget.drawPolygon(aDataInts, aDataLength, tScaleFactor, tStrokeWidth, tColor, aCommand == FUNCTION_FILL_PATH);
+                break;
+
+            case FUNCTION_DRAW_RECT_REL:
+            case FUNCTION_FILL_RECT_REL:
+            case FUNCTION_DRAW_RECT:
+            case FUNCTION_FILL_RECT:
+                if (aCommand == FUNCTION_DRAW_RECT_REL || aCommand == FUNCTION_FILL_RECT_REL) {
+                    tXEndScaled = tXStartScaled + aParameters[2] * tScaleFactor; // is width, i.e. 0 -> rect is not rendered
+                    tYEndScaled = tYStartScaled + aParameters[3] * tScaleFactor; // is height, i.e. 0 -> rect is not rendered
+                } else {
+                    tXEndScaled = aParameters[2] * tScaleFactor;
+                    tYEndScaled = aParameters[3] * tScaleFactor;
+                    // sort parameters
+                    float tmp;
+                    if (tXStartScaled > tXEndScaled) {
+                        tmp = tXStartScaled;
+                        tXStartScaled = tXEndScaled;
+                        tXEndScaled = tmp;
+                    }
+                    if (tYStartScaled > tYEndScaled) {
+                        tmp = tYStartScaled;
+                        tYStartScaled = tYEndScaled;
+                        tYEndScaled = tmp;
+                    }
+                }
+                if (USE_ROUNDING_FOR_LINES) { // for fast testing of the effects of rounding
+                    tXStartScaled = Math.round(tXStartScaled);
+                    tXEndScaled = Math.round(tXEndScaled);
+                    tYStartScaled = Math.round(tYStartScaled);
+                    tYEndScaled = Math.round(tYEndScaled);
+                }
+
+                tColor = ProtocolHelper.shortToLongColor(aParameters[4]);
+                boolean tFill;
+                tStrokeWidth = 1;
+                if (aCommand == FUNCTION_DRAW_RECT || aCommand == FUNCTION_DRAW_RECT_REL) {
+                    if (aCommand == FUNCTION_DRAW_RECT_REL) {
+                        tFunctionName = "drawRectRel";
+                    } else {
+                        tFunctionName = "drawRect";
+                    }
+                    tStrokeWidth = Math.round(aParameters[5] * tScaleFactor);
+                    tFill = false;
+                    if (ProtocolLog.isDEBUG()) {
+                        tAdditionalInfo = " strokeWidth=" + aParameters[5];
+                    }
+                } else {
+                    if (aCommand == FUNCTION_FILL_RECT_REL) {
+                        tFunctionName = "fillRectRel";
+                    } else {
+                        tFunctionName = "fillRect";
+                    }
+                    tFill = true;
+                }
+
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", " + aParameters[2] + ", "
+                            + aParameters[3] + ") , color=" + ProtocolHelper.shortToColorString(aParameters[4]) + tAdditionalInfo);
+                }
+                if (aCommand == FUNCTION_DRAW_RECT_REL && (aParameters[2] == 1 || aParameters[3] == 1)) {
+                    // XWidth is 1 -> draw a vertical line
+                    tDrawTarget.drawLine(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tStrokeWidth, tColor, false);
+                    break;
+                }
+                tDrawTarget.drawRect(tXStartScaled, tYStartScaled, tXEndScaled, tYEndScaled, tStrokeWidth, tColor, tFill);
+                break;
+
+            case FUNCTION_DRAW_CIRCLE:
+            case FUNCTION_FILL_CIRCLE:
+                tColor = ProtocolHelper.shortToLongColor(aParameters[3]);
+                float tRadius = aParameters[2] * tScaleFactor;
+                tStrokeWidth = 1;
+                if (aCommand == FUNCTION_DRAW_CIRCLE) {
+                    tFunctionName = "drawCircle";
+                    tStrokeWidth = Math.round(aParameters[4] * tScaleFactor);
+                    if (ProtocolLog.isDEBUG()) {
+                        tAdditionalInfo = " strokeWidth=" + aParameters[4];
+                    }
+                } else {
+                    tFunctionName = "fillCircle";
+                }
+
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, tFunctionName + "(" + aParameters[0] + ", " + aParameters[1] + ", r=" + aParameters[2]
+                            + ") ,color=" + ProtocolHelper.shortToColorString(aParameters[3]) + tAdditionalInfo);
+                }
+                tDrawTarget.drawCircle(tXStartScaled, tYStartScaled, tRadius, tStrokeWidth, tColor, aCommand == FUNCTION_FILL_CIRCLE);
+                break;
+
+            case FUNCTION_WRITE_SETTINGS:
+                int tSubcommand = aParameters[0];
+                switch (tSubcommand) {
+                    case FLAG_WRITE_SETTINGS_SET_SIZE_AND_COLORS_AND_FLAGS:
+                        mTextPrintTextSize = aParameters[1];
+                        mTextExpandedPrintColor = ProtocolHelper.shortToLongColor(aParameters[2]);
+                        mTextExpandedPrintBackgroundColor = ProtocolHelper.shortToLongColor(aParameters[3]);
+                        mTextPrintDoClearScreenOnWrap = aParameters[4] > 0;
+                        if (ProtocolLog.isINFO()) {
+                            ProtocolLog.i(LOG_TAG, "Set printf size=" + aParameters[1] + " color=" + ProtocolHelper.shortToColorString(aParameters[2])
+                                    + " backgroundcolor=" + ProtocolHelper.shortToColorString(aParameters[3]) + " clearOnWrap="
+                                    + mTextPrintDoClearScreenOnWrap);
+                        }
+                        break;
+
+                    case FLAG_WRITE_SETTINGS_SET_POSITION:
+                        /*
+                         * Sets the Y position and the X start position after a newline
+                         * Positions are in pixel
+                         */
+                        mTextPrintTextCurrentPosX = aParameters[1];
+                        mTextPrintTextStartPosX = mTextPrintTextCurrentPosX;
+                        mTextPrintTextCurrentPosY = aParameters[2];
+                        if (ProtocolLog.isINFO()) {
+                            ProtocolLog.i(LOG_TAG, "Set printf start position to: " + mTextPrintTextCurrentPosX + " / " + mTextPrintTextCurrentPosY);
+                        }
+                        break;
+
+                    case FLAG_WRITE_SETTINGS_SET_LINE_COLUMN:
+                        /*
+                         * Sets the Y position and the X start position after a newline
+                         * Positions are in character units :-)
+                         */
+                        mTextPrintTextCurrentPosX = (int) ((aParameters[1] * mTextPrintTextSize * TEXT_WIDTH_FACTOR) + 0.5);
+                        mTextPrintTextStartPosX = mTextPrintTextCurrentPosX;
+                        mTextPrintTextCurrentPosY = aParameters[2] * mTextPrintTextSize;
+                        if (ProtocolLog.isINFO()) {
+                            ProtocolLog.i(LOG_TAG, "Set printf start position to: " + aParameters[1] + " / " + aParameters[2] + " = "
+                                    + mTextPrintTextCurrentPosX + " / " + mTextPrintTextCurrentPosY);
+                        }
+                        break;
+
+                    default:
+                        ProtocolLog.e(LOG_TAG, "Write settings: unknown subcommand 0x" + Integer.toHexString(tSubcommand)
+                                + " received. paramsLength=" + aParamsLength + " dataLength=" + aDataLength);
+                }
+                break;
+
+            case FUNCTION_WRITE_STRING:
+                renderWriteString(aDataBytes, aDataLength);
+                break;
+
+            case FUNCTION_DRAW_CHAR:
+            case FUNCTION_DRAW_STRING:
+                tYStartScaled = aParameters[1] * tScaleFactor;
+                int tBackgroundColor;
+
+                if (aParamsLength <= 2) {
+                    /*
+                     * Get the last 3 parameters from preceding command
+                     */
+                    tScaledTextSize = mLastDrawStringTextSize * tScaleFactor;
+                    tColor = mLastDrawStringColor;
+                    tBackgroundColor = mLastDrawStringBackgroundColor;
+                } else {
+                    if (aCommand != FUNCTION_DRAW_CHAR) {
+                        /*
+                         * Store the last 3 parameters for next command
+                         */
+                        mLastDrawStringTextSize = aParameters[2];
+                        mLastDrawStringColor = aParameters[3];
+                        mLastDrawStringBackgroundColor = aParameters[4];
+                    }
+                    tScaledTextSize = aParameters[2] * tScaleFactor;
+                    tColor = aParameters[3];
+                    tBackgroundColor = aParameters[4];
+                }
+
+                int tExpandedColor = ProtocolHelper.shortToLongColor(tColor);
+
+                // ascend for draw
+                tAscend = tScaledTextSize * TEXT_ASCEND_FACTOR;
+
+                int tDataLength = aDataLength;
+                if (aCommand == FUNCTION_DRAW_CHAR) {
+                    tFunctionName = "drawChar";
+                    mCharsArray[0] = convertChar((byte) aParameters[5]);
+                    tDataLength = 1;
+                } else {
+                    tFunctionName = "drawString";
+                    convertChars(aDataBytes, mCharsArray, tDataLength);
+                }
+                tStringParameter = new String(mCharsArray, 0, tDataLength);
+
+                /*
+                 * Handle special alignments coded in aParameters[0]
+                 */
+                if (aParameters[0] == STRING_ALIGN_RIGHT_XPOS || aParameters[0] == STRING_ALIGN_MIDDLE_XPOS) {
+                    int tTextPixelLength = (int) ((TEXT_WIDTH_FACTOR * tScaledTextSize * tStringParameter.length()) + 0.5);
+                    if (aParameters[0] == STRING_ALIGN_RIGHT_XPOS) {
+                        tXStartScaled = mCurrentCanvasPixelWidth - tTextPixelLength;
+                    } else {
+                        // tXStartScaled == STRING_ALIGN_MIDDLE_XPOS
+                        tXStartScaled = (mCurrentCanvasPixelWidth - tTextPixelLength) / 2;
+                    }
+                }
+
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, tFunctionName + "(\"" + tStringParameter + "\", " + aParameters[0] + ", " + aParameters[1]
+                            + ", size=" + mLastDrawStringTextSize + ") color=" + ProtocolHelper.shortToColorString(tColor) + " bg="
+                            + ProtocolHelper.shortToColorString(tBackgroundColor));
+                }
+
+                /*
+                 * Handle background modes
+                 */
+                int tNewlineIndex = tStringParameter.indexOf('\n');
+                boolean tDrawBackgroundExtend = false; // true -> draw background for whole rest of line
+                int tCRIndex = tStringParameter.indexOf('\r');
+                if (tCRIndex >= 0 && (tCRIndex < tNewlineIndex || tNewlineIndex < 0)) {
+                    tNewlineIndex = tCRIndex;
+                    tDrawBackgroundExtend = true;
+                }
+
+                boolean tDrawBackground;
+                int tExpandedBackgroundColor = 0;
+                if (tBackgroundColor == COLOR16_NO_BACKGROUND) {
+                    tDrawBackground = false;
+                    tDrawBackgroundExtend = false;
+                } else {
+                    tExpandedBackgroundColor = ProtocolHelper.shortToLongColor(tBackgroundColor);
+                    tDrawBackground = true;
+                }
+
+                if (tNewlineIndex > 0) {
+                    int tStartIndex = 0;
+
+                    while (tNewlineIndex > 0) {
+                        /*
+                         * Multiline text
+                         */
+                        if (tDrawBackgroundExtend) {
+                            // draw background for whole rest of line. mScaleFactor for lower margin
+                            tDrawTarget.drawRect(tXStartScaled, tYStartScaled, mCurrentCanvasPixelWidth, tYStartScaled + tScaledTextSize
+                                    + tScaleFactor, 1, tExpandedBackgroundColor, true);
+                        } else if (tDrawBackground) {
+                            // draw background only for string except for single newline
+                            if (tStartIndex != tNewlineIndex) {
+                                float tTextLength = tDrawTarget.measureText(tStringParameter, tStartIndex, tNewlineIndex, tScaledTextSize);
+                                // draw background. mScaleFactor for lower margin
+                                tDrawTarget.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled
+                                        + tScaledTextSize + tScaleFactor, 1, tExpandedBackgroundColor, true);
+
+                            }
+                        }
+                        // check for single newline
+                        if (tStartIndex != tNewlineIndex) {
+                            // no single newline, draw string
+                            drawText(tStringParameter, tStartIndex, tNewlineIndex, tXStartScaled, tYStartScaled + tAscend,
+                                    tScaledTextSize, tExpandedColor);
+                            tYStartScaled += tScaledTextSize + tScaleFactor; // + Margin between lines
+                        }
+                        // search for next newline
+                        tStartIndex = tNewlineIndex + 1;
+                        if (tNewlineIndex + 1 <= tStringParameter.length()) {
+                            tNewlineIndex = tStringParameter.indexOf('\n', tStartIndex);
+                            tDrawBackgroundExtend = false;
+                            tCRIndex = tStringParameter.indexOf('\r', tStartIndex);
+                            if (tCRIndex >= 0 && (tCRIndex < tNewlineIndex || tNewlineIndex < 0)) {
+                                tNewlineIndex = tCRIndex;
+                                tDrawBackgroundExtend = true;
+                            }
+
+                            if (tNewlineIndex < 0) {
+                                tNewlineIndex = tStringParameter.length();
+                            }
+                        } else {
+                            tNewlineIndex = 0;
+                        }
+                    }
+                } else {
+                    /*
+                     * Single line text
+                     */
+                    if (tDrawBackground) {
+                        float tTextLength = tDrawTarget.measureText(tStringParameter, 0, tStringParameter.length(), tScaledTextSize);
+                        // draw background. mScaleFactor for lower margin
+                        tDrawTarget.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled + tScaledTextSize
+                                + tScaleFactor, 1, tExpandedBackgroundColor, true);
+                    }
+
+                    // draw char / string
+                    drawText(tStringParameter, tXStartScaled, tYStartScaled + tAscend, tScaledTextSize, tExpandedColor);
+                }
+                break;
+
+            case FUNCTION_DRAW_PRIMITIVES:
+                renderPrimitives(aParameters, aParamsLength, aDataBytes, aDataLength);
+                break;
+
+            case FUNCTION_IMAGE_START:
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, "imageStart(" + aParameters[0] + ", " + aParameters[1] + ") " + aParameters[2] + "x"
+                            + aParameters[3] + " format=" + aParameters[4]);
+                }
+                mImageDecoder.start(aParameters[0], aParameters[1], aParameters[2], aParameters[3], aParameters[4],
+                        (aParamsLength > 5) ? aParameters[5] : 0);
+                break;
+
+            case FUNCTION_IMAGE_PALETTE:
+                mImageDecoder.setPalette(aDataBytes, aDataLength);
+                break;
+
+            case FUNCTION_IMAGE_DATA:
+                mImageDecoder.decode(aDataBytes, aDataLength);
+                break;
+
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Renders all primitives of FUNCTION_DRAW_PRIMITIVES with one call of the draw target.
+     * Values are scaled and rounded like for the single commands. Default stroke is scale factor like for FUNCTION_DRAW_PIXEL.
+     */
+    private void renderPrimitives(int[] aParameters, int aParamsLength, byte[] aDataBytes, int aDataLength) {
+        int tKind = aParameters[0];
+        int tColor = ProtocolHelper.shortToLongColor(aParameters[1]);
+        float tScaleFactor = mScaleFactor;
+        float tStrokeWidth = tScaleFactor;
+        if (aParamsLength > 2 && aParameters[2] > 0) {
+            tStrokeWidth = Math.round(aParameters[2] * tScaleFactor);
+        }
+        float[] tValues = mPrimitiveValues;
+        int tNumberOfValues = aDataLength / 2;
+        for (int i = 0; i < tNumberOfValues; i++) {
+            tValues[i] = ProtocolHelper.convert2BytesToInt(aDataBytes[2 * i], aDataBytes[(2 * i) + 1]) * tScaleFactor;
+        }
+
+        if (ProtocolLog.isDEBUG()) {
+            ProtocolLog.d(LOG_TAG, "drawPrimitives(kind=" + tKind + ", color=" + ProtocolHelper.shortToColorString(aParameters[1])
+                    + ") values=" + tNumberOfValues);
+        }
+        switch (tKind) {
+            case PRIMITIVES_PIXELS:
+                mDrawTarget.drawPoints(tValues, 0, tNumberOfValues & ~0x01, tStrokeWidth, tColor);
+                break;
+
+            case PRIMITIVES_LINES:
+                tNumberOfValues &= ~0x03;
+                if (USE_ROUNDING_FOR_LINES) {
+                    for (int i = 0; i < tNumberOfValues; i++) {
+                        tValues[i] = Math.round(tValues[i]);
+                    }
+                }
+                mDrawTarget.drawLines(tValues, 0, tNumberOfValues, tStrokeWidth, tColor);
+                break;
+
+            case PRIMITIVES_FILL_RECTS_REL:
+                tNumberOfValues &= ~0x03;
+                for (int i = 0; i < tNumberOfValues; i += 4) {
+                    // width and height to right and bottom
+                    tValues[i + 2] += tValues[i];
+                    tValues[i + 3] += tValues[i + 1];
+                    if (USE_ROUNDING_FOR_LINES) {
+                        tValues[i] = Math.round(tValues[i]);
+                        tValues[i + 1] = Math.round(tValues[i + 1]);
+                        tValues[i + 2] = Math.round(tValues[i + 2]);
+                        tValues[i + 3] = Math.round(tValues[i + 3]);
+                    }
+                }
+                mDrawTarget.fillRects(tValues, 0, tNumberOfValues, tColor);
+                break;
+
+            default:
+                ProtocolLog.e(LOG_TAG, "Unknown kind " + tKind + " of primitives");
+                break;
+        }
+    }
+
+    /*
+     * Called by the image decoder for each completed row. Borders are rounded, to avoid gaps between scaled rows.
+     */
+    private void drawImageRow(int[] aColors, int aWidth, int aX, int aY) {
+        float tScaleFactor = mScaleFactor;
+        mDrawTarget.drawPixelRow(aColors, aWidth, Math.round(aX * tScaleFactor), Math.round(aY * tScaleFactor),
+                Math.round((aX + aWidth) * tScaleFactor), Math.round((aY + 1) * tScaleFactor));
+    }
+
+    private void renderChart(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int aDataLength,
+                             float aXStartScaled, float aYStartScaled) {
+        DrawTarget tDrawTarget = mDrawTarget;
+        float tScaleFactor = mScaleFactor;
+        String tFunctionName;
+        /*
+         * Use NON anti aliased Paint for easy removing of old chart
+         * Chart index is coded in the upper 4 bits of Y start position
+         */
+        int tChartIndex = (aParameters[1] >> 12) & 0x0F; // Otherwise we may get -1
+        if (tChartIndex > 0) {
+            aYStartScaled = (aParameters[1] & 0x0FFF) * tScaleFactor;
+        }
+
+        boolean tDeleteOldLine = false;
+        int tColor;
+        int tDeleteColor;
+        float tStrokeWidth;
+        float tYScaleFactor = 1.0F;
+        float tAdjustedXScaleFactor = tScaleFactor;
+        int tChartMode = CHART_MODE_LINE;
+
+        if (aParamsLength > 6) {
+            /*
+             * FUNCTION_DRAW_SCALED_CHART and FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING here
+             * get float YScale value and adjust effective data length to XScale
+             */
+            tYScaleFactor = Float.intBitsToFloat((aParameters[3] & 0x0000FFFF) | (aParameters[4] << 16));
+            tStrokeWidth = Math.round(aParameters[5] * tScaleFactor);
+            tChartMode = aParameters[6];
+            tColor = ProtocolHelper.shortToLongColor(aParameters[7]);
+            tDeleteColor = ProtocolHelper.shortToLongColor(aParameters[8]);
+            if (aParameters[8] != COLOR16_NO_DELETE) {
+                tDeleteOldLine = true;
+            }
+            // Adjust values to XScaleFactor
+            tAdjustedXScaleFactor = ChartConverter.enlargeFloatWithXScaleFactor(tScaleFactor, aParameters[2]);
+            if (ProtocolLog.isINFO()) {
+                if (aCommand == FUNCTION_DRAW_SCALED_CHART) {
+                    tFunctionName = "drawScaledChart";
+                } else {
+                    tFunctionName = "drawScaledChartWithoutDirectRendering";
+                }
+                ProtocolLog.i(LOG_TAG, tFunctionName + " X=" + aParameters[0] + " Y=" + (aParameters[1] & 0x0FFF) + " XFactor="
+                        + ChartConverter.enlargeFloatWithXScaleFactor(1, aParameters[2]) + " YFactor=" + tYScaleFactor + " lineSize=" + aParameters[5]
+                        + " mode=" + tChartMode + " color=" + ProtocolHelper.shortToColorString(aParameters[7]) + " deleteColor="
+                        + ProtocolHelper.shortToColorString(aParameters[8]) + " length=" + aDataLength + " chartIndex=" + tChartIndex
+                        + getChartDataInfo(aDataBytes, aDataLength));
+            }
+
+        } else {
+            tColor = ProtocolHelper.shortToLongColor(aParameters[2]);
+            tDeleteColor = ProtocolHelper.shortToLongColor(aParameters[3]);
+            if (aParameters[3] != COLOR16_NO_DELETE) {
+                tDeleteOldLine = true;
+            }
+            tStrokeWidth = Math.round(tScaleFactor);
+            if (ProtocolLog.isINFO()) {
+                if (aCommand == FUNCTION_DRAW_CHART) {
+                    tFunctionName = "drawChart";
+                } else {
+                    tFunctionName = "drawChartWithoutDirectRendering";
+                }
+                ProtocolLog.i(LOG_TAG, tFunctionName + " X=" + aParameters[0] + " Y=" + (aParameters[1] & 0x0FFF) + " color="
+                        + ProtocolHelper.shortToColorString(aParameters[2]) + " deleteColor=" + ProtocolHelper.shortToColorString(aParameters[3])
+                        + " length=" + aDataLength + " chartIndex=" + tChartIndex + getChartDataInfo(aDataBytes, aDataLength));
+
+            }
+        }
+
+        ChartHistory tChartHistory = mChartHistories[tChartIndex];
+        if (tChartHistory == null) {
+            tChartHistory = new ChartHistory();
+            mChartHistories[tChartIndex] = tChartHistory;
+        }
+        // can not use tDeleteColor here, because it is a converted value
+        if (tDeleteOldLine && tChartHistory.mLength > 0) {
+            /*
+             * delete old chart line
+             */
+            float[] tOldLine = getChartScreenBuffer(tChartHistory.mLength);
+            int tOldValidDataLength = ChartConverter.convertChartData(tChartHistory.mSamples, tChartHistory.mLength,
+                    tChartHistory.mXStartScaled, tChartHistory.mYStartScaled, tScaleFactor, tChartHistory.mYScaleFactor,
+                    tChartHistory.mXIncrement, tChartHistory.mLineMode, USE_ROUNDING_FOR_LINES, tOldLine);
+            if (tChartMode == CHART_MODE_LINE) {
+                tDrawTarget.drawLines(tOldLine, 0, tOldValidDataLength, tStrokeWidth, tDeleteColor);
+            } else {
+                tDrawTarget.drawPoints(tOldLine, 0, tOldValidDataLength, tStrokeWidth, tDeleteColor);
+            }
+        }
+
+        /*
+         * draw new chart.
+         * Origin is at upper left and therefore Y values are inverse!
+         * After returning to searchCommand() this will break to enable rendering
+         * or continue to receive the next draw command until no data gets in and rendering may happen.
+         */
+        if (aDataLength > MAX_CHART_LINE_WIDTH) {
+            aDataLength = MAX_CHART_LINE_WIDTH;
+            ProtocolLog.w(LOG_TAG, "aDataLength of " + aDataLength + " is bigger than maximum allowed data length of " + MAX_CHART_LINE_WIDTH);
+        }
+
+        /*
+         * Fill draw buffer with points for chart to draw at the end
+         */
+        float[] tChartScreenBuffer = getChartScreenBuffer(aDataLength);
+        int tValidDataLength = ChartConverter.convertChartData(aDataBytes, aDataLength, aXStartScaled, aYStartScaled, tScaleFactor,
+                tYScaleFactor, tAdjustedXScaleFactor, tChartMode == CHART_MODE_LINE, USE_ROUNDING_FOR_LINES, tChartScreenBuffer);
+        if (tChartMode == CHART_MODE_LINE) {
+            // For n points we have n-1 lines
+            tDrawTarget.drawLines(tChartScreenBuffer, 0, tValidDataLength, tStrokeWidth, tColor);
+        } else {
+            // CHART_MODE_PIXEL here
+            tDrawTarget.drawPoints(tChartScreenBuffer, 0, tValidDataLength, tStrokeWidth, tColor);
+        }
+
+        /*
+         * Keep samples for optional deletion of this line
+         */
+        if (tChartHistory.mSamples == null || tChartHistory.mSamples.length < aDataLength) {
+            tChartHistory.mSamples = new byte[aDataLength];
+        }
+        System.arraycopy(aDataBytes, 0, tChartHistory.mSamples, 0, aDataLength);
+        tChartHistory.mLength = aDataLength;
+        tChartHistory.mXStartScaled = aXStartScaled;
+        tChartHistory.mYStartScaled = aYStartScaled;
+        tChartHistory.mYScaleFactor = tYScaleFactor;
+        tChartHistory.mXIncrement = tAdjustedXScaleFactor;
+        tChartHistory.mLineMode = tChartMode == CHART_MODE_LINE;
+    }
+
+    private static String getChartDataInfo(byte[] aDataBytes, int aDataLength) {
+        StringBuilder tInfo = new StringBuilder(" |");
+        for (int i = 0; i < 4 && i < aDataLength; i++) {
+            tInfo.append(" 0x").append(Integer.toHexString(aDataBytes[i] & 0xFF));
+        }
+        return tInfo.toString();
+    }
+
+    /*
+     * Writes string at previously set position and do line and page wrapping for print emulation
+     * Do an automatic break before a new word, which will not fit on the remainder of line!
+     * \r is interpreted as a space
+     */
+    private void renderWriteString(byte[] aDataBytes, int aDataLength) {
+        DrawTarget tDrawTarget = mDrawTarget;
+        float tScaleFactor = mScaleFactor;
+        char[] tCharsArray = mCharsArray;
+        convertChars(aDataBytes, tCharsArray, aDataLength);
+        String tStringParameter = new String(tCharsArray, 0, aDataLength);
+
+        if (ProtocolLog.isINFO()) {
+            ProtocolLog.i(LOG_TAG, "writeString(\"" + tStringParameter.replaceAll("\n", "\\\\n") + "\") at " + mTextPrintTextCurrentPosX + " / "
+                    + mTextPrintTextCurrentPosY);
+        }
+        char tChar;
+        int tCurrentCharacterIndex = 0;
+        int tWordStartIndex = 0;
+        int tPrintBufferStartIndex = 0;
+        float tScaledTextPrintTextSize = mTextPrintTextSize * tScaleFactor;
+        int tTextUnscaledWidth = (int) ((mTextPrintTextSize * TEXT_WIDTH_FACTOR) + 0.5);
+        int tLineLengthInChars = mRequestedCanvasWidth / tTextUnscaledWidth;
+        boolean doFlushAndCarriageReturn = false;
+        boolean doFlushAndNewline = false;
+        int tColumn = mTextPrintTextCurrentPosX / tTextUnscaledWidth;
+        int tStartColumn = mTextPrintTextStartPosX / tTextUnscaledWidth; // after \n or \r
+        // ascend for background color.
+        float tAscend = tScaledTextPrintTextSize * TEXT_ASCEND_FACTOR;
+        float tXStartScaled;
+        float tYStartScaled;
+        while (true) {
+            // check for terminate condition
+            if (tCurrentCharacterIndex >= aDataLength) {
+                // check if last character was newline and string was already printed
+                if (tPrintBufferStartIndex < aDataLength) {
+                    /*
+                     * Draw last word
+                     */
+                    tYStartScaled = mTextPrintTextCurrentPosY * tScaleFactor;
+                    tXStartScaled = mTextPrintTextCurrentPosX * tScaleFactor;
+                    int tIntegerTextSize = (int) (tScaledTextPrintTextSize + 0.5);
+                    tIntegerTextSize = (int) ((tIntegerTextSize * TEXT_WIDTH_FACTOR) + 0.5);
+                    float tTextLength = (aDataLength - tPrintBufferStartIndex) * tIntegerTextSize;
+
+                    // draw background
+                    tDrawTarget.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled
+                            + tScaledTextPrintTextSize, 1, mTextExpandedPrintBackgroundColor, true);
+                    // draw char / string
+                    drawText(tStringParameter, tPrintBufferStartIndex, aDataLength, tXStartScaled, tYStartScaled + tAscend,
+                            tScaledTextPrintTextSize, mTextExpandedPrintColor);
+                    mTextPrintTextCurrentPosX += Math.round(tTextLength / tScaleFactor); // Advance to start position for next write
+
+                }
+                break;
+            }
+            // get character and interpret special characters and space as word separator
+            tChar = tCharsArray[tCurrentCharacterIndex++];
+
+            if (tChar == '\n') {
+                // new line -> is also start of a new word
+                tWordStartIndex = tCurrentCharacterIndex;
+                // signal flush and newline
+                doFlushAndNewline = true;
+            } else if (tChar == '\r') {
+                // Reset x position to start but do not advance to next line
+                tWordStartIndex = tCurrentCharacterIndex;
+                doFlushAndCarriageReturn = true;
+            } else if (tChar == ' ') {
+                // start of a new word
+                tWordStartIndex = tCurrentCharacterIndex;
+                if (tColumn == tStartColumn) {
+                    // skip from printing the space if first character in line
+                    tPrintBufferStartIndex = tCurrentCharacterIndex;
+                }
+            } else {
+                if (tColumn >= tLineLengthInChars) {
+                    /*
+                     * character does not fit in line -> print word at next line
+                     */
+                    doFlushAndNewline = true;
+                    int tWordLength = (tCurrentCharacterIndex - tWordStartIndex);
+                    if (tWordLength > tLineLengthInChars) {
+                        // word too long for a line just print char on next line
+                        // just draw "buffer" to old line, make newline and process character again
+                        tCurrentCharacterIndex--;
+                    } else {
+                        // draw buffer till word start, print a newline and process word again
+                        tCurrentCharacterIndex = tWordStartIndex;
+                    }
+                }
+            }
+            if (doFlushAndNewline || doFlushAndCarriageReturn) {
+                tXStartScaled = mTextPrintTextCurrentPosX * tScaleFactor;
+                tYStartScaled = mTextPrintTextCurrentPosY * tScaleFactor;
+                int tIntegerScaledTextWidth = (int) (tScaledTextPrintTextSize + 0.5);
+                // ??? is this integer computation stuff required to find the text length Andoid takes internally to get real size for drawing background???
+                tIntegerScaledTextWidth = (int) ((tIntegerScaledTextWidth * TEXT_WIDTH_FACTOR) + 0.5);
+                // do not count the newline or space
+                float tTextLength = ((tCurrentCharacterIndex - 1) - tPrintBufferStartIndex) * tIntegerScaledTextWidth;
+                if (tTextLength > 0) {
+                    // do not print trailing \r or \n
+                    tDrawTarget.drawRect(tXStartScaled, tYStartScaled, tXStartScaled + tTextLength, tYStartScaled
+                            + tScaledTextPrintTextSize, 1, mTextExpandedPrintBackgroundColor, true);
+                    // Draw char / string which has to be flushed
+                    drawText(tStringParameter, tPrintBufferStartIndex, tCurrentCharacterIndex - 1, tXStartScaled, tYStartScaled
+                            + tAscend, tScaledTextPrintTextSize, mTextExpandedPrintColor);
+                }
+                tPrintBufferStartIndex = tCurrentCharacterIndex;
+                if (doFlushAndNewline) {
+                    mTextPrintTextCurrentPosY = printNewline();
+                }
+                // set to user specified start position
+                mTextPrintTextCurrentPosX = mTextPrintTextStartPosX; // set it explicitly since compiler may hold mTextPrintTextCurrentPosX in register
+                tColumn = tStartColumn;
+                doFlushAndNewline = false;
+                doFlushAndCarriageReturn = false;
+            } else {
+                // Just increment columns as long as characters do not trigger a flush i.e overflow screen, or are \n or \r
+                tColumn++;
+            }
+        } // while true
+    }
+
+    private int printNewline() {
+        int tPrintY = mTextPrintTextCurrentPosY + mTextPrintTextSize + 1; // for space between lines otherwise we see "g" truncated
+        if (tPrintY >= mRequestedCanvasHeight) {
+            // wrap around to top of screen
+            tPrintY = 0;
+            if (mTextPrintDoClearScreenOnWrap) {
+                mDrawTarget.drawColor(mTextExpandedPrintBackgroundColor);
+            }
+        }
+        mTextPrintTextCurrentPosX = 0;
+        return tPrintY;
+    }
+
+    /*
+     * Helper functions, also used by buttons and sliders
+     */
+    public void fillRectRel(float aXStart, float aYStart, float aWidth, float aHeight, int aColor) {
+        if (mJournal != null && !mIsReplaying) {
+            mJournal.recordRect(true, aXStart, aYStart, aWidth, aHeight, aColor);
+        }
+        if (mIsRecordOnly) {
+            return;
+        }
+        mDrawTarget.drawRect(aXStart * mScaleFactor, aYStart * mScaleFactor, (aXStart + aWidth) * mScaleFactor, (aYStart + aHeight)
+                * mScaleFactor, 1, aColor, true);
+    }
+
+    public void fillRect(float aXStart, float aYStart, float aXEnd, float aYEnd, int aColor) {
+        if (mJournal != null && !mIsReplaying) {
+            mJournal.recordRect(false, aXStart, aYStart, aXEnd, aYEnd, aColor);
+        }
+        if (mIsRecordOnly) {
+            return;
+        }
+        mDrawTarget.drawRect(aXStart * mScaleFactor, aYStart * mScaleFactor, aXEnd * mScaleFactor, aYEnd * mScaleFactor, 1, aColor, true);
+    }
+
+    public void drawText(String aText, float aScaledPosX, float aScaledPosY, float aScaledTextSize, int aColor) {
+        while (aScaledPosX >= mCurrentCanvasPixelWidth) {
+            // Wrap around
+            aScaledPosX -= mCurrentCanvasPixelWidth;
+        }
+        while (aScaledPosY >= mCurrentCanvasPixelHeight) {
+            // Wrap around
+            aScaledPosY -= mCurrentCanvasPixelHeight;
+        }
+        mDrawTarget.drawText(aText, aScaledPosX, aScaledPosY, aScaledTextSize, aColor);
+    }
+
+    public void drawText(String aText, int aStartIndex, int aEndIndexNotIncluded, float aScaledPosX, float aScaledPosY,
+                         float aScaledTextSize, int aColor) {
+        drawText(aText.substring(aStartIndex, aEndIndexNotIncluded), aScaledPosX, aScaledPosY, aScaledTextSize, aColor);
+    }
+
+    /*
+     * For internal button and slider usage, no ascend compensation for draw position here
+     */
+    public void drawTextWithBackground(float aPosX, float aPosY, String aText, float aTextSize, int aColor, int aBGColor) {
+        if (mJournal != null && !mIsReplaying) {
+            mJournal.recordTextWithBackground(aPosX, aPosY, aText, aTextSize, aColor, aBGColor);
+        }
+        if (mIsRecordOnly) {
+            return;
+        }
+        aPosX *= mScaleFactor;
+        aPosY *= mScaleFactor;
+        aTextSize *= mScaleFactor;
+
+        // draw background
+        // ascend for background color
+        float tAscend = (aTextSize * TEXT_ASCEND_FACTOR);
+        float tDescend = aTextSize * TEXT_DESCEND_FACTOR;
+        float tTextLength = mDrawTarget.measureText(aText, 0, aText.length(), aTextSize);
+        mDrawTarget.drawRect(aPosX, aPosY - tAscend, aPosX + tTextLength, aPosY + tDescend, 1, aBGColor, true);
+
+        mDrawTarget.drawText(aText, aPosX, aPosY, aTextSize, aColor);
+    }
+}
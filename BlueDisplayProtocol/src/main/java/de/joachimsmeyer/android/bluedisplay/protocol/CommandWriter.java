@@ -0,0 +1,182 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Assembles commands like the client library (BlueDisplay.cpp) does.
+ * Used for benchmarks and for generating test streams on the host.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.CRC16_INIT;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.CRC8_INIT;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.DATAFIELD_TAG_BYTE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.FRAME_CRC_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.FRAME_HEADER_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.MAX_COMPACT_PARAMETER_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.PARAMETER_LENGTH_COMPACT_FLAG;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.SYNC_TOKEN;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class CommandWriter {
+
+    private byte[] mBuffer;
+    private int mLength;
+    private boolean mIsCrcFramingEnabled;
+
+    public CommandWriter() {
+        this(1024);
+    }
+
+    public CommandWriter(int aInitialSize) {
+        mBuffer = new byte[aInitialSize];
+    }
+
+    /**
+     * Switches the framing of all following messages. Write SUBFUNCTION_GLOBAL_SET_CRC_FRAMING before.
+     */
+    public void setCrcFramingEnabled(boolean aEnable) {
+        mIsCrcFramingEnabled = aEnable;
+    }
+
+    private void ensureCapacity(int aAdditionalBytes) {
+        if (mLength + aAdditionalBytes > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mLength + aAdditionalBytes));
+        }
+    }
+
+    private void putShort(int aValue) {
+        mBuffer[mLength++] = (byte) (aValue & 0xFF); // LSB
+        mBuffer[mLength++] = (byte) ((aValue >> 8) & 0xFF); // MSB
+    }
+
+    /*
+     * Writes SYNC_TOKEN and command and reserves the length and the CRC-8 of framing
+     * @return the index of the length
+     */
+    private int startMessage(int aCommand, int aMaxPayloadLength) {
+        ensureCapacity(FRAME_HEADER_SIZE + 1 + aMaxPayloadLength + FRAME_CRC_SIZE);
+        mBuffer[mLength++] = SYNC_TOKEN;
+        mBuffer[mLength++] = (byte) aCommand;
+        int tLengthIndex = mLength;
+        mLength += 2;
+        if (mIsCrcFramingEnabled) {
+            mLength++;
+        }
+        return tLengthIndex;
+    }
+
+    /*
+     * Writes the length and for framing the CRCs
+     */
+    private void endMessage(int aLengthIndex, int aLengthFlags) {
+        int tPayloadIndex = aLengthIndex + (mIsCrcFramingEnabled ? 3 : 2);
+        int tLength = (mLength - tPayloadIndex) | aLengthFlags;
+        mBuffer[aLengthIndex] = (byte) (tLength & 0xFF);
+        mBuffer[aLengthIndex + 1] = (byte) ((tLength >> 8) & 0xFF);
+        if (mIsCrcFramingEnabled) {
+            int tCrc8 = CRC8_INIT;
+            for (int i = aLengthIndex - 1; i < aLengthIndex + 2; i++) {
+                tCrc8 = ProtocolHelper.updateCrc8(tCrc8, mBuffer[i]);
+            }
+            mBuffer[aLengthIndex + 2] = (byte) tCrc8;
+            int tCrc16 = CRC16_INIT;
+            for (int i = tPayloadIndex; i < mLength; i++) {
+                tCrc16 = ProtocolHelper.updateCrc16(tCrc16, mBuffer[i]);
+            }
+            putShort(tCrc16);
+        }
+    }
+
+    /**
+     * Writes SYNC_TOKEN, command, parameter length and parameters.
+     */
+    public CommandWriter writeCommand(int aCommand, int... aParameters) {
+        int tLengthIndex = startMessage(aCommand, aParameters.length * 2);
+        for (int tParameter : aParameters) {
+            putShort(tParameter);
+        }
+        endMessage(tLengthIndex, 0);
+        return this;
+    }
+
+    /**
+     * Writes the command with compact encoded parameters, see ProtocolConstants.PARAMETER_LENGTH_COMPACT_FLAG.
+     * Omit the color parameter to use the color of the last command.
+     */
+    public CommandWriter writeCompactCommand(int aCommand, int... aParameters) {
+        int tLengthIndex = startMessage(aCommand, aParameters.length * MAX_COMPACT_PARAMETER_SIZE);
+        for (int tParameter : aParameters) {
+            int tValue = tParameter & 0xFFFF;
+            while (tValue > 0x7F) {
+                mBuffer[mLength++] = (byte) ((tValue & 0x7F) | 0x80);
+                tValue >>= 7;
+            }
+            mBuffer[mLength++] = (byte) tValue;
+        }
+        endMessage(tLengthIndex, PARAMETER_LENGTH_COMPACT_FLAG);
+        return this;
+    }
+
+    /**
+     * Writes the command and the following data message.
+     */
+    public CommandWriter writeCommandWithData(int aCommand, byte[] aData, int aDataLength, int... aParameters) {
+        writeCommand(aCommand, aParameters);
+        int tLengthIndex = startMessage(DATAFIELD_TAG_BYTE, aDataLength);
+        System.arraycopy(aData, 0, mBuffer, mLength, aDataLength);
+        mLength += aDataLength;
+        endMessage(tLengthIndex, 0);
+        return this;
+    }
+
+    public CommandWriter writeCommandWithString(int aCommand, String aString, int... aParameters) {
+        byte[] tData = aString.getBytes(Charset.forName("ISO-8859-1"));
+        return writeCommandWithData(aCommand, tData, tData.length, aParameters);
+    }
+
+    /**
+     * Writes raw bytes, e.g. text of a Serial.print() of the client.
+     */
+    public CommandWriter writeRaw(byte[] aData, int aOffset, int aLength) {
+        ensureCapacity(aLength);
+        System.arraycopy(aData, aOffset, mBuffer, mLength, aLength);
+        mLength += aLength;
+        return this;
+    }
+
+    public int size() {
+        return mLength;
+    }
+
+    public void reset() {
+        mLength = 0;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mBuffer, mLength);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * The big receive buffer. It is a linear buffer, where the driver appends data at the end.
+ * If the end is reached, the unprocessed data is moved to the buffer start.
+ * If the unprocessed data is still too big, everything up to the last FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL is skipped
+ * or, if there is no such command, only the new data is kept.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public class CompactingReceiveBuffer implements ReceiveBuffer {
+
+    private static final String LOG_TAG = "ReceiveBuffer";
+
+    private final int mWorkSize;
+    private final int mMaxReadSize;
+    private final byte[] mBuffer;
+
+    /*
+     * Current end of buffer content. Last content byte + 1. Ranges from 0 to mWorkSize + mMaxReadSize
+     */
+    private volatile int mInIndex; // Last content byte + 1 or first free byte
+    private volatile int mOutIndex; // first unprocessed byte
+
+    // Statistics
+    private int mStatisticNumberOfBufferSkip;
+    private int mStatisticNumberOfBufferOverflow;
+
+    /**
+     * @param aWorkSize    If the buffer content reaches this size, the buffer is compacted
+     * @param aMaxReadSize The maximum size of one read of the driver. The buffer is allocated with aWorkSize + aMaxReadSize.
+     */
+    public CompactingReceiveBuffer(int aWorkSize, int aMaxReadSize) {
+        mWorkSize = aWorkSize;
+        mMaxReadSize = aMaxReadSize;
+        mBuffer = new byte[aWorkSize + aMaxReadSize];
+    }
+
+    @Override
+    public byte[] getArray() {
+        return mBuffer;
+    }
+
+    @Override
+    public int getInIndex() {
+        return mInIndex;
+    }
+
+    @Override
+    public int getOutIndex() {
+        return mOutIndex;
+    }
+
+    @Override
+    public int getMaxReadSize() {
+        return mMaxReadSize;
+    }
+
+    public int getSize() {
+        return mBuffer.length;
+    }
+
+    @Override
+    public void handleReceived(int aReadLength) {
+        int tOldReceiveBufferInIndex = mInIndex;
+        int tInIndex = tOldReceiveBufferInIndex + aReadLength;
+        int tOutIndex = mOutIndex;
+
+        /*
+         * Check for buffer end reached i.e. no space for a new complete reading of 4096 bytes from driver.
+         * -> shift new received data to start
+         */
+        if (tInIndex >= mWorkSize) {
+            int tUnprocessedDataLength = tInIndex - tOutIndex;
+            if (tUnprocessedDataLength < mWorkSize) {
+                if (ProtocolLog.isINFO()) {
+                    ProtocolLog.d(LOG_TAG, "Buffer full after reading " + aReadLength + " bytes -> remove processed data and keep "
+                            + tUnprocessedDataLength + " unprocessed bytes");
+                }
+                /*
+                 * Delete already processed data at buffer start / compress buffer
+                 * mOutIndex -> 0
+                 */
+                System.arraycopy(mBuffer, tOutIndex, mBuffer, 0, tUnprocessedDataLength);
+                tInIndex = tUnprocessedDataLength;
+                tOutIndex = 0;
+            }
+        }
+
+        /*
+         * Check again, because we may have a new in index, which is still too big
+         */
+        if (tInIndex >= mWorkSize) {
+            int tUnprocessedDataLength = tInIndex - tOutIndex;
+            /*
+             * Here all data is unprocessed :-(
+             * Check data for last FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL and skip content before
+             * or keep only new data
+             */
+            int tSkipIndex = scanBufferForLastSkipAndClearDisplayCommand(tOutIndex, tUnprocessedDataLength);
+            if (tSkipIndex != 0) {
+                if (ProtocolLog.isINFO()) {
+                    ProtocolLog.w(LOG_TAG, "Buffer overflow -> skip " + (tSkipIndex - tOutIndex)
+                            + " bytes in buffer until last clearDisplayAndSkipOptional");
+                }
+                // Here we have commands to skip
+                tInIndex = (tOutIndex + tUnprocessedDataLength) - tSkipIndex;
+                System.arraycopy(mBuffer, tSkipIndex, mBuffer, 0, tInIndex);
+                mStatisticNumberOfBufferSkip++;
+            } else {
+                ProtocolLog.w(LOG_TAG, "Buffer overflow -> remove all old and keep only new data of " + aReadLength + " bytes.");
+                // No skip command found, discard all except the new data.
+                tInIndex = aReadLength;
+                System.arraycopy(mBuffer, tOldReceiveBufferInIndex, mBuffer, 0, tInIndex);
+                mStatisticNumberOfBufferOverflow++;
+            }
+            tOutIndex = 0;
+        }
+        /*
+         * Write out index first, so that a concurrent reader never sees an in index smaller than the out index
+         */
+        mOutIndex = tOutIndex;
+        mInIndex = tInIndex;
+    }
+
+    @Override
+    public void put(byte[] aData, int aOffset, int aLength) {
+        System.arraycopy(aData, aOffset, mBuffer, mInIndex, aLength);
+        handleReceived(aLength);
+    }
+
+    @Override
+    public int getBytesAvailable() {
+        return mInIndex - mOutIndex;
+    }
+
+    @Override
+    public byte getByte() {
+        int tOutIndex = mOutIndex;
+        byte tByte = mBuffer[tOutIndex];
+        mOutIndex = tOutIndex + 1;
+        return tByte;
+    }
+
+    @Override
+    public byte peekByte(int aOffset) {
+        return mBuffer[mOutIndex + aOffset];
+    }
+
+    @Override
+    public void getBytes(byte[] aDestination, int aLength) {
+        int tOutIndex = mOutIndex;
+        System.arraycopy(mBuffer, tOutIndex, aDestination, 0, aLength);
+        mOutIndex = tOutIndex + aLength;
+    }
+
+    @Override
+    public void reset() {
+        mInIndex = 0;
+        mOutIndex = 0;
+    }
+
+    /*
+     * Scan for last FUNCTION_SKIP_AND_CLEAR_DISPLAY command and return its index.
+     */
+    private int scanBufferForLastSkipAndClearDisplayCommand(int aBufferStartScanIndex, int aBytesToScan) {
+        int tBufferScanIndex = aBufferStartScanIndex;
+        int tFoundIndex = 0;
+
+        while (tBufferScanIndex <= (aBufferStartScanIndex + aBytesToScan - 6)) {
+            // Check for FUNCTION_SKIP_AND_CLEAR_DISPLAY
+            if (mBuffer[tBufferScanIndex] == ProtocolConstants.SYNC_TOKEN) {
+                if (((mBuffer[tBufferScanIndex + 1] == ProtocolConstants.FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL)
+                        && (mBuffer[tBufferScanIndex + 2] == 2) /* lsb of length 2 | one parameter */
+                        && (mBuffer[tBufferScanIndex + 3] == 0) /* msb of length 2 | one parameter */
+                        && (tBufferScanIndex == ((aBufferStartScanIndex + aBytesToScan) - 6))) || (mBuffer[tBufferScanIndex + 6] == ProtocolConstants.SYNC_TOKEN) /* sync token of next command if next command*/
+                ) {
+                    tFoundIndex = tBufferScanIndex;
+                }
+            }
+            tBufferScanIndex++;
+        }
+        return tFoundIndex;
+    }
+
+    @Override
+    public int getNumberOfBufferSkips() {
+        return mStatisticNumberOfBufferSkip;
+    }
+
+    @Override
+    public int getNumberOfBufferOverflows() {
+        return mStatisticNumberOfBufferOverflow;
+    }
+
+    @Override
+    public void resetStatistics() {
+        mStatisticNumberOfBufferSkip = 0;
+        mStatisticNumberOfBufferOverflow = 0;
+    }
+}
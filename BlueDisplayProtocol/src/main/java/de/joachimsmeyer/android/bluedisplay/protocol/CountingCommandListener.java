@@ -0,0 +1,88 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Headless stand-in for RPCView. It counts the interpreted commands per function code instead of drawing them.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.util.Arrays;
+
+public class CountingCommandListener implements CommandParser.CommandListener {
+
+    private final int[] mCommandCounts = new int[256];
+    private int mNumberOfCommands;
+    private long mNumberOfDataBytes;
+    private int mNumberOfSerialPrints;
+
+    @Override
+    public void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                 int aDataLength) {
+        mCommandCounts[aCommand & 0xFF]++;
+        mNumberOfCommands++;
+        mNumberOfDataBytes += aDataLength;
+    }
+
+    @Override
+    public void onSerialPrint(String aString) {
+        mNumberOfSerialPrints++;
+    }
+
+    public int getNumberOfCommands() {
+        return mNumberOfCommands;
+    }
+
+    public int getCommandCount(int aCommand) {
+        return mCommandCounts[aCommand & 0xFF];
+    }
+
+    public long getNumberOfDataBytes() {
+        return mNumberOfDataBytes;
+    }
+
+    public int getNumberOfSerialPrints() {
+        return mNumberOfSerialPrints;
+    }
+
+    public void reset() {
+        Arrays.fill(mCommandCounts, 0);
+        mNumberOfCommands = 0;
+        mNumberOfDataBytes = 0;
+        mNumberOfSerialPrints = 0;
+    }
+
+    /**
+     * @return One line for each received function code, e.g. "0x21: 400"
+     */
+    public String getCommandCountsString() {
+        StringBuilder tReturn = new StringBuilder();
+        for (int i = 0; i < mCommandCounts.length; i++) {
+            if (mCommandCounts[i] != 0) {
+                tReturn.append("0x").append(Integer.toHexString(i)).append(": ").append(mCommandCounts[i]).append('\n');
+            }
+        }
+        return tReturn.toString();
+    }
+}
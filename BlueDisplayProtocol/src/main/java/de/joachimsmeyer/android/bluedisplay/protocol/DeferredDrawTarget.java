@@ -0,0 +1,415 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ *
+ * DrawTarget, which does not draw, but records the primitives together with their bounds in target pixel.
+ * The primitives are replayed later to another target, optionally only the ones intersecting a clip rectangle.
+ * This allows to render the tiles of a tiled backing store independently from each other, e.g. in parallel threads,
+ * and to find the tiles touched by a batch of commands.
+ *
+ * The arrays passed by the renderer are reused, so their content is copied to pools, which are kept between batches.
+ * The bounds are slightly bigger than the pixels drawn, to cover anti aliasing, stroke ends and glyph overhang.
+ * A replay does not modify the recorded primitives, so multiple threads can replay the same list concurrently.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class DeferredDrawTarget implements DrawTarget {
+
+    private static final int PRIMITIVE_COLOR = 0;
+    private static final int PRIMITIVE_POINT = 1;
+    private static final int PRIMITIVE_LINE = 2;
+    private static final int PRIMITIVE_LINES = 3;
+    private static final int PRIMITIVE_POINTS = 4;
+    private static final int PRIMITIVE_FILL_RECTS = 5;
+    private static final int PRIMITIVE_PIXEL_ROW = 6;
+    private static final int PRIMITIVE_RECT = 7;
+    private static final int PRIMITIVE_CIRCLE = 8;
+    private static final int PRIMITIVE_POLYGON = 9;
+    private static final int PRIMITIVE_TEXT = 10;
+    private static final int PRIMITIVE_IMAGE = 11;
+
+    private static final int ENTRY_SIZE = 4; // type, start in float pool, start in int pool, index in object pool
+    private static final float MARGIN = 1; // for anti aliasing and rounding
+    private static final float UNLIMITED = Float.MAX_VALUE;
+
+    private final DrawTarget mMeasuringTarget;
+
+    private int[] mEntries = new int[64 * ENTRY_SIZE];
+    private float[] mBounds = new float[64 * 4]; // left, top, right, bottom for each primitive
+    private int mNumberOfPrimitives;
+    private float[] mFloats = new float[1024];
+    private int mFloatsLength;
+    private int[] mInts = new int[256];
+    private int mIntsLength;
+    private final ArrayList<Object> mObjects = new ArrayList<>(); // texts, copies of pixel rows and polygons and images
+
+    /**
+     * Target for images of the platform, e.g. Android bitmaps, which are not known by this module.
+     * Images are skipped by the replay to other targets.
+     */
+    public interface ImageDrawTarget {
+        void drawImage(Object aImage, float aLeft, float aTop);
+    }
+
+    /**
+     * @param aMeasuringTarget Target used for measureText(), which must be answered at recording time
+     */
+    public DeferredDrawTarget(DrawTarget aMeasuringTarget) {
+        mMeasuringTarget = aMeasuringTarget;
+    }
+
+    public int getNumberOfPrimitives() {
+        return mNumberOfPrimitives;
+    }
+
+    public boolean isEmpty() {
+        return mNumberOfPrimitives == 0;
+    }
+
+    /**
+     * Removes all primitives, but keeps the pools for the next batch
+     */
+    public void clear() {
+        mNumberOfPrimitives = 0;
+        mFloatsLength = 0;
+        mIntsLength = 0;
+        mObjects.clear();
+    }
+
+    /**
+     * Marks the tiles touched by the recorded primitives in aDirtyTiles, which has one entry for each tile, row by row.
+     *
+     * @return The number of tiles newly marked
+     */
+    public int markTiles(int aTileSize, int aColumns, int aRows, boolean[] aDirtyTiles) {
+        int tNumberOfMarked = 0;
+        for (int i = 0; i < mNumberOfPrimitives; i++) {
+            int tBoundsIndex = i * 4;
+            int tColumnStart = Math.max((int) Math.floor(mBounds[tBoundsIndex] / aTileSize), 0);
+            int tRowStart = Math.max((int) Math.floor(mBounds[tBoundsIndex + 1] / aTileSize), 0);
+            int tColumnEnd = Math.min((int) Math.floor(mBounds[tBoundsIndex + 2] / aTileSize), aColumns - 1);
+            int tRowEnd = Math.min((int) Math.floor(mBounds[tBoundsIndex + 3] / aTileSize), aRows - 1);
+            for (int tRow = tRowStart; tRow <= tRowEnd; tRow++) {
+                for (int tColumn = tColumnStart; tColumn <= tColumnEnd; tColumn++) {
+                    int tTileIndex = tRow * aColumns + tColumn;
+                    if (!aDirtyTiles[tTileIndex]) {
+                        aDirtyTiles[tTileIndex] = true;
+                        tNumberOfMarked++;
+                    }
+                }
+            }
+        }
+        return tNumberOfMarked;
+    }
+
+    public void replay(DrawTarget aTarget) {
+        replay(aTarget, -UNLIMITED, -UNLIMITED, UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * Replays all primitives, whose bounds intersect the rectangle, in the order they were recorded.
+     * The primitives are not clipped, this must be done by aTarget.
+     */
+    public void replay(DrawTarget aTarget, float aLeft, float aTop, float aRight, float aBottom) {
+        float[] tFloats = mFloats;
+        int[] tInts = mInts;
+        for (int i = 0; i < mNumberOfPrimitives; i++) {
+            int tBoundsIndex = i * 4;
+            if (mBounds[tBoundsIndex] >= aRight || mBounds[tBoundsIndex + 1] >= aBottom || mBounds[tBoundsIndex + 2] <= aLeft
+                    || mBounds[tBoundsIndex + 3] <= aTop) {
+                continue;
+            }
+            int tEntryIndex = i * ENTRY_SIZE;
+            int f = mEntries[tEntryIndex + 1];
+            int n = mEntries[tEntryIndex + 2];
+            switch (mEntries[tEntryIndex]) {
+            case PRIMITIVE_COLOR:
+                aTarget.drawColor(tInts[n]);
+                break;
+            case PRIMITIVE_POINT:
+                aTarget.drawPoint(tFloats[f], tFloats[f + 1], tFloats[f + 2], tInts[n], tInts[n + 1] != 0);
+                break;
+            case PRIMITIVE_LINE:
+                aTarget.drawLine(tFloats[f], tFloats[f + 1], tFloats[f + 2], tFloats[f + 3], tFloats[f + 4], tInts[n], tInts[n + 1] != 0);
+                break;
+            case PRIMITIVE_LINES:
+                aTarget.drawLines(tFloats, f + 1, tInts[n + 1], tFloats[f], tInts[n]);
+                break;
+            case PRIMITIVE_POINTS:
+                aTarget.drawPoints(tFloats, f + 1, tInts[n + 1], tFloats[f], tInts[n]);
+                break;
+            case PRIMITIVE_FILL_RECTS:
+                aTarget.fillRects(tFloats, f, tInts[n + 1], tInts[n]);
+                break;
+            case PRIMITIVE_PIXEL_ROW:
+                int[] tColors = (int[]) mObjects.get(mEntries[tEntryIndex + 3]);
+                aTarget.drawPixelRow(tColors, tColors.length, tFloats[f], tFloats[f + 1], tFloats[f + 2], tFloats[f + 3]);
+                break;
+            case PRIMITIVE_RECT:
+                aTarget.drawRect(tFloats[f], tFloats[f + 1], tFloats[f + 2], tFloats[f + 3], tFloats[f + 4], tInts[n], tInts[n + 1] != 0);
+                break;
+            case PRIMITIVE_CIRCLE:
+                aTarget.drawCircle(tFloats[f], tFloats[f + 1], tFloats[f + 2], tFloats[f + 3], tInts[n], tInts[n + 1] != 0);
+                break;
+            case PRIMITIVE_POLYGON:
+                int[] tCoordinates = (int[]) mObjects.get(mEntries[tEntryIndex + 3]);
+                aTarget.drawPolygon(tCoordinates, tCoordinates.length, tFloats[f], tFloats[f + 1], tInts[n], tInts[n + 1] != 0);
+                break;
+            case PRIMITIVE_TEXT:
+                aTarget.drawText((String) mObjects.get(mEntries[tEntryIndex + 3]), tFloats[f], tFloats[f + 1], tFloats[f + 2], tInts[n]);
+                break;
+            case PRIMITIVE_IMAGE:
+                if (aTarget instanceof ImageDrawTarget) {
+                    ((ImageDrawTarget) aTarget).drawImage(mObjects.get(mEntries[tEntryIndex + 3]), tFloats[f], tFloats[f + 1]);
+                }
+                break;
+            }
+        }
+    }
+
+    /*
+     * Recording
+     */
+
+    /*
+     * Adds the entry and reserves space in the pools. The values are written by the caller at the returned positions.
+     */
+    private void addPrimitive(int aType, int aNumberOfFloats, int aNumberOfInts, Object aObject, float aLeft, float aTop,
+                              float aRight, float aBottom) {
+        if (mNumberOfPrimitives * ENTRY_SIZE == mEntries.length) {
+            mEntries = Arrays.copyOf(mEntries, mEntries.length * 2);
+            mBounds = Arrays.copyOf(mBounds, mBounds.length * 2);
+        }
+        if (mFloatsLength + aNumberOfFloats > mFloats.length) {
+            mFloats = Arrays.copyOf(mFloats, Math.max(mFloats.length * 2, mFloatsLength + aNumberOfFloats));
+        }
+        if (mIntsLength + aNumberOfInts > mInts.length) {
+            mInts = Arrays.copyOf(mInts, Math.max(mInts.length * 2, mIntsLength + aNumberOfInts));
+        }
+        int tEntryIndex = mNumberOfPrimitives * ENTRY_SIZE;
+        mEntries[tEntryIndex] = aType;
+        mEntries[tEntryIndex + 1] = mFloatsLength;
+        mEntries[tEntryIndex + 2] = mIntsLength;
+        mEntries[tEntryIndex + 3] = mObjects.size();
+        if (aObject != null) {
+            mObjects.add(aObject);
+        }
+        int tBoundsIndex = mNumberOfPrimitives * 4;
+        mBounds[tBoundsIndex] = aLeft;
+        mBounds[tBoundsIndex + 1] = aTop;
+        mBounds[tBoundsIndex + 2] = aRight;
+        mBounds[tBoundsIndex + 3] = aBottom;
+        mNumberOfPrimitives++;
+    }
+
+    private void addFloat(float aValue) {
+        mFloats[mFloatsLength++] = aValue;
+    }
+
+    private void addInt(int aValue) {
+        mInts[mIntsLength++] = aValue;
+    }
+
+    private static float halfStroke(float aStrokeWidth) {
+        return Math.max(aStrokeWidth, 1) / 2 + MARGIN;
+    }
+
+    @Override
+    public void drawColor(int aColor) {
+        addPrimitive(PRIMITIVE_COLOR, 0, 1, null, -UNLIMITED, -UNLIMITED, UNLIMITED, UNLIMITED);
+        addInt(aColor);
+    }
+
+    @Override
+    public void drawPoint(float aX, float aY, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        float tHalfStroke = halfStroke(aStrokeWidth);
+        addPrimitive(PRIMITIVE_POINT, 3, 2, null, aX - tHalfStroke, aY - tHalfStroke, aX + tHalfStroke, aY + tHalfStroke);
+        addFloat(aX);
+        addFloat(aY);
+        addFloat(aStrokeWidth);
+        addInt(aColor);
+        addInt(aAntiAlias ? 1 : 0);
+    }
+
+    @Override
+    public void drawLine(float aXStart, float aYStart, float aXEnd, float aYEnd, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        float tHalfStroke = halfStroke(aStrokeWidth);
+        addPrimitive(PRIMITIVE_LINE, 5, 2, null, Math.min(aXStart, aXEnd) - tHalfStroke, Math.min(aYStart, aYEnd) - tHalfStroke,
+                Math.max(aXStart, aXEnd) + tHalfStroke, Math.max(aYStart, aYEnd) + tHalfStroke);
+        addFloat(aXStart);
+        addFloat(aYStart);
+        addFloat(aXEnd);
+        addFloat(aYEnd);
+        addFloat(aStrokeWidth);
+        addInt(aColor);
+        addInt(aAntiAlias ? 1 : 0);
+    }
+
+    /*
+     * Stroke width followed by the values
+     */
+    private void addPointsPrimitive(int aType, float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        float tLeft = UNLIMITED;
+        float tTop = UNLIMITED;
+        float tRight = -UNLIMITED;
+        float tBottom = -UNLIMITED;
+        int tEnd = aOffset + aCount - 1;
+        for (int i = aOffset; i < tEnd; i += 2) {
+            tLeft = Math.min(tLeft, aPoints[i]);
+            tRight = Math.max(tRight, aPoints[i]);
+            tTop = Math.min(tTop, aPoints[i + 1]);
+            tBottom = Math.max(tBottom, aPoints[i + 1]);
+        }
+        float tHalfStroke = halfStroke(aStrokeWidth);
+        addPrimitive(aType, aCount + 1, 2, null, tLeft - tHalfStroke, tTop - tHalfStroke, tRight + tHalfStroke, tBottom + tHalfStroke);
+        addFloat(aStrokeWidth);
+        System.arraycopy(aPoints, aOffset, mFloats, mFloatsLength, aCount);
+        mFloatsLength += aCount;
+        addInt(aColor);
+        addInt(aCount);
+    }
+
+    @Override
+    public void drawLines(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        addPointsPrimitive(PRIMITIVE_LINES, aPoints, aOffset, aCount, aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void drawPoints(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        addPointsPrimitive(PRIMITIVE_POINTS, aPoints, aOffset, aCount, aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void fillRects(float[] aRects, int aOffset, int aCount, int aColor) {
+        float tLeft = UNLIMITED;
+        float tTop = UNLIMITED;
+        float tRight = -UNLIMITED;
+        float tBottom = -UNLIMITED;
+        int tEnd = aOffset + aCount - 3;
+        for (int i = aOffset; i < tEnd; i += 4) {
+            tLeft = Math.min(tLeft, Math.min(aRects[i], aRects[i + 2]));
+            tTop = Math.min(tTop, Math.min(aRects[i + 1], aRects[i + 3]));
+            tRight = Math.max(tRight, Math.max(aRects[i], aRects[i + 2]));
+            tBottom = Math.max(tBottom, Math.max(aRects[i + 1], aRects[i + 3]));
+        }
+        addPrimitive(PRIMITIVE_FILL_RECTS, aCount, 2, null, tLeft - MARGIN, tTop - MARGIN, tRight + MARGIN, tBottom + MARGIN);
+        System.arraycopy(aRects, aOffset, mFloats, mFloatsLength, aCount);
+        mFloatsLength += aCount;
+        addInt(aColor);
+        addInt(aCount);
+    }
+
+    @Override
+    public void drawPixelRow(int[] aColors, int aCount, float aLeft, float aTop, float aRight, float aBottom) {
+        addPrimitive(PRIMITIVE_PIXEL_ROW, 4, 0, Arrays.copyOf(aColors, aCount), Math.min(aLeft, aRight) - MARGIN,
+                Math.min(aTop, aBottom) - MARGIN, Math.max(aLeft, aRight) + MARGIN, Math.max(aTop, aBottom) + MARGIN);
+        addFloat(aLeft);
+        addFloat(aTop);
+        addFloat(aRight);
+        addFloat(aBottom);
+    }
+
+    @Override
+    public void drawRect(float aLeft, float aTop, float aRight, float aBottom, float aStrokeWidth, int aColor, boolean aFill) {
+        float tMargin = aFill ? MARGIN : halfStroke(aStrokeWidth);
+        addPrimitive(PRIMITIVE_RECT, 5, 2, null, Math.min(aLeft, aRight) - tMargin, Math.min(aTop, aBottom) - tMargin,
+                Math.max(aLeft, aRight) + tMargin, Math.max(aTop, aBottom) + tMargin);
+        addFloat(aLeft);
+        addFloat(aTop);
+        addFloat(aRight);
+        addFloat(aBottom);
+        addFloat(aStrokeWidth);
+        addInt(aColor);
+        addInt(aFill ? 1 : 0);
+    }
+
+    @Override
+    public void drawCircle(float aX, float aY, float aRadius, float aStrokeWidth, int aColor, boolean aFill) {
+        float tRadius = Math.abs(aRadius) + (aFill ? MARGIN : halfStroke(aStrokeWidth));
+        addPrimitive(PRIMITIVE_CIRCLE, 4, 2, null, aX - tRadius, aY - tRadius, aX + tRadius, aY + tRadius);
+        addFloat(aX);
+        addFloat(aY);
+        addFloat(aRadius);
+        addFloat(aStrokeWidth);
+        addInt(aColor);
+        addInt(aFill ? 1 : 0);
+    }
+
+    @Override
+    public void drawPolygon(int[] aCoordinates, int aLength, float aScaleFactor, float aStrokeWidth, int aColor, boolean aFill) {
+        float tLeft = UNLIMITED;
+        float tTop = UNLIMITED;
+        float tRight = -UNLIMITED;
+        float tBottom = -UNLIMITED;
+        for (int i = 0; i < aLength - 1; i += 2) {
+            tLeft = Math.min(tLeft, aCoordinates[i] * aScaleFactor);
+            tRight = Math.max(tRight, aCoordinates[i] * aScaleFactor);
+            tTop = Math.min(tTop, aCoordinates[i + 1] * aScaleFactor);
+            tBottom = Math.max(tBottom, aCoordinates[i + 1] * aScaleFactor);
+        }
+        float tMargin = aFill ? MARGIN : halfStroke(aStrokeWidth);
+        addPrimitive(PRIMITIVE_POLYGON, 2, 2, Arrays.copyOf(aCoordinates, aLength), tLeft - tMargin, tTop - tMargin, tRight + tMargin,
+                tBottom + tMargin);
+        addFloat(aScaleFactor);
+        addFloat(aStrokeWidth);
+        addInt(aColor);
+        addInt(aFill ? 1 : 0);
+    }
+
+    /*
+     * The glyphs may exceed the measured width and the ascend and descend of the renderer, so take a full text size above
+     * and a half below the baseline
+     */
+    @Override
+    public void drawText(String aText, float aX, float aY, float aTextSize, int aColor) {
+        float tWidth = mMeasuringTarget.measureText(aText, 0, aText.length(), aTextSize);
+        float tMargin = aTextSize / 4 + MARGIN;
+        addPrimitive(PRIMITIVE_TEXT, 3, 1, aText, aX - tMargin, aY - aTextSize - MARGIN, aX + tWidth + tMargin,
+                aY + aTextSize / 2 + MARGIN);
+        addFloat(aX);
+        addFloat(aY);
+        addFloat(aTextSize);
+        addInt(aColor);
+    }
+
+    /**
+     * Records an image, which is drawn unscaled at aLeft, aTop by the replay to an ImageDrawTarget.
+     * The image must not be modified or released until the next clear().
+     */
+    public void drawImage(Object aImage, float aLeft, float aTop, float aWidth, float aHeight) {
+        addPrimitive(PRIMITIVE_IMAGE, 2, 0, aImage, aLeft - MARGIN, aTop - MARGIN, aLeft + aWidth + MARGIN, aTop + aHeight + MARGIN);
+        addFloat(aLeft);
+        addFloat(aTop);
+    }
+
+    @Override
+    public float measureText(String aText, int aStart, int aEnd, float aTextSize) {
+        return mMeasuringTarget.measureText(aText, aStart, aEnd, aTextSize);
+    }
+}
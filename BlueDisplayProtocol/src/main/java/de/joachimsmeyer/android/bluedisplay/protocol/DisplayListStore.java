@@ -0,0 +1,310 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Display lists (macros) recorded by the client and replayed with one FUNCTION_DISPLAY_LIST_REPLAY command.
+ * The commands are stored already parsed, i.e. as opcode, int parameters and data bytes, so replay does not parse again.
+ * At replay, an offset can be added to the coordinates and one color can be replaced by another one.
+ * The offset is applied to the start position of all draw commands with position and to the end position of
+ * FUNCTION_DRAW_LINE and FUNCTION_*_RECT, but not to data, e.g. of charts and primitives.
+ *
+ * The store is limited to MAX_TOTAL_SIZE. If a recording exceeds it, the recording is discarded.
+ * The following commands up to the end of the recording are then dropped and endRecording() returns false.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class DisplayListStore {
+
+    private static final String LOG_TAG = "DisplayListStore";
+
+    public static final int MAX_TOTAL_SIZE = 256 * 1024; // in bytes, parameters count 4 bytes each
+    public static final int MAX_REPLAY_DEPTH = 4; // a display list may replay other lists
+    public static final int NO_COLOR_SUBSTITUTION = -1;
+
+    private static final int COMMAND_ENTRY_SIZE = 4; // opcode, parameter offset, parameter count, data length
+
+    private static class DisplayList {
+        int[] mCommands = new int[16 * COMMAND_ENTRY_SIZE];
+        int mCommandsLength;
+        int[] mParameters = new int[64];
+        int mParametersLength;
+        byte[][] mData = new byte[16][]; // own array for each command, since handlers expect the data at index 0
+        int mDataLength;
+
+        int getSize() {
+            return (mCommandsLength + mParametersLength) * 4 + mDataLength;
+        }
+    }
+
+    private final HashMap<Integer, DisplayList> mDisplayLists = new HashMap<>();
+    private int mTotalSize;
+
+    private DisplayList mRecordingList; // null if not recording or discarding
+    private boolean mIsDiscarding; // recording exceeded MAX_TOTAL_SIZE, commands are dropped until end of recording
+    private int mRecordingId;
+    private boolean mExecuteWhileRecording;
+
+    private int mReplayDepth;
+    // One parameter buffer for each replay depth, since the handler may modify the parameters
+    private final int[][] mReplayParameters = new int[MAX_REPLAY_DEPTH][MAX_NUMBER_OF_PARAMS];
+
+    /**
+     * Starts recording of all following commands into the display list with this ID. An existing list is replaced at end of recording.
+     *
+     * @param aExecuteWhileRecording if true, the recorded commands are executed too
+     */
+    public void startRecording(int aId, boolean aExecuteWhileRecording) {
+        if (isRecording()) {
+            ProtocolLog.w(LOG_TAG, "Recording of display list " + mRecordingId + " ended by start of " + aId);
+            endRecording();
+        }
+        mRecordingList = new DisplayList();
+        mRecordingId = aId;
+        mExecuteWhileRecording = aExecuteWhileRecording;
+    }
+
+    /**
+     * @return false if the recording was discarded, because the store size would have been exceeded
+     */
+    public boolean endRecording() {
+        if (mIsDiscarding) {
+            mIsDiscarding = false;
+            return false;
+        }
+        DisplayList tList = mRecordingList;
+        if (tList == null) {
+            ProtocolLog.w(LOG_TAG, "End of recording without start");
+            return true;
+        }
+        mRecordingList = null;
+        remove(mRecordingId);
+        mDisplayLists.put(mRecordingId, tList);
+        mTotalSize += tList.getSize();
+        if (ProtocolLog.isINFO()) {
+            ProtocolLog.i(LOG_TAG, "Display list " + mRecordingId + " recorded with " + (tList.mCommandsLength / COMMAND_ENTRY_SIZE)
+                    + " commands and " + tList.getSize() + " bytes");
+        }
+        return true;
+    }
+
+    /**
+     * @return true from start to end of recording, even if the recording is discarded
+     */
+    public boolean isRecording() {
+        return mRecordingList != null || mIsDiscarding;
+    }
+
+    public int getRecordingId() {
+        return mRecordingId;
+    }
+
+    public boolean isExecuteWhileRecording() {
+        return mExecuteWhileRecording;
+    }
+
+    /**
+     * Appends the command to the display list being recorded. Does nothing if the recording is discarded.
+     */
+    public void record(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int aDataLength) {
+        DisplayList tList = mRecordingList;
+        if (tList == null) {
+            return;
+        }
+        if (mTotalSize + tList.getSize() + (COMMAND_ENTRY_SIZE + aParamsLength) * 4 + aDataLength > MAX_TOTAL_SIZE) {
+            ProtocolLog.e(LOG_TAG, "Display list " + mRecordingId + " discarded, because store size of " + MAX_TOTAL_SIZE
+                    + " would be exceeded");
+            mRecordingList = null;
+            mIsDiscarding = true;
+            return;
+        }
+        if (tList.mCommandsLength + COMMAND_ENTRY_SIZE > tList.mCommands.length) {
+            tList.mCommands = Arrays.copyOf(tList.mCommands, tList.mCommands.length * 2);
+        }
+        if (tList.mParametersLength + aParamsLength > tList.mParameters.length) {
+            tList.mParameters = Arrays.copyOf(tList.mParameters,
+                    Math.max(tList.mParameters.length * 2, tList.mParametersLength + aParamsLength));
+        }
+        int tCommandIndex = tList.mCommandsLength / COMMAND_ENTRY_SIZE;
+        if (tCommandIndex >= tList.mData.length) {
+            tList.mData = Arrays.copyOf(tList.mData, tList.mData.length * 2);
+        }
+        int[] tCommands = tList.mCommands;
+        int i = tList.mCommandsLength;
+        tCommands[i] = aCommand;
+        tCommands[i + 1] = tList.mParametersLength;
+        tCommands[i + 2] = aParamsLength;
+        tCommands[i + 3] = aDataLength;
+        tList.mCommandsLength += COMMAND_ENTRY_SIZE;
+        System.arraycopy(aParameters, 0, tList.mParameters, tList.mParametersLength, aParamsLength);
+        tList.mParametersLength += aParamsLength;
+        if (aDataLength > 0) {
+            tList.mData[tCommandIndex] = Arrays.copyOf(aDataBytes, aDataLength);
+            tList.mDataLength += aDataLength;
+        }
+    }
+
+    /**
+     * Calls aHandler for all commands of the display list
+     *
+     * @param aOldColor 16 bit color to be replaced by aNewColor or NO_COLOR_SUBSTITUTION
+     * @return false if display list does not exist or replay is nested too deep
+     */
+    public boolean replay(int aId, int aXOffset, int aYOffset, int aOldColor, int aNewColor, OpcodeRegistry.OpcodeHandler aHandler) {
+        DisplayList tList = mDisplayLists.get(aId);
+        if (tList == null) {
+            ProtocolLog.e(LOG_TAG, "Display list " + aId + " not found");
+            return false;
+        }
+        if (mReplayDepth >= MAX_REPLAY_DEPTH) {
+            ProtocolLog.e(LOG_TAG, "Replay of display list " + aId + " nested too deep");
+            return false;
+        }
+        int[] tParameters = mReplayParameters[mReplayDepth];
+        mReplayDepth++;
+        try {
+            int[] tCommands = tList.mCommands;
+            for (int i = 0; i < tList.mCommandsLength; i += COMMAND_ENTRY_SIZE) {
+                int tCommand = tCommands[i];
+                int tParamsLength = tCommands[i + 2];
+                System.arraycopy(tList.mParameters, tCommands[i + 1], tParameters, 0, tParamsLength);
+                substituteParameters(tCommand, tParameters, tParamsLength, aXOffset, aYOffset, aOldColor, aNewColor);
+                // the data is not modified by the handlers, so it is used in place
+                aHandler.handleCommand(tCommand, tParameters, tParamsLength, tList.mData[i / COMMAND_ENTRY_SIZE], null,
+                        tCommands[i + 3]);
+            }
+        } finally {
+            mReplayDepth--;
+        }
+        return true;
+    }
+
+    public void remove(int aId) {
+        DisplayList tList = mDisplayLists.remove(aId);
+        if (tList != null) {
+            mTotalSize -= tList.getSize();
+        }
+    }
+
+    /**
+     * Removes all display lists and aborts a running recording
+     */
+    public void clear() {
+        mDisplayLists.clear();
+        mTotalSize = 0;
+        mRecordingList = null;
+        mIsDiscarding = false;
+    }
+
+    public String getStatisticsString() {
+        return "Display lists=" + mDisplayLists.size() + " " + (mTotalSize / 1024) + "kB";
+    }
+
+    /*
+     * Adds the offset to the coordinates and replaces the color for all draw commands with position and color parameters
+     */
+    private static void substituteParameters(int aCommand, int[] aParameters, int aParamsLength, int aXOffset, int aYOffset,
+                                             int aOldColor, int aNewColor) {
+        switch (aCommand) {
+            case FUNCTION_DRAW_PIXEL:
+            case FUNCTION_DRAW_VECTOR_RADIAN:
+            case FUNCTION_DRAW_RECT_REL:
+            case FUNCTION_FILL_RECT_REL:
+            case FUNCTION_DRAW_CIRCLE:
+            case FUNCTION_FILL_CIRCLE:
+            case FUNCTION_IMAGE_START:
+                addOffset(aParameters, aParamsLength, 0, aXOffset, aYOffset);
+                break;
+
+            case FUNCTION_DRAW_LINE_REL:
+            case FUNCTION_DRAW_VECTOR_DEGREE:
+                addOffsetToLineStart(aParameters, aParamsLength, aXOffset, aYOffset);
+                break;
+
+            case FUNCTION_DRAW_LINE:
+                addOffsetToLineStart(aParameters, aParamsLength, aXOffset, aYOffset);
+                addOffset(aParameters, aParamsLength, 2, aXOffset, aYOffset);
+                break;
+
+            case FUNCTION_DRAW_RECT:
+            case FUNCTION_FILL_RECT:
+                addOffset(aParameters, aParamsLength, 0, aXOffset, aYOffset);
+                addOffset(aParameters, aParamsLength, 2, aXOffset, aYOffset);
+                break;
+
+            case FUNCTION_DRAW_CHAR:
+            case FUNCTION_DRAW_STRING:
+                if (aParamsLength > 1) {
+                    if (aParameters[0] != STRING_ALIGN_RIGHT_XPOS && aParameters[0] != STRING_ALIGN_MIDDLE_XPOS) {
+                        aParameters[0] += aXOffset;
+                    }
+                    aParameters[1] += aYOffset;
+                }
+                if (aOldColor != NO_COLOR_SUBSTITUTION) {
+                    // text and background color
+                    replaceColor(aParameters, aParamsLength, 3, aOldColor, aNewColor);
+                    replaceColor(aParameters, aParamsLength, 4, aOldColor, aNewColor);
+                }
+                break;
+
+            case FUNCTION_SPRITE_DRAW:
+                addOffset(aParameters, aParamsLength, 1, aXOffset, aYOffset);
+                break;
+
+            default:
+                break;
+        }
+        if (aOldColor != NO_COLOR_SUBSTITUTION) {
+            replaceColor(aParameters, aParamsLength, ProtocolHelper.getColorParameterIndex(aCommand), aOldColor, aNewColor);
+        }
+    }
+
+    private static void addOffset(int[] aParameters, int aParamsLength, int aIndex, int aXOffset, int aYOffset) {
+        if (aIndex + 1 < aParamsLength) {
+            aParameters[aIndex] += aXOffset;
+            aParameters[aIndex + 1] += aYOffset;
+        }
+    }
+
+    /*
+     * The highest bit of YStart of lines marks a line drawn without anti aliasing
+     */
+    private static void addOffsetToLineStart(int[] aParameters, int aParamsLength, int aXOffset, int aYOffset) {
+        if (aParamsLength > 1) {
+            aParameters[0] += aXOffset;
+            aParameters[1] = (aParameters[1] & 0x8000) | ((aParameters[1] + aYOffset) & 0x7FFF);
+        }
+    }
+
+    private static void replaceColor(int[] aParameters, int aParamsLength, int aIndex, int aOldColor, int aNewColor) {
+        if (aIndex >= 0 && aIndex < aParamsLength && (aParameters[aIndex] & 0xFFFF) == (aOldColor & 0xFFFF)) {
+            aParameters[aIndex] = aNewColor;
+        }
+    }
+}
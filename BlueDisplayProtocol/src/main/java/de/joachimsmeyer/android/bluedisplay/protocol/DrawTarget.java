@@ -0,0 +1,93 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * The drawing target of the command renderer. All coordinates and sizes are in pixel of the target, i.e. already scaled.
+ * Colors are 32 bit ARGB values. COLOR_TRANSPARENT does not draw with alpha 0, but makes the pixels transparent, which is used for layers.
+ *
+ * On the device it is implemented by a wrapper of the Android Canvas, on the PC by RecordingDrawTarget.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public interface DrawTarget {
+
+    int COLOR_TRANSPARENT = 0x00000000; // protocol colors are always opaque
+
+    /**
+     * Fills the whole target
+     */
+    void drawColor(int aColor);
+
+    void drawPoint(float aX, float aY, float aStrokeWidth, int aColor, boolean aAntiAlias);
+
+    void drawLine(float aXStart, float aYStart, float aXEnd, float aYEnd, float aStrokeWidth, int aColor, boolean aAntiAlias);
+
+    /**
+     * @param aPoints 4 values (start x/y and end x/y) for each line, like Canvas.drawLines()
+     * @param aCount  Number of values used, i.e. number of lines * 4
+     */
+    void drawLines(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor);
+
+    /**
+     * @param aCount Number of values used, i.e. number of points * 2
+     */
+    void drawPoints(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor);
+
+    /**
+     * @param aRects 4 values (left, top, right, bottom) for each rectangle
+     * @param aCount Number of values used, i.e. number of rectangles * 4
+     */
+    void fillRects(float[] aRects, int aOffset, int aCount, int aColor);
+
+    /**
+     * Draws one row of an image, stretched to the rectangle without filtering
+     *
+     * @param aColors ARGB colors of the row
+     * @param aCount  Number of pixels in the row
+     */
+    void drawPixelRow(int[] aColors, int aCount, float aLeft, float aTop, float aRight, float aBottom);
+
+    /**
+     * @param aFill true: fill the rectangle, aStrokeWidth is ignored. false: draw only the outline
+     */
+    void drawRect(float aLeft, float aTop, float aRight, float aBottom, float aStrokeWidth, int aColor, boolean aFill);
+
+    void drawCircle(float aX, float aY, float aRadius, float aStrokeWidth, int aColor, boolean aFill);
+
+    /**
+     * Draws the closed polygon given by the unscaled x/y coordinates in aCoordinates
+     */
+    void drawPolygon(int[] aCoordinates, int aLength, float aScaleFactor, float aStrokeWidth, int aColor, boolean aFill);
+
+    /**
+     * @param aY Y position of the baseline
+     */
+    void drawText(String aText, float aX, float aY, float aTextSize, int aColor);
+
+    /**
+     * @return The width of the text from aStart to aEnd (exclusive) in pixel
+     */
+    float measureText(String aText, int aStart, int aEnd, float aTextSize);
+}
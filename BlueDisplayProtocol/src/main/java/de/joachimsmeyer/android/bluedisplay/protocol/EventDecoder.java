@@ -0,0 +1,156 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Splits the event stream sent by the app to the client into single events and validates them.
+ * Counterpart of EventEncoder and of the event handling in BlueDisplay.cpp of the Arduino library.
+ * An event is valid if its length byte is one of the lengths EventEncoder produces and its last byte is SYNC_TOKEN.
+ * The multi touch event is valid if its length matches the pointer and sample count it contains.
+ * After an invalid event, the decoder skips one byte and tries again.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.CALLBACK_DATA_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.EVENT_TOUCH_MULTI_MOVE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.MAX_EVENT_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.SYNC_TOKEN;
+
+import java.util.Arrays;
+
+public class EventDecoder {
+
+    public interface EventListener {
+        /**
+         * @param aEvent Buffer holding the complete event, starting with the length byte at aOffset
+         */
+        void onEvent(int aEventType, byte[] aEvent, int aOffset, int aLength);
+    }
+
+    private final byte[] mBuffer = new byte[2 * MAX_EVENT_SIZE];
+    private int mLength; // number of bytes in mBuffer
+
+    private final int[] mEventCounts = new int[256];
+    private int mNumberOfEvents;
+    private int mNumberOfSkippedBytes;
+
+    /*
+     * Little endian helpers
+     */
+    public static int getShort(byte[] aBuffer, int aIndex) {
+        return (aBuffer[aIndex] & 0xFF) | ((aBuffer[aIndex + 1] & 0xFF) << 8);
+    }
+
+    public static int getInt(byte[] aBuffer, int aIndex) {
+        return (aBuffer[aIndex] & 0xFF) | ((aBuffer[aIndex + 1] & 0xFF) << 8) | ((aBuffer[aIndex + 2] & 0xFF) << 16)
+                | ((aBuffer[aIndex + 3] & 0xFF) << 24);
+    }
+
+    static boolean isValidEventLength(int aLength) {
+        return aLength == EventEncoder.NO_DATA_EVENT_LENGTH || aLength == EventEncoder.ONE_INTEGER_EVENT_LENGTH
+                || aLength == EventEncoder.TWO_INTEGER_EVENT_LENGTH || aLength == EventEncoder.TWO_INTEGER_AND_A_BYTE_EVENT_LENGTH
+                || aLength == EventEncoder.TWO_INTEGER_AND_TIMESTAMP_EVENT_LENGTH || aLength == CALLBACK_DATA_SIZE;
+    }
+
+    /**
+     * Feed received bytes. Events may be split across calls.
+     */
+    public void decode(byte[] aData, int aOffset, int aLength, EventListener aListener) {
+        int tEnd = aOffset + aLength;
+        while (aOffset < tEnd) {
+            int tCopyLength = Math.min(mBuffer.length - mLength, tEnd - aOffset);
+            System.arraycopy(aData, aOffset, mBuffer, mLength, tCopyLength);
+            mLength += tCopyLength;
+            aOffset += tCopyLength;
+
+            int tIndex = 0;
+            while (tIndex < mLength) {
+                int tEventLength = mBuffer[tIndex] & 0xFF;
+                if (tEventLength >= EventEncoder.MULTI_TOUCH_EVENT_HEADER_LENGTH && tIndex + 1 < mLength
+                        && (mBuffer[tIndex + 1] & 0xFF) == EVENT_TOUCH_MULTI_MOVE) {
+                    if (tIndex + EventEncoder.MULTI_TOUCH_EVENT_HEADER_LENGTH - 1 > mLength) {
+                        break; // wait for pointer and sample count
+                    }
+                    if (tEventLength != EventEncoder.getMultiTouchEventLength(mBuffer[tIndex + 6] & 0xFF, mBuffer[tIndex + 7] & 0xFF)) {
+                        mNumberOfSkippedBytes++;
+                        tIndex++;
+                        continue;
+                    }
+                } else if (!isValidEventLength(tEventLength)) {
+                    mNumberOfSkippedBytes++;
+                    tIndex++;
+                    continue;
+                }
+                if (tIndex + tEventLength > mLength) {
+                    break; // wait for more data
+                }
+                if (mBuffer[tIndex + tEventLength - 1] != SYNC_TOKEN) {
+                    mNumberOfSkippedBytes++;
+                    tIndex++;
+                    continue;
+                }
+                int tEventType = mBuffer[tIndex + 1] & 0xFF;
+                mEventCounts[tEventType]++;
+                mNumberOfEvents++;
+                aListener.onEvent(tEventType, mBuffer, tIndex, tEventLength);
+                tIndex += tEventLength;
+            }
+            // move remaining bytes to start
+            mLength -= tIndex;
+            System.arraycopy(mBuffer, tIndex, mBuffer, 0, mLength);
+        }
+    }
+
+    public int getNumberOfEvents() {
+        return mNumberOfEvents;
+    }
+
+    public int getEventCount(int aEventType) {
+        return mEventCounts[aEventType & 0xFF];
+    }
+
+    public int getNumberOfSkippedBytes() {
+        return mNumberOfSkippedBytes;
+    }
+
+    public void reset() {
+        mLength = 0;
+        Arrays.fill(mEventCounts, 0);
+        mNumberOfEvents = 0;
+        mNumberOfSkippedBytes = 0;
+    }
+
+    /**
+     * @return One line for each received event type, e.g. "0x29: 100"
+     */
+    public String getEventCountsString() {
+        StringBuilder tReturn = new StringBuilder();
+        for (int i = 0; i < mEventCounts.length; i++) {
+            if (mEventCounts[i] != 0) {
+                tReturn.append("0x").append(Integer.toHexString(i)).append(": ").append(mEventCounts[i]).append('\n');
+            }
+        }
+        return tReturn.toString();
+    }
+}
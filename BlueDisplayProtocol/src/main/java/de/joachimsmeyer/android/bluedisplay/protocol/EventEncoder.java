@@ -0,0 +1,249 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Assembles the events sent to the client.
+ * Format is: gross message length in bytes including sync token, event type, payload, SYNC_TOKEN.
+ * All functions write to the start of aBuffer, which must have at least CALLBACK_DATA_SIZE bytes, and return the event length.
+ * Only the multi touch event has a variable length and requires MAX_EVENT_SIZE bytes.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.CALLBACK_DATA_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.MAX_EVENT_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.SYNC_TOKEN;
+
+public final class EventEncoder {
+
+    private EventEncoder() {
+    }
+
+    public static final int NO_DATA_EVENT_LENGTH = 3;
+    public static final int ONE_INTEGER_EVENT_LENGTH = 5;
+    public static final int TWO_INTEGER_EVENT_LENGTH = 7;
+    public static final int TWO_INTEGER_AND_A_BYTE_EVENT_LENGTH = 8;
+    public static final int TWO_INTEGER_AND_TIMESTAMP_EVENT_LENGTH = 11;
+    // Length byte, event type, 32 bit timestamp, pointer count, sample count and SYNC_TOKEN
+    public static final int MULTI_TOUCH_EVENT_HEADER_LENGTH = 9;
+
+    /*
+     * Little endian helpers. Return index of next byte.
+     */
+    static int putShort(byte[] aBuffer, int aIndex, int aValue) {
+        aBuffer[aIndex++] = (byte) (aValue & 0xFF); // LSB
+        aBuffer[aIndex++] = (byte) ((aValue >> 8) & 0xFF); // MSB
+        return aIndex;
+    }
+
+    static int putInt(byte[] aBuffer, int aIndex, int aValue) {
+        aBuffer[aIndex++] = (byte) (aValue & 0xFF); // LSB
+        aBuffer[aIndex++] = (byte) ((aValue >> 8) & 0xFF);
+        aBuffer[aIndex++] = (byte) ((aValue >> 16) & 0xFF);
+        aBuffer[aIndex++] = (byte) ((aValue >> 24) & 0xFF); // MSB
+        return aIndex;
+    }
+
+    private static int putHeader(byte[] aBuffer, int aEventLength, int aEventType) {
+        aBuffer[0] = (byte) aEventLength; // gross message length in bytes including sync token
+        aBuffer[1] = (byte) aEventType; // Function token
+        return 2;
+    }
+
+    public static int encodeNoDataEvent(byte[] aBuffer, int aEventType) {
+        int tIndex = putHeader(aBuffer, NO_DATA_EVENT_LENGTH, aEventType);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return NO_DATA_EVENT_LENGTH;
+    }
+
+    public static int encodeOneIntegerEvent(byte[] aBuffer, int aEventType, int aValue) {
+        int tIndex = putHeader(aBuffer, ONE_INTEGER_EVENT_LENGTH, aEventType);
+        tIndex = putShort(aBuffer, tIndex, aValue);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return ONE_INTEGER_EVENT_LENGTH;
+    }
+
+    /**
+     * 16 bit X and Y position
+     */
+    public static int encodeTwoIntegerEvent(byte[] aBuffer, int aEventType, int aX, int aY) {
+        int tIndex = putHeader(aBuffer, TWO_INTEGER_EVENT_LENGTH, aEventType);
+        tIndex = putShort(aBuffer, tIndex, aX);
+        tIndex = putShort(aBuffer, tIndex, aY);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return TWO_INTEGER_EVENT_LENGTH;
+    }
+
+    /**
+     * 16 bit X and Y position and 8 bit pointer index
+     */
+    public static int encodeTwoIntegerAndAByteEvent(byte[] aBuffer, int aEventType, int aX, int aY, int aByte) {
+        int tIndex = putHeader(aBuffer, TWO_INTEGER_AND_A_BYTE_EVENT_LENGTH, aEventType);
+        tIndex = putShort(aBuffer, tIndex, aX);
+        tIndex = putShort(aBuffer, tIndex, aY);
+        aBuffer[tIndex++] = (byte) (aByte & 0xFF);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return TWO_INTEGER_AND_A_BYTE_EVENT_LENGTH;
+    }
+
+    /**
+     * 16 bit X and Y position and 32 bit timestamp in seconds
+     */
+    public static int encodeTwoIntegerEventAndTimestamp(byte[] aBuffer, int aEventType, int aX, int aY, long aTimestampSeconds) {
+        int tIndex = putHeader(aBuffer, TWO_INTEGER_AND_TIMESTAMP_EVENT_LENGTH, aEventType);
+        tIndex = putShort(aBuffer, tIndex, aX);
+        tIndex = putShort(aBuffer, tIndex, aY);
+        tIndex = putInt(aBuffer, tIndex, (int) aTimestampSeconds);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return TWO_INTEGER_AND_TIMESTAMP_EVENT_LENGTH;
+    }
+
+    /**
+     * @return Length of a multi touch event with the given number of pointers and samples
+     */
+    public static int getMultiTouchEventLength(int aNumberOfPointers, int aNumberOfSamples) {
+        return MULTI_TOUCH_EVENT_HEADER_LENGTH + aNumberOfPointers + (aNumberOfSamples * (2 + (4 * aNumberOfPointers)));
+    }
+
+    /**
+     * @return Number of samples fitting in one multi touch event
+     */
+    public static int getMaxMultiTouchSamples(int aNumberOfPointers) {
+        return (MAX_EVENT_SIZE - MULTI_TOUCH_EVENT_HEADER_LENGTH - aNumberOfPointers) / (2 + (4 * aNumberOfPointers));
+    }
+
+    /**
+     * 32 bit timestamp in milliseconds of the newest sample, 8 bit pointer count, 8 bit sample count, 8 bit pointer id for each
+     * pointer, then for each sample, starting with the oldest: 16 bit age in milliseconds relative to the timestamp and 16 bit X and Y
+     * position for each pointer.
+     * Buffer must have MAX_EVENT_SIZE bytes.
+     *
+     * @param aXValues X position of pointer p of sample s at index s * aNumberOfPointers + p
+     */
+    public static int encodeMultiTouchEvent(byte[] aBuffer, int aEventType, long aTimestampMillis, int aNumberOfPointers,
+                                            int[] aPointerIds, int aNumberOfSamples, int[] aSampleAgesMillis, int[] aXValues, int[] aYValues) {
+        int tEventLength = getMultiTouchEventLength(aNumberOfPointers, aNumberOfSamples);
+        int tIndex = putHeader(aBuffer, tEventLength, aEventType);
+        tIndex = putInt(aBuffer, tIndex, (int) aTimestampMillis);
+        aBuffer[tIndex++] = (byte) aNumberOfPointers;
+        aBuffer[tIndex++] = (byte) aNumberOfSamples;
+        for (int p = 0; p < aNumberOfPointers; p++) {
+            aBuffer[tIndex++] = (byte) aPointerIds[p];
+        }
+        int tValueIndex = 0;
+        for (int s = 0; s < aNumberOfSamples; s++) {
+            tIndex = putShort(aBuffer, tIndex, aSampleAgesMillis[s]);
+            for (int p = 0; p < aNumberOfPointers; p++) {
+                tIndex = putShort(aBuffer, tIndex, aXValues[tValueIndex]);
+                tIndex = putShort(aBuffer, tIndex, aYValues[tValueIndex]);
+                tValueIndex++;
+            }
+        }
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return tEventLength;
+    }
+
+    /**
+     * 16 bit button / slider index, 16 bit filler, 32 bit callback address and 32 bit value
+     */
+    public static int encodeGuiCallbackEvent(byte[] aBuffer, int aEventType, int aButtonSliderIndex, int aCallbackAddress, int aValue) {
+        int tIndex = putHeader(aBuffer, CALLBACK_DATA_SIZE, aEventType);
+        tIndex = putShort(aBuffer, tIndex, aButtonSliderIndex);
+        // for 32 bit padding
+        tIndex = putShort(aBuffer, tIndex, 0);
+        tIndex = putInt(aBuffer, tIndex, aCallbackAddress);
+        tIndex = putInt(aBuffer, tIndex, aValue);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return CALLBACK_DATA_SIZE;
+    }
+
+    /**
+     * 16 bit index (for future use), 16 bit filler, 32 bit callback address and 32 bit FLOAT value
+     */
+    public static int encodeNumberCallbackEvent(byte[] aBuffer, int aEventType, int aCallbackAddress, float aValue) {
+        return encodeGuiCallbackEvent(aBuffer, aEventType, 0, aCallbackAddress, Float.floatToIntBits(aValue));
+    }
+
+    /**
+     * 16 bit direction, 16 bit filler, 32 bit start position and 32 bit delta
+     */
+    public static int encodeSwipeCallbackEvent(byte[] aBuffer, int aEventType, int aIsXDirection, int aStartX, int aStartY, int aDeltaX,
+                                               int aDeltaY) {
+        int tIndex = putHeader(aBuffer, CALLBACK_DATA_SIZE, aEventType);
+        tIndex = putShort(aBuffer, tIndex, aIsXDirection);
+        // for 32 bit padding
+        tIndex = putShort(aBuffer, tIndex, 0);
+        tIndex = putShort(aBuffer, tIndex, aStartX);
+        tIndex = putShort(aBuffer, tIndex, aStartY);
+        tIndex = putShort(aBuffer, tIndex, aDeltaX);
+        tIndex = putShort(aBuffer, tIndex, aDeltaY);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return CALLBACK_DATA_SIZE;
+    }
+
+    /**
+     * xyz 32-bit FLOAT values
+     */
+    public static int encodeSensorEvent(byte[] aBuffer, int aEventType, float aValueX, float aValueY, float aValueZ) {
+        int tIndex = putHeader(aBuffer, CALLBACK_DATA_SIZE, aEventType);
+        tIndex = putInt(aBuffer, tIndex, Float.floatToIntBits(aValueX));
+        tIndex = putInt(aBuffer, tIndex, Float.floatToIntBits(aValueY));
+        tIndex = putInt(aBuffer, tIndex, Float.floatToIntBits(aValueZ));
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return CALLBACK_DATA_SIZE;
+    }
+
+    /**
+     * 8 bit sub function, 8 bit info, 16 bit info, 32 bit callback address and 2 * 16 bit info
+     */
+    public static int encodeInfoCallbackEvent(byte[] aBuffer, int aEventType, int aSubFunction, int aByteInfo, int aShortInfo,
+                                              int aCallbackAddress, int aInfo_0, int aInfo_1) {
+        int tIndex = putInfoCallbackHeader(aBuffer, aEventType, aSubFunction, aByteInfo, aShortInfo, aCallbackAddress);
+        tIndex = putShort(aBuffer, tIndex, aInfo_0);
+        tIndex = putShort(aBuffer, tIndex, aInfo_1);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return CALLBACK_DATA_SIZE;
+    }
+
+    /**
+     * 8 bit sub function, 8 bit info, 16 bit info, 32 bit callback address and 32 bit info
+     */
+    public static int encodeInfoCallbackEvent(byte[] aBuffer, int aEventType, int aSubFunction, int aByteInfo, int aShortInfo,
+                                              int aCallbackAddress, long aLongInfo) {
+        int tIndex = putInfoCallbackHeader(aBuffer, aEventType, aSubFunction, aByteInfo, aShortInfo, aCallbackAddress);
+        tIndex = putInt(aBuffer, tIndex, (int) aLongInfo);
+        aBuffer[tIndex] = SYNC_TOKEN;
+        return CALLBACK_DATA_SIZE;
+    }
+
+    private static int putInfoCallbackHeader(byte[] aBuffer, int aEventType, int aSubFunction, int aByteInfo, int aShortInfo,
+                                             int aCallbackAddress) {
+        int tIndex = putHeader(aBuffer, CALLBACK_DATA_SIZE, aEventType);
+        aBuffer[tIndex++] = (byte) (aSubFunction & 0xFF); // Sub function token
+        aBuffer[tIndex++] = (byte) (aByteInfo & 0xFF);
+        // put special info here
+        tIndex = putShort(aBuffer, tIndex, aShortInfo);
+        return putInt(aBuffer, tIndex, aCallbackAddress);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Stand-in for the app, used by LoadGenerator if no app address is given.
+ * It is the Receiver of a TCP or loopback transport, whose reader thread reads into the receive buffer like the BT and USB
+ * socket threads of the app do, and a parser thread plays the role of RPCView.onDraw() and renders to a RecordingDrawTarget.
+ * It sends EVENT_CONNECTION_BUILD_UP after connect, answers FUNCTION_GET_INFO like the app
+ * and emulates a finger moving over the screen by sending touch move events.
+ *
+ * Unlike the app, handleReceived() waits for the parser to become idle before a compaction of the buffer,
+ * since compaction concurrent to parsing can corrupt the buffer indices at the data rates possible on the PC.
+ * So a too high load results in back pressure, which LoadGenerator reports as time blocked in write.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.CALLBACK_DATA_SIZE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.EVENT_CONNECTION_BUILD_UP;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.EVENT_INFO_CALLBACK;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.EVENT_TOUCH_ACTION_MOVE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.FUNCTION_GET_INFO;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.MIN_MESSAGE_SIZE;
+
+import java.io.Closeable;
+
+public class HeadlessDisplayServer implements Transport.Receiver, Closeable {
+
+    public static final int TOUCH_MOVE_INTERVAL_MILLIS = 50;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final CompactingReceiveBuffer mReceiveBuffer;
+    private final CommandParser mCommandParser;
+    private final RecordingDrawTarget mRecordingDrawTarget;
+    private final RenderingCommandListener mRenderingListener;
+
+    private Transport mTransport;
+    private final byte[] mEventBuffer = new byte[CALLBACK_DATA_SIZE]; // guarded by this
+
+    private volatile boolean mRunning;
+    private Thread mParserThread;
+    private int mNumberOfSentEvents;
+    private int mTouchX;
+
+    public HeadlessDisplayServer(int aWidth, int aHeight) {
+        mWidth = aWidth;
+        mHeight = aHeight;
+        mReceiveBuffer = new CompactingReceiveBuffer(CaptureReplayer.WORK_SIZE_OF_IN_BUFFER, CaptureReplayer.DRIVER_READ_SIZE);
+        mCommandParser = new CommandParser(mReceiveBuffer);
+        mRecordingDrawTarget = new RecordingDrawTarget(aWidth, aHeight);
+        CommandRenderer tRenderer = new CommandRenderer(mRecordingDrawTarget);
+        tRenderer.setGeometry(1.0f, aWidth, aHeight, aWidth, aHeight);
+        mRenderingListener = new ServerCommandListener(tRenderer, mRecordingDrawTarget);
+    }
+
+    /**
+     * Starts the parser thread and connects aTransport, which must have been created with this as Receiver.
+     */
+    public void start(Transport aTransport) {
+        mTransport = aTransport;
+        mRunning = true;
+        mParserThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                parseLoop();
+            }
+        }, "HeadlessDisplay");
+        mParserThread.start();
+        aTransport.connect();
+    }
+
+    /*
+     * Transport.Receiver
+     */
+    @Override
+    public CompactingReceiveBuffer getReceiveBuffer() {
+        return mReceiveBuffer;
+    }
+
+    @Override
+    public void handleReceived(int aReadLength) {
+        if (mReceiveBuffer.getInIndex() + aReadLength >= CaptureReplayer.WORK_SIZE_OF_IN_BUFFER) {
+            // Compaction moves the unprocessed data, so wait until the parser has consumed all complete messages
+            while (mRunning && mReceiveBuffer.getBytesAvailable() >= MIN_MESSAGE_SIZE
+                    && mCommandParser.getDataLengthToWaitFor() <= mReceiveBuffer.getBytesAvailable()) {
+                Thread.yield();
+            }
+        }
+        mReceiveBuffer.handleReceived(aReadLength);
+    }
+
+    @Override
+    public void onConnected(Transport aTransport) {
+        synchronized (this) {
+            writeEvent(EventEncoder.encodeTwoIntegerEventAndTimestamp(mEventBuffer, EVENT_CONNECTION_BUILD_UP, mWidth, mHeight,
+                    System.currentTimeMillis() / 1000L));
+        }
+    }
+
+    @Override
+    public void onDisconnected(Transport aTransport) {
+        // no more data will arrive
+        mRunning = false;
+    }
+
+    private void parseLoop() {
+        long tNextTouchMillis = System.currentTimeMillis() + TOUCH_MOVE_INTERVAL_MILLIS;
+        while (mRunning || mReceiveBuffer.getBytesAvailable() > 0) {
+            int tResult = mCommandParser.searchCommand(mRenderingListener);
+            long tMillis = System.currentTimeMillis();
+            if (tMillis >= tNextTouchMillis) {
+                tNextTouchMillis = tMillis + TOUCH_MOVE_INTERVAL_MILLIS;
+                mTouchX = (mTouchX + 1) % mWidth;
+                synchronized (this) {
+                    writeEvent(EventEncoder.encodeTwoIntegerAndAByteEvent(mEventBuffer, EVENT_TOUCH_ACTION_MOVE, mTouchX, mHeight / 2, 0));
+                }
+            }
+            if (tResult == CommandParser.DO_NOTHING || tResult == CommandParser.DO_WAIT) {
+                if (!mRunning) {
+                    break; // no more data will arrive
+                }
+                try {
+                    // The app waits for the next trigger of the reader thread
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /*
+     * Must be called synchronized on this
+     */
+    private void writeEvent(int aLength) {
+        if (mTransport.isConnected()) {
+            mTransport.writeEvent(mEventBuffer, aLength);
+            mNumberOfSentEvents++;
+        }
+    }
+
+    private class ServerCommandListener extends RenderingCommandListener {
+        ServerCommandListener(CommandRenderer aCommandRenderer, RecordingDrawTarget aRecordingDrawTarget) {
+            super(aCommandRenderer, aRecordingDrawTarget);
+        }
+
+        @Override
+        public void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                     int aDataLength) {
+            if (aCommand == FUNCTION_GET_INFO) {
+                int tCallbackAddress = aParameters[1] & 0x0000FFFF;
+                if (aParamsLength == 3) {
+                    // 32 bit callback address
+                    tCallbackAddress = tCallbackAddress | (aParameters[2] << 16);
+                }
+                synchronized (HeadlessDisplayServer.this) {
+                    writeEvent(EventEncoder.encodeInfoCallbackEvent(mEventBuffer, EVENT_INFO_CALLBACK, aParameters[0], 0, 0,
+                            tCallbackAddress, System.currentTimeMillis() / 1000L));
+                }
+                return;
+            }
+            super.interpretCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+        }
+    }
+
+    public CommandParser getCommandParser() {
+        return mCommandParser;
+    }
+
+    public RenderingCommandListener getRenderingListener() {
+        return mRenderingListener;
+    }
+
+    public RecordingDrawTarget getRecordingDrawTarget() {
+        return mRecordingDrawTarget;
+    }
+
+    public synchronized int getNumberOfSentEvents() {
+        return mNumberOfSentEvents;
+    }
+
+    /**
+     * Waits until all received data is parsed, or at most aTimeoutMillis.
+     */
+    public void waitForIdle(long aTimeoutMillis) {
+        long tEndMillis = System.currentTimeMillis() + aTimeoutMillis;
+        while (mReceiveBuffer.getBytesAvailable() > 0 && System.currentTimeMillis() < tEndMillis) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        mRunning = false;
+        if (mTransport != null) {
+            mTransport.disconnect();
+        }
+        if (mParserThread != null) {
+            try {
+                mParserThread.join(1000);
+            } catch (InterruptedException e) {
+                // Just do nothing
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Decoder for the streamed image of FUNCTION_IMAGE_START and FUNCTION_IMAGE_DATA.
+ * The data commands are decoded byte by byte into one reused row buffer, so rows and run length encoded runs
+ * may be split between data commands. Each completed row is passed to the RowListener.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.IMAGE_FLAG_RLE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.IMAGE_FORMAT_RGB565;
+
+public class ImageDecoder {
+
+    private static final String LOG_TAG = "ImageDecoder";
+
+    public static final int MAX_IMAGE_WIDTH = 4096;
+    public static final int MAX_PALETTE_SIZE = 256;
+
+    private static final int RLE_MAX_LITERAL_HEADER = 0x7F;
+    private static final int RLE_REPEAT_COUNT_OFFSET = 0x7E; // header 0x80 -> 2 repeats
+
+    public interface RowListener {
+        /**
+         * @param aX Unscaled x position of the first pixel
+         * @param aY Unscaled y position of the row
+         */
+        void onImageRow(int[] aColors, int aWidth, int aX, int aY);
+    }
+
+    private final RowListener mRowListener;
+
+    private final int[] mPalette = new int[MAX_PALETTE_SIZE];
+    private int[] mRowColors = new int[320]; // grows up to MAX_IMAGE_WIDTH
+
+    /*
+     * Image header
+     */
+    private boolean mIsActive; // true between start and last row
+    private int mX;
+    private int mY;
+    private int mWidth;
+    private int mHeight;
+    private int mBitsPerPixel;
+    private boolean mIsRLE;
+
+    /*
+     * Decoding state, kept between data commands
+     */
+    private int mColumn;
+    private int mRow;
+    private int mUnitLowByte = -1; // first byte of a 2 byte unit, -1 if none is pending
+    private int mRunRemaining; // units left in the current run, 0 -> next byte is a header
+    private boolean mRunIsRepeat;
+    private int mLastShortColor = -1; // cache for RGB565 conversion
+    private int mLastLongColor;
+
+    public ImageDecoder(RowListener aRowListener) {
+        mRowListener = aRowListener;
+    }
+
+    public boolean isActive() {
+        return mIsActive;
+    }
+
+    /**
+     * @param aFormat IMAGE_FORMAT_RGB565 or bits per palette index (1, 2, 4, 8)
+     * @param aFlags  IMAGE_FLAG_RLE or 0
+     * @return false if the header is invalid
+     */
+    public boolean start(int aX, int aY, int aWidth, int aHeight, int aFormat, int aFlags) {
+        mIsActive = false;
+        if (aWidth <= 0 || aWidth > MAX_IMAGE_WIDTH || aHeight <= 0) {
+            ProtocolLog.e(LOG_TAG, "Invalid image size " + aWidth + "x" + aHeight);
+            return false;
+        }
+        if (aFormat != IMAGE_FORMAT_RGB565 && aFormat != 1 && aFormat != 2 && aFormat != 4 && aFormat != 8) {
+            ProtocolLog.e(LOG_TAG, "Invalid image format " + aFormat);
+            return false;
+        }
+        if (mRowColors.length < aWidth) {
+            mRowColors = new int[aWidth];
+        }
+        mX = aX;
+        mY = aY;
+        mWidth = aWidth;
+        mHeight = aHeight;
+        mBitsPerPixel = aFormat;
+        mIsRLE = (aFlags & IMAGE_FLAG_RLE) != 0;
+        mColumn = 0;
+        mRow = 0;
+        mUnitLowByte = -1;
+        mRunRemaining = 0;
+        mIsActive = true;
+        return true;
+    }
+
+    /**
+     * @param aData RGB565 colors, LSB first
+     */
+    public void setPalette(byte[] aData, int aLength) {
+        int tNumberOfColors = Math.min(aLength / 2, MAX_PALETTE_SIZE);
+        for (int i = 0; i < tNumberOfColors; i++) {
+            mPalette[i] = ProtocolHelper.shortToLongColor(ProtocolHelper.convert2BytesToInt(aData[2 * i], aData[(2 * i) + 1]));
+        }
+    }
+
+    /**
+     * Decodes the bytes of one data command. Bytes after the last row are ignored.
+     */
+    public void decode(byte[] aData, int aLength) {
+        if (!mIsActive) {
+            ProtocolLog.e(LOG_TAG, "Image data without image start received");
+            return;
+        }
+        boolean tIs16Bit = mBitsPerPixel == IMAGE_FORMAT_RGB565;
+        for (int i = 0; i < aLength && mIsActive; i++) {
+            int tByte = aData[i] & 0xFF;
+            if (mIsRLE && mRunRemaining == 0) {
+                if (tByte <= RLE_MAX_LITERAL_HEADER) {
+                    mRunRemaining = tByte + 1;
+                    mRunIsRepeat = false;
+                } else {
+                    mRunRemaining = tByte - RLE_REPEAT_COUNT_OFFSET;
+                    mRunIsRepeat = true;
+                }
+                continue;
+            }
+            int tUnit = tByte;
+            if (tIs16Bit) {
+                if (mUnitLowByte < 0) {
+                    mUnitLowByte = tByte;
+                    continue;
+                }
+                tUnit = mUnitLowByte | (tByte << 8);
+                mUnitLowByte = -1;
+            }
+            if (mIsRLE && mRunIsRepeat) {
+                while (mRunRemaining > 0 && mIsActive) {
+                    putUnit(tUnit);
+                    mRunRemaining--;
+                }
+                mRunRemaining = 0;
+            } else {
+                putUnit(tUnit);
+                if (mIsRLE) {
+                    mRunRemaining--;
+                }
+            }
+        }
+    }
+
+    private void putUnit(int aUnit) {
+        if (mBitsPerPixel == IMAGE_FORMAT_RGB565) {
+            if (aUnit != mLastShortColor) {
+                mLastShortColor = aUnit;
+                mLastLongColor = ProtocolHelper.shortToLongColor(aUnit);
+            }
+            putColor(mLastLongColor);
+        } else {
+            // MSB first, the rest of the byte is discarded at the end of a row
+            int tBitsPerPixel = mBitsPerPixel;
+            int tMask = (1 << tBitsPerPixel) - 1;
+            int tShift = 8 - tBitsPerPixel;
+            do {
+                putColor(mPalette[(aUnit >> tShift) & tMask]);
+                tShift -= tBitsPerPixel;
+            } while (tShift >= 0 && mColumn != 0);
+        }
+    }
+
+    private void putColor(int aColor) {
+        mRowColors[mColumn++] = aColor;
+        if (mColumn == mWidth) {
+            mRowListener.onImageRow(mRowColors, mWidth, mX, mY + mRow);
+            mColumn = 0;
+            mRow++;
+            if (mRow == mHeight) {
+                mIsActive = false;
+                if (ProtocolLog.isDEBUG()) {
+                    ProtocolLog.d(LOG_TAG, "Image " + mWidth + "x" + mHeight + " at " + mX + "/" + mY + " completed");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Emulates a BlueDisplay client (an Arduino sketch) on the PC to load test the app or HeadlessDisplayServer.
+ * It sends a weighted mix of chart, text, button and slider commands at a target byte rate over a TCP connection
+ * or an in-memory LoopbackTransport,
+ * decodes and validates the events sent back and measures the round trip latency with FUNCTION_GET_INFO probes,
+ * whose 32 bit callback address carries a sequence number.
+ *
+ * Usage: java ...LoadGenerator [--connect <host:port> | --loopback] [--rate <bytes/s>] [--duration <s>]
+ *                              [--mix chart=6,text=2,button=1,slider=1] [--probe <ms>] [--size <W>x<H>]
+ * Without --connect, a HeadlessDisplayServer is started with a TcpTransport on the loopback interface,
+ * or with a LoopbackTransport for --loopback. It also reports the buffer overflows and skips of its receive buffer.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LoadGenerator {
+
+    private static final String LOG_TAG = "LoadGenerator";
+
+    // Button and slider functions are only known by the app
+    private static final int FUNCTION_BUTTON_SETTINGS = 0x42;
+    private static final int SUBFUNCTION_BUTTON_SET_VALUE_AND_DRAW = 0x05;
+    private static final int FUNCTION_BUTTON_INIT = 0x70;
+    private static final int FLAG_BUTTON_TYPE_TOGGLE = 0x02;
+    private static final int FUNCTION_SLIDER_INIT = 0x50;
+    private static final int FUNCTION_SLIDER_SETTINGS = 0x52;
+    private static final int SUBFUNCTION_SLIDER_SET_VALUE_AND_DRAW_BAR = 0x03;
+
+    private static final int COLOR16_WHITE = 0xFFFF;
+    private static final int COLOR16_BLACK = 0x0000;
+    private static final int COLOR16_RED = 0xF800;
+    private static final int COLOR16_GREEN = 0x07E0;
+    private static final int COLOR16_BLUE = 0x001F;
+
+    public static final int MIX_CHART = 0;
+    public static final int MIX_TEXT = 1;
+    public static final int MIX_BUTTON = 2;
+    public static final int MIX_SLIDER = 3;
+    private static final String[] sMixNames = {"chart", "text", "button", "slider"};
+
+    private static final int NUMBER_OF_BUTTONS = 4;
+    private static final int NUMBER_OF_SLIDERS = 2;
+    private static final int SLIDER_LENGTH = 100;
+
+    private static final int PACING_INTERVAL_MILLIS = 10;
+    private static final int MAX_PACING_INTERVALS_TO_CATCH_UP = 10; // if writing blocked longer, the lost bytes are not sent later
+    private static final int MAX_OUTSTANDING_PROBES = 1024; // size of the ring buffer of send timestamps
+    private static final long NO_PROBE = -1;
+
+    private int mBytesPerSecond = 11520; // 115200 baud
+    private long mDurationMillis = 10000;
+    private int mProbeIntervalMillis = 100;
+    private final int[] mMixWeights = {6, 2, 1, 1};
+    private int mWidth = 320;
+    private int mHeight = 240;
+
+    private final CommandWriter mWriter = new CommandWriter(8192);
+    private final Random mRandom = new Random(42);
+    private final byte[] mChartData = new byte[4096];
+    private int mFrameCounter;
+
+    /*
+     * Written by the sender thread and read by the event reader thread
+     */
+    private final long[] mProbeSendNanos = new long[MAX_OUTSTANDING_PROBES];
+    private final EventDecoder mEventDecoder = new EventDecoder();
+    private long[] mLatencyNanos = new long[256]; // guarded by this
+    private int mNumberOfLatencies;
+    private int mNumberOfUnexpectedEvents;
+    private volatile boolean mRunning;
+
+    public static class LoadResult {
+        public long mNanosTotal;
+        public long mNumberOfBytes;
+        public long mNanosBlockedInWrite; // TCP back pressure
+        public long mNumberOfBytesBehind; // bytes of the target rate, which could not be sent because of back pressure
+        public final int[] mNumberOfUnits = new int[sMixNames.length];
+        public int mNumberOfProbes;
+        public int mNumberOfAnsweredProbes;
+        public long[] mSortedLatencyNanos;
+        public int mNumberOfEvents;
+        public int mNumberOfUnexpectedEvents;
+        public int mNumberOfSkippedEventBytes;
+        public String mEventCounts;
+        // -1 if not available, i.e. app is not running in-process
+        public int mNumberOfBufferOverflows = -1;
+        public int mNumberOfBufferSkips = -1;
+        public int mNumberOfRenderErrors = -1;
+
+        public double getBytesPerSecond() {
+            if (mNanosTotal == 0) {
+                return 0;
+            }
+            return mNumberOfBytes * 1000000000.0 / mNanosTotal;
+        }
+
+        /**
+         * @param aPercentile 0 to 100
+         * @return latency in microseconds
+         */
+        public long getLatencyMicros(int aPercentile) {
+            if (mSortedLatencyNanos.length == 0) {
+                return 0;
+            }
+            int tIndex = Math.min(mSortedLatencyNanos.length - 1, (mSortedLatencyNanos.length * aPercentile) / 100);
+            return mSortedLatencyNanos[tIndex] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder tReturn = new StringBuilder();
+            tReturn.append(mNumberOfBytes).append(" bytes in ").append(mNanosTotal / 1000000).append(" ms -> ")
+                    .append(String.format("%.0f", getBytesPerSecond())).append(" bytes/s sustained, ")
+                    .append(mNanosBlockedInWrite / 1000000).append(" ms blocked in write, ").append(mNumberOfBytesBehind)
+                    .append(" bytes behind target rate\n");
+            tReturn.append("Units:");
+            for (int i = 0; i < sMixNames.length; i++) {
+                tReturn.append(' ').append(sMixNames[i]).append('=').append(mNumberOfUnits[i]);
+            }
+            tReturn.append("\nProbes sent=").append(mNumberOfProbes).append(" answered=").append(mNumberOfAnsweredProbes)
+                    .append(" lost=").append(mNumberOfProbes - mNumberOfAnsweredProbes);
+            tReturn.append("\nRound trip latency \u00B5s: min=").append(getLatencyMicros(0)).append(" p50=").append(getLatencyMicros(50))
+                    .append(" p99=").append(getLatencyMicros(99)).append(" max=").append(getLatencyMicros(100));
+            tReturn.append("\nEvents=").append(mNumberOfEvents).append(" unexpected=").append(mNumberOfUnexpectedEvents)
+                    .append(" skipped bytes=").append(mNumberOfSkippedEventBytes);
+            if (mNumberOfBufferOverflows >= 0) {
+                tReturn.append("\nBuffer overflows=").append(mNumberOfBufferOverflows).append(", buffer skips=").append(mNumberOfBufferSkips)
+                        .append(", render errors=").append(mNumberOfRenderErrors);
+            } else {
+                tReturn.append("\nBuffer overflows and skips are only visible in the app log, lost probes indicate skipped data");
+            }
+            tReturn.append("\nEvents by type:\n").append(mEventCounts);
+            return tReturn.toString();
+        }
+    }
+
+    public void setBytesPerSecond(int aBytesPerSecond) {
+        mBytesPerSecond = aBytesPerSecond;
+    }
+
+    public void setDurationMillis(long aDurationMillis) {
+        mDurationMillis = aDurationMillis;
+    }
+
+    public void setProbeIntervalMillis(int aProbeIntervalMillis) {
+        mProbeIntervalMillis = aProbeIntervalMillis;
+    }
+
+    public void setSize(int aWidth, int aHeight) {
+        mWidth = aWidth;
+        mHeight = aHeight;
+    }
+
+    /**
+     * @param aMix e.g. "chart=6,text=2,button=1,slider=1". Missing entries get weight 0.
+     */
+    public void setMix(String aMix) {
+        Arrays.fill(mMixWeights, 0);
+        for (String tEntry : aMix.split(",")) {
+            String[] tNameAndWeight = tEntry.split("=");
+            int tIndex = Arrays.asList(sMixNames).indexOf(tNameAndWeight[0].trim());
+            if (tIndex < 0 || tNameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry " + tEntry);
+            }
+            mMixWeights[tIndex] = Integer.parseInt(tNameAndWeight[1].trim());
+        }
+    }
+
+    /*
+     * Commands sent once after connect, like the initDisplay() of the examples
+     */
+    private void writeInit() {
+        mWriter.writeCommand(FUNCTION_GLOBAL_SETTINGS, SUBFUNCTION_GLOBAL_SET_FLAGS_AND_SIZE, BD_FLAG_FIRST_RESET_ALL, mWidth, mHeight);
+        mWriter.writeCommand(FUNCTION_CLEAR_DISPLAY, COLOR16_WHITE);
+        int tButtonWidth = mWidth / (NUMBER_OF_BUTTONS + 1);
+        for (int i = 0; i < NUMBER_OF_BUTTONS; i++) {
+            // 32 bit callback address
+            mWriter.writeCommandWithString(FUNCTION_BUTTON_INIT, "B" + i, i, i * (tButtonWidth + 4), mHeight - 30, tButtonWidth, 28,
+                    COLOR16_RED, 16, FLAG_BUTTON_TYPE_TOGGLE, 0, 0x100 + i, 0);
+        }
+        for (int i = 0; i < NUMBER_OF_SLIDERS; i++) {
+            mWriter.writeCommand(FUNCTION_SLIDER_INIT, i, mWidth - 60 + (i * 25), 10, 20, SLIDER_LENGTH, 80, 50, COLOR16_BLUE,
+                    COLOR16_GREEN, 0, 0x200 + i, 0);
+        }
+    }
+
+    /*
+     * Writes one unit of the given mix type, i.e. what a sketch sends for one update
+     */
+    private void writeUnit(int aMixType) {
+        switch (aMixType) {
+            case MIX_CHART:
+                int tLength = Math.min(mWidth, mChartData.length);
+                for (int i = 0; i < tLength; i++) {
+                    mChartData[i] = (byte) ((mHeight / 2) + (mHeight / 3) * Math.sin((i + mFrameCounter) / 10.0) + mRandom.nextInt(8));
+                }
+                // clear color deletes the old chart
+                mWriter.writeCommandWithData(FUNCTION_DRAW_CHART, mChartData, tLength, 0, 0, COLOR16_BLUE, COLOR16_WHITE);
+                mWriter.writeCommand(FUNCTION_DRAW_DISPLAY);
+                break;
+            case MIX_TEXT:
+                mWriter.writeCommandWithString(FUNCTION_WRITE_STRING, "Line " + mFrameCounter + " of printf output\n");
+                mWriter.writeCommandWithString(FUNCTION_DRAW_STRING, "Value=" + mRandom.nextInt(1000), 10, 30, 11, COLOR16_BLACK,
+                        COLOR16_WHITE);
+                break;
+            case MIX_BUTTON:
+                mWriter.writeCommand(FUNCTION_BUTTON_SETTINGS, mRandom.nextInt(NUMBER_OF_BUTTONS), SUBFUNCTION_BUTTON_SET_VALUE_AND_DRAW,
+                        mRandom.nextInt(2));
+                break;
+            case MIX_SLIDER:
+                mWriter.writeCommand(FUNCTION_SLIDER_SETTINGS, mRandom.nextInt(NUMBER_OF_SLIDERS), SUBFUNCTION_SLIDER_SET_VALUE_AND_DRAW_BAR,
+                        mRandom.nextInt(SLIDER_LENGTH));
+                break;
+        }
+        mFrameCounter++;
+    }
+
+    private int chooseMixType() {
+        int tSum = 0;
+        for (int tWeight : mMixWeights) {
+            tSum += tWeight;
+        }
+        int tChoice = mRandom.nextInt(tSum);
+        for (int i = 0; i < mMixWeights.length; i++) {
+            tChoice -= mMixWeights[i];
+            if (tChoice < 0) {
+                return i;
+            }
+        }
+        return MIX_CHART;
+    }
+
+    private synchronized void addLatency(long aNanos) {
+        if (mNumberOfLatencies == mLatencyNanos.length) {
+            mLatencyNanos = Arrays.copyOf(mLatencyNanos, mLatencyNanos.length * 2);
+        }
+        mLatencyNanos[mNumberOfLatencies++] = aNanos;
+    }
+
+    /*
+     * Runs in the event reader thread
+     */
+    private final EventDecoder.EventListener mEventListener = new EventDecoder.EventListener() {
+        @Override
+        public void onEvent(int aEventType, byte[] aEvent, int aOffset, int aLength) {
+            long tNowNanos = System.nanoTime();
+            if (aEventType == EVENT_INFO_CALLBACK && aLength == CALLBACK_DATA_SIZE) {
+                // 8 bit sub function, 8 bit info, 16 bit info, 32 bit callback address
+                int tSequence = EventDecoder.getInt(aEvent, aOffset + 6);
+                int tIndex = tSequence & (MAX_OUTSTANDING_PROBES - 1);
+                long tSendNanos;
+                synchronized (mProbeSendNanos) {
+                    tSendNanos = mProbeSendNanos[tIndex];
+                    mProbeSendNanos[tIndex] = NO_PROBE;
+                }
+                if (tSendNanos == NO_PROBE) {
+                    mNumberOfUnexpectedEvents++;
+                } else {
+                    addLatency(tNowNanos - tSendNanos);
+                }
+            } else if (aEventType <= EVENT_TOUCH_ACTION_MOVE) {
+                if (aLength != EventEncoder.TWO_INTEGER_AND_A_BYTE_EVENT_LENGTH) {
+                    mNumberOfUnexpectedEvents++;
+                }
+            } else if (aEventType != EVENT_CONNECTION_BUILD_UP && aEventType != EVENT_REDRAW && aEventType != EVENT_REORIENTATION
+                    && aEventType != EVENT_BUTTON_CALLBACK && aEventType != EVENT_SLIDER_CALLBACK && aEventType != EVENT_SWIPE_CALLBACK
+                    && aEventType != EVENT_LONG_TOUCH_DOWN_CALLBACK && aEventType != EVENT_NOP) {
+                mNumberOfUnexpectedEvents++;
+            }
+        }
+    };
+
+    private Thread startEventReader(final InputStream aInputStream) {
+        Thread tThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] tBuffer = new byte[1024];
+                try {
+                    while (true) {
+                        int tReadLength = aInputStream.read(tBuffer);
+                        if (tReadLength < 0) {
+                            break;
+                        }
+                        mEventDecoder.decode(tBuffer, 0, tReadLength, mEventListener);
+                    }
+                } catch (IOException e) {
+                    if (mRunning) {
+                        ProtocolLog.w(LOG_TAG, "Event reading stopped. " + e);
+                    }
+                }
+            }
+        }, "LoadGeneratorEvents");
+        tThread.start();
+        return tThread;
+    }
+
+    public LoadResult run(Socket aSocket) throws IOException {
+        aSocket.setTcpNoDelay(true);
+        return run(aSocket.getInputStream(), aSocket.getOutputStream());
+    }
+
+    /**
+     * Sends the load for the configured duration, then waits up to one second for the outstanding probe answers.
+     * Closes aOutputStream at the end to signal end of data to the app.
+     */
+    public LoadResult run(InputStream aInputStream, OutputStream aOutputStream) throws IOException {
+        Arrays.fill(mProbeSendNanos, NO_PROBE);
+        mEventDecoder.reset();
+        mNumberOfLatencies = 0;
+        mNumberOfUnexpectedEvents = 0;
+        mRunning = true;
+        Thread tReaderThread = startEventReader(aInputStream);
+
+        LoadResult tResult = new LoadResult();
+        mWriter.reset();
+        writeInit();
+
+        long tStartNanos = System.nanoTime();
+        long tNextProbeNanos = tStartNanos;
+        long tEndNanos = tStartNanos + (mDurationMillis * 1000000L);
+        long tNowNanos = tStartNanos;
+        long tMaxBacklog = ((long) mBytesPerSecond * PACING_INTERVAL_MILLIS * MAX_PACING_INTERVALS_TO_CATCH_UP) / 1000;
+        while (tNowNanos < tEndNanos) {
+            if (tNowNanos >= tNextProbeNanos) {
+                tNextProbeNanos = tNowNanos + (mProbeIntervalMillis * 1000000L);
+                int tSequence = tResult.mNumberOfProbes++;
+                synchronized (mProbeSendNanos) {
+                    mProbeSendNanos[tSequence & (MAX_OUTSTANDING_PROBES - 1)] = tNowNanos;
+                }
+                mWriter.writeCommand(FUNCTION_GET_INFO, SUBFUNCTION_GET_INFO_GMT_TIME, tSequence & 0xFFFF, tSequence >>> 16);
+            }
+            /*
+             * Token bucket: fill up to the bytes allowed until now
+             */
+            long tAllowedBytes = (((tNowNanos - tStartNanos) * mBytesPerSecond) / 1000000000L) - tResult.mNumberOfBytesBehind;
+            if (tAllowedBytes - tResult.mNumberOfBytes > tMaxBacklog) {
+                tResult.mNumberOfBytesBehind += tAllowedBytes - tResult.mNumberOfBytes - tMaxBacklog;
+                tAllowedBytes = tResult.mNumberOfBytes + tMaxBacklog;
+            }
+            while (tResult.mNumberOfBytes + mWriter.size() < tAllowedBytes) {
+                int tMixType = chooseMixType();
+                writeUnit(tMixType);
+                tResult.mNumberOfUnits[tMixType]++;
+            }
+            if (mWriter.size() > 0) {
+                long tWriteStartNanos = System.nanoTime();
+                aOutputStream.write(mWriter.toByteArray());
+                aOutputStream.flush();
+                tResult.mNanosBlockedInWrite += System.nanoTime() - tWriteStartNanos;
+                tResult.mNumberOfBytes += mWriter.size();
+                mWriter.reset();
+            }
+            try {
+                Thread.sleep(PACING_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            tNowNanos = System.nanoTime();
+        }
+        tResult.mNanosTotal = System.nanoTime() - tStartNanos;
+
+        // wait for the answers of the last probes
+        long tWaitEndMillis = System.currentTimeMillis() + 1000;
+        while (mNumberOfLatencies < tResult.mNumberOfProbes && System.currentTimeMillis() < tWaitEndMillis) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        mRunning = false;
+        aOutputStream.close(); // signals end of data to the app
+        try {
+            tReaderThread.join(1000);
+        } catch (InterruptedException e) {
+            // Just do nothing
+        }
+
+        synchronized (this) {
+            tResult.mNumberOfAnsweredProbes = mNumberOfLatencies;
+            tResult.mSortedLatencyNanos = Arrays.copyOf(mLatencyNanos, mNumberOfLatencies);
+        }
+        Arrays.sort(tResult.mSortedLatencyNanos);
+        tResult.mNumberOfEvents = mEventDecoder.getNumberOfEvents();
+        tResult.mNumberOfUnexpectedEvents = mNumberOfUnexpectedEvents;
+        tResult.mNumberOfSkippedEventBytes = mEventDecoder.getNumberOfSkippedBytes();
+        tResult.mEventCounts = mEventDecoder.getEventCountsString();
+        return tResult;
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadGenerator tGenerator = new LoadGenerator();
+        String tConnect = null;
+        boolean tUseLoopback = false;
+        int tWidth = 320;
+        int tHeight = 240;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--connect".equals(args[i])) {
+                    tConnect = args[++i];
+                } else if ("--loopback".equals(args[i])) {
+                    tUseLoopback = true;
+                } else if ("--rate".equals(args[i])) {
+                    tGenerator.setBytesPerSecond(Integer.parseInt(args[++i]));
+                } else if ("--duration".equals(args[i])) {
+                    tGenerator.setDurationMillis(Long.parseLong(args[++i]) * 1000);
+                } else if ("--mix".equals(args[i])) {
+                    tGenerator.setMix(args[++i]);
+                } else if ("--probe".equals(args[i])) {
+                    tGenerator.setProbeIntervalMillis(Integer.parseInt(args[++i]));
+                } else if ("--size".equals(args[i])) {
+                    String[] tSize = args[++i].split("x");
+                    tWidth = Integer.parseInt(tSize[0]);
+                    tHeight = Integer.parseInt(tSize[1]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator [--connect <host:port> | --loopback] [--rate <bytes/s>] [--duration <s>]"
+                    + " [--mix chart=6,text=2,button=1,slider=1] [--probe <ms>] [--size <W>x<H>]");
+            System.exit(1);
+        }
+        tGenerator.setSize(tWidth, tHeight);
+
+        HeadlessDisplayServer tServer = null;
+        Socket tSocket = new Socket();
+        try {
+            LoadResult tResult;
+            if (tConnect != null) {
+                int tColonIndex = tConnect.lastIndexOf(':');
+                tSocket.connect(new InetSocketAddress(tConnect.substring(0, tColonIndex),
+                        Integer.parseInt(tConnect.substring(tColonIndex + 1))));
+                tResult = tGenerator.run(tSocket);
+            } else {
+                tServer = new HeadlessDisplayServer(tWidth, tHeight);
+                if (tUseLoopback) {
+                    LoopbackTransport tTransport = new LoopbackTransport(tServer);
+                    tServer.start(tTransport);
+                    tResult = tGenerator.run(tTransport.getClientInputStream(), tTransport.getClientOutputStream());
+                } else {
+                    TcpTransport tTransport = new TcpTransport(tServer, InetAddress.getLoopbackAddress(), 0);
+                    tTransport.bind();
+                    tServer.start(tTransport);
+                    tSocket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), tTransport.getLocalPort()));
+                    tResult = tGenerator.run(tSocket);
+                }
+                tServer.waitForIdle(1000);
+                tResult.mNumberOfBufferOverflows = tServer.getReceiveBuffer().getNumberOfBufferOverflows();
+                tResult.mNumberOfBufferSkips = tServer.getReceiveBuffer().getNumberOfBufferSkips();
+                tResult.mNumberOfRenderErrors = tServer.getRenderingListener().getNumberOfErrors();
+            }
+            System.out.print(tResult);
+        } finally {
+            tSocket.close();
+            if (tServer != null) {
+                tServer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * In-memory transport connecting a client in the same process by pipes.
+ * Drives the whole receive, parse and render pipeline without any radio or socket, e.g. for benchmarks.
+ * The pipes are created by the constructor, so the transport can be connected only once.
+ * Like with all piped streams, the threads writing to a pipe must not end without closing it.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+public class LoopbackTransport extends StreamTransport {
+
+    public static final int PIPE_SIZE = 64 * 1024;
+
+    private final PipedInputStream mCommandInputStream;
+    private final PipedOutputStream mClientOutputStream;
+    private final PipedInputStream mClientInputStream;
+    private final PipedOutputStream mEventOutputStream;
+
+    public LoopbackTransport(Receiver aReceiver) throws IOException {
+        super("Loopback", aReceiver);
+        mCommandInputStream = new PipedInputStream(PIPE_SIZE);
+        mClientOutputStream = new PipedOutputStream(mCommandInputStream);
+        mClientInputStream = new PipedInputStream(PIPE_SIZE);
+        mEventOutputStream = new PipedOutputStream(mClientInputStream);
+    }
+
+    /**
+     * @return The stream the client writes its commands to. Closing it ends the connection.
+     */
+    public OutputStream getClientOutputStream() {
+        return mClientOutputStream;
+    }
+
+    /**
+     * @return The stream the client reads the events from
+     */
+    public InputStream getClientInputStream() {
+        return mClientInputStream;
+    }
+
+    @Override
+    protected void open() {
+        setStreams(mCommandInputStream, mEventOutputStream);
+    }
+
+    @Override
+    protected void close() {
+        try {
+            mCommandInputStream.close();
+        } catch (IOException e) {
+            // Just do nothing
+        }
+        try {
+            // the client reads end of stream
+            mEventOutputStream.close();
+        } catch (IOException e) {
+            // Just do nothing
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Dispatches commands to handlers registered for their command byte.
+ * The handlers are stored in an array indexed by the command byte, so dispatching costs only an array access
+ * and each handler can stay small. New commands are added by registering a handler instead of extending a switch.
+ * Commands without a handler go to the default handler.
+ *
+ * The number of calls is counted for each command. If profiling is enabled, the time spent in the handler is summed up too.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.util.Arrays;
+
+public class OpcodeRegistry {
+
+    private static final int NUMBER_OF_OPCODES = 0x100;
+
+    public interface OpcodeHandler {
+        /**
+         * Same parameters as CommandParser.CommandListener.interpretCommand()
+         */
+        void handleCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength);
+    }
+
+    private final OpcodeHandler[] mHandlers = new OpcodeHandler[NUMBER_OF_OPCODES];
+    private final OpcodeHandler mDefaultHandler;
+
+    /*
+     * Statistics
+     */
+    private boolean mIsProfilingEnabled;
+    private final int[] mStatisticNumberOfCalls = new int[NUMBER_OF_OPCODES];
+    private final long[] mStatisticNanos = new long[NUMBER_OF_OPCODES];
+
+    /**
+     * @param aDefaultHandler Called for commands without a registered handler
+     */
+    public OpcodeRegistry(OpcodeHandler aDefaultHandler) {
+        mDefaultHandler = aDefaultHandler;
+    }
+
+    /**
+     * Replaces an existing handler for this command
+     */
+    public void register(int aCommand, OpcodeHandler aHandler) {
+        mHandlers[aCommand & 0xFF] = aHandler;
+    }
+
+    /**
+     * Registers the handler for all commands from aFirstCommand to aLastCommand, both included
+     */
+    public void registerRange(int aFirstCommand, int aLastCommand, OpcodeHandler aHandler) {
+        for (int i = aFirstCommand; i <= aLastCommand; i++) {
+            register(i, aHandler);
+        }
+    }
+
+    public void unregister(int aCommand) {
+        mHandlers[aCommand & 0xFF] = null;
+    }
+
+    /**
+     * @return Registered handler or null
+     */
+    public OpcodeHandler getHandler(int aCommand) {
+        return mHandlers[aCommand & 0xFF];
+    }
+
+    public void dispatch(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts, int aDataLength) {
+        int tOpcode = aCommand & 0xFF;
+        OpcodeHandler tHandler = mHandlers[tOpcode];
+        if (tHandler == null) {
+            tHandler = mDefaultHandler;
+        }
+        mStatisticNumberOfCalls[tOpcode]++;
+        if (mIsProfilingEnabled) {
+            long tStart = System.nanoTime();
+            tHandler.handleCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+            mStatisticNanos[tOpcode] += System.nanoTime() - tStart;
+        } else {
+            tHandler.handleCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+        }
+    }
+
+    public void setProfilingEnabled(boolean aEnable) {
+        mIsProfilingEnabled = aEnable;
+    }
+
+    public int getNumberOfCalls(int aCommand) {
+        return mStatisticNumberOfCalls[aCommand & 0xFF];
+    }
+
+    public long getNanos(int aCommand) {
+        return mStatisticNanos[aCommand & 0xFF];
+    }
+
+    public void resetStatistics() {
+        Arrays.fill(mStatisticNumberOfCalls, 0);
+        Arrays.fill(mStatisticNanos, 0);
+    }
+
+    /**
+     * @return One line for each called command, e.g. "0x25: 100 calls 12 \u00B5s"
+     */
+    public String getStatisticsString() {
+        StringBuilder tReturn = new StringBuilder();
+        for (int i = 0; i < NUMBER_OF_OPCODES; i++) {
+            if (mStatisticNumberOfCalls[i] != 0) {
+                tReturn.append("0x").append(Integer.toHexString(i)).append(": ").append(mStatisticNumberOfCalls[i]).append(" calls");
+                if (mIsProfilingEnabled) {
+                    tReturn.append(' ').append(mStatisticNanos[i] / 1000).append(" \u00B5s");
+                }
+                tReturn.append('\n');
+            }
+        }
+        return tReturn.toString();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Constants of the wire protocol, which are shared by the parser, the event encoder and the app.
+ * Must be kept in sync with BlueDisplayProtocol.h of the Arduino library.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public final class ProtocolConstants {
+
+    private ProtocolConstants() {
+    }
+
+    /*
+     * Framing
+     * A command is: SYNC_TOKEN, command byte, 16 bit parameter length, n * 16 bit parameter.
+     * A command with data (command >= INDEX_FIRST_FUNCTION_WITH_DATA) is followed by a data message:
+     * SYNC_TOKEN, data tag, 16 bit data length, data bytes.
+     */
+    public static final byte SYNC_TOKEN = (byte) 0xA5;
+    public static final int MAX_NUMBER_OF_PARAMS = 12;
+    public static final int MIN_MESSAGE_SIZE = 4; // was former 5 (data message with one byte), but this makes problems with receiving empty data blocks
+    public static final int MIN_COMMAND_SIZE = 4; // command message with no parameter
+    public static final int MAX_DATA_SIZE = 4096; // Size of the buffer to hold data for one data command
+    /*
+     * Compact parameters, only sent by clients which got CAPABILITY_COMPACT_PARAMETERS.
+     * If this flag is set in the parameter length, the length is the number of bytes of the parameters encoded as variable length
+     * values: 7 bits per byte, LSB first, bit 7 set if another byte follows. Values are 16 bit, i.e. 1 to 3 bytes long.
+     * If the color parameter is the missing last parameter, the color of the last command with a color is used,
+     * see ProtocolHelper.getColorParameterIndex().
+     */
+    public static final int PARAMETER_LENGTH_COMPACT_FLAG = 0x8000;
+    public static final int MAX_COMPACT_PARAMETER_SIZE = 3;
+
+    // Tags for data buffer 0-7
+    public static final int DATAFIELD_TAG_BYTE = 0x01;
+    public static final int LAST_DATAFIELD_TAG = DATAFIELD_TAG_BYTE;
+
+    // Display (draw) functions with variable data 60-
+    public static final int INDEX_FIRST_FUNCTION_WITH_DATA = 0x60;
+
+    /*
+     * Internal functions
+     */
+    public static final int FUNCTION_GLOBAL_SETTINGS = 0x08;
+    // Sub functions for GLOBAL_SETTINGS
+    public static final int SUBFUNCTION_GLOBAL_SET_FLAGS_AND_SIZE = 0x00;
+    public static final int SUBFUNCTION_GLOBAL_SET_CODEPAGE = 0x01;
+    public static final int SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING = 0x02;
+    // Flags for SET_FLAGS_AND_SIZE
+    public static final int BD_FLAG_FIRST_RESET_ALL = 0x01;
+    /*
+     * Baud rate upgrade of USB serial connections, only sent by clients which got CAPABILITY_BAUD_RATE_UPGRADE.
+     * See BaudRateNegotiator for the handshake.
+     */
+    public static final int SUBFUNCTION_GLOBAL_REQUEST_BAUD_RATE = 0x10; // Max baud rate of client in BAUD_RATE_UNIT
+    public static final int SUBFUNCTION_GLOBAL_BAUD_RATE_PROBE = 0x11; // BAUD_RATE_PROBE_PATTERN_1 and _2, sent at the new rate
+    public static final int BAUD_RATE_UNIT = 100; // fits 3 Mbaud in a 16 bit parameter
+    public static final int BAUD_RATE_PROBE_PATTERN_1 = 0x55AA;
+    public static final int BAUD_RATE_PROBE_PATTERN_2 = 0x0FF0;
+    public static final int BAUD_RATE_PROBE_DELAY_MILLIS = 100; // Client waits this time after EVENT_BAUD_RATE with SWITCH before sending the probe
+    public static final int BAUD_RATE_CONFIRM_TIMEOUT_MILLIS = 500; // Client switches back, if not confirmed within this time after the probe
+    /*
+     * CRC framing, only sent by clients which got CAPABILITY_CRC_FRAMING. Parameter is 1 for on and 0 for off.
+     * The switch command itself is sent in the current mode, the new mode starts with the next message.
+     * A framed message is: SYNC_TOKEN, command or data tag, 16 bit length, CRC-8 of the 3 bytes before,
+     * parameters or data, CRC-16 of the parameters or data (LSB first). See ProtocolHelper.updateCrc8() and updateCrc16().
+     */
+    public static final int SUBFUNCTION_GLOBAL_SET_CRC_FRAMING = 0x12;
+    public static final int FRAME_HEADER_SIZE = 4; // command, length and CRC-8 after the SYNC_TOKEN
+    public static final int FRAME_CRC_SIZE = 2;
+    public static final int CRC8_INIT = 0x00;
+    public static final int CRC16_INIT = 0xFFFF;
+
+    public static final int FUNCTION_GET_INFO = 0x0E;
+    // Sub functions for GET_INFO
+    public static final int SUBFUNCTION_GET_INFO_LOCAL_TIME = 0x00;
+    public static final int SUBFUNCTION_GET_INFO_GMT_TIME = 0x01;
+    /*
+     * Answered by EVENT_INFO_CALLBACK with PROTOCOL_VERSION as byte info, CAPABILITY_* flags as short info,
+     * MAX_DATA_SIZE as info 0 and MAX_NUMBER_OF_PARAMS as info 1. Apps without this subfunction do not answer.
+     */
+    public static final int SUBFUNCTION_GET_INFO_CAPABILITIES = 0x02;
+    public static final int PROTOCOL_VERSION = 2; // 1 are all apps without SUBFUNCTION_GET_INFO_CAPABILITIES
+    public static final int CAPABILITY_COMPACT_PARAMETERS = 0x0001;
+    public static final int CAPABILITY_DRAW_PRIMITIVES = 0x0002;
+    public static final int CAPABILITY_IMAGES = 0x0004;
+    public static final int CAPABILITY_SPRITES = 0x0008;
+    public static final int CAPABILITY_DISPLAY_LISTS = 0x0010;
+    public static final int CAPABILITY_MULTI_TOUCH_MOVE = 0x0020;
+    public static final int CAPABILITY_BAUD_RATE_UPGRADE = 0x0040; // only for USB serial connections
+    public static final int CAPABILITY_CRC_FRAMING = 0x0080;
+    public static final int CAPABILITY_LAYERS = 0x0100;
+
+    public static final int FUNCTION_NOP = 0x7F;
+
+    /*
+     * The functions the parser and the buffer must know about
+     */
+    public static final int FUNCTION_CLEAR_DISPLAY = 0x10;
+    public static final int FUNCTION_DRAW_DISPLAY = 0x11;
+    public static final int FUNCTION_CLEAR_DISPLAY_AND_SKIP_OPTIONAL = 0x12; // used for skipping commands in buffer
+
+    public static final int FUNCTION_DRAW_CHART = 0x6A;
+    public static final int FUNCTION_DRAW_CHART_WITHOUT_DIRECT_RENDERING = 0x6B;
+    public static final int FUNCTION_DRAW_SCALED_CHART = 0x6C;
+    public static final int FUNCTION_DRAW_SCALED_CHART_WITHOUT_DIRECT_RENDERING = 0x6D;
+
+    public static final int CHART_MODE_PIXEL = 0;
+    public static final int CHART_MODE_LINE = 1;
+
+    /*
+     * Display (draw) functions rendered by CommandRenderer
+     */
+    public static final int FUNCTION_CLEAR_DISPLAY_AREA = 0x13;
+    // with 3 parameter
+    public static final int FUNCTION_DRAW_PIXEL = 0x14;
+    // 6 parameter
+    public static final int FUNCTION_DRAW_CHAR = 0x16;
+
+    // with 5 parameter
+    public static final int FUNCTION_DRAW_LINE_REL = 0x20;
+    public static final int FUNCTION_DRAW_LINE = 0x21;
+    public static final int FUNCTION_DRAW_RECT_REL = 0x24;
+    public static final int FUNCTION_FILL_RECT_REL = 0x25;
+    public static final int FUNCTION_DRAW_RECT = 0x26;
+    public static final int FUNCTION_FILL_RECT = 0x27;
+
+    public static final int FUNCTION_DRAW_CIRCLE = 0x28;
+    public static final int FUNCTION_FILL_CIRCLE = 0x29;
+
+    public static final int FUNCTION_DRAW_VECTOR_DEGREE = 0x2C;
+    public static final int FUNCTION_DRAW_VECTOR_RADIAN = 0x2D;
+
+    public static final int FUNCTION_WRITE_SETTINGS = 0x34;
+    // Flags for WRITE_SETTINGS
+    public static final int FLAG_WRITE_SETTINGS_SET_SIZE_AND_COLORS_AND_FLAGS = 0x00;
+    public static final int FLAG_WRITE_SETTINGS_SET_POSITION = 0x01;
+    public static final int FLAG_WRITE_SETTINGS_SET_LINE_COLUMN = 0x02;
+
+    public static final int FUNCTION_DRAW_STRING = 0x60;
+    public static final int STRING_ALIGN_RIGHT_XPOS = -1; // 0xFFFF
+    public static final int STRING_ALIGN_MIDDLE_XPOS = -2; // 0xFFFE
+    public static final int FUNCTION_WRITE_STRING = 0x62;
+
+    public static final int FUNCTION_DRAW_PATH = 0x68; // Not yet implemented in Arduino library
+    public static final int FUNCTION_FILL_PATH = 0x69; // Not yet implemented in Arduino library
+
+    /*
+     * N primitives of one kind with shared color and stroke width.
+     * Parameter: kind, color, stroke width (not used for rectangles).
+     * Data: 16 bit values, x/y for pixels, start x/y and end x/y for lines, x/y and width/height for rectangles.
+     */
+    public static final int FUNCTION_DRAW_PRIMITIVES = 0x6E;
+    public static final int PRIMITIVES_PIXELS = 0;
+    public static final int PRIMITIVES_LINES = 1;
+    public static final int PRIMITIVES_FILL_RECTS_REL = 2;
+
+    /*
+     * Streamed image. IMAGE_START sets position, size and format, the following IMAGE_DATA commands deliver the pixels row by row.
+     * Rows may be split between data commands, so an image is not limited by MAX_DATA_SIZE.
+     * Parameter of IMAGE_START: x, y, width, height, format, flags.
+     * Format is IMAGE_FORMAT_RGB565 or the number of bits per pixel (1, 2, 4, 8) of palette indexes.
+     * Palette rows start at a byte boundary, the MSB holds the leftmost pixel.
+     * With IMAGE_FLAG_RLE the data is run length encoded in units of 2 bytes for RGB565 and 1 byte for palette images:
+     * Header byte 0x00 to 0x7F is followed by (header + 1) literal units, header 0x80 to 0xFF by one unit to repeat (header - 0x7E) times.
+     * Runs may span rows and data commands.
+     * IMAGE_PALETTE data: RGB565 colors, index 0 first. The palette is kept for following images.
+     */
+    public static final int FUNCTION_IMAGE_START = 0x18;
+    public static final int FUNCTION_IMAGE_PALETTE = 0x66;
+    public static final int FUNCTION_IMAGE_DATA = 0x67;
+    public static final int IMAGE_FORMAT_RGB565 = 16;
+    public static final int IMAGE_FLAG_RLE = 0x01;
+
+    /*
+     * Sprites, i.e. captured canvas rectangles addressed by a client chosen ID, see SpriteStore of the app.
+     * SPRITE_CAPTURE parameter: ID, x, y, width, height. SPRITE_DRAW parameter: ID, x, y.
+     */
+    public static final int FUNCTION_SPRITE_CAPTURE = 0x1A;
+    public static final int FUNCTION_SPRITE_DRAW = 0x1B;
+    public static final int FUNCTION_SPRITE_SETTINGS = 0x1C;
+    public static final int SUBFUNCTION_SPRITE_SET_MAX_KBYTES = 0x00;
+    public static final int SUBFUNCTION_SPRITE_REMOVE = 0x01;
+    public static final int SUBFUNCTION_SPRITE_REMOVE_ALL = 0x02;
+
+    /*
+     * Display lists, see DisplayListStore.
+     * DISPLAY_LIST_REPLAY parameter: ID, optional x and y offset, optional old and new color.
+     */
+    public static final int FUNCTION_DISPLAY_LIST_SETTINGS = 0x1D;
+    public static final int SUBFUNCTION_DISPLAY_LIST_START_RECORDING = 0x00; // ID, flags
+    public static final int SUBFUNCTION_DISPLAY_LIST_END_RECORDING = 0x01;
+    public static final int SUBFUNCTION_DISPLAY_LIST_REMOVE = 0x02; // ID
+    public static final int SUBFUNCTION_DISPLAY_LIST_REMOVE_ALL = 0x03;
+    public static final int DISPLAY_LIST_FLAG_EXECUTE_WHILE_RECORDING = 0x01;
+    public static final int FUNCTION_DISPLAY_LIST_REPLAY = 0x1E;
+
+    /*
+     * Layers, which are composited bottom up at display time.
+     * Until the client selects a layer, everything is drawn to LAYER_BACKGROUND and the other layers are not allocated.
+     * After the first selection, buttons and sliders are drawn to LAYER_WIDGETS and CLEAR_DISPLAY clears all layers,
+     * the background with the color of the command, the other layers to transparent.
+     * The clear color of LAYER_CONTENT and LAYER_WIDGETS is drawn as transparent, so e.g. a chart deleting its old line
+     * with the background color does not destroy the grid of the background layer. The clear color of LAYER_BACKGROUND
+     * is used by LAYER_CLEAR.
+     */
+    public static final int FUNCTION_LAYER_SETTINGS = 0x1F;
+    public static final int SUBFUNCTION_LAYER_SELECT = 0x00; // layer. All following draw commands go to this layer.
+    public static final int SUBFUNCTION_LAYER_SET_CLEAR_COLOR = 0x01; // layer, color or COLOR16_NO_DELETE to disable
+    public static final int SUBFUNCTION_LAYER_CLEAR = 0x02; // layer
+    public static final int LAYER_BACKGROUND = 0;
+    public static final int LAYER_CONTENT = 1;
+    public static final int LAYER_WIDGETS = 2;
+    public static final int NUMBER_OF_LAYERS = 3;
+
+    // If used as background color for char or text, the background will not filled.
+    public static final int COLOR16_NO_BACKGROUND = 0XFFFE;
+    public static final int COLOR16_NO_DELETE = 0X0001;
+
+    /*
+     * Events sent to the client
+     * Format is: length byte, event type byte, payload, SYNC_TOKEN
+     */
+    public static final int CALLBACK_DATA_SIZE = 15; // Size of the biggest fixed length event
+    public static final int MAX_EVENT_SIZE = 0xFF; // Limited by the length byte, only reached by the variable length multi touch event
+
+    // Touch events have the codes of MotionEvent.ACTION_*
+    public static final int EVENT_TOUCH_ACTION_DOWN = 0x00;
+    public static final int EVENT_TOUCH_ACTION_UP = 0x01;
+    public static final int EVENT_TOUCH_ACTION_MOVE = 0x02;
+    // Opt-in replacement for move events, all pointers and optional historical samples. See EventEncoder.encodeMultiTouchEvent()
+    public static final int EVENT_TOUCH_MULTI_MOVE = 0x0F;
+
+    public static final int EVENT_CONNECTION_BUILD_UP = 0x10;
+    public static final int EVENT_REDRAW = 0x11;
+    public static final int EVENT_REORIENTATION = 0x12;
+    public static final int EVENT_DISCONNECT = 0x14;
+    public static final int EVENT_SPRITE_MISSING = 0x15; // ID of a sprite to draw, which was evicted or never captured
+    public static final int EVENT_BAUD_RATE = 0x16; // Baud rate in BAUD_RATE_UNIT and one of BAUD_RATE_STATE_*
+    public static final int EVENT_DISPLAY_LIST_DISCARDED = 0x17; // ID of a display list, whose recording exceeded the store size
+    public static final int BAUD_RATE_STATE_SWITCH = 0x00; // Switch to the rate and send the probe after BAUD_RATE_PROBE_DELAY_MILLIS
+    public static final int BAUD_RATE_STATE_CONFIRMED = 0x01; // Probe received, the rate is used now
+    public static final int BAUD_RATE_STATE_FALLBACK = 0x02; // No valid probe received, app switched back to the sent rate
+    public static final int BAUD_RATE_STATE_NOT_SUPPORTED = 0x03; // Connection is not USB serial
+
+    public static final int EVENT_FIRST_CALLBACK = 0x20;
+    public static final int EVENT_BUTTON_CALLBACK = 0x20;
+    public static final int EVENT_SLIDER_CALLBACK = 0x21;
+    public static final int EVENT_SWIPE_CALLBACK = 0x22;
+    public static final int EVENT_LONG_TOUCH_DOWN_CALLBACK = 0x23;
+
+    public static final int EVENT_NUMBER_CALLBACK = 0x28;
+    public static final int EVENT_INFO_CALLBACK = 0x29;
+
+    public static final int EVENT_NOP = 0x2F;
+
+    public static final int EVENT_FIRST_SENSOR_ACTION_CODE = 0x30;
+
+    public static final int EVENT_SPEAKING_DONE = 0x40;
+
+    public static final int EVENT_REQUESTED_DATA_CANVAS_SIZE = 0x60;
+}
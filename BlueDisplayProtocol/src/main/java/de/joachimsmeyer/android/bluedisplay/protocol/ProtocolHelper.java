@@ -0,0 +1,185 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Byte, hex and color conversion helpers of the protocol.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+public final class ProtocolHelper {
+
+    private ProtocolHelper() {
+    }
+
+    private static final int numberOfBitsInAHalfByte = 4;
+    private static final int halfByte = 0x0F;
+    private static final char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    public static void appendByteAsHex(StringBuilder aStringBuilder, byte aByte) {
+        aStringBuilder.append(hexDigits[(aByte >> numberOfBitsInAHalfByte) & halfByte]);
+        aStringBuilder.append(hexDigits[aByte & halfByte]);
+    }
+
+    public static String convertByteArrayToHexString(byte[] aData) {
+        return convertByteArrayToHexString(aData, 0, aData.length);
+    }
+
+    public static String convertByteArrayToHexString(byte[] aData, int aOffset, int aLength) {
+        StringBuilder tDataRaw = new StringBuilder(aLength * 3);
+        for (int i = aOffset; i < aOffset + aLength; i++) {
+            // Output parameter buffer as hex
+            appendByteAsHex(tDataRaw, aData[i]);
+            tDataRaw.append(" ");
+        }
+        return tDataRaw.toString();
+    }
+
+    /*
+     * Tables for CRC-8 with polynomial 0x07 (CRC-8/SMBUS) and CRC-16 with polynomial 0x1021 (CRC-16/CCITT-FALSE)
+     */
+    private static final int[] sCrc8Table = new int[256];
+    private static final int[] sCrc16Table = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int tCrc8 = i;
+            int tCrc16 = i << 8;
+            for (int j = 0; j < 8; j++) {
+                tCrc8 = ((tCrc8 & 0x80) != 0) ? (tCrc8 << 1) ^ 0x07 : tCrc8 << 1;
+                tCrc16 = ((tCrc16 & 0x8000) != 0) ? (tCrc16 << 1) ^ 0x1021 : tCrc16 << 1;
+            }
+            sCrc8Table[i] = tCrc8 & 0xFF;
+            sCrc16Table[i] = tCrc16 & 0xFFFF;
+        }
+    }
+
+    /**
+     * CRC of the header of a framed message. Start with CRC8_INIT.
+     */
+    public static int updateCrc8(int aCrc, byte aByte) {
+        return sCrc8Table[(aCrc ^ aByte) & 0xFF];
+    }
+
+    /**
+     * CRC of the parameters or data of a framed message. Start with CRC16_INIT.
+     */
+    public static int updateCrc16(int aCrc, byte aByte) {
+        return ((aCrc << 8) ^ sCrc16Table[((aCrc >> 8) ^ aByte) & 0xFF]) & 0xFFFF;
+    }
+
+    public static int convert2BytesToInt(byte aLSB, byte aMSB) {
+        int i = aLSB;
+        i = i & 0x000000FF;
+        i = i | (aMSB << 8);
+        return i;
+    }
+
+    /**
+     * Used for the implicit color of compact parameters and for color substitution of display lists.
+     * Commands with 2 colors, like FUNCTION_DRAW_STRING, have no implicit color and return -1 too.
+     *
+     * @return Index of the color parameter, which is the last mandatory parameter, or -1 if command has no such color parameter
+     */
+    public static int getColorParameterIndex(int aCommand) {
+        switch (aCommand) {
+            case FUNCTION_DRAW_PATH:
+            case FUNCTION_FILL_PATH:
+                return 0;
+            case FUNCTION_DRAW_PRIMITIVES:
+                return 1;
+            case FUNCTION_DRAW_PIXEL:
+                return 2;
+            case FUNCTION_DRAW_CIRCLE:
+            case FUNCTION_FILL_CIRCLE:
+                return 3;
+            case FUNCTION_DRAW_LINE_REL:
+            case FUNCTION_DRAW_LINE:
+            case FUNCTION_DRAW_VECTOR_DEGREE:
+            case FUNCTION_DRAW_RECT_REL:
+            case FUNCTION_FILL_RECT_REL:
+            case FUNCTION_DRAW_RECT:
+            case FUNCTION_FILL_RECT:
+                return 4;
+            case FUNCTION_DRAW_VECTOR_RADIAN:
+                return 5;
+            default:
+                return -1;
+        }
+    }
+
+    public static float convertByteToFloat(byte aByte) {
+        return aByte & 0xFF;
+    }
+
+    public static int convertByteToInt(byte aByte) {
+        return aByte & 0xFF;
+    }
+
+    /**
+     * Converts a RGB565 color to an opaque ARGB8888 color.
+     * The lower bits of a component are filled up for values > 0x80 in order to get a real 0xFF for white.
+     */
+    // 5 red | 6 green | 5 blue
+    public static int shortToLongColor(int aShortColor) {
+        int tBlue = (aShortColor & 0x1F) << 3;
+        if (tBlue > 0x80) {
+            // to get real 0xFF
+            tBlue += 0x07;
+        }
+        int tGreen = (aShortColor & 0x07E0) << 5;
+        if (tGreen > 0x8000) {
+            // to get real 0xFF
+            tGreen += 0x0300;
+        }
+        int tRed = aShortColor & 0xF800;
+        if (tRed > 0x8000) {
+            // to get real 0xFF
+            tRed += 0x0700;
+        }
+        tRed = tRed << 8;
+        return (tRed | tGreen | tBlue | 0xFF000000);
+    }
+
+    public static String shortToColorString(int aShortColor) {
+        int tBlue = (aShortColor & 0x1F) << 3;
+        if (tBlue > 0x80) {
+            // to get real 0xFF
+            tBlue += 0x07;
+        }
+        int tGreen = (aShortColor & 0x07E0) >> 3;
+        if (tGreen > 0x80) {
+            // to get real 0xFF
+            tGreen += 0x03;
+        }
+        int tRed = (aShortColor & 0xF800) >> 8;
+        if (tRed > 0x80) {
+            // to get real 0xFF
+            tRed += 0x07;
+        }
+        return "R:" + tRed + " G:" + tGreen + " B:" + tBlue;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Logging wrapper for the protocol module with the same interface as MyLog of the app.
+ * The app plugs in MyLog, on a plain JVM nothing is logged by default.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public class ProtocolLog {
+
+    // Same values as android.util.Log
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int NONE = 7;
+
+    public interface Logger {
+        void log(int aLevel, String aTag, String aMessage);
+    }
+
+    static volatile Logger sLogger = null;
+    static int mLoglevel = NONE;
+
+    /**
+     * @param aLogger   The logger which receives all messages. Null disables logging.
+     * @param aLoglevel One of VERBOSE to NONE. Used by isINFO() etc. to guard expensive message assembly
+     */
+    public static void setLogger(Logger aLogger, int aLoglevel) {
+        sLogger = aLogger;
+        setLoglevel(aLoglevel);
+    }
+
+    public static void setLoglevel(int aLoglevel) {
+        if (sLogger == null) {
+            mLoglevel = NONE;
+        } else {
+            mLoglevel = aLoglevel;
+        }
+    }
+
+    public static boolean isINFO() {
+        return (mLoglevel <= INFO);
+    }
+
+    public static boolean isDEBUG() {
+        return (mLoglevel <= DEBUG);
+    }
+
+    public static boolean isVERBOSE() {
+        return (mLoglevel <= VERBOSE);
+    }
+
+    private static void log(int aLevel, String aTag, String aMessage) {
+        Logger tLogger = sLogger;
+        if (tLogger != null) {
+            tLogger.log(aLevel, aTag, aMessage);
+        }
+    }
+
+    public static void v(String tag, String msg) {
+        log(VERBOSE, tag, msg);
+    }
+
+    public static void d(String tag, String msg) {
+        log(DEBUG, tag, msg);
+    }
+
+    public static void i(String tag, String msg) {
+        log(INFO, tag, msg);
+    }
+
+    public static void w(String tag, String msg) {
+        log(WARN, tag, msg);
+    }
+
+    public static void e(String tag, String msg) {
+        log(ERROR, tag, msg);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * The buffer between the BT or USB driver thread, which writes received bytes, and the CommandParser, which reads them.
+ * There is exactly one writer and one reader thread.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public interface ReceiveBuffer {
+
+    /**
+     * @return the array the driver thread can directly read into at getInIndex(). There is space for getMaxReadSize() bytes.
+     */
+    byte[] getArray();
+
+    /**
+     * @return Last content byte + 1 or first free byte.
+     */
+    int getInIndex();
+
+    /**
+     * @return First unprocessed byte.
+     */
+    int getOutIndex();
+
+    /**
+     * @return Maximum number of bytes which can be added by one call to handleReceived() or put().
+     */
+    int getMaxReadSize();
+
+    /**
+     * Called by the driver thread after writing aReadLength bytes at getInIndex() into getArray().
+     * Handles buffer overflow by skipping old content.
+     */
+    void handleReceived(int aReadLength);
+
+    /**
+     * Copies data into the buffer and calls handleReceived(). aLength must not exceed getMaxReadSize().
+     */
+    void put(byte[] aData, int aOffset, int aLength);
+
+    int getBytesAvailable();
+
+    /**
+     * Returns the next unprocessed byte. Caller must check getBytesAvailable() before.
+     */
+    byte getByte();
+
+    /**
+     * Returns the unprocessed byte at aOffset without removing it, e.g. to check a frame before it is processed.
+     * Caller must check that getBytesAvailable() is greater than aOffset.
+     */
+    byte peekByte(int aOffset);
+
+    /**
+     * Copies the next aLength unprocessed bytes to aDestination. Caller must check getBytesAvailable() before.
+     */
+    void getBytes(byte[] aDestination, int aLength);
+
+    void reset();
+
+    /*
+     * Statistics
+     */
+    int getNumberOfBufferSkips();
+
+    int getNumberOfBufferOverflows();
+
+    void resetStatistics();
+}
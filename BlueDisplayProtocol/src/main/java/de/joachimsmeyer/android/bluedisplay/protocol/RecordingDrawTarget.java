@@ -0,0 +1,527 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * DrawTarget, which does not draw, but records what would be drawn.
+ * It counts the primitives and the pixels touched for each command and keeps a coverage map to compute the overdraw,
+ * i.e. how often each pixel is drawn on average. Optionally a trace of all primitives is recorded.
+ *
+ * The rasterization is only an approximation of what Canvas does (no anti aliasing, square line ends, text as box),
+ * but it is deterministic and sufficient to detect render path regressions.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class RecordingDrawTarget implements DrawTarget {
+
+    public static final int PRIMITIVE_COLOR = 0;
+    public static final int PRIMITIVE_POINT = 1;
+    public static final int PRIMITIVE_LINE = 2;
+    public static final int PRIMITIVE_LINES = 3;
+    public static final int PRIMITIVE_POINTS = 4;
+    public static final int PRIMITIVE_RECT = 5;
+    public static final int PRIMITIVE_FILL_RECT = 6;
+    public static final int PRIMITIVE_CIRCLE = 7;
+    public static final int PRIMITIVE_FILL_CIRCLE = 8;
+    public static final int PRIMITIVE_POLYGON = 9;
+    public static final int PRIMITIVE_FILL_POLYGON = 10;
+    public static final int PRIMITIVE_TEXT = 11;
+    public static final int PRIMITIVE_FILL_RECTS = 12;
+    public static final int PRIMITIVE_PIXEL_ROW = 13;
+    public static final int NUMBER_OF_PRIMITIVE_TYPES = 14;
+
+    static final String[] sPrimitiveNames = {"color", "point", "line", "lines", "points", "rect", "fillRect", "circle", "fillCircle",
+            "polygon", "fillPolygon", "text", "fillRects",
+            "pixelRow"};
+
+    private static final int NO_COMMAND = 0x100; // for primitives drawn outside of a command, e.g. reference marks of the test page
+
+    private final int mWidth;
+    private final int mHeight;
+
+    private final byte[] mCoverage; // saturating draw count per pixel
+    private final int[] mLastPrimitiveOfPixel; // a pixel is counted only once per primitive, even if a thick line touches it twice
+    private int mPrimitiveSerial;
+
+    private int mCurrentCommand = NO_COMMAND;
+    private final int[] mPrimitiveCounts = new int[NUMBER_OF_PRIMITIVE_TYPES];
+    private final int[] mCommandPrimitiveCounts = new int[NO_COMMAND + 1];
+    private final long[] mCommandPixelCounts = new long[NO_COMMAND + 1];
+    private long mNumberOfLineSegments;
+    private long mNumberOfPixelsTouched;
+    private int mCurrentPrimitivePixels;
+
+    private StringBuilder mTrace; // null if tracing is disabled
+
+    // Pixels outside the clip are not touched, like a Canvas with clipRect()
+    private int mClipLeft;
+    private int mClipTop;
+    private int mClipRight;
+    private int mClipBottom;
+
+    public RecordingDrawTarget(int aWidth, int aHeight) {
+        mWidth = aWidth;
+        mHeight = aHeight;
+        mClipRight = aWidth;
+        mClipBottom = aHeight;
+        mCoverage = new byte[aWidth * aHeight];
+        mLastPrimitiveOfPixel = new int[aWidth * aHeight];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * All following primitives are attributed to this command
+     */
+    public void setCurrentCommand(int aCommand) {
+        mCurrentCommand = aCommand & 0xFF;
+    }
+
+    public void clearCurrentCommand() {
+        mCurrentCommand = NO_COMMAND;
+    }
+
+    /**
+     * Restricts all following primitives to the rectangle from aLeft/aTop to aRight/aBottom (exclusive)
+     */
+    public void setClip(int aLeft, int aTop, int aRight, int aBottom) {
+        mClipLeft = Math.max(aLeft, 0);
+        mClipTop = Math.max(aTop, 0);
+        mClipRight = Math.min(aRight, mWidth);
+        mClipBottom = Math.min(aBottom, mHeight);
+    }
+
+    public void clearClip() {
+        setClip(0, 0, mWidth, mHeight);
+    }
+
+    public void setTraceEnabled(boolean aEnable) {
+        if (aEnable) {
+            if (mTrace == null) {
+                mTrace = new StringBuilder(4096);
+            }
+        } else {
+            mTrace = null;
+        }
+    }
+
+    public void writeTrace(Appendable aOut) throws IOException {
+        if (mTrace != null) {
+            aOut.append(mTrace);
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(mCoverage, (byte) 0);
+        Arrays.fill(mLastPrimitiveOfPixel, 0);
+        mPrimitiveSerial = 0;
+        Arrays.fill(mPrimitiveCounts, 0);
+        Arrays.fill(mCommandPrimitiveCounts, 0);
+        Arrays.fill(mCommandPixelCounts, 0);
+        mNumberOfLineSegments = 0;
+        mNumberOfPixelsTouched = 0;
+        mCurrentCommand = NO_COMMAND;
+        clearClip();
+        if (mTrace != null) {
+            mTrace.setLength(0);
+        }
+    }
+
+    /*
+     * Statistics
+     */
+    public int getPrimitiveCount(int aPrimitiveType) {
+        return mPrimitiveCounts[aPrimitiveType];
+    }
+
+    public int getNumberOfPrimitives() {
+        int tSum = 0;
+        for (int tCount : mPrimitiveCounts) {
+            tSum += tCount;
+        }
+        return tSum;
+    }
+
+    public int getCommandPrimitiveCount(int aCommand) {
+        return mCommandPrimitiveCounts[aCommand & 0xFF];
+    }
+
+    public long getCommandPixelCount(int aCommand) {
+        return mCommandPixelCounts[aCommand & 0xFF];
+    }
+
+    /**
+     * Including the segments of drawLines()
+     */
+    public long getNumberOfLineSegments() {
+        return mNumberOfLineSegments;
+    }
+
+    /**
+     * Sum of the pixels touched by all primitives
+     */
+    public long getNumberOfPixelsTouched() {
+        return mNumberOfPixelsTouched;
+    }
+
+    public int getNumberOfUniquePixelsTouched() {
+        int tCount = 0;
+        for (byte tCoverage : mCoverage) {
+            if (tCoverage != 0) {
+                tCount++;
+            }
+        }
+        return tCount;
+    }
+
+    /**
+     * @return Average number of draws of a touched pixel. 1.0 means no overdraw.
+     */
+    public float getOverdrawRatio() {
+        int tUnique = getNumberOfUniquePixelsTouched();
+        if (tUnique == 0) {
+            return 0;
+        }
+        return (float) mNumberOfPixelsTouched / tUnique;
+    }
+
+    /**
+     * @return Number of draws of the pixel, saturated at 255
+     */
+    public int getCoverage(int aX, int aY) {
+        return mCoverage[aY * mWidth + aX] & 0xFF;
+    }
+
+    public String getSummary() {
+        StringBuilder tSummary = new StringBuilder();
+        tSummary.append("primitives=").append(getNumberOfPrimitives()).append(" lineSegments=").append(mNumberOfLineSegments)
+                .append(" pixels=").append(mNumberOfPixelsTouched).append(" unique=").append(getNumberOfUniquePixelsTouched())
+                .append(String.format(" overdraw=%.2f", getOverdrawRatio()));
+        for (int i = 0; i < NUMBER_OF_PRIMITIVE_TYPES; i++) {
+            if (mPrimitiveCounts[i] != 0) {
+                tSummary.append(' ').append(sPrimitiveNames[i]).append('=').append(mPrimitiveCounts[i]);
+            }
+        }
+        return tSummary.toString();
+    }
+
+    /*
+     * Primitive recording
+     */
+    private void startPrimitive(int aPrimitiveType) {
+        mPrimitiveSerial++;
+        if (mPrimitiveSerial == 0) {
+            // wrap around, avoid false matches with old serials
+            Arrays.fill(mLastPrimitiveOfPixel, 0);
+            mPrimitiveSerial = 1;
+        }
+        mPrimitiveCounts[aPrimitiveType]++;
+        mCommandPrimitiveCounts[mCurrentCommand]++;
+        mCurrentPrimitivePixels = 0;
+    }
+
+    private void endPrimitive(int aPrimitiveType, String aGeometry, float aStrokeWidth, int aColor) {
+        mCommandPixelCounts[mCurrentCommand] += mCurrentPrimitivePixels;
+        mNumberOfPixelsTouched += mCurrentPrimitivePixels;
+        if (mTrace != null) {
+            if (mCurrentCommand == NO_COMMAND) {
+                mTrace.append("cmd=none");
+            } else {
+                mTrace.append("cmd=0x").append(Integer.toHexString(mCurrentCommand));
+            }
+            mTrace.append(' ').append(sPrimitiveNames[aPrimitiveType]).append(' ').append(aGeometry).append(" w=").append(aStrokeWidth)
+                    .append(" c=#").append(Integer.toHexString(aColor).toUpperCase()).append(" px=").append(mCurrentPrimitivePixels)
+                    .append('\n');
+        }
+    }
+
+    private void touchPixel(int aX, int aY) {
+        if (aX < mClipLeft || aY < mClipTop || aX >= mClipRight || aY >= mClipBottom) {
+            return;
+        }
+        int tIndex = aY * mWidth + aX;
+        if (mLastPrimitiveOfPixel[tIndex] == mPrimitiveSerial) {
+            return;
+        }
+        mLastPrimitiveOfPixel[tIndex] = mPrimitiveSerial;
+        if (mCoverage[tIndex] != (byte) 0xFF) {
+            mCoverage[tIndex]++;
+        }
+        mCurrentPrimitivePixels++;
+    }
+
+    /*
+     * Fills the pixels from aXStart to aXEnd (exclusive) and aYStart to aYEnd (exclusive)
+     */
+    private void fillPixels(int aXStart, int aYStart, int aXEnd, int aYEnd) {
+        int tXStart = Math.max(aXStart, 0);
+        int tXEnd = Math.min(aXEnd, mWidth);
+        int tYStart = Math.max(aYStart, 0);
+        int tYEnd = Math.min(aYEnd, mHeight);
+        for (int y = tYStart; y < tYEnd; y++) {
+            for (int x = tXStart; x < tXEnd; x++) {
+                touchPixel(x, y);
+            }
+        }
+    }
+
+    /*
+     * Square brush centered at aX, aY
+     */
+    private void brush(int aX, int aY, int aBrushSize) {
+        int tStart = -(aBrushSize / 2);
+        fillPixels(aX + tStart, aY + tStart, aX + tStart + aBrushSize, aY + tStart + aBrushSize);
+    }
+
+    private static int brushSize(float aStrokeWidth) {
+        return Math.max(1, Math.round(aStrokeWidth));
+    }
+
+    /*
+     * Bresenham
+     */
+    private void rasterizeLine(float aXStart, float aYStart, float aXEnd, float aYEnd, int aBrushSize) {
+        int x0 = (int) Math.floor(aXStart);
+        int y0 = (int) Math.floor(aYStart);
+        int x1 = (int) Math.floor(aXEnd);
+        int y1 = (int) Math.floor(aYEnd);
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int err = dx + dy;
+        while (true) {
+            if (aBrushSize == 1) {
+                touchPixel(x0, y0);
+            } else {
+                brush(x0, y0, aBrushSize);
+            }
+            if (x0 == x1 && y0 == y1) {
+                break;
+            }
+            int e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x0 += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+    }
+
+    @Override
+    public void drawColor(int aColor) {
+        startPrimitive(PRIMITIVE_COLOR);
+        fillPixels(0, 0, mWidth, mHeight);
+        endPrimitive(PRIMITIVE_COLOR, "", 0, aColor);
+    }
+
+    @Override
+    public void drawPoint(float aX, float aY, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        startPrimitive(PRIMITIVE_POINT);
+        brush((int) Math.floor(aX), (int) Math.floor(aY), brushSize(aStrokeWidth));
+        endPrimitive(PRIMITIVE_POINT, mTrace == null ? null : aX + "," + aY, aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void drawLine(float aXStart, float aYStart, float aXEnd, float aYEnd, float aStrokeWidth, int aColor, boolean aAntiAlias) {
+        startPrimitive(PRIMITIVE_LINE);
+        mNumberOfLineSegments++;
+        rasterizeLine(aXStart, aYStart, aXEnd, aYEnd, brushSize(aStrokeWidth));
+        endPrimitive(PRIMITIVE_LINE, mTrace == null ? null : aXStart + "," + aYStart + "-" + aXEnd + "," + aYEnd, aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void drawLines(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        startPrimitive(PRIMITIVE_LINES);
+        int tBrushSize = brushSize(aStrokeWidth);
+        int tEnd = aOffset + aCount - 3;
+        for (int i = aOffset; i < tEnd; i += 4) {
+            rasterizeLine(aPoints[i], aPoints[i + 1], aPoints[i + 2], aPoints[i + 3], tBrushSize);
+        }
+        mNumberOfLineSegments += aCount / 4;
+        endPrimitive(PRIMITIVE_LINES, mTrace == null ? null : "n=" + (aCount / 4), aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void drawPoints(float[] aPoints, int aOffset, int aCount, float aStrokeWidth, int aColor) {
+        startPrimitive(PRIMITIVE_POINTS);
+        int tBrushSize = brushSize(aStrokeWidth);
+        int tEnd = aOffset + aCount - 1;
+        for (int i = aOffset; i < tEnd; i += 2) {
+            brush((int) Math.floor(aPoints[i]), (int) Math.floor(aPoints[i + 1]), tBrushSize);
+        }
+        endPrimitive(PRIMITIVE_POINTS, mTrace == null ? null : "n=" + (aCount / 2), aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void fillRects(float[] aRects, int aOffset, int aCount, int aColor) {
+        startPrimitive(PRIMITIVE_FILL_RECTS);
+        int tEnd = aOffset + aCount - 3;
+        for (int i = aOffset; i < tEnd; i += 4) {
+            fillPixels(Math.round(aRects[i]), Math.round(aRects[i + 1]), Math.round(aRects[i + 2]), Math.round(aRects[i + 3]));
+        }
+        endPrimitive(PRIMITIVE_FILL_RECTS, mTrace == null ? null : "n=" + (aCount / 4), 0, aColor);
+    }
+
+    @Override
+    public void drawPixelRow(int[] aColors, int aCount, float aLeft, float aTop, float aRight, float aBottom) {
+        startPrimitive(PRIMITIVE_PIXEL_ROW);
+        fillPixels(Math.round(aLeft), Math.round(aTop), Math.round(aRight), Math.round(aBottom));
+        endPrimitive(PRIMITIVE_PIXEL_ROW, mTrace == null ? null : "n=" + aCount + " " + aLeft + "," + aTop, 0, aColors[0]);
+    }
+
+    @Override
+    public void drawRect(float aLeft, float aTop, float aRight, float aBottom, float aStrokeWidth, int aColor, boolean aFill) {
+        int tLeft = Math.round(aLeft);
+        int tTop = Math.round(aTop);
+        int tRight = Math.round(aRight);
+        int tBottom = Math.round(aBottom);
+        if (aFill) {
+            startPrimitive(PRIMITIVE_FILL_RECT);
+            fillPixels(tLeft, tTop, tRight, tBottom);
+            endPrimitive(PRIMITIVE_FILL_RECT, mTrace == null ? null : tLeft + "," + tTop + "-" + tRight + "," + tBottom, 0, aColor);
+        } else {
+            startPrimitive(PRIMITIVE_RECT);
+            // The stroke is centered on the outline
+            int tStroke = brushSize(aStrokeWidth);
+            int tOutside = tStroke / 2;
+            int tInside = tStroke - tOutside;
+            fillPixels(tLeft - tOutside, tTop - tOutside, tRight + tOutside, tTop + tInside); // top
+            fillPixels(tLeft - tOutside, tBottom - tInside, tRight + tOutside, tBottom + tOutside); // bottom
+            fillPixels(tLeft - tOutside, tTop - tOutside, tLeft + tInside, tBottom + tOutside); // left
+            fillPixels(tRight - tInside, tTop - tOutside, tRight + tOutside, tBottom + tOutside); // right
+            endPrimitive(PRIMITIVE_RECT, mTrace == null ? null : tLeft + "," + tTop + "-" + tRight + "," + tBottom, aStrokeWidth,
+                    aColor);
+        }
+    }
+
+    @Override
+    public void drawCircle(float aX, float aY, float aRadius, float aStrokeWidth, int aColor, boolean aFill) {
+        int tPrimitiveType = aFill ? PRIMITIVE_FILL_CIRCLE : PRIMITIVE_CIRCLE;
+        startPrimitive(tPrimitiveType);
+        float tOuterRadius = aRadius;
+        float tInnerRadius = -1;
+        if (!aFill) {
+            float tHalfStroke = brushSize(aStrokeWidth) / 2.0f;
+            tOuterRadius = aRadius + tHalfStroke;
+            tInnerRadius = aRadius - tHalfStroke;
+        }
+        float tOuterSquare = tOuterRadius * tOuterRadius;
+        float tInnerSquare = tInnerRadius < 0 ? -1 : tInnerRadius * tInnerRadius;
+        // clip to target, the stroke can be very big
+        int tYStart = (int) Math.max(Math.floor(aY - tOuterRadius), 0);
+        int tYEnd = (int) Math.min(Math.ceil(aY + tOuterRadius), mHeight - 1);
+        int tXStart = (int) Math.max(Math.floor(aX - tOuterRadius), 0);
+        int tXEnd = (int) Math.min(Math.ceil(aX + tOuterRadius), mWidth - 1);
+        for (int y = tYStart; y <= tYEnd; y++) {
+            float tDY = y + 0.5f - aY;
+            for (int x = tXStart; x <= tXEnd; x++) {
+                float tDX = x + 0.5f - aX;
+                float tSquare = tDX * tDX + tDY * tDY;
+                if (tSquare <= tOuterSquare && tSquare >= tInnerSquare) {
+                    touchPixel(x, y);
+                }
+            }
+        }
+        endPrimitive(tPrimitiveType, mTrace == null ? null : aX + "," + aY + " r=" + aRadius, aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void drawPolygon(int[] aCoordinates, int aLength, float aScaleFactor, float aStrokeWidth, int aColor, boolean aFill) {
+        int tPrimitiveType = aFill ? PRIMITIVE_FILL_POLYGON : PRIMITIVE_POLYGON;
+        startPrimitive(tPrimitiveType);
+        int tNumberOfPoints = aLength / 2;
+        if (aFill) {
+            /*
+             * Even-odd scanline fill at pixel centers
+             */
+            float tMinY = Float.MAX_VALUE;
+            float tMaxY = -Float.MAX_VALUE;
+            for (int i = 0; i < tNumberOfPoints; i++) {
+                float tY = aCoordinates[i * 2 + 1] * aScaleFactor;
+                tMinY = Math.min(tMinY, tY);
+                tMaxY = Math.max(tMaxY, tY);
+            }
+            float[] tCrossings = new float[tNumberOfPoints];
+            int tYEnd = (int) Math.min(Math.ceil(tMaxY), mHeight - 1);
+            for (int y = (int) Math.max(Math.floor(tMinY), 0); y <= tYEnd; y++) {
+                float tScanY = y + 0.5f;
+                int tNumberOfCrossings = 0;
+                for (int i = 0; i < tNumberOfPoints; i++) {
+                    int j = (i + 1) % tNumberOfPoints;
+                    float tX1 = aCoordinates[i * 2] * aScaleFactor;
+                    float tY1 = aCoordinates[i * 2 + 1] * aScaleFactor;
+                    float tX2 = aCoordinates[j * 2] * aScaleFactor;
+                    float tY2 = aCoordinates[j * 2 + 1] * aScaleFactor;
+                    if ((tY1 <= tScanY && tY2 > tScanY) || (tY2 <= tScanY && tY1 > tScanY)) {
+                        tCrossings[tNumberOfCrossings++] = tX1 + (tScanY - tY1) * (tX2 - tX1) / (tY2 - tY1);
+                    }
+                }
+                Arrays.sort(tCrossings, 0, tNumberOfCrossings);
+                for (int i = 0; i + 1 < tNumberOfCrossings; i += 2) {
+                    fillPixels(Math.round(tCrossings[i]), y, Math.round(tCrossings[i + 1]), y + 1);
+                }
+            }
+        } else {
+            int tBrushSize = brushSize(aStrokeWidth);
+            for (int i = 0; i < tNumberOfPoints; i++) {
+                int j = (i + 1) % tNumberOfPoints;
+                rasterizeLine(aCoordinates[i * 2] * aScaleFactor, aCoordinates[i * 2 + 1] * aScaleFactor, aCoordinates[j * 2] * aScaleFactor,
+                        aCoordinates[j * 2 + 1] * aScaleFactor, tBrushSize);
+            }
+            mNumberOfLineSegments += tNumberOfPoints;
+        }
+        endPrimitive(tPrimitiveType, mTrace == null ? null : "n=" + tNumberOfPoints, aStrokeWidth, aColor);
+    }
+
+    @Override
+    public void drawText(String aText, float aX, float aY, float aTextSize, int aColor) {
+        startPrimitive(PRIMITIVE_TEXT);
+        // Box from ascend to descend
+        float tTop = aY - aTextSize * CommandRenderer.TEXT_ASCEND_FACTOR;
+        float tBottom = aY + aTextSize * CommandRenderer.TEXT_DESCEND_FACTOR;
+        fillPixels(Math.round(aX), Math.round(tTop), Math.round(aX + measureText(aText, 0, aText.length(), aTextSize)), Math.round(tBottom));
+        endPrimitive(PRIMITIVE_TEXT, mTrace == null ? null : aX + "," + aY + " s=" + aTextSize + " \"" + aText + "\"", 0, aColor);
+    }
+
+    /*
+     * Monospace font like the one used by the app
+     */
+    @Override
+    public float measureText(String aText, int aStart, int aEnd, float aTextSize) {
+        return (aEnd - aStart) * aTextSize * CommandRenderer.TEXT_WIDTH_FACTOR;
+    }
+}
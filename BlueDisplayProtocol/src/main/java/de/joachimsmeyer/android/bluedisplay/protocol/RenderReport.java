@@ -0,0 +1,356 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Renders the test page and optional capture files headless to a RecordingDrawTarget and prints the statistics.
+ * With --baseline the statistics are compared with a stored baseline and the exit code is 1 on a regression,
+ * i.e. if more primitives are drawn, more pixels are touched or the overdraw increased.
+ * It also checks, that the replay of a CommandJournal after a scale change draws the same as the direct rendering.
+ *
+ * Usage: RenderReport [--baseline <file>] [--write-baseline <file>] [--trace <file>] [--size <width>x<height>] [<capture file>...]
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.FUNCTION_CLEAR_DISPLAY;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class RenderReport {
+
+    private static final int TEST_PAGE_START_Y = 100; // below the native patterns on the device
+    private static final float[] TEST_PAGE_SCALE_FACTORS = {1.0f, 2.0f};
+    private static final float ALLOWED_INCREASE = 0.01f; // 1 percent
+
+    // Scene name + "." + key -> value
+    private final Map<String, String> mResults = new TreeMap<>();
+    private final StringBuilder mTrace = new StringBuilder();
+    private boolean mTraceEnabled;
+
+    public Map<String, String> getResults() {
+        return mResults;
+    }
+
+    public void setTraceEnabled(boolean aEnable) {
+        mTraceEnabled = aEnable;
+    }
+
+    public void writeTrace(Writer aOut) throws IOException {
+        aOut.append(mTrace);
+    }
+
+    public void renderTestPage(float aScaleFactor) throws IOException {
+        RecordingDrawTarget tTarget = createTarget(TestPage.TEST_CANVAS_WIDTH, TestPage.TEST_CANVAS_HEIGHT, aScaleFactor);
+        RenderingCommandListener tListener = createListener(tTarget, TestPage.TEST_CANVAS_WIDTH, TestPage.TEST_CANVAS_HEIGHT, aScaleFactor);
+        int[] tParameters = {0xFFFF}; // clear screen with white
+        tListener.interpretCommand(FUNCTION_CLEAR_DISPLAY, tParameters, 1, null, null, 0);
+        TestPage.drawCommandPart(tListener, tTarget, aScaleFactor, TestPage.TEST_CANVAS_WIDTH, TestPage.TEST_CANVAS_HEIGHT,
+                TEST_PAGE_START_Y);
+        addResults("testpage.scale" + Math.round(aScaleFactor), tTarget, tListener);
+    }
+
+    /**
+     * Renders the test functions of the test page and some button and slider drawings with scale factor 1 and a journal,
+     * then replays the journal with aScaleFactor and compares the result with the direct rendering with aScaleFactor.
+     * The reference drawings of the test page are not journaled, so they go to a separate target.
+     *
+     * @return true if replay and direct rendering are equal
+     */
+    public boolean checkJournalReplay(float aScaleFactor) {
+        int tWidth = TestPage.TEST_CANVAS_WIDTH;
+        int tHeight = TestPage.TEST_CANVAS_HEIGHT;
+        RecordingDrawTarget tDirectTarget = createTarget(tWidth, tHeight, aScaleFactor);
+        drawJournalScene(createListener(tDirectTarget, tWidth, tHeight, aScaleFactor), aScaleFactor);
+
+        RecordingDrawTarget tTarget = createTarget(tWidth, tHeight, 1.0f);
+        RenderingCommandListener tListener = createListener(tTarget, tWidth, tHeight, 1.0f);
+        CommandRenderer tRenderer = tListener.getCommandRenderer();
+        CommandJournal tJournal = new CommandJournal();
+        tRenderer.setJournal(tJournal);
+        drawJournalScene(tListener, 1.0f);
+
+        RecordingDrawTarget tReplayTarget = createTarget(tWidth, tHeight, aScaleFactor);
+        tRenderer.setDrawTarget(tReplayTarget);
+        tRenderer.setGeometry(aScaleFactor, tWidth, tHeight, tReplayTarget.getWidth(), tReplayTarget.getHeight());
+        boolean tReplayed = tRenderer.replayJournal();
+
+        String tSceneName = "journal.replay" + Math.round(aScaleFactor);
+        System.out.println(tSceneName + ": " + tJournal.getNumberOfEntries() + " entries in " + tJournal.getSize() + " bytes");
+        if (!tReplayed || !tDirectTarget.getSummary().equals(tReplayTarget.getSummary())) {
+            System.out.println("REGRESSION " + tSceneName + " differs from direct rendering:\n direct: " + tDirectTarget.getSummary()
+                    + "\n replay: " + tReplayTarget.getSummary());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Renders the scene of checkJournalReplay() to a DeferredDrawTarget and replays it once completely and once tile by tile
+     * with clipping, like the tiled backing store of the app does.
+     * If the bounds of a primitive are too small, the tiled replay misses pixels.
+     *
+     * @return true if both replays touch the same pixels as the direct rendering
+     */
+    public boolean checkDeferredReplay(float aScaleFactor, int aTileSize) {
+        int tWidth = TestPage.TEST_CANVAS_WIDTH;
+        int tHeight = TestPage.TEST_CANVAS_HEIGHT;
+        RecordingDrawTarget tDirectTarget = createTarget(tWidth, tHeight, aScaleFactor);
+        drawJournalScene(createListener(tDirectTarget, tWidth, tHeight, aScaleFactor), aScaleFactor);
+
+        RecordingDrawTarget tReplayTarget = createTarget(tWidth, tHeight, aScaleFactor);
+        DeferredDrawTarget tDeferredTarget = new DeferredDrawTarget(tReplayTarget);
+        CommandRenderer tRenderer = new CommandRenderer(tDeferredTarget);
+        tRenderer.setGeometry(aScaleFactor, tWidth, tHeight, tReplayTarget.getWidth(), tReplayTarget.getHeight());
+        drawJournalScene(new RenderingCommandListener(tRenderer, null), aScaleFactor);
+        tDeferredTarget.replay(tReplayTarget);
+
+        RecordingDrawTarget tTiledTarget = createTarget(tWidth, tHeight, aScaleFactor);
+        int tColumns = (tTiledTarget.getWidth() + aTileSize - 1) / aTileSize;
+        int tRows = (tTiledTarget.getHeight() + aTileSize - 1) / aTileSize;
+        boolean[] tDirtyTiles = new boolean[tColumns * tRows];
+        int tNumberOfDirtyTiles = tDeferredTarget.markTiles(aTileSize, tColumns, tRows, tDirtyTiles);
+        for (int i = 0; i < tDirtyTiles.length; i++) {
+            if (tDirtyTiles[i]) {
+                int tLeft = (i % tColumns) * aTileSize;
+                int tTop = (i / tColumns) * aTileSize;
+                tTiledTarget.setClip(tLeft, tTop, tLeft + aTileSize, tTop + aTileSize);
+                tDeferredTarget.replay(tTiledTarget, tLeft, tTop, tLeft + aTileSize, tTop + aTileSize);
+            }
+        }
+        tTiledTarget.clearClip();
+
+        String tSceneName = "deferred.replay" + Math.round(aScaleFactor);
+        System.out.println(tSceneName + ": " + tDeferredTarget.getNumberOfPrimitives() + " primitives in " + tNumberOfDirtyTiles
+                + " of " + tDirtyTiles.length + " tiles");
+        if (!tDirectTarget.getSummary().equals(tReplayTarget.getSummary())) {
+            System.out.println("REGRESSION " + tSceneName + " differs from direct rendering:\n direct: " + tDirectTarget.getSummary()
+                    + "\n replay: " + tReplayTarget.getSummary());
+            return false;
+        }
+        if (tDirectTarget.getNumberOfPixelsTouched() != tTiledTarget.getNumberOfPixelsTouched()
+                || tDirectTarget.getNumberOfUniquePixelsTouched() != tTiledTarget.getNumberOfUniquePixelsTouched()) {
+            System.out.println("REGRESSION " + tSceneName + " tiled replay misses pixels:\n direct: " + tDirectTarget.getSummary()
+                    + "\n tiled:  " + tTiledTarget.getSummary());
+            return false;
+        }
+        return true;
+    }
+
+    private void drawJournalScene(final RenderingCommandListener aListener, float aScaleFactor) {
+        int[] tParameters = {0xFFFF}; // clear screen with white
+        aListener.interpretCommand(FUNCTION_CLEAR_DISPLAY, tParameters, 1, null, null, 0);
+        /*
+         * The test functions pass unused parameters, which exceed 16 bit (e.g. a color as stroke width).
+         * Deliver them like the parser does, since the journal stores 2 byte values like the wire.
+         * The logo is omitted, since it passes less parameters than the renderer reads.
+         */
+        CommandParser.CommandListener tWireListener = new CommandParser.CommandListener() {
+            @Override
+            public void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                         int aDataLength) {
+                for (int i = 0; i < aParamsLength; i++) {
+                    aParameters[i] = (short) aParameters[i];
+                }
+                aListener.interpretCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength);
+            }
+
+            @Override
+            public void onSerialPrint(String aString) {
+                aListener.onSerialPrint(aString);
+            }
+        };
+        TestPage.testBDFunctions(tWireListener, createTarget(TestPage.TEST_CANVAS_WIDTH, TestPage.TEST_CANVAS_HEIGHT, aScaleFactor),
+                aScaleFactor, 5, TEST_PAGE_START_Y, TestPage.TEST_CANVAS_HEIGHT, false);
+        // like TouchButton.drawButton() and TouchSlider.drawSlider()
+        CommandRenderer tRenderer = aListener.getCommandRenderer();
+        tRenderer.fillRectRel(10, 10, 60, 20, 0xFF00FF00);
+        tRenderer.drawTextWithBackground(12, 25, "Button", 11, 0xFF000000, 0xFF00FF00);
+        tRenderer.fillRect(80, 10, 90, 60, 0xFF0000FF);
+    }
+
+    public void renderCapture(File aCaptureFile, int aWidth, int aHeight) throws IOException {
+        RecordingDrawTarget tTarget = createTarget(aWidth, aHeight, 1.0f);
+        RenderingCommandListener tListener = createListener(tTarget, aWidth, aHeight, 1.0f);
+        WireCaptureReader tReader = new WireCaptureReader(aCaptureFile);
+        try {
+            new CaptureReplayer(tListener, false).replay(tReader);
+        } finally {
+            tReader.close();
+        }
+        addResults(aCaptureFile.getName(), tTarget, tListener);
+    }
+
+    private RecordingDrawTarget createTarget(int aWidth, int aHeight, float aScaleFactor) {
+        RecordingDrawTarget tTarget = new RecordingDrawTarget((int) (aWidth * aScaleFactor), (int) (aHeight * aScaleFactor));
+        tTarget.setTraceEnabled(mTraceEnabled);
+        return tTarget;
+    }
+
+    private static RenderingCommandListener createListener(RecordingDrawTarget aTarget, int aWidth, int aHeight, float aScaleFactor) {
+        CommandRenderer tRenderer = new CommandRenderer(aTarget);
+        tRenderer.setGeometry(aScaleFactor, aWidth, aHeight, aTarget.getWidth(), aTarget.getHeight());
+        return new RenderingCommandListener(tRenderer, aTarget);
+    }
+
+    private void addResults(String aSceneName, RecordingDrawTarget aTarget, RenderingCommandListener aListener) throws IOException {
+        mResults.put(aSceneName + ".commands", Integer.toString(aListener.getNumberOfRenderedCommands()));
+        mResults.put(aSceneName + ".errors", Integer.toString(aListener.getNumberOfErrors()));
+        mResults.put(aSceneName + ".primitives", Integer.toString(aTarget.getNumberOfPrimitives()));
+        mResults.put(aSceneName + ".lineSegments", Long.toString(aTarget.getNumberOfLineSegments()));
+        mResults.put(aSceneName + ".pixels", Long.toString(aTarget.getNumberOfPixelsTouched()));
+        mResults.put(aSceneName + ".uniquePixels", Integer.toString(aTarget.getNumberOfUniquePixelsTouched()));
+        mResults.put(aSceneName + ".overdraw", String.format(Locale.US, "%.3f", aTarget.getOverdrawRatio()));
+        System.out.println(aSceneName + ": " + aTarget.getSummary());
+        if (mTraceEnabled) {
+            mTrace.append("# ").append(aSceneName).append('\n');
+            aTarget.writeTrace(mTrace);
+        }
+    }
+
+    /**
+     * Only the keys contained in both, the baseline and the results are compared.
+     * Commands and unique pixels are only informational.
+     *
+     * @return the number of regressions
+     */
+    public int compareWithBaseline(Properties aBaseline) {
+        int tRegressions = 0;
+        for (String tKey : new TreeSet<>(aBaseline.stringPropertyNames())) {
+            String tCurrent = mResults.get(tKey);
+            if (tCurrent == null || tKey.endsWith(".commands") || tKey.endsWith(".uniquePixels")) {
+                continue;
+            }
+            double tBaselineValue = Double.parseDouble(aBaseline.getProperty(tKey));
+            double tCurrentValue = Double.parseDouble(tCurrent);
+            if (tKey.endsWith(".errors") ? tCurrentValue > tBaselineValue : tCurrentValue > tBaselineValue * (1 + ALLOWED_INCREASE)) {
+                System.out.println("REGRESSION " + tKey + ": " + aBaseline.getProperty(tKey) + " -> " + tCurrent);
+                tRegressions++;
+            } else if (tCurrentValue < tBaselineValue) {
+                System.out.println("Improved " + tKey + ": " + aBaseline.getProperty(tKey) + " -> " + tCurrent
+                        + " Consider updating the baseline.");
+            }
+        }
+        return tRegressions;
+    }
+
+    public void writeBaseline(Writer aOut) throws IOException {
+        aOut.write("# Render statistics of RenderReport. Regenerate with: gradlew :BlueDisplayProtocol:renderBaseline\n");
+        for (Map.Entry<String, String> tEntry : mResults.entrySet()) {
+            aOut.write(tEntry.getKey() + "=" + tEntry.getValue() + "\n");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String tBaselineFileName = null;
+        String tWriteBaselineFileName = null;
+        String tTraceFileName = null;
+        int tWidth = TestPage.TEST_CANVAS_WIDTH;
+        int tHeight = TestPage.TEST_CANVAS_HEIGHT;
+        RenderReport tReport = new RenderReport();
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("--"); i++) {
+                if ("--baseline".equals(args[i])) {
+                    tBaselineFileName = args[++i];
+                } else if ("--write-baseline".equals(args[i])) {
+                    tWriteBaselineFileName = args[++i];
+                } else if ("--trace".equals(args[i])) {
+                    tTraceFileName = args[++i];
+                } else if ("--size".equals(args[i])) {
+                    String[] tSize = args[++i].split("x");
+                    tWidth = Integer.parseInt(tSize[0]);
+                    tHeight = Integer.parseInt(tSize[1]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Usage: RenderReport [--baseline <file>] [--write-baseline <file>] [--trace <file>] "
+                    + "[--size <width>x<height>] [<capture file>...]");
+            System.exit(2);
+        }
+        tReport.setTraceEnabled(tTraceFileName != null);
+        ProtocolLog.setLogger(new ProtocolLog.Logger() {
+            @Override
+            public void log(int aLevel, String aTag, String aMessage) {
+                System.err.println(aTag + ": " + aMessage);
+            }
+        }, ProtocolLog.WARN);
+
+        for (float tScaleFactor : TEST_PAGE_SCALE_FACTORS) {
+            tReport.renderTestPage(tScaleFactor);
+        }
+        boolean tJournalReplayIsEqual = tReport.checkJournalReplay(2.0f);
+        boolean tDeferredReplayIsEqual = tReport.checkDeferredReplay(2.0f, 64);
+        for (; i < args.length; i++) {
+            tReport.renderCapture(new File(args[i]), tWidth, tHeight);
+        }
+
+        if (tTraceFileName != null) {
+            Writer tWriter = new FileWriter(tTraceFileName);
+            try {
+                tReport.writeTrace(tWriter);
+            } finally {
+                tWriter.close();
+            }
+        }
+        if (tWriteBaselineFileName != null) {
+            Writer tWriter = new FileWriter(tWriteBaselineFileName);
+            try {
+                tReport.writeBaseline(tWriter);
+            } finally {
+                tWriter.close();
+            }
+            System.out.println("Baseline written to " + tWriteBaselineFileName);
+        }
+        if (tBaselineFileName != null) {
+            Properties tBaseline = new Properties();
+            InputStream tInputStream = new FileInputStream(tBaselineFileName);
+            try {
+                tBaseline.load(tInputStream);
+            } finally {
+                tInputStream.close();
+            }
+            int tRegressions = tReport.compareWithBaseline(tBaseline);
+            if (tRegressions > 0) {
+                System.out.println(tRegressions + " render regression(s) compared to " + tBaselineFileName);
+                System.exit(1);
+            }
+            System.out.println("No render regressions compared to " + tBaselineFileName);
+        }
+        if (!tJournalReplayIsEqual || !tDeferredReplayIsEqual) {
+            System.exit(1);
+        }
+    }
+}
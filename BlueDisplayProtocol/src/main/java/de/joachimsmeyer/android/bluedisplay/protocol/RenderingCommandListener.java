@@ -0,0 +1,111 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * CommandListener for the PC, which renders the display commands with a CommandRenderer,
+ * like RPCView does on the device. All other commands (buttons, sliders, tone etc.) are only counted.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.FUNCTION_GLOBAL_SETTINGS;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.SUBFUNCTION_GLOBAL_SET_CODEPAGE;
+
+public class RenderingCommandListener implements CommandParser.CommandListener {
+
+    private static final String LOG_TAG = "RenderingListener";
+
+    private final CommandRenderer mCommandRenderer;
+    private final RecordingDrawTarget mRecordingDrawTarget; // may be null, then no attribution to commands is done
+
+    private int mNumberOfRenderedCommands;
+    private int mNumberOfOtherCommands;
+    private int mNumberOfErrors;
+
+    public RenderingCommandListener(CommandRenderer aCommandRenderer, RecordingDrawTarget aRecordingDrawTarget) {
+        mCommandRenderer = aCommandRenderer;
+        mRecordingDrawTarget = aRecordingDrawTarget;
+    }
+
+    @Override
+    public void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                 int aDataLength) {
+        try {
+            if (aCommand == FUNCTION_GLOBAL_SETTINGS) {
+                // Only the settings affecting the rendering
+                if (aParameters[0] == SUBFUNCTION_GLOBAL_SET_CODEPAGE) {
+                    mCommandRenderer.setCodepage(aParameters[1]);
+                } else if (aParameters[0] == SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING) {
+                    mCommandRenderer.setCharacterMapping(aParameters[1], aParameters[2]);
+                }
+                mNumberOfOtherCommands++;
+                return;
+            }
+            if (mRecordingDrawTarget != null) {
+                mRecordingDrawTarget.setCurrentCommand(aCommand);
+            }
+            if (mCommandRenderer.renderCommand(aCommand, aParameters, aParamsLength, aDataBytes, aDataInts, aDataLength)) {
+                mNumberOfRenderedCommands++;
+            } else {
+                mNumberOfOtherCommands++;
+            }
+        } catch (Exception e) {
+            mNumberOfErrors++;
+            ProtocolLog.e(LOG_TAG, "Exception caught for command 0x" + Integer.toHexString(aCommand) + ". paramsLength=" + aParamsLength
+                    + " dataLength=" + aDataLength + " Exception=" + e);
+        } finally {
+            if (mRecordingDrawTarget != null) {
+                mRecordingDrawTarget.clearCurrentCommand();
+            }
+        }
+    }
+
+    @Override
+    public void onSerialPrint(String aString) {
+        // not rendered
+    }
+
+    public CommandRenderer getCommandRenderer() {
+        return mCommandRenderer;
+    }
+
+    public int getNumberOfRenderedCommands() {
+        return mNumberOfRenderedCommands;
+    }
+
+    public int getNumberOfOtherCommands() {
+        return mNumberOfOtherCommands;
+    }
+
+    public int getNumberOfErrors() {
+        return mNumberOfErrors;
+    }
+
+    public void resetStatistics() {
+        mNumberOfRenderedCommands = 0;
+        mNumberOfOtherCommands = 0;
+        mNumberOfErrors = 0;
+    }
+}
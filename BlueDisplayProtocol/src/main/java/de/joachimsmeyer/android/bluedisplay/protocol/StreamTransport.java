@@ -0,0 +1,217 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Base of the transports based on an input and output stream like TCP and the in-memory loopback.
+ * The reader thread opens the connection, reads directly into the receive buffer of the Receiver
+ * and closes the connection if the stream ends.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public abstract class StreamTransport implements Transport {
+
+    private static final String LOG_TAG = "StreamTransport";
+
+    protected final Receiver mReceiver;
+    private final String mName;
+
+    private InputStream mInputStream;
+    private OutputStream mOutputStream;
+    private final Object mWriteLock = new Object();
+
+    private Thread mReaderThread;
+    private volatile boolean mConnected;
+    protected volatile boolean mDisconnectRequested;
+
+    protected StreamTransport(String aName, Receiver aReceiver) {
+        mName = aName;
+        mReceiver = aReceiver;
+    }
+
+    /**
+     * Called by the reader thread. Blocks until the connection is established, then calls setStreams().
+     */
+    protected abstract void open() throws IOException;
+
+    /**
+     * Closes the streams of the current connection. Called by the reader thread at end of stream and by disconnect().
+     */
+    protected abstract void close();
+
+    protected void setStreams(InputStream aInputStream, OutputStream aOutputStream) {
+        mInputStream = aInputStream;
+        mOutputStream = aOutputStream;
+    }
+
+    /**
+     * Reads from aInputStream directly into the receive buffer of aReceiver and calls aReceiver.handleReceived().
+     * Used by all transports in their reader loops.
+     *
+     * @return the number of bytes read
+     * @throws EOFException at end of stream
+     */
+    public static int readIntoReceiveBuffer(InputStream aInputStream, Receiver aReceiver) throws IOException {
+        ReceiveBuffer tReceiveBuffer = aReceiver.getReceiveBuffer();
+        int tReadLength = aInputStream.read(tReceiveBuffer.getArray(), tReceiveBuffer.getInIndex(),
+                tReceiveBuffer.getMaxReadSize());
+        if (tReadLength < 0) {
+            throw new EOFException("End of stream");
+        }
+        aReceiver.handleReceived(tReadLength);
+        return tReadLength;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Starts the reader thread, which opens the connection. Does nothing if already connecting or connected.
+     */
+    @Override
+    public void connect() {
+        Thread tOldReaderThread;
+        synchronized (this) {
+            tOldReaderThread = mReaderThread;
+            if (tOldReaderThread != null && tOldReaderThread.isAlive() && !mDisconnectRequested) {
+                return;
+            }
+        }
+        if (tOldReaderThread != null) {
+            // wait for the end of the reader thread of the last connection after disconnect()
+            try {
+                tOldReaderThread.join(1000);
+            } catch (InterruptedException e) {
+                // Just do nothing
+            }
+        }
+        synchronized (this) {
+            mDisconnectRequested = false;
+            mReaderThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    readLoop();
+                }
+            }, mName + "Reader");
+            mReaderThread.start();
+        }
+    }
+
+    private void readLoop() {
+        try {
+            open();
+            mConnected = true;
+            if (ProtocolLog.isINFO()) {
+                ProtocolLog.i(LOG_TAG, mName + " connected");
+            }
+            onConnected();
+            while (true) {
+                readIntoReceiveBuffer(mInputStream, mReceiver);
+            }
+        } catch (IOException e) {
+            if (!mDisconnectRequested && ProtocolLog.isINFO()) {
+                ProtocolLog.i(LOG_TAG, mName + " reading stopped. " + e);
+            }
+        } finally {
+            boolean tWasConnected = mConnected;
+            mConnected = false;
+            close();
+            if (tWasConnected && !mDisconnectRequested) {
+                onDisconnected();
+            }
+        }
+    }
+
+    /**
+     * Called by the reader thread after open()
+     */
+    protected void onConnected() {
+        mReceiver.onConnected(this);
+    }
+
+    /**
+     * Called by the reader thread if the connection was not closed by disconnect()
+     */
+    protected void onDisconnected() {
+        mReceiver.onDisconnected(this);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public void writeEvent(byte[] aEventDataBuffer, int aEventDataLength) {
+        if (!mConnected) {
+            return;
+        }
+        synchronized (mWriteLock) {
+            try {
+                mOutputStream.write(aEventDataBuffer, 0, aEventDataLength);
+                mOutputStream.flush();
+            } catch (IOException e) {
+                // The reader thread will detect the closed connection
+                if (mConnected && ProtocolLog.isINFO()) {
+                    ProtocolLog.i(LOG_TAG, mName + " write failed. " + e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        mDisconnectRequested = true;
+        mConnected = false;
+        close();
+        if (mReaderThread != null) {
+            // unblocks a read of a pipe
+            mReaderThread.interrupt();
+        }
+    }
+
+    /**
+     * Waits for the end of the reader thread, e.g. after the client closed the connection.
+     */
+    public void join(long aTimeoutMillis) {
+        Thread tReaderThread;
+        synchronized (this) {
+            tReaderThread = mReaderThread;
+        }
+        if (tReaderThread != null) {
+            try {
+                tReaderThread.join(aTimeoutMillis);
+            } catch (InterruptedException e) {
+                // Just do nothing
+            }
+        }
+    }
+}
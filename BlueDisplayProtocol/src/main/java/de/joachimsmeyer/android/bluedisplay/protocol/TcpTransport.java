@@ -0,0 +1,168 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * TCP transport for WiFi clients like the ESP32 and for the tools on the PC.
+ * As server it listens on a port and accepts one client per connect(), as client it connects to host and port.
+ * Nagle is disabled, since the client waits for the answer of each callback event.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+public class TcpTransport extends StreamTransport {
+
+    public static final int DEFAULT_PORT = 4711;
+    public static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final String mHost; // null for server
+    private final int mPort;
+    private final InetAddress mBindAddress;
+
+    private ServerSocket mServerSocket;
+    private volatile Socket mSocket;
+
+    /**
+     * Server which accepts one client on aPort at each connect()
+     *
+     * @param aBindAddress null for all interfaces
+     * @param aPort        0 for any free port, see getLocalPort()
+     */
+    public TcpTransport(Receiver aReceiver, InetAddress aBindAddress, int aPort) {
+        super("TCP", aReceiver);
+        mHost = null;
+        mBindAddress = aBindAddress;
+        mPort = aPort;
+    }
+
+    /**
+     * Client which connects to aHost:aPort
+     */
+    public TcpTransport(Receiver aReceiver, String aHost, int aPort) {
+        super("TCP", aReceiver);
+        mHost = aHost;
+        mBindAddress = null;
+        mPort = aPort;
+    }
+
+    /**
+     * Creates the server socket. Called by connect() if not called before.
+     * Call it before connect() to know the port if the transport was created with port 0.
+     */
+    public synchronized void bind() throws IOException {
+        if (mServerSocket == null || mServerSocket.isClosed()) {
+            mServerSocket = new ServerSocket(mPort, 1, mBindAddress);
+        }
+    }
+
+    public synchronized int getLocalPort() {
+        if (mServerSocket != null) {
+            return mServerSocket.getLocalPort();
+        }
+        return mPort;
+    }
+
+    /**
+     * @return Address and port of the connected client or server or null
+     */
+    public String getRemoteAddressString() {
+        Socket tSocket = mSocket;
+        if (tSocket == null) {
+            return null;
+        }
+        return tSocket.getInetAddress().getHostAddress() + ":" + tSocket.getPort();
+    }
+
+    /**
+     * @return Address without the port, which changes with each connect of a client, or null
+     */
+    public String getRemoteHostAddress() {
+        Socket tSocket = mSocket;
+        if (tSocket == null) {
+            return null;
+        }
+        return tSocket.getInetAddress().getHostAddress();
+    }
+
+    @Override
+    protected void open() throws IOException {
+        Socket tSocket;
+        if (mHost == null) {
+            if (mDisconnectRequested) {
+                throw new IOException("Disconnected");
+            }
+            bind();
+            ServerSocket tServerSocket;
+            synchronized (this) {
+                tServerSocket = mServerSocket;
+            }
+            tSocket = tServerSocket.accept();
+        } else {
+            tSocket = new Socket();
+            tSocket.connect(new InetSocketAddress(mHost, mPort), CONNECT_TIMEOUT_MILLIS);
+        }
+        tSocket.setTcpNoDelay(true);
+        mSocket = tSocket;
+        if (mDisconnectRequested) {
+            // disconnect() was called during accept or connect
+            close();
+            throw new IOException("Disconnected");
+        }
+        setStreams(tSocket.getInputStream(), tSocket.getOutputStream());
+    }
+
+    @Override
+    protected void close() {
+        Socket tSocket = mSocket;
+        mSocket = null;
+        if (tSocket != null) {
+            try {
+                tSocket.close();
+            } catch (IOException e) {
+                // Just do nothing
+            }
+        }
+    }
+
+    /**
+     * Closes the connection and the server socket
+     */
+    @Override
+    public synchronized void disconnect() {
+        super.disconnect();
+        if (mServerSocket != null) {
+            try {
+                mServerSocket.close();
+            } catch (IOException e) {
+                // Just do nothing
+            }
+            mServerSocket = null;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * The command based part of the test page, i.e. the BlueDisplay logo and the test of the basic draw functions.
+ * The commands are sent directly to a CommandListener. The reference marks are drawn directly on a DrawTarget.
+ * Used by RPCView.showTestpage() and for headless render checks on the PC.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+
+public final class TestPage {
+
+    public static final int TEST_CANVAS_WIDTH = 320;
+    public static final int TEST_CANVAS_HEIGHT = 240;
+
+    private static final int REFERENCE_COLOR = 0xFF000000; // black
+    private static final float REFERENCE_STROKE_WIDTH = 1;
+
+    private TestPage() {
+    }
+
+    /**
+     * Draws the logo at the lower right corner and the function test below aStartY
+     */
+    public static void drawCommandPart(CommandParser.CommandListener aListener, DrawTarget aReferenceTarget, float aScaleFactor,
+                                       int aRequestedCanvasWidth, int aRequestedCanvasHeight, int aStartY) {
+        // The unscaled logo is 450 * 350 and has a left border of 50 and a upper border of 100
+        int tScaleDivisor = 5;
+        // Place it at the lower right corner
+        drawLogo(aListener, aRequestedCanvasWidth - (500 / tScaleDivisor) - 2, aRequestedCanvasHeight - (450 / tScaleDivisor) - 2,
+                tScaleDivisor);
+        testBDFunctions(aListener, aReferenceTarget, aScaleFactor, 5, aStartY, TEST_CANVAS_HEIGHT, false);
+    }
+
+    /*
+     * Start at bottom of page with a Box
+     */
+    public static void testBDFunctions(CommandParser.CommandListener aListener, DrawTarget aReferenceTarget, float aScaleFactor,
+                                       int aStartX, int aStartY, int aCanvasHeight, boolean aCompatibilityMode) {
+
+        int tModeCharacter = 0x4E; // Character 'N'
+        if (aCompatibilityMode) {
+            tModeCharacter = 0x43; // Character 'C'
+        }
+
+        byte[] tByteBuffer = "Testy56789".getBytes();
+        tByteBuffer[5] = (byte) 0x81; // Omega manually set
+        tByteBuffer[6] = (byte) 0x82; // Home
+        tByteBuffer[7] = (byte) 0xB1; // +/-
+        tByteBuffer[8] = (byte) 0xBB; // >>
+        tByteBuffer[9] = (byte) 0xB5; // micro
+
+        int[] tParameters = new int[6];
+
+        /*
+         * direct draw reference line at start
+         * Here we use scale factor since we draw directly on the target
+         */
+        aReferenceTarget.drawLine(aStartX, aScaleFactor * aStartY, aStartX + 30, aScaleFactor * aStartY, REFERENCE_STROKE_WIDTH,
+                REFERENCE_COLOR, false);
+
+        int tStartX = aStartX + 12;
+
+        // draw square box
+        tParameters[0] = tStartX;
+        tParameters[1] = aStartY;
+        tParameters[2] = tStartX + 10;
+        tParameters[3] = aStartY;
+        tParameters[4] = 0; // Color black
+        aListener.interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
+        tParameters[0] = tParameters[2] = tStartX;
+        tParameters[1] = aStartY + 1;
+        tParameters[3] = aStartY + 10;
+        tParameters[4] = 0x7E0; // Color green
+        aListener.interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
+        tParameters[0] = tParameters[2] = tStartX + 10;
+        aListener.interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
+        tParameters[1] = tParameters[3] = aStartY + 10;
+        tParameters[0] = tStartX + 1;
+        tParameters[2] = tStartX + 9;
+        tParameters[4] = 0xF800; // Color red
+        // red bottom line as rect
+        aListener.interpretCommand(FUNCTION_FILL_RECT, tParameters, 6, tByteBuffer, null, 0);
+
+        // draw 2 border points outside box
+        aReferenceTarget.drawPoint(aScaleFactor * tStartX - 1, aScaleFactor * aStartY - 1, REFERENCE_STROKE_WIDTH, REFERENCE_COLOR,
+                false); // 1 pixel
+        aReferenceTarget.drawPoint(aScaleFactor * tStartX + aScaleFactor * (10 + 1), aScaleFactor * aStartY + aScaleFactor * (10 + 1),
+                REFERENCE_STROKE_WIDTH, REFERENCE_COLOR, false); // 1 pixel
+
+        // draw bigger rect outside
+        tParameters[0] = tStartX - 2;
+        tParameters[2] = tStartX + 12;
+        tParameters[1] = aStartY - 2;
+        tParameters[3] = aStartY + 12;
+        tParameters[4] = 0xF800; // Color red
+        aListener.interpretCommand(FUNCTION_DRAW_RECT, tParameters, 6, tByteBuffer, null, 0);
+
+        // fill with red square
+        tParameters[0] = tStartX + 2;
+        tParameters[2] = tStartX + 8;
+        tParameters[1] = aStartY + 2;
+        tParameters[3] = aStartY + 8;
+        tParameters[4] = 0xF800; // Color red
+        aListener.interpretCommand(FUNCTION_FILL_RECT, tParameters, 6, tByteBuffer, null, 0);
+
+        // fill with black circle
+        tParameters[0] = tStartX + 5;
+        tParameters[1] = aStartY + 5;
+        tParameters[2] = 3; // radius
+        tParameters[3] = 0;
+        aListener.interpretCommand(FUNCTION_DRAW_CIRCLE, tParameters, 6, tByteBuffer, null, 0);
+
+        // and draw center point
+        aReferenceTarget.drawPoint(aScaleFactor * tStartX + aScaleFactor * 5, aScaleFactor * aStartY + aScaleFactor * 5,
+                REFERENCE_STROKE_WIDTH, REFERENCE_COLOR, false); // 1 pixel
+
+        /*
+         * Thick line
+         */
+        tParameters[0] = tStartX + 50;
+        tParameters[1] = aStartY + 30;
+        tParameters[2] = tStartX + 70;
+        tParameters[3] = aStartY + 40;
+        tParameters[4] = 0; // Color black
+        tParameters[5] = 5; // Stroke width
+        aListener.interpretCommand(FUNCTION_DRAW_LINE, tParameters, 6, tByteBuffer, null, 0);
+
+        // draw char + string
+        tParameters[0] = tStartX + 15;
+        tParameters[1] = aStartY;
+        tParameters[2] = 11; // Size
+        tParameters[3] = 0; // Color black
+        tParameters[4] = 0x1F; // Background color blue
+        tParameters[5] = tModeCharacter;
+        aListener.interpretCommand(FUNCTION_DRAW_CHAR, tParameters, 6, tByteBuffer, null, 0);
+
+        // ISO_8859_15
+        tParameters[0] = SUBFUNCTION_GLOBAL_SET_CODEPAGE;
+        tParameters[1] = 15;
+        aListener.interpretCommand(FUNCTION_GLOBAL_SETTINGS, tParameters, 1, tByteBuffer, null, 0);
+
+        tParameters[0] = SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING;
+        tParameters[1] = 0x81;
+        tParameters[2] = 0x03A9; // Omega in UTF16
+        aListener.interpretCommand(FUNCTION_GLOBAL_SETTINGS, tParameters, 2, tByteBuffer, null, 0);
+
+        tParameters[0] = SUBFUNCTION_GLOBAL_SET_CHARACTER_CODE_MAPPING;
+        tParameters[1] = 0x82;
+        tParameters[2] = 0x2302; // House in UTF16
+        aListener.interpretCommand(FUNCTION_GLOBAL_SETTINGS, tParameters, 2, tByteBuffer, null, 0);
+
+        tParameters[0] = tStartX + 30;
+        tParameters[1] = aStartY;
+        tParameters[2] = 11; // Size
+        aListener.interpretCommand(FUNCTION_DRAW_STRING, tParameters, 6, tByteBuffer, null, tByteBuffer.length);
+
+        // generate chart data
+        byte[] tChartBuffer = new byte[aCanvasHeight / 2];
+        for (int i = 0; i < tChartBuffer.length; i++) {
+            tChartBuffer[i] = (byte) ((i + aStartY) % (aCanvasHeight / 2));
+        }
+        // DrawChart
+        tParameters[0] = 0;
+        tParameters[1] = (aCanvasHeight / 2);
+        tParameters[2] = 0; // Color black
+        tParameters[3] = 0; // No clearing of old chart
+        aListener.interpretCommand(FUNCTION_DRAW_CHART, tParameters, 4, tChartBuffer, null, tChartBuffer.length);
+
+        // Draw Z shaped chart
+        tChartBuffer[0] = (byte) 3;
+        tChartBuffer[1] = (byte) 2;
+        tChartBuffer[2] = (byte) 1;
+        tChartBuffer[3] = (byte) 0;
+        tChartBuffer[4] = (byte) (aCanvasHeight / 2);
+        tChartBuffer[5] = (byte) ((aCanvasHeight / 2) - 1);
+        tChartBuffer[6] = (byte) ((aCanvasHeight / 2) - 2);
+        tChartBuffer[7] = (byte) ((aCanvasHeight / 2) - 3);
+
+        tParameters[0] = (aStartY % 30) + tChartBuffer.length;
+        aListener.interpretCommand(FUNCTION_DRAW_CHART, tParameters, 4, tChartBuffer, null, 8);
+
+        /*
+         * compare chart + lines
+         */
+        tChartBuffer[0] = (byte) (aCanvasHeight / 2 + (aStartY % 30));
+        tChartBuffer[1] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 2);
+        tChartBuffer[2] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 4);
+        tChartBuffer[3] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 8);
+        tChartBuffer[4] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 16);
+        tChartBuffer[5] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 10);
+        tChartBuffer[6] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 16);
+        tChartBuffer[7] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 10);
+        tChartBuffer[8] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 6);
+        tChartBuffer[9] = (byte) (aCanvasHeight / 2 + (aStartY % 30) + 2);
+        tChartBuffer[10] = (byte) (aCanvasHeight / 2 + (aStartY % 30));
+
+        tParameters[0] = 90;
+        tParameters[1] = aCanvasHeight / 2 + (aStartY % 30);
+        tParameters[2] = 11; // Size
+        tParameters[3] = 0; // Color black
+        tParameters[4] = 0x1F; // Background color blue
+        tParameters[5] = tModeCharacter;
+        aListener.interpretCommand(FUNCTION_DRAW_CHAR, tParameters, 6, tByteBuffer, null, 0);
+
+        tParameters[4] = 0xF800; // Color red
+        for (int i = 0; i < 10; i++) {
+            tParameters[0] = 100 + i;
+            tParameters[1] = ProtocolHelper.convertByteToInt(tChartBuffer[i]);
+            tParameters[2] = tParameters[0] + 1;
+            tParameters[3] = ProtocolHelper.convertByteToInt(tChartBuffer[i + 1]);
+            aListener.interpretCommand(FUNCTION_DRAW_LINE, tParameters, 5, tByteBuffer, null, 0);
+        }
+
+        // DrawChart
+        tParameters[0] = 100;
+        tParameters[1] = 0;
+        tParameters[2] = 0; // Color black
+        tParameters[3] = 0; // No clearing of old chart
+        aListener.interpretCommand(FUNCTION_DRAW_CHART, tParameters, 4, tChartBuffer, null, 11);
+    }
+
+    /*
+     * The unscaled logo is 450 * 350 and has a left border of 50 and a upper border of 100
+     */
+    public static void drawLogo(CommandParser.CommandListener aListener, int aStartX, int aStartY, int aScaleDivisor) {
+        int[] tParameters = new int[6];
+        int[] tPathParameters = new int[6];
+
+        // blue rectangle
+        tParameters[0] = 50 / aScaleDivisor + aStartX;
+        tParameters[1] = 330 / aScaleDivisor + aStartY;
+        tParameters[2] = 450 / aScaleDivisor;
+        tParameters[3] = 120 / aScaleDivisor;
+        tParameters[4] = 0x1F; // Color blue
+        aListener.interpretCommand(FUNCTION_FILL_RECT_REL, tParameters, 5, null, null, 0);
+        tParameters[4] = 0; // Color black
+        tParameters[5] = 1; // Stroke width for Draw...
+        aListener.interpretCommand(FUNCTION_DRAW_RECT_REL, tParameters, 5, null, null, 0);
+
+        // red triangle
+        tParameters[0] = 0xF800; // Color red
+        tPathParameters[0] = 50 / aScaleDivisor + aStartX;
+        tPathParameters[1] = 100 / aScaleDivisor + aStartY;
+        tPathParameters[2] = 230 / aScaleDivisor + aStartX;
+        tPathParameters[3] = 440 / aScaleDivisor + aStartY;
+        tPathParameters[4] = 450 / aScaleDivisor + aStartX;
+        tPathParameters[5] = 330 / aScaleDivisor + aStartY;
+        aListener.interpretCommand(FUNCTION_FILL_PATH, tParameters, 1, null, tPathParameters, 6);
+        // black border
+        tParameters[0] = 0x00; // Color black
+        tParameters[1] = 1; // Stroke width for Draw...
+        aListener.interpretCommand(FUNCTION_DRAW_PATH, tParameters, 2, null, tPathParameters, 6);
+
+        // yellow circle
+        tParameters[0] = 160 / aScaleDivisor + aStartX;
+        tParameters[1] = 210 / aScaleDivisor + aStartY;
+        tParameters[2] = 110 / aScaleDivisor;
+        tParameters[3] = 0XFFE0; // Color yellow
+
+        aListener.interpretCommand(FUNCTION_FILL_CIRCLE, tParameters, 4, null, tPathParameters, 6);
+        tParameters[3] = 0x00; // Color black
+        tParameters[4] = 1; // Stroke width for Draw..
+        aListener.interpretCommand(FUNCTION_DRAW_CIRCLE, tParameters, 2, null, tPathParameters, 6);
+    }
+}
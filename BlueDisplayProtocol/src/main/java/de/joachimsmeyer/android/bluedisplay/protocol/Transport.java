@@ -0,0 +1,79 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * A byte stream connection to a BlueDisplay client like Bluetooth SPP, USB serial or TCP.
+ * The transport owns a reader thread, which reads the commands of the client directly into the receive buffer of the Receiver
+ * and then calls Receiver.handleReceived(). Events are sent back by writeEvent().
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+public interface Transport {
+
+    /**
+     * The consumer of the received commands, SerialService in the app and HeadlessDisplayServer on the PC.
+     * All methods are called by the reader thread of the transport.
+     */
+    interface Receiver {
+        ReceiveBuffer getReceiveBuffer();
+
+        /**
+         * Called after aReadLength bytes were read at getInIndex() into the array of getReceiveBuffer().
+         */
+        void handleReceived(int aReadLength);
+
+        /**
+         * Called after the connection is established and before the first read.
+         */
+        void onConnected(Transport aTransport);
+
+        /**
+         * Called after the connection was lost or closed by the remote side. Not called after disconnect().
+         */
+        void onDisconnected(Transport aTransport);
+    }
+
+    /**
+     * @return Name for toasts and log messages, e.g. "Bluetooth"
+     */
+    String getName();
+
+    /**
+     * Starts to establish the connection. Returns immediately, Receiver.onConnected() is called on success.
+     */
+    void connect();
+
+    boolean isConnected();
+
+    /**
+     * Sends an event to the client. May block if the client does not read fast enough.
+     */
+    void writeEvent(byte[] aEventDataBuffer, int aEventDataLength);
+
+    /**
+     * Closes the connection and stops the reader thread.
+     */
+    void disconnect();
+}
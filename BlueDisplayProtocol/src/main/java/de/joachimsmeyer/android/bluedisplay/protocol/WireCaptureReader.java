@@ -0,0 +1,111 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Reads the chunks of a capture file written by WireCaptureWriter.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class WireCaptureReader implements Closeable {
+
+    private final DataInputStream mInputStream;
+
+    /*
+     * The current chunk. The data array is reused and grows if required.
+     */
+    private long mChunkNanos;
+    private int mChunkLength;
+    private byte[] mChunkData = new byte[4096];
+
+    public WireCaptureReader(File aFile) throws IOException {
+        this(new FileInputStream(aFile));
+    }
+
+    public WireCaptureReader(InputStream aInputStream) throws IOException {
+        mInputStream = new DataInputStream(new BufferedInputStream(aInputStream, 64 * 1024));
+        byte[] tMagic = new byte[WireCaptureWriter.CAPTURE_MAGIC.length];
+        mInputStream.readFully(tMagic);
+        for (int i = 0; i < tMagic.length; i++) {
+            if (tMagic[i] != WireCaptureWriter.CAPTURE_MAGIC[i]) {
+                throw new IOException("No BlueDisplay capture file");
+            }
+        }
+        int tVersion = mInputStream.readUnsignedByte();
+        if (tVersion != WireCaptureWriter.CAPTURE_VERSION) {
+            throw new IOException("Unsupported capture version " + tVersion);
+        }
+    }
+
+    /**
+     * @return false at end of file. A chunk truncated by an abrupt end of capture is treated as end of file.
+     */
+    public boolean nextChunk() throws IOException {
+        try {
+            mChunkNanos = mInputStream.readLong();
+            int tLength = mInputStream.readInt();
+            if (tLength < 0) {
+                throw new IOException("Invalid chunk length " + tLength);
+            }
+            if (tLength > mChunkData.length) {
+                mChunkData = new byte[tLength];
+            }
+            mInputStream.readFully(mChunkData, 0, tLength);
+            mChunkLength = tLength;
+            return true;
+        } catch (EOFException e) {
+            mChunkLength = 0;
+            return false;
+        }
+    }
+
+    /**
+     * @return Nanoseconds since start of capture
+     */
+    public long getChunkNanos() {
+        return mChunkNanos;
+    }
+
+    public int getChunkLength() {
+        return mChunkLength;
+    }
+
+    public byte[] getChunkData() {
+        return mChunkData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInputStream.close();
+    }
+}
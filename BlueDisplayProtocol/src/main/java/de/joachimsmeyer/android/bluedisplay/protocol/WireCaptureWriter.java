@@ -0,0 +1,112 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Records the received byte chunks of a connection with a timestamp to a capture file, which can be replayed by CaptureReplayer.
+ *
+ * File format (big endian):
+ * "BDCAP" + version byte, then for each chunk: 8 byte nanoseconds since start of capture, 4 byte length and the bytes of the chunk.
+ *
+ * Writing only copies the chunk into a 64 kB buffer, so the reader thread is not slowed down by file I/O for every chunk.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class WireCaptureWriter {
+
+    private static final String LOG_TAG = "WireCapture";
+
+    static final byte[] CAPTURE_MAGIC = { 'B', 'D', 'C', 'A', 'P' };
+    static final int CAPTURE_VERSION = 1;
+    public static final String CAPTURE_FILE_EXTENSION = ".bdcap";
+
+    private static final int CAPTURE_WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream mOutputStream;
+    private final long mStartNanos;
+    private int mNumberOfChunks;
+    private long mNumberOfBytes;
+    private boolean mIsClosed;
+
+    public WireCaptureWriter(File aFile) throws IOException {
+        this(new FileOutputStream(aFile));
+    }
+
+    public WireCaptureWriter(OutputStream aOutputStream) throws IOException {
+        mOutputStream = new DataOutputStream(new BufferedOutputStream(aOutputStream, CAPTURE_WRITE_BUFFER_SIZE));
+        mOutputStream.write(CAPTURE_MAGIC);
+        mOutputStream.writeByte(CAPTURE_VERSION);
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Called by the reader thread for each chunk received.
+     * An IOException stops capturing, but must not disturb the connection.
+     */
+    public synchronized void write(byte[] aData, int aOffset, int aLength) {
+        if (mIsClosed) {
+            return;
+        }
+        try {
+            mOutputStream.writeLong(System.nanoTime() - mStartNanos);
+            mOutputStream.writeInt(aLength);
+            mOutputStream.write(aData, aOffset, aLength);
+            mNumberOfChunks++;
+            mNumberOfBytes += aLength;
+        } catch (IOException e) {
+            ProtocolLog.e(LOG_TAG, "Stop capture after write error " + e);
+            close();
+        }
+    }
+
+    public synchronized void close() {
+        if (mIsClosed) {
+            return;
+        }
+        mIsClosed = true;
+        try {
+            mOutputStream.close();
+        } catch (IOException e) {
+            ProtocolLog.e(LOG_TAG, "Error closing capture " + e);
+        }
+        if (ProtocolLog.isINFO()) {
+            ProtocolLog.i(LOG_TAG, "Capture closed. " + mNumberOfChunks + " chunks with " + mNumberOfBytes + " bytes written");
+        }
+    }
+
+    public synchronized int getNumberOfChunks() {
+        return mNumberOfChunks;
+    }
+
+    public synchronized long getNumberOfBytes() {
+        return mNumberOfBytes;
+    }
+}
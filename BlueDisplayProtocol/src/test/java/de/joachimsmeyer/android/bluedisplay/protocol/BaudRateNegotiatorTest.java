@@ -0,0 +1,116 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Baud rate handshake with a FakeSerialPort and simulated time.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BaudRateNegotiatorTest {
+
+    private static final int MAX_APP_BAUD_RATE = 3000000;
+
+    private FakeSerialPort mPort;
+    private BaudRateNegotiator mNegotiator;
+
+    @Before
+    public void setUp() {
+        mPort = new FakeSerialPort();
+        mNegotiator = new BaudRateNegotiator(mPort, MAX_APP_BAUD_RATE);
+    }
+
+    /*
+     * Runs one handshake like a client does, which switches on the switch event and sends the probe if aSendProbe is true.
+     * The time is simulated and advanced to the time requested by the negotiator.
+     */
+    private void runHandshake(int aClientMaxBaudRate, boolean aSendProbe, int aPattern1) {
+        long tNowMillis = 0;
+        long tDelay = mNegotiator.onBaudRateRequest(aClientMaxBaudRate, tNowMillis);
+        if (tDelay == BaudRateNegotiator.NO_TIMER) {
+            return;
+        }
+        tNowMillis += tDelay;
+        tDelay = mNegotiator.onTimer(tNowMillis);
+        if (tDelay == BaudRateNegotiator.NO_TIMER) {
+            return;
+        }
+        if (aSendProbe) {
+            mNegotiator.onProbe(aPattern1, BAUD_RATE_PROBE_PATTERN_2);
+        } else {
+            tNowMillis += tDelay;
+            mNegotiator.onTimer(tNowMillis);
+        }
+    }
+
+    private void assertHandshakeEnded(int aExpectedBaudRate, int aExpectedState) {
+        assertFalse(mNegotiator.isNegotiating());
+        assertEquals(aExpectedBaudRate, mPort.getBaudRate());
+        assertEquals(aExpectedBaudRate, mNegotiator.getBaudRate());
+        assertEquals(aExpectedBaudRate, mPort.getLastEventBaudRate());
+        assertEquals(aExpectedState, mPort.getLastEventState());
+    }
+
+    @Test
+    public void upgradesToClientMaxRate() {
+        runHandshake(1000000, true, BAUD_RATE_PROBE_PATTERN_1);
+        assertHandshakeEnded(1000000, BAUD_RATE_STATE_CONFIRMED);
+
+        // request for the current rate
+        runHandshake(1000000, true, BAUD_RATE_PROBE_PATTERN_1);
+        assertHandshakeEnded(1000000, BAUD_RATE_STATE_CONFIRMED);
+    }
+
+    @Test
+    public void fallsBackAfterLostProbe() {
+        runHandshake(2000000, false, BAUD_RATE_PROBE_PATTERN_1);
+        assertHandshakeEnded(BaudRateNegotiator.DEFAULT_BAUD_RATE, BAUD_RATE_STATE_FALLBACK);
+
+        // the retry does not use the failed rate again
+        runHandshake(2000000, true, BAUD_RATE_PROBE_PATTERN_1);
+        assertHandshakeEnded(1000000, BAUD_RATE_STATE_CONFIRMED);
+    }
+
+    @Test
+    public void fallsBackAfterInvalidProbe() {
+        runHandshake(500000, true, ~BAUD_RATE_PROBE_PATTERN_1);
+        assertHandshakeEnded(BaudRateNegotiator.DEFAULT_BAUD_RATE, BAUD_RATE_STATE_FALLBACK);
+    }
+
+    @Test
+    public void skipsRatesRefusedByDriver() {
+        mPort.setFirstRefusedBaudRate(921600);
+        for (int i = 0; i < 4; i++) { // 2M, 1M and 921600 are refused
+            runHandshake(2000000, true, BAUD_RATE_PROBE_PATTERN_1);
+        }
+        assertHandshakeEnded(500000, BAUD_RATE_STATE_CONFIRMED);
+    }
+}
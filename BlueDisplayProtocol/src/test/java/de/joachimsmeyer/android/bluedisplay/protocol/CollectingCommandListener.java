@@ -0,0 +1,71 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * CommandListener for tests, which keeps a copy of each received command and the serial prints.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class CollectingCommandListener implements CommandParser.CommandListener {
+
+    static class ReceivedCommand {
+        final int mCommand;
+        final int[] mParameters;
+        final byte[] mData;
+
+        ReceivedCommand(int aCommand, int[] aParameters, byte[] aData) {
+            mCommand = aCommand;
+            mParameters = aParameters;
+            mData = aData;
+        }
+    }
+
+    final List<ReceivedCommand> mCommands = new ArrayList<>();
+    final StringBuilder mSerialPrints = new StringBuilder();
+
+    @Override
+    public void interpretCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                 int aDataLength) {
+        mCommands.add(new ReceivedCommand(aCommand, Arrays.copyOf(aParameters, aParamsLength),
+                aDataLength > 0 ? Arrays.copyOf(aDataBytes, aDataLength) : new byte[0]));
+    }
+
+    @Override
+    public void onSerialPrint(String aString) {
+        mSerialPrints.append(aString);
+    }
+
+    ReceivedCommand get(int aIndex) {
+        return mCommands.get(aIndex);
+    }
+
+    int size() {
+        return mCommands.size();
+    }
+}
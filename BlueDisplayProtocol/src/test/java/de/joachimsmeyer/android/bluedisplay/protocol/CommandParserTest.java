@@ -0,0 +1,161 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Parsing of command streams as assembled by the client library, also if they are received in pieces.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandParserTest {
+
+    private ReceiveBuffer mReceiveBuffer;
+    private CommandParser mCommandParser;
+    private CollectingCommandListener mListener;
+
+    @Before
+    public void setUp() {
+        mReceiveBuffer = new CompactingReceiveBuffer(4096, 4096);
+        mCommandParser = new CommandParser(mReceiveBuffer);
+        mListener = new CollectingCommandListener();
+    }
+
+    /*
+     * Puts the bytes into the receive buffer and calls the parser until all complete commands are processed
+     */
+    void receive(byte[] aData, int aOffset, int aLength) {
+        mReceiveBuffer.put(aData, aOffset, aLength);
+        int tReturnValue;
+        do {
+            tReturnValue = mCommandParser.searchCommand(mListener);
+        } while (tReturnValue == CommandParser.DO_DRAW_AND_CALL_AGAIN);
+    }
+
+    void receive(byte[] aData) {
+        receive(aData, 0, aData.length);
+    }
+
+    @Test
+    public void parsesCommandWithParameters() {
+        receive(new CommandWriter().writeCommand(FUNCTION_FILL_RECT_REL, 10, 20, 30, 40, 0xF800).toByteArray());
+
+        assertEquals(1, mListener.size());
+        assertEquals(FUNCTION_FILL_RECT_REL, mListener.get(0).mCommand);
+        // parameters are signed 16 bit values
+        assertArrayEquals(new int[] { 10, 20, 30, 40, (short) 0xF800 }, mListener.get(0).mParameters);
+    }
+
+    @Test
+    public void parsesCommandWithData() {
+        receive(new CommandWriter().writeCommandWithString(FUNCTION_DRAW_STRING, "Hello", 5, 6, 11, 0, 0xFFFF).toByteArray());
+
+        assertEquals(1, mListener.size());
+        assertEquals(FUNCTION_DRAW_STRING, mListener.get(0).mCommand);
+        assertArrayEquals(new int[] { 5, 6, 11, 0, -1 }, mListener.get(0).mParameters);
+        assertEquals("Hello", new String(mListener.get(0).mData, java.nio.charset.StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void keepsStateOfCommandsSplitBetweenReceives() {
+        byte[] tStream = new CommandWriter().writeCommand(FUNCTION_DRAW_LINE, 1, 2, 3, 4, 0x07E0)
+                .writeCommandWithString(FUNCTION_DRAW_STRING, "split", 5, 6, 11, 0, 0xFFFF)
+                .writeCommand(FUNCTION_CLEAR_DISPLAY, 0).toByteArray();
+        // Split inside the parameters of both commands, inside the string data and inside the last command
+        int[] tSplitPositions = { 7, 20, 34, 40, tStream.length };
+        int tStart = 0;
+        for (int tSplitPosition : tSplitPositions) {
+            receive(tStream, tStart, tSplitPosition - tStart);
+            tStart = tSplitPosition;
+        }
+
+        assertEquals(3, mListener.size());
+        assertEquals(FUNCTION_DRAW_LINE, mListener.get(0).mCommand);
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 0x07E0 }, mListener.get(0).mParameters);
+        assertEquals(FUNCTION_DRAW_STRING, mListener.get(1).mCommand);
+        assertEquals(5, mListener.get(1).mData.length);
+        assertEquals(FUNCTION_CLEAR_DISPLAY, mListener.get(2).mCommand);
+    }
+
+    @Test
+    public void encodesCompactParametersAsVarints() {
+        byte[] tStream = new CommandWriter().writeCompactCommand(FUNCTION_DRAW_LINE, 0x7F, 0x80, 300, 0x4000, 0xFFFF).toByteArray();
+        // 1 + 2 + 2 + 3 + 3 bytes of parameters behind sync token, command and length
+        assertEquals(4 + 11, tStream.length);
+        assertEquals(11 | PARAMETER_LENGTH_COMPACT_FLAG,
+                ProtocolHelper.convert2BytesToInt(tStream[2], tStream[3]) & 0xFFFF);
+        assertEquals(0x7F, tStream[4] & 0xFF);
+        // 300 = 0x12C -> 0xAC 0x02, LSB first
+        assertEquals(0xAC, tStream[7] & 0xFF);
+        assertEquals(0x02, tStream[8] & 0xFF);
+    }
+
+    @Test
+    public void decodesCompactParameters() {
+        receive(new CommandWriter().writeCompactCommand(FUNCTION_DRAW_LINE, 0, 0x7F, 0x80, 0x3FFF, 0x4000).toByteArray());
+
+        assertEquals(1, mListener.size());
+        assertArrayEquals(new int[] { 0, 0x7F, 0x80, 0x3FFF, 0x4000 }, mListener.get(0).mParameters);
+    }
+
+    @Test
+    public void signExtendsCompactParameters() {
+        receive(new CommandWriter().writeCompactCommand(FUNCTION_DRAW_LINE, -5, 0x7FFF, 0x8000, 0xFFFF, 1).toByteArray());
+
+        assertArrayEquals(new int[] { -5, 0x7FFF, -0x8000, -1, 1 }, mListener.get(0).mParameters);
+    }
+
+    @Test
+    public void compactCommandWithoutColorUsesLastColor() {
+        receive(new CommandWriter().writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F)
+                .writeCompactCommand(FUNCTION_DRAW_LINE, 5, 6, 7, 8)
+                .writeCompactCommand(FUNCTION_FILL_RECT_REL, 9, 10, 11, 12, 0x07E0)
+                .writeCompactCommand(FUNCTION_FILL_RECT_REL, 13, 14, 15, 16).toByteArray());
+
+        assertEquals(4, mListener.size());
+        assertArrayEquals(new int[] { 5, 6, 7, 8, 0x001F }, mListener.get(1).mParameters);
+        assertArrayEquals(new int[] { 13, 14, 15, 16, 0x07E0 }, mListener.get(3).mParameters);
+    }
+
+    @Test
+    public void mixesCompactAndNormalCommandsSplitBetweenReceives() {
+        byte[] tStream = new CommandWriter().writeCompactCommand(FUNCTION_DRAW_LINE, 1000, 2000, 3000, 4000, 0xF800)
+                .writeCommand(FUNCTION_CLEAR_DISPLAY, 0xFFFF)
+                .writeCompactCommand(FUNCTION_DRAW_LINE, 10, 20, 30, 40).toByteArray();
+        // split inside the varint of 1000
+        receive(tStream, 0, 5);
+        receive(tStream, 5, tStream.length - 5);
+
+        assertEquals(3, mListener.size());
+        assertArrayEquals(new int[] { 1000, 2000, 3000, 4000, (short) 0xF800 }, mListener.get(0).mParameters);
+        assertArrayEquals(new int[] { -1 }, mListener.get(1).mParameters);
+        assertArrayEquals(new int[] { 10, 20, 30, 40, (short) 0xF800 }, mListener.get(2).mParameters);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * CRC framing: switching the framing, rejecting corrupt frames and resynchronizing at the next valid frame.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CrcFramingTest {
+
+    private ReceiveBuffer mReceiveBuffer;
+    private CommandParser mCommandParser;
+    private CollectingCommandListener mListener;
+    private CommandWriter mCommandWriter;
+
+    @Before
+    public void setUp() {
+        mReceiveBuffer = new CompactingReceiveBuffer(4096, 4096);
+        mCommandParser = new CommandParser(mReceiveBuffer);
+        mListener = new CollectingCommandListener();
+        mCommandWriter = new CommandWriter();
+        // The switch command is sent unframed, all following messages are framed
+        mCommandWriter.writeCommand(FUNCTION_GLOBAL_SETTINGS, SUBFUNCTION_GLOBAL_SET_CRC_FRAMING, 1);
+        mCommandWriter.setCrcFramingEnabled(true);
+    }
+
+    private void receive(byte[] aData) {
+        mReceiveBuffer.put(aData, 0, aData.length);
+        int tReturnValue;
+        do {
+            tReturnValue = mCommandParser.searchCommand(mListener);
+        } while (tReturnValue == CommandParser.DO_DRAW_AND_CALL_AGAIN);
+    }
+
+    @Test
+    public void switchesFramingAtNextMessage() {
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F);
+        mCommandWriter.writeCommandWithString(FUNCTION_DRAW_STRING, "framed", 5, 6, 11, 0, 0xFFFF);
+        receive(mCommandWriter.toByteArray());
+
+        assertTrue(mCommandParser.isCrcFramingEnabled());
+        assertEquals(3, mListener.size());
+        assertEquals(FUNCTION_GLOBAL_SETTINGS, mListener.get(0).mCommand);
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 0x001F }, mListener.get(1).mParameters);
+        assertEquals(FUNCTION_DRAW_STRING, mListener.get(2).mCommand);
+        assertEquals(6, mListener.get(2).mData.length);
+        assertEquals(0, mCommandParser.mStatisticNumberOfRejectedFrames);
+    }
+
+    @Test
+    public void switchesFramingOff() {
+        mCommandWriter.writeCommand(FUNCTION_GLOBAL_SETTINGS, SUBFUNCTION_GLOBAL_SET_CRC_FRAMING, 0);
+        mCommandWriter.setCrcFramingEnabled(false);
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F);
+        receive(mCommandWriter.toByteArray());
+
+        assertFalse(mCommandParser.isCrcFramingEnabled());
+        assertEquals(3, mListener.size());
+        assertEquals(FUNCTION_FILL_RECT_REL, mListener.get(2).mCommand);
+    }
+
+    @Test
+    public void rejectsFrameWithCorruptPayload() {
+        int tStart = mCommandWriter.size();
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F);
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 5, 6, 7, 8, 0x07E0);
+        byte[] tStream = mCommandWriter.toByteArray();
+        tStream[tStart + 1 + FRAME_HEADER_SIZE] ^= 0x01; // first parameter byte
+        receive(tStream);
+
+        assertEquals(2, mListener.size());
+        assertArrayEquals(new int[] { 5, 6, 7, 8, 0x07E0 }, mListener.get(1).mParameters);
+        assertEquals(1, mCommandParser.mStatisticNumberOfRejectedFrames);
+    }
+
+    @Test
+    public void rejectsFrameWithCorruptHeader() {
+        int tStart = mCommandWriter.size();
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F);
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 5, 6, 7, 8, 0x07E0);
+        byte[] tStream = mCommandWriter.toByteArray();
+        tStream[tStart + 2] = 0x40; // length, which would wait for data, which never arrives
+        receive(tStream);
+
+        assertEquals(2, mListener.size());
+        assertArrayEquals(new int[] { 5, 6, 7, 8, 0x07E0 }, mListener.get(1).mParameters);
+        assertEquals(1, mCommandParser.mStatisticNumberOfRejectedFrames);
+    }
+
+    @Test
+    public void dropsCommandWithCorruptDataFrame() {
+        mCommandWriter.writeCommandWithString(FUNCTION_DRAW_STRING, "lost", 5, 6, 11, 0, 0xFFFF);
+        int tDataEnd = mCommandWriter.size();
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F);
+        byte[] tStream = mCommandWriter.toByteArray();
+        tStream[tDataEnd - FRAME_CRC_SIZE - 1] ^= 0x20; // last character of the string
+        receive(tStream);
+
+        assertEquals(2, mListener.size());
+        assertEquals(FUNCTION_FILL_RECT_REL, mListener.get(1).mCommand);
+        assertEquals(1, mCommandParser.mStatisticNumberOfRejectedFrames);
+    }
+
+    @Test
+    public void dropsDataFrameAfterCorruptDataFrameAndLostCommandFrame() {
+        mCommandWriter.writeCommandWithString(FUNCTION_DRAW_STRING, "lost", 5, 6, 11, 0, 0xFFFF);
+        int tFirstDataEnd = mCommandWriter.size(); // = start of the second command
+        mCommandWriter.writeCommandWithString(FUNCTION_DRAW_STRING, "orphan", 50, 60, 22, 0, 0xFFFF);
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F);
+        byte[] tStream = mCommandWriter.toByteArray();
+        tStream[tFirstDataEnd - FRAME_CRC_SIZE - 1] ^= 0x20; // last character of the first string
+        tStream[tFirstDataEnd + 1 + FRAME_HEADER_SIZE] ^= 0x01; // first parameter of the second command
+        receive(tStream);
+
+        // The data frame of the second command must not be dispatched with the command of the first data frame
+        assertEquals(2, mListener.size());
+        assertEquals(FUNCTION_FILL_RECT_REL, mListener.get(1).mCommand);
+        assertEquals(2, mCommandParser.mStatisticNumberOfRejectedFrames);
+    }
+
+    @Test
+    public void resynchronizesAfterSpuriousSyncToken() {
+        mCommandWriter.writeRaw(new byte[] { SYNC_TOKEN, FUNCTION_FILL_RECT_REL, (byte) 0xFF, 0x7F, 0x00 }, 0, 5);
+        mCommandWriter.writeCommand(FUNCTION_FILL_RECT_REL, 1, 2, 3, 4, 0x001F);
+        receive(mCommandWriter.toByteArray());
+
+        // The valid frame is found in the same call, without waiting for the data of the spurious frame
+        assertEquals(2, mListener.size());
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 0x001F }, mListener.get(1).mParameters);
+        assertEquals(1, mCommandParser.mStatisticNumberOfRejectedFrames);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Recording and replay of display lists with offset and color substitution.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DisplayListStoreTest {
+
+    private static final int LIST_ID = 7;
+
+    private final DisplayListStore mDisplayListStore = new DisplayListStore();
+    private final CollectingCommandListener mListener = new CollectingCommandListener();
+
+    private void record(int aCommand, int... aParameters) {
+        mDisplayListStore.record(aCommand, aParameters, aParameters.length, null, 0);
+    }
+
+    private void replay(int aXOffset, int aYOffset, int aOldColor, int aNewColor) {
+        assertTrue(mDisplayListStore.replay(LIST_ID, aXOffset, aYOffset, aOldColor, aNewColor, mListener::interpretCommand));
+    }
+
+    @Test
+    public void addsOffsetToPositions() {
+        mDisplayListStore.startRecording(LIST_ID, false);
+        record(FUNCTION_FILL_RECT_REL, 10, 20, 30, 40, 0x001F);
+        record(FUNCTION_DRAW_LINE, 1, 2 | 0x8000, 3, 4, 0x001F); // line without anti aliasing
+        record(FUNCTION_FILL_CIRCLE, 50, 60, 5, 0x001F);
+        assertTrue(mDisplayListStore.endRecording());
+
+        replay(100, 200, DisplayListStore.NO_COLOR_SUBSTITUTION, 0);
+
+        assertEquals(3, mListener.size());
+        // width and height are not changed
+        assertArrayEquals(new int[] { 110, 220, 30, 40, 0x001F }, mListener.get(0).mParameters);
+        // start and end of line, the flag of the start y position is kept
+        assertArrayEquals(new int[] { 101, 202 | 0x8000, 103, 204, 0x001F }, mListener.get(1).mParameters);
+        assertArrayEquals(new int[] { 150, 260, 5, 0x001F }, mListener.get(2).mParameters);
+    }
+
+    @Test
+    public void keepsAlignedStringPosition() {
+        mDisplayListStore.startRecording(LIST_ID, false);
+        mDisplayListStore.record(FUNCTION_DRAW_STRING, new int[] { 10, 20, 11, 0x0000, 0xFFFF }, 5, new byte[] { 'A' }, 1);
+        mDisplayListStore.record(FUNCTION_DRAW_STRING, new int[] { STRING_ALIGN_MIDDLE_XPOS, 20, 11, 0x0000, 0xFFFF }, 5,
+                new byte[] { 'B' }, 1);
+        mDisplayListStore.endRecording();
+
+        replay(5, 6, DisplayListStore.NO_COLOR_SUBSTITUTION, 0);
+
+        assertArrayEquals(new int[] { 15, 26, 11, 0x0000, 0xFFFF }, mListener.get(0).mParameters);
+        assertArrayEquals(new int[] { STRING_ALIGN_MIDDLE_XPOS, 26, 11, 0x0000, 0xFFFF }, mListener.get(1).mParameters);
+        assertArrayEquals(new byte[] { 'B' }, mListener.get(1).mData);
+    }
+
+    @Test
+    public void replacesOnlyMatchingColor() {
+        mDisplayListStore.startRecording(LIST_ID, false);
+        record(FUNCTION_FILL_RECT_REL, 10, 20, 30, 40, (short) 0xF800); // as received, sign extended
+        record(FUNCTION_FILL_RECT_REL, 10, 20, 30, 40, 0x001F);
+        mDisplayListStore.record(FUNCTION_DRAW_STRING, new int[] { 10, 20, 11, (short) 0xF800, 0x001F }, 5, new byte[] { 'A' }, 1);
+        mDisplayListStore.endRecording();
+
+        replay(0, 0, 0xF800, 0x07E0);
+
+        assertArrayEquals(new int[] { 10, 20, 30, 40, 0x07E0 }, mListener.get(0).mParameters);
+        assertArrayEquals(new int[] { 10, 20, 30, 40, 0x001F }, mListener.get(1).mParameters);
+        // text color is replaced, background color not
+        assertArrayEquals(new int[] { 10, 20, 11, 0x07E0, 0x001F }, mListener.get(2).mParameters);
+    }
+
+    @Test
+    public void doesNotModifyRecordedParameters() {
+        mDisplayListStore.startRecording(LIST_ID, false);
+        record(FUNCTION_FILL_RECT_REL, 10, 20, 30, 40, 0x001F);
+        mDisplayListStore.endRecording();
+
+        replay(100, 100, 0x001F, 0x07E0);
+        replay(0, 0, DisplayListStore.NO_COLOR_SUBSTITUTION, 0);
+
+        assertArrayEquals(new int[] { 110, 120, 30, 40, 0x07E0 }, mListener.get(0).mParameters);
+        assertArrayEquals(new int[] { 10, 20, 30, 40, 0x001F }, mListener.get(1).mParameters);
+    }
+
+    @Test
+    public void rejectsUnknownListAndTooDeepNesting() {
+        assertFalse(mDisplayListStore.replay(LIST_ID, 0, 0, DisplayListStore.NO_COLOR_SUBSTITUTION, 0, mListener::interpretCommand));
+
+        // list replaying itself
+        mDisplayListStore.startRecording(LIST_ID, false);
+        record(FUNCTION_DISPLAY_LIST_REPLAY, LIST_ID);
+        mDisplayListStore.endRecording();
+        final int[] tNumberOfReplays = new int[1];
+        OpcodeRegistry.OpcodeHandler tHandler = new OpcodeRegistry.OpcodeHandler() {
+            @Override
+            public void handleCommand(int aCommand, int[] aParameters, int aParamsLength, byte[] aDataBytes, int[] aDataInts,
+                                      int aDataLength) {
+                tNumberOfReplays[0]++;
+                mDisplayListStore.replay(aParameters[0], 0, 0, DisplayListStore.NO_COLOR_SUBSTITUTION, 0, this);
+            }
+        };
+        assertTrue(mDisplayListStore.replay(LIST_ID, 0, 0, DisplayListStore.NO_COLOR_SUBSTITUTION, 0, tHandler));
+        assertEquals(DisplayListStore.MAX_REPLAY_DEPTH, tNumberOfReplays[0]);
+    }
+
+    @Test
+    public void discardsRecordingExceedingStoreSize() {
+        byte[] tData = new byte[MAX_DATA_SIZE];
+        mDisplayListStore.startRecording(LIST_ID, false);
+        for (int i = 0; i <= DisplayListStore.MAX_TOTAL_SIZE / MAX_DATA_SIZE; i++) {
+            mDisplayListStore.record(FUNCTION_DRAW_STRING, new int[] { 10, 20, 11, 0, 0xFFFF }, 5, tData, tData.length);
+        }
+        // discarding lasts until the end of the recording
+        assertTrue(mDisplayListStore.isRecording());
+        assertFalse(mDisplayListStore.endRecording());
+        assertFalse(mDisplayListStore.isRecording());
+        assertFalse(mDisplayListStore.replay(LIST_ID, 0, 0, DisplayListStore.NO_COLOR_SUBSTITUTION, 0, mListener::interpretCommand));
+
+        // the store is usable afterwards
+        mDisplayListStore.startRecording(LIST_ID, false);
+        record(FUNCTION_FILL_RECT_REL, 10, 20, 30, 40, 0x001F);
+        assertTrue(mDisplayListStore.endRecording());
+        replay(0, 0, DisplayListStore.NO_COLOR_SUBSTITUTION, 0);
+        assertEquals(1, mListener.size());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Serial port without hardware for BaudRateNegotiator. It records the rate and the sent events and can refuse rates
+ * like a driver which does not support them.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class FakeSerialPort implements BaudRateNegotiator.Port {
+
+    private int mBaudRate = BaudRateNegotiator.DEFAULT_BAUD_RATE;
+    private int mFirstRefusedBaudRate = Integer.MAX_VALUE;
+    private final List<int[]> mEvents = new ArrayList<>(); // baud rate and state
+
+    /**
+     * setBaudRate() throws an IOException for aBaudRate and all higher rates
+     */
+    public void setFirstRefusedBaudRate(int aBaudRate) {
+        mFirstRefusedBaudRate = aBaudRate;
+    }
+
+    @Override
+    public void setBaudRate(int aBaudRate) throws IOException {
+        if (aBaudRate >= mFirstRefusedBaudRate) {
+            throw new IOException("Baudrate " + aBaudRate + " not supported");
+        }
+        mBaudRate = aBaudRate;
+    }
+
+    @Override
+    public void sendBaudRateEvent(int aBaudRate, int aState) {
+        mEvents.add(new int[] { aBaudRate, aState });
+    }
+
+    public int getBaudRate() {
+        return mBaudRate;
+    }
+
+    public int getNumberOfEvents() {
+        return mEvents.size();
+    }
+
+    /**
+     * @return Rate of the last event or 0 if no event was sent
+     */
+    public int getLastEventBaudRate() {
+        return mEvents.isEmpty() ? 0 : mEvents.get(mEvents.size() - 1)[0];
+    }
+
+    /**
+     * @return State of the last event or -1 if no event was sent
+     */
+    public int getLastEventState() {
+        return mEvents.isEmpty() ? -1 : mEvents.get(mEvents.size() - 1)[1];
+    }
+}
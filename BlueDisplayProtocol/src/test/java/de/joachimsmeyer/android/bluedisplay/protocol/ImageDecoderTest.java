@@ -0,0 +1,133 @@
+/*
+ *     SUMMARY
+ *     Blue Display is an Open Source Android remote Display for Arduino etc.
+ *     It receives basic draw requests from Arduino etc. over Bluetooth and renders it.
+ *     It also implements basic GUI elements as buttons and sliders.
+ *     It sends touch or GUI callback events over Bluetooth back to Arduino.
+ *
+ *  Copyright (C) 2014-2026  Armin Joachimsmeyer
+ *  armin.joachimsmeyer@gmail.com
+ *
+ *     This file is part of BlueDisplay.
+ *  BlueDisplay is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/gpl.html>.
+ *
+ *
+ * Decoding of streamed images, with rows and run length encoded runs split between data commands at every position.
+ */
+
+package de.joachimsmeyer.android.bluedisplay.protocol;
+
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.IMAGE_FLAG_RLE;
+import static de.joachimsmeyer.android.bluedisplay.protocol.ProtocolConstants.IMAGE_FORMAT_RGB565;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ImageDecoderTest {
+
+    private static final int RED = ProtocolHelper.shortToLongColor(0xF800);
+    private static final int GREEN = ProtocolHelper.shortToLongColor(0x07E0);
+    private static final int BLUE = ProtocolHelper.shortToLongColor(0x001F);
+    private static final int WHITE = ProtocolHelper.shortToLongColor(0xFFFF);
+
+    // RGB565 colors, LSB first
+    private static final byte[] PALETTE = { 0x00, (byte) 0xF8, (byte) 0xE0, 0x07, 0x1F, 0x00, (byte) 0xFF, (byte) 0xFF };
+
+    private final List<int[]> mRows = new ArrayList<>();
+    private final List<Integer> mRowPositions = new ArrayList<>();
+
+    private final ImageDecoder mImageDecoder = new ImageDecoder(new ImageDecoder.RowListener() {
+        @Override
+        public void onImageRow(int[] aColors, int aWidth, int aX, int aY) {
+            mRows.add(Arrays.copyOf(aColors, aWidth));
+            mRowPositions.add(aX);
+            mRowPositions.add(aY);
+        }
+    });
+
+    /*
+     * Decodes the image once for each chunk size from 1 to the whole data and checks, that all rows are as expected
+     */
+    private void checkAllChunkSizes(int aWidth, int aFormat, int aFlags, byte[] aData, int[]... aExpectedRows) {
+        for (int tChunkSize = 1; tChunkSize <= aData.length; tChunkSize++) {
+            mRows.clear();
+            mRowPositions.clear();
+            mImageDecoder.setPalette(PALETTE, PALETTE.length);
+            assertTrue(mImageDecoder.start(10, 20, aWidth, aExpectedRows.length, aFormat, aFlags));
+            for (int i = 0; i < aData.length; i += tChunkSize) {
+                byte[] tChunk = Arrays.copyOfRange(aData, i, Math.min(i + tChunkSize, aData.length));
+                mImageDecoder.decode(tChunk, tChunk.length);
+            }
+            assertFalse("Chunk size " + tChunkSize, mImageDecoder.isActive());
+            assertEquals("Chunk size " + tChunkSize, aExpectedRows.length, mRows.size());
+            for (int i = 0; i < aExpectedRows.length; i++) {
+                assertArrayEquals("Chunk size " + tChunkSize + " row " + i, aExpectedRows[i], mRows.get(i));
+                assertEquals(10, (int) mRowPositions.get(2 * i));
+                assertEquals(20 + i, (int) mRowPositions.get((2 * i) + 1));
+            }
+        }
+    }
+
+    @Test
+    public void decodesRGB565() {
+        byte[] tData = { 0x00, (byte) 0xF8, (byte) 0xE0, 0x07, 0x1F, 0x00, (byte) 0xFF, (byte) 0xFF, 0x00, (byte) 0xF8, 0x1F, 0x00 };
+        checkAllChunkSizes(3, IMAGE_FORMAT_RGB565, 0, tData, new int[] { RED, GREEN, BLUE }, new int[] { WHITE, RED, BLUE });
+    }
+
+    @Test
+    public void decodesRGB565RunsSpanningRows() {
+        byte[] tData = { (byte) 0x82, 0x00, (byte) 0xF8, // 4 * red
+                0x01, (byte) 0xE0, 0x07, 0x1F, 0x00 // 2 literals
+        };
+        checkAllChunkSizes(3, IMAGE_FORMAT_RGB565, IMAGE_FLAG_RLE, tData, new int[] { RED, RED, RED },
+                new int[] { RED, GREEN, BLUE });
+    }
+
+    @Test
+    public void decodesPaletteRowsStartingAtByteBoundary() {
+        // 2 bits per pixel, 5 pixel per row -> 2 bytes per row, the rest of the last byte is discarded
+        byte[] tData = { (byte) 0b00011011, (byte) 0b00111111, (byte) 0b11100100, (byte) 0b01000000 };
+        checkAllChunkSizes(5, 2, 0, tData, new int[] { RED, GREEN, BLUE, WHITE, RED }, new int[] { WHITE, BLUE, GREEN, RED, GREEN });
+    }
+
+    @Test
+    public void decodesPaletteRunsSpanningRows() {
+        // 4 bits per pixel, 3 pixel per row -> 2 bytes per row
+        byte[] tData = { (byte) 0x82, 0x12, // 4 * byte 0x12 -> rows 0 and 1
+                0x01, 0x12, 0x30, // 2 literals -> row 2
+                0x00, 0x00 // ignored, since behind the last row
+        };
+        checkAllChunkSizes(3, 4, IMAGE_FLAG_RLE, tData, new int[] { GREEN, BLUE, GREEN }, new int[] { GREEN, BLUE, GREEN },
+                new int[] { GREEN, BLUE, WHITE });
+    }
+
+    @Test
+    public void rejectsInvalidHeader() {
+        assertFalse(mImageDecoder.start(0, 0, 0, 1, IMAGE_FORMAT_RGB565, 0));
+        assertFalse(mImageDecoder.start(0, 0, ImageDecoder.MAX_IMAGE_WIDTH + 1, 1, IMAGE_FORMAT_RGB565, 0));
+        assertFalse(mImageDecoder.start(0, 0, 10, 1, 3, 0));
+        assertFalse(mImageDecoder.isActive());
+
+        // data without valid start is ignored
+        mImageDecoder.decode(new byte[] { 0x00, 0x00 }, 2);
+        assertEquals(0, mRows.size());
+    }
+}